@@ -0,0 +1,90 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/** Streams characters out of an UTF-8 encoded buffer without decoding it up front. */
+class ByteBufferReader extends Reader {
+  private final ByteBuffer input;
+  private final CharsetDecoder decoder =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+  private boolean done;
+
+  /** @param input UTF-8 encoded characters, the buffer itself is not consumed. */
+  ByteBufferReader(ByteBuffer input) {
+    this.input = input.duplicate();
+  }
+
+  @Override
+  public int read(char[] buffer, int offset, int length) throws CharacterCodingException {
+    if (done) return -1;
+    if (length == 0) return 0;
+
+    CharBuffer output = CharBuffer.wrap(buffer, offset, length);
+    CoderResult result = decoder.decode(input, output, true);
+    if (result.isUnderflow()) {
+      result = decoder.flush(output);
+      done = result.isUnderflow();
+    }
+    if (result.isError()) {
+      result.throwException();
+    }
+
+    int read = output.position() - offset;
+    return read == 0 && done ? -1 : read;
+  }
+
+  @Override
+  public void close() {
+    done = true;
+  }
+
+  /**
+   * Check if a failure was caused by input that isn't valid UTF-8.
+   *
+   * @param failure exception thrown while reading.
+   * @return true if a {@link CharacterCodingException} is among the causes.
+   */
+  static boolean isMalformedInput(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CharacterCodingException) return true;
+      if (cause.getCause() == cause) break;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,135 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
+import org.java_websocket.protocols.IProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RFC 6455 draft that hands complete text frames over as their UTF-8 payload, without decoding
+ * them into a {@link String}. Frames go to the {@link TextRelay} attached to the connection, see
+ * {@link org.java_websocket.WebSocket#setAttachment(Object)}. Without a relay, and for fragmented
+ * messages, frames are processed as by {@link Draft_6455}. A relayed frame that isn't valid UTF-8
+ * closes the connection with {@link CloseFrame#NO_UTF8}.
+ */
+public class Draft_6455Utf8 extends Draft_6455 {
+  private static final Logger logger = LoggerFactory.getLogger(Draft_6455Utf8.class);
+
+  /** Receives complete text messages as UTF-8 encoded bytes. */
+  public interface TextRelay {
+    /**
+     * Relay a text message. The buffer is only valid for the duration of the call.
+     *
+     * @param message UTF-8 encoded message.
+     */
+    void relay(ByteBuffer message);
+  }
+
+  private boolean fragmented;
+
+  public Draft_6455Utf8(List<IExtension> extensions, List<IProtocol> protocols) {
+    super(extensions, protocols);
+  }
+
+  public Draft_6455Utf8(List<IExtension> extensions, List<IProtocol> protocols, int maxFrameSize) {
+    super(extensions, protocols, maxFrameSize);
+  }
+
+  /**
+   * Create a text frame from an UTF-8 encoded message.
+   *
+   * @param message UTF-8 encoded message, it's not copied.
+   * @param mask true if sent by a client.
+   * @return a complete text frame.
+   */
+  public static Framedata createTextFrame(ByteBuffer message, boolean mask) {
+    TextFrame frame = new TextFrame();
+    frame.setPayload(message);
+    frame.setTransferemasked(mask);
+    return frame;
+  }
+
+  @Override
+  public void processFrame(WebSocketImpl webSocketImpl, Framedata frame)
+      throws InvalidDataException {
+    Opcode opcode = frame.getOpcode();
+    Object attachment = webSocketImpl.getAttachment();
+
+    if (opcode == Opcode.TEXT && frame.isFin() && !fragmented && attachment instanceof TextRelay) {
+      try {
+        ((TextRelay) attachment).relay(frame.getPayloadData());
+      } catch (RuntimeException ex) {
+        if (ByteBufferReader.isMalformedInput(ex)) {
+          // Closes the connection, as Draft_6455 does for text it can't decode
+          throw new InvalidDataException(CloseFrame.NO_UTF8, "Text frame isn't valid UTF-8");
+        }
+        logger.error("Runtime exception during onWebsocketMessage", ex);
+        webSocketImpl.getWebSocketListener().onWebsocketError(webSocketImpl, ex);
+      }
+      return;
+    }
+
+    if (opcode == Opcode.TEXT || opcode == Opcode.BINARY) {
+      fragmented = !frame.isFin();
+    } else if (opcode == Opcode.CONTINUOUS && frame.isFin()) {
+      fragmented = false;
+    }
+    super.processFrame(webSocketImpl, frame);
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    fragmented = false;
+  }
+
+  @Override
+  public Draft copyInstance() {
+    List<IExtension> extensions = new ArrayList<>();
+    for (IExtension extension : getKnownExtensions()) {
+      extensions.add(extension.copyInstance());
+    }
+    List<IProtocol> protocols = new ArrayList<>();
+    for (IProtocol protocol : getKnownProtocols()) {
+      protocols.add(protocol.copyInstance());
+    }
+    return new Draft_6455Utf8(extensions, protocols, getMaxFrameSize());
+  }
+}
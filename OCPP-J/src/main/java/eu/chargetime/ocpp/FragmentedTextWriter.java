@@ -0,0 +1,178 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import org.java_websocket.WebSocket;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.framing.CloseFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a text message to a WebSocket in fragments, UTF-8 encoded as it's written. A fragment is
+ * sent each time the buffer fills up, and the last one when the writer is closed. A message that
+ * fits in one fragment goes out as a single frame. Fragments end on whole characters, so each is
+ * valid UTF-8 on its own.
+ *
+ * <p>Nothing else may be sent on the connection until the writer is closed.
+ */
+class FragmentedTextWriter extends Writer {
+  private static final Logger logger = LoggerFactory.getLogger(FragmentedTextWriter.class);
+
+  static final int DEFAULT_FRAGMENT_SIZE = 16 * 1024;
+  private static final int MIN_FRAGMENT_SIZE = 64;
+  private static final int CHAR_BUFFER_SIZE = 4 * 1024;
+
+  private final WebSocket webSocket;
+  private final ByteBuffer fragment;
+  private final CharsetEncoder encoder =
+      StandardCharsets.UTF_8
+          .newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+  private boolean sentFragments;
+  private boolean closed;
+
+  /**
+   * @param webSocket the connection to write to.
+   * @param fragmentSize payload size of the fragments in bytes, the last one may be smaller.
+   */
+  FragmentedTextWriter(WebSocket webSocket, int fragmentSize) {
+    this.webSocket = webSocket;
+    this.fragment = ByteBuffer.allocate(Math.max(fragmentSize, MIN_FRAGMENT_SIZE));
+  }
+
+  /**
+   * Send a message as it's serialized. If it fails after the first fragment went out, the
+   * connection is closed, as the peer can't make sense of anything sent after.
+   *
+   * @param webSocket the connection to write to.
+   * @param message the message.
+   * @param fragmentSize payload size of the fragments in bytes.
+   */
+  static void send(WebSocket webSocket, StreamedMessage message, int fragmentSize) {
+    FragmentedTextWriter writer = new FragmentedTextWriter(webSocket, fragmentSize);
+    try {
+      message.writeTo(writer);
+      writer.close();
+    } catch (IOException ex) {
+      writer.abort(ex);
+      throw new UncheckedIOException(ex);
+    } catch (RuntimeException ex) {
+      writer.abort(ex);
+      throw ex;
+    }
+  }
+
+  private void abort(Exception cause) {
+    if (sentFragments && webSocket.isOpen()) {
+      logger.error("Unable to complete a streamed message, closing the connection", cause);
+      webSocket.close(CloseFrame.UNEXPECTED_CONDITION, "Unable to complete message");
+    }
+  }
+
+  @Override
+  public void write(int c) {
+    ensureOpen();
+    chars.put((char) c);
+    if (!chars.hasRemaining()) encode(false);
+  }
+
+  @Override
+  public void write(char[] source, int offset, int length) {
+    ensureOpen();
+    while (length > 0) {
+      int count = Math.min(length, chars.remaining());
+      chars.put(source, offset, count);
+      offset += count;
+      length -= count;
+      if (!chars.hasRemaining()) encode(false);
+    }
+  }
+
+  @Override
+  public void write(String source, int offset, int length) {
+    ensureOpen();
+    while (length > 0) {
+      int count = Math.min(length, chars.remaining());
+      source.getChars(offset, offset + count, chars.array(), chars.position());
+      chars.position(chars.position() + count);
+      offset += count;
+      length -= count;
+      if (!chars.hasRemaining()) encode(false);
+    }
+  }
+
+  /** Encode the buffered characters, an unpaired high surrogate at the end is kept. */
+  private void encode(boolean endOfInput) {
+    chars.flip();
+    while (encoder.encode(chars, fragment, endOfInput).isOverflow()) {
+      sendFragment(false);
+    }
+    chars.compact();
+  }
+
+  private void sendFragment(boolean last) {
+    fragment.flip();
+    webSocket.sendFragmentedFrame(Opcode.TEXT, fragment, last);
+    fragment.clear();
+    sentFragments = true;
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Message already sent");
+    }
+  }
+
+  /** Fragments are only sent when they're full, an incomplete fragment is kept. */
+  @Override
+  public void flush() {}
+
+  /** Send the last fragment. */
+  @Override
+  public void close() {
+    if (closed) return;
+
+    encode(true);
+    while (encoder.flush(fragment).isOverflow()) {
+      sendFragment(false);
+    }
+    sendFragment(true);
+    closed = true;
+  }
+}
@@ -0,0 +1,251 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import eu.chargetime.ocpp.model.CallErrorMessage;
+import eu.chargetime.ocpp.model.CallMessage;
+import eu.chargetime.ocpp.model.CallResultMessage;
+import eu.chargetime.ocpp.model.Message;
+import eu.chargetime.ocpp.utilities.ZonedDateTimeCodec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link JsonCodec} built on Gson. This is the default codec.
+ *
+ * <p>Model modules may ship hand written type adapters for their hot payloads, registered as
+ * {@link TypeAdapterFactory} services. Anything not covered is bound by reflection.
+ */
+public class GsonCodec implements JsonCodec {
+
+  private static final Logger logger = LoggerFactory.getLogger(GsonCodec.class);
+
+  private static final int TYPENUMBER_CALL = 2;
+  private static final int TYPENUMBER_CALLRESULT = 3;
+  private static final int TYPENUMBER_CALLERROR = 4;
+
+  private final Gson gson;
+
+  public GsonCodec() {
+    GsonBuilder builder = new GsonBuilder();
+    builder.registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeTypeAdapter().nullSafe());
+    builder.registerTypeAdapterFactory(new IterableTypeAdapterFactory());
+    for (TypeAdapterFactory factory :
+        ServiceLoader.load(TypeAdapterFactory.class, GsonCodec.class.getClassLoader())) {
+      logger.debug("Registering type adapter factory: {}", factory.getClass().getName());
+      builder.registerTypeAdapterFactory(factory);
+    }
+    gson = builder.disableHtmlEscaping().create();
+  }
+
+  private static class ZonedDateTimeTypeAdapter extends TypeAdapter<ZonedDateTime> {
+
+    @Override
+    public void write(JsonWriter out, ZonedDateTime zonedDateTime) throws IOException {
+      out.value(ZonedDateTimeCodec.formatInstant(zonedDateTime));
+    }
+
+    @Override
+    public ZonedDateTime read(JsonReader in) throws IOException {
+      return ZonedDateTimeCodec.parse(in.nextString());
+    }
+  }
+
+  /** Binds fields declared as {@link Iterable} to JSON arrays, whatever the runtime type. */
+  private static class IterableTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (type.getRawType() != Iterable.class) return null;
+
+      Type elementType = Object.class;
+      if (type.getType() instanceof ParameterizedType) {
+        elementType = ((ParameterizedType) type.getType()).getActualTypeArguments()[0];
+      }
+      TypeAdapter<?> elementAdapter = gson.getAdapter(TypeToken.get(elementType));
+      return (TypeAdapter<T>) new IterableTypeAdapter<>(elementAdapter);
+    }
+  }
+
+  private static class IterableTypeAdapter<E> extends TypeAdapter<Iterable<E>> {
+
+    private final TypeAdapter<E> elementAdapter;
+
+    IterableTypeAdapter(TypeAdapter<E> elementAdapter) {
+      this.elementAdapter = elementAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, Iterable<E> elements) throws IOException {
+      if (elements == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginArray();
+      for (E element : elements) {
+        elementAdapter.write(out, element);
+      }
+      out.endArray();
+    }
+
+    @Override
+    public Iterable<E> read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      List<E> elements = new ArrayList<>();
+      in.beginArray();
+      while (in.hasNext()) {
+        elements.add(elementAdapter.read(in));
+      }
+      in.endArray();
+      return elements;
+    }
+  }
+
+  @Override
+  public String toJson(Object payload) {
+    return gson.toJson(payload);
+  }
+
+  @Override
+  public void toJson(Object payload, Writer out) {
+    gson.toJson(payload, out);
+  }
+
+  @Override
+  public <T> T fromJson(String json, Class<T> type) {
+    return gson.fromJson(json, type);
+  }
+
+  @Override
+  public Message parse(Reader json, PayloadTypes payloadTypes) {
+    Message message;
+    try (JsonReader reader = new JsonReader(json)) {
+      reader.beginArray();
+      int messageType = reader.nextInt();
+      String id = reader.nextString();
+
+      if (messageType == TYPENUMBER_CALL) {
+        String action = reader.nextString();
+        message = new CallMessage();
+        message.setAction(action);
+        message.setPayload(readPayload(reader, payloadTypes.getRequestType(action)));
+      } else if (messageType == TYPENUMBER_CALLRESULT) {
+        message = new CallResultMessage();
+        message.setPayload(readPayload(reader, payloadTypes.getConfirmationType(id)));
+      } else if (messageType == TYPENUMBER_CALLERROR) {
+        CallErrorMessage callError = new CallErrorMessage();
+        callError.setErrorCode(reader.nextString());
+        callError.setErrorDescription(reader.nextString());
+        if (reader.hasNext()) {
+          reader.skipValue();
+          callError.setPayload(SkippedPayload.INSTANCE);
+        }
+        message = callError;
+      } else {
+        throw new IllegalArgumentException("Unknown message type: " + messageType);
+      }
+
+      message.setId(id);
+      endMessage(reader);
+    } catch (IOException ex) {
+      throw new JsonSyntaxException(ex);
+    }
+
+    return message;
+  }
+
+  private Object readPayload(JsonReader reader, Class<?> type) throws IOException {
+    if (type == null) {
+      reader.skipValue();
+      return SkippedPayload.INSTANCE;
+    }
+
+    String path = reader.getPath();
+    try {
+      return gson.getAdapter(type).read(reader);
+    } catch (RuntimeException | IOException ex) {
+      // A message that isn't valid UTF-8 fails as a whole
+      if (ByteBufferReader.isMalformedInput(ex)) throw ex;
+      // Defer the failure, so it's reported against the message id
+      skipUnread(reader, path);
+      return new UnboundPayload(ex);
+    }
+  }
+
+  /**
+   * Skip what's left of a payload that failed to bind, so the end of the message can be checked.
+   * Fails if the payload isn't well-formed JSON.
+   */
+  private static void skipUnread(JsonReader reader, String payloadPath) throws IOException {
+    if (reader.getPath().equals(payloadPath)) {
+      reader.skipValue();
+      return;
+    }
+    // Within the payload, the path extends the one it started at
+    while (reader.getPath().startsWith(payloadPath)
+        && reader.getPath().length() > payloadPath.length()) {
+      JsonToken token = reader.peek();
+      if (token == JsonToken.END_OBJECT) reader.endObject();
+      else if (token == JsonToken.END_ARRAY) reader.endArray();
+      else reader.skipValue();
+    }
+  }
+
+  /** Require the message array to end after the elements read, with nothing following it. */
+  private static void endMessage(JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.END_ARRAY) {
+      throw new MalformedJsonException("Unexpected element at " + reader.getPath());
+    }
+    reader.endArray();
+    if (reader.peek() != JsonToken.END_DOCUMENT) {
+      throw new MalformedJsonException("Unexpected text after the message");
+    }
+  }
+}
@@ -1,13 +1,12 @@
 package eu.chargetime.ocpp;
 
-import com.google.gson.*;
 import eu.chargetime.ocpp.model.CallErrorMessage;
-import eu.chargetime.ocpp.model.CallMessage;
-import eu.chargetime.ocpp.model.CallResultMessage;
 import eu.chargetime.ocpp.model.Message;
-import java.lang.reflect.Type;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import eu.chargetime.ocpp.model.StreamablePayload;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,115 +44,274 @@ public class JSONCommunicator extends Communicator {
 
   private static final Logger logger = LoggerFactory.getLogger(JSONCommunicator.class);
 
-  private static final int INDEX_MESSAGEID = 0;
   private static final int TYPENUMBER_CALL = 2;
-  private static final int INDEX_CALL_ACTION = 2;
-  private static final int INDEX_CALL_PAYLOAD = 3;
-
   private static final int TYPENUMBER_CALLRESULT = 3;
-  private static final int INDEX_CALLRESULT_PAYLOAD = 2;
-
   private static final int TYPENUMBER_CALLERROR = 4;
-  private static final int INDEX_CALLERROR_ERRORCODE = 2;
-  private static final int INDEX_CALLERROR_DESCRIPTION = 3;
-  private static final int INDEX_CALLERROR_PAYLOAD = 4;
-
-  private static final int INDEX_UNIQUEID = 1;
-  private static final String CALL_FORMAT = "[2,\"%s\",\"%s\",%s]";
-  private static final String CALLRESULT_FORMAT = "[3,\"%s\",%s]";
-  private static final String CALLERROR_FORMAT = "[4,\"%s\",\"%s\",\"%s\",%s]";
+
+  private static final String EMPTY_ERROR_DETAILS = "{}";
+  private static final int MAX_CACHED_ENVELOPE_CAPACITY = 64 * 1024;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
   private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
   private static final String DATE_FORMAT_WITH_MS = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
   private static final int DATE_FORMAT_WITH_MS_LENGTH = 24;
 
   private boolean hasLongDateFormat = false;
 
+  private static final JsonCodec DEFAULT_CODEC = new GsonCodec();
+
+  private final JsonCodec codec;
+  private final JsonCodec.PayloadTypes payloadTypes = new CommunicatorPayloadTypes();
+
   /**
    * Handle required injections.
    *
    * @param radio instance of the {@link Radio}.
    */
   public JSONCommunicator(Radio radio) {
-    super(radio);
+    this(radio, DEFAULT_CODEC);
   }
 
-  private static class ZonedDateTimeSerializer
-      implements JsonSerializer<ZonedDateTime>, JsonDeserializer<ZonedDateTime> {
-
-    @Override
-    public JsonElement serialize(
-        ZonedDateTime zonedDateTime, Type type, JsonSerializationContext jsonSerializationContext) {
-      return new JsonPrimitive(zonedDateTime.format(DateTimeFormatter.ISO_INSTANT));
-    }
-
-    @Override
-    public ZonedDateTime deserialize(
-        JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext)
-        throws JsonParseException {
-      return ZonedDateTime.parse(jsonElement.getAsJsonPrimitive().getAsString());
-    }
+  /**
+   * Handle required injections.
+   *
+   * @param radio instance of the {@link Radio}.
+   * @param codec binds payloads to and from JSON.
+   */
+  public JSONCommunicator(Radio radio, JsonCodec codec) {
+    super(radio);
+    this.codec = codec;
   }
 
-  private static Gson gson;
+  /**
+   * Handle required injections.
+   *
+   * @param radio instance of the {@link Radio}.
+   * @param codec binds payloads to and from JSON.
+   * @param transactionQueue stores transaction related calls while offline.
+   */
+  public JSONCommunicator(Radio radio, JsonCodec codec, ITransactionQueue transactionQueue) {
+    super(radio, transactionQueue);
+    this.codec = codec;
+  }
 
-  static {
-    GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeSerializer());
-    gson = builder.disableHtmlEscaping().create();
+  /**
+   * Get the codec used when none is configured.
+   *
+   * @return the shared {@link GsonCodec}.
+   */
+  public static JsonCodec getDefaultCodec() {
+    return DEFAULT_CODEC;
   }
 
   @Override
   public <T> T unpackPayload(Object payload, Class<T> type) throws Exception {
-    return gson.fromJson(payload.toString(), type);
+    if (payload instanceof JsonCodec.UnboundPayload) {
+      throw ((JsonCodec.UnboundPayload) payload).getCause();
+    }
+    if (type.isInstance(payload)) {
+      // Already bound while the envelope was parsed
+      return type.cast(payload);
+    }
+    return codec.fromJson(payload.toString(), type);
   }
 
+  /**
+   * Serialize a payload. A {@link StreamablePayload} is only serialized when the message is sent,
+   * see {@link StreamedMessage}.
+   */
   @Override
   public Object packPayload(Object payload) {
-    return gson.toJson(payload);
+    if (payload instanceof StreamablePayload) {
+      return new DeferredPayload(payload);
+    }
+    return codec.toJson(payload);
   }
 
   @Override
   protected Object makeCallResult(String uniqueId, String action, Object payload) {
-    return String.format(CALLRESULT_FORMAT, uniqueId, payload);
+    StringBuilder envelope = startEnvelope(TYPENUMBER_CALLRESULT, uniqueId);
+    envelope.append(',');
+    return finishEnvelope(envelope, payload);
   }
 
   @Override
   protected Object makeCall(String uniqueId, String action, Object payload) {
-    return String.format(CALL_FORMAT, uniqueId, action, payload);
+    StringBuilder envelope = startEnvelope(TYPENUMBER_CALL, uniqueId);
+    envelope.append(',');
+    appendString(envelope, action);
+    envelope.append(',');
+    return finishEnvelope(envelope, payload);
+  }
+
+  private Object finishEnvelope(StringBuilder envelope, Object payload) {
+    if (payload instanceof DeferredPayload) {
+      return new StreamedMessage(envelope.toString(), ((DeferredPayload) payload).payload, codec);
+    }
+    return finishEnvelope(envelope.append(payload));
+  }
+
+  /** Payload to serialize as the message is sent. */
+  private final class DeferredPayload {
+    private final Object payload;
+
+    DeferredPayload(Object payload) {
+      this.payload = payload;
+    }
+
+    @Override
+    public String toString() {
+      return codec.toJson(payload);
+    }
   }
 
   @Override
   protected Object makeCallError(
       String uniqueId, String action, String errorCode, String errorDescription) {
-    return String.format(CALLERROR_FORMAT, uniqueId, errorCode, errorDescription, "{}");
+    return makeCallError(uniqueId, action, errorCode, errorDescription, null);
   }
 
+  @Override
+  protected Object makeCallError(
+      String uniqueId,
+      String action,
+      String errorCode,
+      String errorDescription,
+      Object errorDetails) {
+    StringBuilder envelope = startEnvelope(TYPENUMBER_CALLERROR, uniqueId);
+    envelope.append(',');
+    appendString(envelope, errorCode);
+    envelope.append(',');
+    appendString(envelope, errorDescription);
+    envelope
+        .append(',')
+        .append(errorDetails == null ? EMPTY_ERROR_DETAILS : codec.toJson(errorDetails));
+    return finishEnvelope(envelope);
+  }
+
+  /** Envelopes are written into one builder per thread, it is only grown when needed. */
+  private static final ThreadLocal<StringBuilder> envelopeBuilder =
+      ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private static StringBuilder startEnvelope(int messageType, String uniqueId) {
+    StringBuilder envelope = envelopeBuilder.get();
+    envelope.setLength(0);
+    envelope.append('[').append(messageType).append(',');
+    appendString(envelope, uniqueId);
+    return envelope;
+  }
+
+  private static String finishEnvelope(StringBuilder envelope) {
+    String message = envelope.append(']').toString();
+    if (envelope.capacity() > MAX_CACHED_ENVELOPE_CAPACITY) {
+      // Don't hold on to the buffer of an unusually large message
+      envelopeBuilder.remove();
+    }
+    return message;
+  }
+
+  /** Append a JSON string literal, escaped the way Gson escapes it with html escaping off. */
+  private static void appendString(StringBuilder builder, String value) {
+    if (value == null) {
+      builder.append("null");
+      return;
+    }
+
+    builder.append('"');
+    int last = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+
+      builder.append(value, last, i);
+      last = i + 1;
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        case '\b':
+          builder.append("\\b");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\f':
+          builder.append("\\f");
+          break;
+        default:
+          builder
+              .append("\\u")
+              .append(HEX_DIGITS[(c >> 12) & 0xf])
+              .append(HEX_DIGITS[(c >> 8) & 0xf])
+              .append(HEX_DIGITS[(c >> 4) & 0xf])
+              .append(HEX_DIGITS[c & 0xf]);
+      }
+    }
+    builder.append(value, last, length).append('"');
+  }
+
+  /**
+   * Parse the envelope in a single pass. The payload of a call or call result is bound straight
+   * into its {@link eu.chargetime.ocpp.model.Request}/{@link eu.chargetime.ocpp.model.Confirmation}
+   * type when the type is known, otherwise its JSON text is cut from the message as received.
+   *
+   * @param json the message, either as text or as an UTF-8 encoded {@link ByteBuffer}.
+   */
   @Override
   protected Message parse(Object json) {
-    Message message;
-    JsonParser parser = new JsonParser();
-    JsonArray array = parser.parse(json.toString()).getAsJsonArray();
-
-    if (array.get(INDEX_MESSAGEID).getAsInt() == TYPENUMBER_CALL) {
-      message = new CallMessage();
-      message.setAction(array.get(INDEX_CALL_ACTION).getAsString());
-      message.setPayload(array.get(INDEX_CALL_PAYLOAD).toString());
-    } else if (array.get(INDEX_MESSAGEID).getAsInt() == TYPENUMBER_CALLRESULT) {
-      message = new CallResultMessage();
-      message.setPayload(array.get(INDEX_CALLRESULT_PAYLOAD).toString());
-    } else if (array.get(INDEX_MESSAGEID).getAsInt() == TYPENUMBER_CALLERROR) {
-      message = new CallErrorMessage();
-      ((CallErrorMessage) message).setErrorCode(array.get(INDEX_CALLERROR_ERRORCODE).getAsString());
-      ((CallErrorMessage) message)
-          .setErrorDescription(array.get(INDEX_CALLERROR_DESCRIPTION).getAsString());
-      ((CallErrorMessage) message).setRawPayload(array.get(INDEX_CALLERROR_PAYLOAD).toString());
-    } else {
-      logger.error("Unknown message type of message: {}", json.toString());
-      throw new IllegalArgumentException("Unknown message type");
+    try {
+      Message message = codec.parse(openReader(json), payloadTypes);
+      if (message.getPayload() instanceof JsonCodec.SkippedPayload) {
+        String payload =
+            json instanceof ByteBuffer
+                ? JsonText.lastElement((ByteBuffer) json)
+                : JsonText.lastElement(json.toString());
+        if (message instanceof CallErrorMessage) {
+          message.setPayload(null);
+          ((CallErrorMessage) message).setRawPayload(payload);
+        } else {
+          message.setPayload(payload);
+        }
+      }
+      return message;
+    } catch (RuntimeException ex) {
+      logger.error("Unable to parse message: {}", messageToString(json));
+      throw ex;
+    }
+  }
+
+  private static Reader openReader(Object json) {
+    if (json instanceof ByteBuffer) {
+      return new ByteBufferReader((ByteBuffer) json);
     }
+    return new StringReader(json.toString());
+  }
 
-    message.setId(array.get(INDEX_UNIQUEID).getAsString());
+  private static String messageToString(Object json) {
+    if (json instanceof ByteBuffer) {
+      return StandardCharsets.UTF_8.decode(((ByteBuffer) json).duplicate()).toString();
+    }
+    return json.toString();
+  }
 
-    return message;
+  private class CommunicatorPayloadTypes implements JsonCodec.PayloadTypes {
+    @Override
+    public Class<?> getRequestType(String action) {
+      return JSONCommunicator.this.getRequestType(action);
+    }
+
+    @Override
+    public Class<?> getConfirmationType(String uniqueId) {
+      return JSONCommunicator.this.getConfirmationType(uniqueId);
+    }
   }
 }
@@ -37,7 +37,32 @@ public class JSONConfiguration {
   public static final String USERNAME_PARAMETER = "USERNAME";
   public static final String PASSWORD_PARAMETER = "PASSWORD";
   public static final String CONNECT_TIMEOUT_IN_MS_PARAMETER = "CONNECT_TIMEOUT_IN_MS";
+  /** Time a server waits for the answer to a request it sent, 0 to wait forever. */
+  public static final String CALL_TIMEOUT_IN_MS_PARAMETER = "CALL_TIMEOUT_IN_MS";
   public static final String WEBSOCKET_WORKER_COUNT = "WEBSOCKET_WORKER_COUNT";
+  public static final String JSON_CODEC_PARAMETER = "JSON_CODEC";
+  public static final String COMPRESSION_ENABLED_PARAMETER = "COMPRESSION_ENABLED";
+  public static final String COMPRESSION_THRESHOLD_PARAMETER = "COMPRESSION_THRESHOLD";
+  public static final String COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER_PARAMETER =
+      "COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER";
+  public static final String COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER_PARAMETER =
+      "COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER";
+  public static final String COMPRESSION_CLIENT_MAX_WINDOW_BITS_PARAMETER =
+      "COMPRESSION_CLIENT_MAX_WINDOW_BITS";
+  public static final String STREAMING_FRAGMENT_SIZE_PARAMETER = "STREAMING_FRAGMENT_SIZE";
+  /** A {@link RequestHandlerExecutor} handling the incoming requests, shared by default. */
+  public static final String REQUEST_HANDLER_EXECUTOR_PARAMETER = "REQUEST_HANDLER_EXECUTOR";
+  /**
+   * An {@link OutboundCallScheduler} sending one call at a time per session. Servers create their
+   * own by default, with the call timeout of {@link #CALL_TIMEOUT_IN_MS_PARAMETER}. Clients send
+   * right away unless one is given.
+   */
+  public static final String OUTBOUND_CALL_SCHEDULER_PARAMETER = "OUTBOUND_CALL_SCHEDULER";
+  /**
+   * An {@link ITransactionQueue} for clients to store transaction related calls while offline, such
+   * as a {@link SegmentLogTransactionQueue}. Kept in memory by default.
+   */
+  public static final String TRANSACTION_QUEUE_PARAMETER = "TRANSACTION_QUEUE";
 
   private final HashMap<String, Object> parameters = new HashMap<>();
 
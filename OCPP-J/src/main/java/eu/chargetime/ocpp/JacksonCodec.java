@@ -0,0 +1,275 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.module.SimpleSerializers;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import eu.chargetime.ocpp.model.CallErrorMessage;
+import eu.chargetime.ocpp.model.CallMessage;
+import eu.chargetime.ocpp.model.CallResultMessage;
+import eu.chargetime.ocpp.model.Message;
+import eu.chargetime.ocpp.utilities.ZonedDateTimeCodec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+
+/**
+ * {@link JsonCodec} built on Jackson. Payloads are bound through their fields, the same way
+ * {@link GsonCodec} binds them, so both produce the same JSON.
+ *
+ * <p>Jackson is an optional dependency, add {@code com.fasterxml.jackson.core:jackson-databind}
+ * to use this codec. To register extra modules, such as Afterburner or Blackbird, pass in an
+ * {@link ObjectMapper} with the modules registered.
+ */
+public class JacksonCodec implements JsonCodec {
+
+  private static final int TYPENUMBER_CALL = 2;
+  private static final int TYPENUMBER_CALLRESULT = 3;
+  private static final int TYPENUMBER_CALLERROR = 4;
+
+  private final ObjectMapper mapper;
+  private final ObjectWriter streamWriter;
+
+  public JacksonCodec() {
+    this(new ObjectMapper());
+  }
+
+  /**
+   * Configure the mapper for OCPP payloads and use it.
+   *
+   * @param mapper the {@link ObjectMapper} to use.
+   */
+  public JacksonCodec(ObjectMapper mapper) {
+    SimpleModule module = new SimpleModule("OCPP");
+    module.setSerializers(new IterableAwareSerializers());
+    module.addSerializer(ZonedDateTime.class, new ZonedDateTimeSerializer());
+    module.addDeserializer(ZonedDateTime.class, new ZonedDateTimeDeserializer());
+
+    this.mapper =
+        mapper
+            .registerModule(module)
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(MapperFeature.PROPAGATE_TRANSIENT_MARKER, true)
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    this.streamWriter = this.mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  /** Writes {@link Iterable}s that aren't collections as arrays, rather than as beans. */
+  private static class IterableAwareSerializers extends SimpleSerializers {
+
+    private static final JsonSerializer<?> ITERABLE_SERIALIZER = new IterableSerializer();
+
+    @Override
+    public JsonSerializer<?> findSerializer(
+        SerializationConfig config, JavaType type, BeanDescription beanDescription) {
+      Class<?> rawType = type.getRawClass();
+      if (Iterable.class.isAssignableFrom(rawType) && !Collection.class.isAssignableFrom(rawType)) {
+        return ITERABLE_SERIALIZER;
+      }
+      return super.findSerializer(config, type, beanDescription);
+    }
+  }
+
+  private static class IterableSerializer extends StdSerializer<Iterable<?>> {
+
+    IterableSerializer() {
+      super(Iterable.class, false);
+    }
+
+    @Override
+    public void serialize(
+        Iterable<?> elements, JsonGenerator generator, SerializerProvider provider)
+        throws IOException {
+      generator.writeStartArray();
+      for (Object element : elements) {
+        provider.defaultSerializeValue(element, generator);
+      }
+      generator.writeEndArray();
+    }
+  }
+
+  private static class ZonedDateTimeSerializer extends StdScalarSerializer<ZonedDateTime> {
+
+    ZonedDateTimeSerializer() {
+      super(ZonedDateTime.class);
+    }
+
+    @Override
+    public void serialize(
+        ZonedDateTime zonedDateTime, JsonGenerator generator, SerializerProvider provider)
+        throws IOException {
+      generator.writeString(ZonedDateTimeCodec.formatInstant(zonedDateTime));
+    }
+  }
+
+  private static class ZonedDateTimeDeserializer extends StdScalarDeserializer<ZonedDateTime> {
+
+    ZonedDateTimeDeserializer() {
+      super(ZonedDateTime.class);
+    }
+
+    @Override
+    public ZonedDateTime deserialize(JsonParser parser, DeserializationContext context)
+        throws IOException {
+      return ZonedDateTimeCodec.parse(parser.getValueAsString());
+    }
+  }
+
+  @Override
+  public String toJson(Object payload) {
+    try {
+      return mapper.writeValueAsString(payload);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalArgumentException(ex);
+    }
+  }
+
+  @Override
+  public void toJson(Object payload, Writer out) throws IOException {
+    streamWriter.writeValue(out, payload);
+  }
+
+  @Override
+  public <T> T fromJson(String json, Class<T> type) throws IOException {
+    return mapper.readValue(json, type);
+  }
+
+  @Override
+  public Message parse(Reader json, PayloadTypes payloadTypes) {
+    Message message;
+    try (JsonParser parser = mapper.createParser(json)) {
+      expect(parser, JsonToken.START_ARRAY);
+      expect(parser, JsonToken.VALUE_NUMBER_INT);
+      int messageType = parser.getIntValue();
+      String id = nextString(parser);
+
+      if (messageType == TYPENUMBER_CALL) {
+        String action = nextString(parser);
+        message = new CallMessage();
+        message.setAction(action);
+        message.setPayload(readPayload(parser, payloadTypes.getRequestType(action)));
+        expect(parser, JsonToken.END_ARRAY);
+      } else if (messageType == TYPENUMBER_CALLRESULT) {
+        message = new CallResultMessage();
+        message.setPayload(readPayload(parser, payloadTypes.getConfirmationType(id)));
+        expect(parser, JsonToken.END_ARRAY);
+      } else if (messageType == TYPENUMBER_CALLERROR) {
+        CallErrorMessage callError = new CallErrorMessage();
+        callError.setErrorCode(nextString(parser));
+        callError.setErrorDescription(nextString(parser));
+        if (parser.nextToken() != JsonToken.END_ARRAY) {
+          parser.skipChildren();
+          callError.setPayload(SkippedPayload.INSTANCE);
+          expect(parser, JsonToken.END_ARRAY);
+        }
+        message = callError;
+      } else {
+        throw new IllegalArgumentException("Unknown message type: " + messageType);
+      }
+
+      message.setId(id);
+      if (parser.nextToken() != null) {
+        throw new JsonParseException(parser, "Unexpected text after the message");
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+
+    return message;
+  }
+
+  private Object readPayload(JsonParser parser, Class<?> type) throws IOException {
+    parser.nextToken();
+    if (type == null) {
+      parser.skipChildren();
+      return SkippedPayload.INSTANCE;
+    }
+
+    try {
+      return mapper.readValue(parser, type);
+    } catch (RuntimeException | IOException ex) {
+      // A message that isn't valid UTF-8 fails as a whole
+      if (ByteBufferReader.isMalformedInput(ex)) throw ex;
+      // Defer the failure, so it's reported against the message id
+      skipUnread(parser);
+      return new UnboundPayload(ex);
+    }
+  }
+
+  /**
+   * Skip what's left of a payload that failed to bind, so the end of the message can be checked.
+   * Fails if the payload isn't well-formed JSON.
+   */
+  private static void skipUnread(JsonParser parser) throws IOException {
+    // The message array is at depth 1, the payload's content below it
+    while (parser.getParsingContext().getNestingDepth() > 1) {
+      if (parser.nextToken() == null) throw new JsonParseException(parser, "Unexpected end");
+    }
+  }
+
+  private static void expect(JsonParser parser, JsonToken token) throws IOException {
+    if (parser.nextToken() != token) {
+      throw new JsonParseException(parser, "Expected " + token);
+    }
+  }
+
+  private static String nextString(JsonParser parser) throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == null || !token.isScalarValue()) {
+      throw new JsonParseException(parser, "Expected a string");
+    }
+    return parser.getText();
+  }
+}
@@ -0,0 +1,131 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.model.Message;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Binds OCPP-J messages and payloads to and from JSON. Select the codec of a client or server with
+ * {@link JSONConfiguration#JSON_CODEC_PARAMETER}.
+ *
+ * @see GsonCodec
+ * @see JacksonCodec
+ */
+public interface JsonCodec {
+
+  /** Resolves payload types while a message is read. */
+  interface PayloadTypes {
+    /**
+     * @param action action name of the feature.
+     * @return the request type or null if unknown.
+     */
+    Class<?> getRequestType(String action);
+
+    /**
+     * @param uniqueId id of the call the result answers.
+     * @return the confirmation type or null if unknown.
+     */
+    Class<?> getConfirmationType(String uniqueId);
+  }
+
+  /**
+   * Serialize a payload.
+   *
+   * @param payload the request or confirmation.
+   * @return JSON object.
+   */
+  String toJson(Object payload);
+
+  /**
+   * Serialize a payload to a writer, as it's serialized. Lists are written element by element,
+   * whether they're held as arrays or as {@link Iterable}s.
+   *
+   * @param payload the request or confirmation.
+   * @param out receives the JSON object, it's not closed.
+   * @throws IOException if the writer fails.
+   */
+  default void toJson(Object payload, Writer out) throws IOException {
+    out.write(toJson(payload));
+  }
+
+  /**
+   * Bind a JSON payload.
+   *
+   * @param json JSON object.
+   * @param type type to bind to.
+   * @param <T> type to bind to.
+   * @return the bound payload.
+   * @throws Exception if the JSON can't be bound.
+   */
+  <T> T fromJson(String json, Class<T> type) throws Exception;
+
+  /**
+   * Read a CALL, CALLRESULT or CALLERROR in a single pass. Payloads of a known type are bound.
+   * Payloads of unknown type and error details are skipped and returned as {@link SkippedPayload},
+   * the caller cuts their text from the message. A payload that fails to bind is kept as {@link UnboundPayload},
+   * so the failure can be reported against the message id.
+   *
+   * @param message the message.
+   * @param payloadTypes resolves payload types from action or unique id.
+   * @return the message.
+   * @throws RuntimeException if the envelope is malformed.
+   */
+  Message parse(Reader message, PayloadTypes payloadTypes);
+
+  /** Payload of unknown type, skipped while parsing without being read into a tree. */
+  final class SkippedPayload {
+    public static final SkippedPayload INSTANCE = new SkippedPayload();
+
+    private SkippedPayload() {}
+
+    @Override
+    public String toString() {
+      return "SkippedPayload";
+    }
+  }
+
+  /** Payload that failed to bind while parsing. */
+  final class UnboundPayload {
+    private final Exception cause;
+
+    public UnboundPayload(Exception cause) {
+      this.cause = cause;
+    }
+
+    public Exception getCause() {
+      return cause;
+    }
+
+    @Override
+    public String toString() {
+      return "UnboundPayload{" + cause + "}";
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package eu.chargetime.ocpp;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntUnaryOperator;
+
+/** Cuts values out of an OCPP-J message as received, without parsing them. */
+final class JsonText {
+
+  private JsonText() {}
+
+  /**
+   * Get the last element of a JSON array, which holds the payload of an OCPP-J message.
+   *
+   * @param message the message.
+   * @return the text of the last element, empty if there is none.
+   */
+  static String lastElement(String message) {
+    long span = lastElementSpan(message.length(), message::charAt);
+    return message.substring(start(span), end(span));
+  }
+
+  /**
+   * Get the last element of a JSON array, which holds the payload of an OCPP-J message.
+   *
+   * @param message UTF-8 encoded message, the buffer itself is not consumed.
+   * @return the text of the last element, empty if there is none.
+   */
+  static String lastElement(ByteBuffer message) {
+    int offset = message.position();
+    long span = lastElementSpan(message.remaining(), index -> message.get(offset + index));
+    ByteBuffer element = message.duplicate();
+    element.limit(offset + end(span)).position(offset + start(span));
+    return StandardCharsets.UTF_8.decode(element).toString();
+  }
+
+  // Structural characters are ASCII, so the same scan works on characters and on UTF-8 bytes.
+  private static long lastElementSpan(int length, IntUnaryOperator charAt) {
+    int depth = 0;
+    int start = 0;
+    int end = 0;
+    boolean inString = false;
+    for (int index = 0; index < length; index++) {
+      int c = charAt.applyAsInt(index);
+      if (inString) {
+        if (c == '\\') index++;
+        else if (c == '"') inString = false;
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == '[' || c == '{') {
+        if (depth++ == 0) start = index + 1;
+      } else if (c == ']' || c == '}') {
+        if (--depth == 0) {
+          end = index;
+          break;
+        }
+      } else if (c == ',' && depth == 1) {
+        start = index + 1;
+      }
+    }
+
+    while (start < end && isWhitespace(charAt.applyAsInt(start))) start++;
+    while (end > start && isWhitespace(charAt.applyAsInt(end - 1))) end--;
+    return ((long) start << 32) | end;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  private static int start(long span) {
+    return (int) (span >>> 32);
+  }
+
+  private static int end(long span) {
+    return (int) span;
+  }
+}
@@ -0,0 +1,358 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.ExtensionRequestData;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+/**
+ * The permessage-deflate extension (RFC 7692), negotiated per connection.
+ *
+ * <p>The library's extension always answers with the same parameters, whatever the peer offered,
+ * and loses its settings when it's copied for a new connection. This one negotiates the context
+ * takeover parameters in both directions, declines offers it can't honour and keeps its settings.
+ *
+ * <p>The sliding window is always 15 bits, the only size {@link Deflater} compresses with. A
+ * server can still ask clients to compress with a smaller window, to save memory on the client.
+ *
+ * <p>Decompression is done by the super class, compression is done here. The super class decides
+ * for each frame on its own, which breaks fragmented messages. Here the first fragment decides
+ * whether the whole message is compressed. The server flag resets the deflater after each message
+ * and the client flag resets the inflater, both are set from the negotiated parameters.
+ */
+public class PerMessageDeflate extends PerMessageDeflateExtension {
+
+  private static final String EXTENSION_NAME = "permessage-deflate";
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+  private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+  private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+  static final int DEFAULT_THRESHOLD = 1024;
+  static final int MIN_WINDOW_BITS = 8;
+  static final int MAX_WINDOW_BITS = 15;
+
+  private static final byte[] FLUSH_BLOCK = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+  private static final int MIN_OUTPUT_SIZE = 64;
+
+  private final boolean serverNoContextTakeover;
+  private final boolean clientNoContextTakeover;
+  private final int clientMaxWindowBits;
+  private String negotiatedResponse;
+  private boolean deflating;
+  private boolean inflating;
+
+  // Encoding and decoding run on different threads, closing may run on a third one
+  private final Object deflaterLock = new Object();
+  private final Object inflaterLock = new Object();
+  private volatile boolean closed;
+
+  /**
+   * @param threshold messages smaller than this, in bytes, are sent uncompressed.
+   * @param serverNoContextTakeover the server compresses each message on its own.
+   * @param clientNoContextTakeover the client compresses each message on its own.
+   * @param clientMaxWindowBits window size a server asks its clients to compress with, if they
+   *     support it. Between 8 and 15.
+   */
+  public PerMessageDeflate(
+      int threshold,
+      boolean serverNoContextTakeover,
+      boolean clientNoContextTakeover,
+      int clientMaxWindowBits) {
+    if (clientMaxWindowBits < MIN_WINDOW_BITS || clientMaxWindowBits > MAX_WINDOW_BITS) {
+      throw new IllegalArgumentException(
+          "Window bits must be between "
+              + MIN_WINDOW_BITS
+              + " and "
+              + MAX_WINDOW_BITS
+              + ": "
+              + clientMaxWindowBits);
+    }
+    setThreshold(threshold);
+    this.serverNoContextTakeover = serverNoContextTakeover;
+    this.clientNoContextTakeover = clientNoContextTakeover;
+    this.clientMaxWindowBits = clientMaxWindowBits;
+  }
+
+  /**
+   * Get the extensions to offer or accept, as configured with the {@link JSONConfiguration}
+   * compression parameters.
+   *
+   * @param configuration network configuration of the client or server.
+   * @return the permessage-deflate extension, or no extensions if compression is disabled.
+   */
+  public static List<IExtension> fromConfiguration(JSONConfiguration configuration) {
+    if (!configuration.getParameter(JSONConfiguration.COMPRESSION_ENABLED_PARAMETER, false)) {
+      return Collections.emptyList();
+    }
+    return Collections.singletonList(
+        new PerMessageDeflate(
+            configuration.getParameter(
+                JSONConfiguration.COMPRESSION_THRESHOLD_PARAMETER, DEFAULT_THRESHOLD),
+            configuration.getParameter(
+                JSONConfiguration.COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER_PARAMETER, false),
+            configuration.getParameter(
+                JSONConfiguration.COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER_PARAMETER, false),
+            configuration.getParameter(
+                JSONConfiguration.COMPRESSION_CLIENT_MAX_WINDOW_BITS_PARAMETER, MAX_WINDOW_BITS)));
+  }
+
+  @Override
+  public boolean acceptProvidedExtensionAsServer(String inputExtension) {
+    if (inputExtension == null) return false;
+
+    for (String offer : inputExtension.split(",")) {
+      ExtensionRequestData data = ExtensionRequestData.parseExtensionRequest(offer);
+      if (!EXTENSION_NAME.equalsIgnoreCase(data.getExtensionName())) continue;
+
+      Map<String, String> parameters = data.getExtensionParameters();
+      if (!isValidOffer(parameters)) continue;
+
+      boolean resetDeflater =
+          serverNoContextTakeover || parameters.containsKey(SERVER_NO_CONTEXT_TAKEOVER);
+      boolean resetInflater =
+          clientNoContextTakeover || parameters.containsKey(CLIENT_NO_CONTEXT_TAKEOVER);
+
+      StringBuilder response = new StringBuilder(EXTENSION_NAME);
+      if (resetDeflater) response.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+      if (resetInflater) response.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+      if (parameters.containsKey(CLIENT_MAX_WINDOW_BITS) && clientMaxWindowBits < MAX_WINDOW_BITS) {
+        response
+            .append("; ")
+            .append(CLIENT_MAX_WINDOW_BITS)
+            .append('=')
+            .append(clientMaxWindowBits);
+      }
+
+      setServerNoContextTakeover(resetDeflater);
+      setClientNoContextTakeover(resetInflater);
+      negotiatedResponse = response.toString();
+      return true;
+    }
+
+    return false;
+  }
+
+  /** Offers asking for a server window smaller than 15 bits, or with unknown parameters, fail. */
+  private static boolean isValidOffer(Map<String, String> parameters) {
+    for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+      switch (parameter.getKey()) {
+        case SERVER_NO_CONTEXT_TAKEOVER:
+        case CLIENT_NO_CONTEXT_TAKEOVER:
+          break;
+        case CLIENT_MAX_WINDOW_BITS:
+          if (!parameter.getValue().isEmpty() && windowBits(parameter.getValue()) < 0) {
+            return false;
+          }
+          break;
+        case SERVER_MAX_WINDOW_BITS:
+          if (windowBits(parameter.getValue()) != MAX_WINDOW_BITS) return false;
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  private static int windowBits(String value) {
+    try {
+      int bits = Integer.parseInt(value);
+      return bits >= MIN_WINDOW_BITS && bits <= MAX_WINDOW_BITS ? bits : -1;
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  @Override
+  public String getProvidedExtensionAsServer() {
+    return negotiatedResponse;
+  }
+
+  @Override
+  public String getProvidedExtensionAsClient() {
+    StringBuilder offer = new StringBuilder(EXTENSION_NAME);
+    if (serverNoContextTakeover) offer.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+    if (clientNoContextTakeover) offer.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+    return offer.toString();
+  }
+
+  @Override
+  public boolean acceptProvidedExtensionAsClient(String inputExtension) {
+    if (inputExtension == null) return false;
+
+    for (String response : inputExtension.split(",")) {
+      ExtensionRequestData data = ExtensionRequestData.parseExtensionRequest(response);
+      if (!EXTENSION_NAME.equalsIgnoreCase(data.getExtensionName())) continue;
+
+      Map<String, String> parameters = data.getExtensionParameters();
+      String clientWindowBits = parameters.get(CLIENT_MAX_WINDOW_BITS);
+      if (clientWindowBits != null && windowBits(clientWindowBits) != MAX_WINDOW_BITS) {
+        // Not offered, and the deflater can't use a smaller window anyway
+        return false;
+      }
+
+      setServerNoContextTakeover(
+          clientNoContextTakeover || parameters.containsKey(CLIENT_NO_CONTEXT_TAKEOVER));
+      setClientNoContextTakeover(parameters.containsKey(SERVER_NO_CONTEXT_TAKEOVER));
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public void decodeFrame(Framedata frame) throws InvalidDataException {
+    if (!(frame instanceof DataFrame)) return;
+
+    synchronized (inflaterLock) {
+      if (closed) throw new InvalidDataException(CloseFrame.GOING_AWAY, "Connection closed");
+
+      if (frame.getOpcode() != Opcode.CONTINUOUS) {
+        inflating = frame.isRSV1();
+      } else if (!inflating) {
+        // Fragment of a message that was sent uncompressed
+        return;
+      }
+
+      // The super class replaces the inflater to reset it, free the one it drops right away
+      Inflater inflater = getInflater();
+      super.decodeFrame(frame);
+      if (getInflater() != inflater) inflater.end();
+    }
+  }
+
+  @Override
+  public void encodeFrame(Framedata frame) {
+    if (!(frame instanceof DataFrame)) return;
+
+    synchronized (deflaterLock) {
+      // Sent while the connection closes, it won't reach the peer anyway
+      if (!closed) deflate(frame);
+    }
+  }
+
+  private void deflate(Framedata frame) {
+
+    ByteBuffer payload = frame.getPayloadData();
+    if (frame.getOpcode() != Opcode.CONTINUOUS) {
+      // The first fragment decides for the whole message
+      deflating = payload.remaining() >= getThreshold();
+      if (deflating) ((DataFrame) frame).setRSV1(true);
+    }
+    if (!deflating) return;
+
+    Deflater deflater = getDeflater();
+    if (payload.hasArray()) {
+      deflater.setInput(
+          payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+    } else {
+      byte[] input = new byte[payload.remaining()];
+      payload.duplicate().get(input);
+      deflater.setInput(input);
+    }
+
+    byte[] output = new byte[Math.max(payload.remaining() / 2, MIN_OUTPUT_SIZE)];
+    int length = 0;
+    while (true) {
+      length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+      if (length < output.length) break;
+      output = Arrays.copyOf(output, output.length * 2);
+    }
+
+    if (frame.isFin()) {
+      // RFC 7692 7.2.1, the final flush block is left out of the message
+      if (endsWithFlushBlock(output, length)) length -= FLUSH_BLOCK.length;
+      if (isServerNoContextTakeover()) deflater.reset();
+    }
+    ((FramedataImpl1) frame).setPayload(ByteBuffer.wrap(output, 0, length));
+  }
+
+  private static boolean endsWithFlushBlock(byte[] output, int length) {
+    if (length < FLUSH_BLOCK.length) return false;
+    for (int i = 0; i < FLUSH_BLOCK.length; i++) {
+      if (output[length - FLUSH_BLOCK.length + i] != FLUSH_BLOCK[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Called when the connection closes, the draft drops the extension afterwards. The deflater and
+   * inflater are ended here rather than left to the garbage collector, frames encoded or decoded
+   * after this fail or are sent uncompressed.
+   */
+  @Override
+  public void reset() {
+    super.reset();
+    synchronized (deflaterLock) {
+      synchronized (inflaterLock) {
+        if (!closed) {
+          closed = true;
+          getDeflater().end();
+          getInflater().end();
+        }
+      }
+    }
+    negotiatedResponse = null;
+    deflating = false;
+    inflating = false;
+  }
+
+  @Override
+  public IExtension copyInstance() {
+    return new PerMessageDeflate(
+        getThreshold(), serverNoContextTakeover, clientNoContextTakeover, clientMaxWindowBits);
+  }
+
+  @Override
+  public String toString() {
+    return "PerMessageDeflate{"
+        + "threshold="
+        + getThreshold()
+        + ", serverNoContextTakeover="
+        + serverNoContextTakeover
+        + ", clientNoContextTakeover="
+        + clientNoContextTakeover
+        + ", clientMaxWindowBits="
+        + clientMaxWindowBits
+        + "}";
+  }
+}
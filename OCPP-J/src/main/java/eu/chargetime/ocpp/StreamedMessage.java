@@ -0,0 +1,84 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A CALL or CALLRESULT whose payload is serialized as the message is sent, see {@link
+ * eu.chargetime.ocpp.model.StreamablePayload}. The WebSocket radios write it to the connection in
+ * fragments. Other radios get the complete message from {@link #toString()}.
+ */
+public final class StreamedMessage {
+
+  private final String head;
+  private final Object payload;
+  private final JsonCodec codec;
+
+  /**
+   * @param head the message up to and including the comma before the payload.
+   * @param payload the request or confirmation.
+   * @param codec serializes the payload.
+   */
+  StreamedMessage(String head, Object payload, JsonCodec codec) {
+    this.head = head;
+    this.payload = payload;
+    this.codec = codec;
+  }
+
+  /**
+   * Write the message.
+   *
+   * @param out receives the message, it's not closed.
+   * @throws IOException if the writer fails.
+   */
+  public void writeTo(Writer out) throws IOException {
+    out.write(head);
+    codec.toJson(payload, out);
+    out.write(']');
+  }
+
+  /**
+   * Build the complete message. This defeats the purpose of streaming, it's meant for radios that
+   * can only send whole messages.
+   *
+   * @return the message.
+   */
+  @Override
+  public String toString() {
+    StringWriter message = new StringWriter();
+    try {
+      writeTo(message);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return message.toString();
+  }
+}
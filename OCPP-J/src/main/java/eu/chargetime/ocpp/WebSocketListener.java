@@ -29,6 +29,7 @@ import eu.chargetime.ocpp.model.SessionInformation;
 import eu.chargetime.ocpp.wss.WssFactoryBuilder;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Base64;
@@ -79,6 +80,13 @@ public class WebSocketListener implements Listener {
 
   @Override
   public void open(String hostname, int port, ListenerEvents handler) {
+    JsonCodec codec =
+        configuration.getParameter(
+            JSONConfiguration.JSON_CODEC_PARAMETER, JSONCommunicator.getDefaultCodec());
+    int fragmentSize =
+        configuration.getParameter(
+            JSONConfiguration.STREAMING_FRAGMENT_SIZE_PARAMETER,
+            FragmentedTextWriter.DEFAULT_FRAGMENT_SIZE);
     server =
         new WebSocketServer(
             new InetSocketAddress(hostname, port),
@@ -99,6 +107,9 @@ public class WebSocketListener implements Listener {
             WebSocketReceiver receiver =
                 new WebSocketReceiver(
                     new WebSocketReceiverEvents() {
+                      // Keeps messages out of the fragments of a streamed message
+                      private final Object sendLock = new Object();
+
                       @Override
                       public boolean isClosed() {
                         return closed;
@@ -111,10 +122,27 @@ public class WebSocketListener implements Listener {
 
                       @Override
                       public void relay(String message) {
-                        webSocket.send(message);
+                        synchronized (sendLock) {
+                          webSocket.send(message);
+                        }
+                      }
+
+                      @Override
+                      public void relay(ByteBuffer message) {
+                        synchronized (sendLock) {
+                          webSocket.sendFrame(Draft_6455Utf8.createTextFrame(message, false));
+                        }
+                      }
+
+                      @Override
+                      public void relay(StreamedMessage message) {
+                        synchronized (sendLock) {
+                          FragmentedTextWriter.send(webSocket, message, fragmentSize);
+                        }
                       }
                     });
 
+            webSocket.setAttachment((Draft_6455Utf8.TextRelay) receiver::relay);
             sockets.put(webSocket, receiver);
 
             String proxiedAddress = clientHandshake.getFieldValue(HTTP_HEADER_PROXIED_ADDRESS);
@@ -132,7 +160,7 @@ public class WebSocketListener implements Listener {
                     .build();
 
             handler.newSession(
-                sessionFactory.createSession(new JSONCommunicator(receiver)), information);
+                sessionFactory.createSession(new JSONCommunicator(receiver, codec)), information);
           }
 
           @Override
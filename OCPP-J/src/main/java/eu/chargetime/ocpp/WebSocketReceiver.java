@@ -25,6 +25,8 @@ package eu.chargetime.ocpp;
    SOFTWARE.
 */
 
+import java.nio.ByteBuffer;
+
 public class WebSocketReceiver implements Receiver {
 
   private RadioEvents handler;
@@ -44,9 +46,19 @@ public class WebSocketReceiver implements Receiver {
     handler.receivedMessage(message);
   }
 
+  void relay(ByteBuffer message) {
+    handler.receivedMessage(message);
+  }
+
   @Override
   public void send(Object message) {
-    receiverEvents.relay(message.toString());
+    if (message instanceof ByteBuffer) {
+      receiverEvents.relay(((ByteBuffer) message).duplicate());
+    } else if (message instanceof StreamedMessage) {
+      receiverEvents.relay((StreamedMessage) message);
+    } else {
+      receiverEvents.relay(message.toString());
+    }
   }
 
   @Override
@@ -24,6 +24,9 @@ package eu.chargetime.ocpp; /*
                                SOFTWARE.
                             */
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public interface WebSocketReceiverEvents {
   /** @return true if connection is closed (either not connected or was disconnected) */
   boolean isClosed();
@@ -37,4 +40,22 @@ public interface WebSocketReceiverEvents {
    * @param message message to send
    */
   void relay(String message);
+
+  /**
+   * Send a text message that is already UTF-8 encoded.
+   *
+   * @param message UTF-8 encoded message to send
+   */
+  default void relay(ByteBuffer message) {
+    relay(StandardCharsets.UTF_8.decode(message).toString());
+  }
+
+  /**
+   * Send a message that is serialized as it's sent.
+   *
+   * @param message message to send
+   */
+  default void relay(StreamedMessage message) {
+    relay(message.toString());
+  }
 }
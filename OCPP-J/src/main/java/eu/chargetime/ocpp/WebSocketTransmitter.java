@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.net.Proxy;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.HashMap;
@@ -50,6 +51,8 @@ public class WebSocketTransmitter implements Transmitter {
   private final Draft draft;
 
   private final JSONConfiguration configuration;
+  /** Keeps other messages from going out between the fragments of a streamed message. */
+  private final Object sendLock = new Object();
   private volatile boolean closed = true;
   private volatile WebSocketClient client;
   private WssSocketBuilder wssSocketBuilder;
@@ -118,6 +121,8 @@ public class WebSocketTransmitter implements Transmitter {
           }
         };
 
+    client.setAttachment((Draft_6455Utf8.TextRelay) events::receivedMessage);
+
     if (WSS_SCHEME.equals(resource.getScheme())) {
 
       if (wssSocketBuilder == null) {
@@ -189,7 +194,21 @@ public class WebSocketTransmitter implements Transmitter {
     }
 
     try {
-      client.send(request.toString());
+      synchronized (sendLock) {
+        if (request instanceof ByteBuffer) {
+          client.sendFrame(
+              Draft_6455Utf8.createTextFrame(((ByteBuffer) request).duplicate(), true));
+        } else if (request instanceof StreamedMessage) {
+          FragmentedTextWriter.send(
+              client,
+              (StreamedMessage) request,
+              configuration.getParameter(
+                  JSONConfiguration.STREAMING_FRAGMENT_SIZE_PARAMETER,
+                  FragmentedTextWriter.DEFAULT_FRAGMENT_SIZE));
+        } else {
+          client.send(request.toString());
+        }
+      }
     } catch (WebsocketNotConnectedException ex) {
       throw new NotConnectedException();
     }
@@ -0,0 +1,179 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.java_websocket.WebSocket;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.framing.CloseFrame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Kept in the writer's package: FragmentedTextWriter and the StreamedMessage constructor are
+ * package-private, and fragment sizes and fin flags can only be checked on the frames handed to
+ * {@link WebSocket#sendFragmentedFrame}, not through a connected client.
+ */
+public class FragmentedTextWriterTest {
+
+  private static final String HEAD = "[2,\"1\",\"SendLocalList\",";
+
+  private WebSocket webSocket;
+  private JsonCodec codec;
+  private final List<ByteBuffer> fragments = new ArrayList<>();
+  private final List<Boolean> fins = new ArrayList<>();
+
+  @Before
+  public void setup() {
+    webSocket = mock(WebSocket.class);
+    when(webSocket.isOpen()).thenReturn(true);
+    doAnswer(
+            invocation -> {
+              // The buffer is reused for the next fragment
+              ByteBuffer fragment = (ByteBuffer) invocation.getArguments()[1];
+              ByteBuffer copy = ByteBuffer.allocate(fragment.remaining());
+              copy.put(fragment.duplicate()).flip();
+              fragments.add(copy);
+              fins.add((Boolean) invocation.getArguments()[2]);
+              return null;
+            })
+        .when(webSocket)
+        .sendFragmentedFrame(any(Opcode.class), any(ByteBuffer.class), anyBoolean());
+    codec = mock(JsonCodec.class);
+  }
+
+  @Test
+  public void send_smallMessage_sentAsOneFrame() throws Exception {
+    // Given
+    payloadIs("{\"listVersion\":1}");
+
+    // When
+    FragmentedTextWriter.send(webSocket, new StreamedMessage(HEAD, "payload", codec), 1024);
+
+    // Then
+    assertThat(fins, equalTo(Arrays.asList(true)));
+    assertThat(decode(fragments.get(0)), equalTo(HEAD + "{\"listVersion\":1}]"));
+  }
+
+  @Test
+  public void send_largeMessage_fragmentsEndOnWholeCharacters() throws Exception {
+    // Given
+    StringBuilder payload = new StringBuilder("{\"idTag\":\"");
+    for (int i = 0; i < 500; i++) {
+      payload.append("aé😀");
+    }
+    payloadIs(payload.append("\"}").toString());
+
+    // When
+    FragmentedTextWriter.send(webSocket, new StreamedMessage(HEAD, "payload", codec), 64);
+
+    // Then
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < fragments.size(); i++) {
+      assertThat(fragments.get(i).remaining() <= 64, is(true));
+      assertThat(fins.get(i), is(i == fragments.size() - 1));
+      message.append(decode(fragments.get(i)));
+    }
+    assertThat(message.toString(), equalTo(HEAD + payload + "]"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void send_failsAfterFirstFragment_connectionClosed() throws Exception {
+    // Given
+    payloadFailsAfter(new String(new char[5000]).replace('\0', 'x'));
+
+    try {
+      // When
+      FragmentedTextWriter.send(webSocket, new StreamedMessage(HEAD, "payload", codec), 64);
+    } finally {
+      // Then
+      verify(webSocket).close(CloseFrame.UNEXPECTED_CONDITION, "Unable to complete message");
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void send_failsBeforeFirstFragment_nothingSent() throws Exception {
+    // Given
+    payloadFailsAfter("{");
+
+    try {
+      // When
+      FragmentedTextWriter.send(webSocket, new StreamedMessage(HEAD, "payload", codec), 64);
+    } finally {
+      // Then
+      verify(webSocket, never())
+          .sendFragmentedFrame(any(Opcode.class), any(ByteBuffer.class), anyBoolean());
+      verify(webSocket, never()).close(anyInt(), anyString());
+    }
+  }
+
+  private void payloadIs(String json) throws Exception {
+    doAnswer(
+            invocation -> {
+              ((Writer) invocation.getArguments()[1]).write(json);
+              return null;
+            })
+        .when(codec)
+        .toJson(any(), any(Writer.class));
+  }
+
+  private void payloadFailsAfter(String json) throws Exception {
+    doAnswer(
+            invocation -> {
+              ((Writer) invocation.getArguments()[1]).write(json);
+              throw new IllegalStateException("Cursor closed");
+            })
+        .when(codec)
+        .toJson(any(), any(Writer.class));
+  }
+
+  /** Decodes strictly, so a fragment ending in the middle of a character fails. */
+  private static String decode(ByteBuffer fragment) throws CharacterCodingException {
+    CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(fragment.duplicate());
+    return chars.toString();
+  }
+}
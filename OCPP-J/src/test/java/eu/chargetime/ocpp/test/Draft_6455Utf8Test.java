@@ -0,0 +1,172 @@
+package eu.chargetime.ocpp.test;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import eu.chargetime.ocpp.Draft_6455Utf8;
+import eu.chargetime.ocpp.GsonCodec;
+import eu.chargetime.ocpp.JacksonCodec;
+import eu.chargetime.ocpp.JsonCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.TextFrame;
+import org.java_websocket.protocols.Protocol;
+import org.junit.Before;
+import org.junit.Test;
+
+public class Draft_6455Utf8Test {
+  private static final byte INVALID_UTF8 = (byte) 0xff;
+
+  private Draft_6455Utf8 draft;
+  private WebSocketImpl webSocket;
+  private WebSocketListener listener;
+  private JsonCodec.PayloadTypes payloadTypes;
+
+  @Before
+  public void setup() {
+    draft =
+        new Draft_6455Utf8(
+            Collections.emptyList(), Collections.singletonList(new Protocol("ocpp1.6")));
+    webSocket = mock(WebSocketImpl.class);
+    listener = mock(WebSocketListener.class);
+    when(webSocket.getWebSocketListener()).thenReturn(listener);
+    payloadTypes = mock(JsonCodec.PayloadTypes.class);
+    when(payloadTypes.getRequestType(anyString())).thenAnswer(invocation -> IdTagPayload.class);
+  }
+
+  @Test
+  public void processFrame_invalidUtf8InPayload_closesWithNoUtf8() throws Exception {
+    for (JsonCodec codec : new JsonCodec[] {new GsonCodec(), new JacksonCodec()}) {
+      // Given
+      relayTo(codec);
+      TextFrame frame = frame("[2,\"1\",\"Authorize\",{\"idTag\":\"", "\"}]");
+
+      // When
+      int closeCode = process(frame);
+
+      // Then
+      assertThat(codec.getClass().getSimpleName(), closeCode, is(CloseFrame.NO_UTF8));
+    }
+  }
+
+  @Test
+  public void processFrame_invalidUtf8InEnvelope_closesWithNoUtf8() throws Exception {
+    for (JsonCodec codec : new JsonCodec[] {new GsonCodec(), new JacksonCodec()}) {
+      // Given
+      relayTo(codec);
+      TextFrame frame = frame("[2,\"1\",\"Auth", "\",{}]");
+
+      // When
+      int closeCode = process(frame);
+
+      // Then
+      assertThat(codec.getClass().getSimpleName(), closeCode, is(CloseFrame.NO_UTF8));
+    }
+  }
+
+  @Test
+  public void processFrame_relayFails_reportsErrorAndStaysOpen() throws Exception {
+    // Given
+    IllegalStateException failure = new IllegalStateException("expected");
+    when(webSocket.getAttachment())
+        .thenReturn(
+            (Draft_6455Utf8.TextRelay)
+                message -> {
+                  throw failure;
+                });
+    TextFrame frame = new TextFrame();
+    byte[] message = "[2,\"1\",\"Heartbeat\",{}]".getBytes(StandardCharsets.UTF_8);
+    frame.setPayload(ByteBuffer.wrap(message));
+
+    // When
+    draft.processFrame(webSocket, frame);
+
+    // Then
+    verify(listener).onWebsocketError(any(), any());
+  }
+
+  private void relayTo(JsonCodec codec) {
+    when(webSocket.getAttachment())
+        .thenReturn(
+            (Draft_6455Utf8.TextRelay)
+                message -> codec.parse(reader(message), payloadTypes));
+  }
+
+  /** Decodes like the relay of a connection, failing on input that isn't valid UTF-8. */
+  private static Reader reader(ByteBuffer message) {
+    byte[] bytes = new byte[message.remaining()];
+    message.duplicate().get(bytes);
+    return new InputStreamReader(
+        new ByteArrayInputStream(bytes),
+        StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT));
+  }
+
+  private int process(TextFrame frame) {
+    try {
+      draft.processFrame(webSocket, frame);
+      fail("Expected the frame to be rejected");
+      return -1;
+    } catch (InvalidDataException ex) {
+      return ex.getCloseCode();
+    }
+  }
+
+  private static TextFrame frame(String head, String tail) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] headBytes = head.getBytes(StandardCharsets.UTF_8);
+    byte[] tailBytes = tail.getBytes(StandardCharsets.UTF_8);
+    bytes.write(headBytes, 0, headBytes.length);
+    bytes.write(INVALID_UTF8);
+    bytes.write(tailBytes, 0, tailBytes.length);
+    TextFrame frame = new TextFrame();
+    frame.setPayload(ByteBuffer.wrap(bytes.toByteArray()));
+    return frame;
+  }
+
+  private static class IdTagPayload {
+    private String idTag;
+  }
+}
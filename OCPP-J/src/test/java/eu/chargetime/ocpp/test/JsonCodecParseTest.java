@@ -0,0 +1,161 @@
+package eu.chargetime.ocpp.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import eu.chargetime.ocpp.GsonCodec;
+import eu.chargetime.ocpp.JacksonCodec;
+import eu.chargetime.ocpp.JsonCodec;
+import eu.chargetime.ocpp.model.CallErrorMessage;
+import eu.chargetime.ocpp.model.Message;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Checks every {@link JsonCodec} accepts a message only as one complete JSON array. */
+@RunWith(Parameterized.class)
+public class JsonCodecParseTest {
+
+  private static final JsonCodec.PayloadTypes PAYLOAD_TYPES =
+      new JsonCodec.PayloadTypes() {
+        @Override
+        public Class<?> getRequestType(String action) {
+          return TestPayload.class;
+        }
+
+        @Override
+        public Class<?> getConfirmationType(String uniqueId) {
+          return TestPayload.class;
+        }
+      };
+
+  private final JsonCodec codec;
+
+  public JsonCodecParseTest(String name, JsonCodec codec) {
+    this.codec = codec;
+  }
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> codecs() {
+    return Arrays.asList(
+        new Object[] {"Gson", new GsonCodec()}, new Object[] {"Jackson", new JacksonCodec()});
+  }
+
+  @Test
+  public void parse_completeCall_bindsPayload() {
+    // When
+    Message message = parse("[2,\"id\",\"Action\",{\"name\":\"value\"}]  ");
+
+    // Then
+    assertThat(message.getId(), equalTo("id"));
+    assertThat(((TestPayload) message.getPayload()).name, equalTo("value"));
+  }
+
+  @Test
+  public void parse_callWithTrailingElement_isRejected() {
+    assertRejected("[2,\"id\",\"Action\",{\"name\":\"value\"},\"junk\"]");
+  }
+
+  @Test
+  public void parse_callResultWithTrailingElement_isRejected() {
+    assertRejected("[3,\"id\",{\"name\":\"value\"},{}]");
+  }
+
+  @Test
+  public void parse_callErrorWithTrailingElement_isRejected() {
+    assertRejected("[4,\"id\",\"GenericError\",\"description\",{},\"junk\"]");
+  }
+
+  @Test
+  public void parse_missingEndOfArray_isRejected() {
+    assertRejected("[2,\"id\",\"Action\",{\"name\":\"value\"}");
+  }
+
+  @Test
+  public void parse_textAfterMessage_isRejected() {
+    assertRejected("[2,\"id\",\"Action\",{\"name\":\"value\"}] junk");
+  }
+
+  @Test
+  public void parse_secondMessageAfterMessage_isRejected() {
+    assertRejected("[3,\"id\",{}][3,\"id\",{}]");
+  }
+
+  @Test
+  public void parse_payloadFailsToBind_failureDeferredToPayload() {
+    // When
+    Message message = parse("[2,\"id\",\"Action\",{\"name\":{\"nested\":[1,{\"a\":2}]}}]");
+
+    // Then
+    assertThat(message.getId(), equalTo("id"));
+    assertThat(message.getPayload(), instanceOf(JsonCodec.UnboundPayload.class));
+  }
+
+  @Test
+  public void parse_payloadFailsToBindAndTrailingElement_isRejected() {
+    assertRejected("[2,\"id\",\"Action\",{\"name\":{\"nested\":[1]}},\"junk\"]");
+  }
+
+  @Test
+  public void parse_callErrorWithDetails_isAccepted() {
+    // When
+    Message message = parse("[4,\"id\",\"GenericError\",\"description\",{\"a\":[1]}]");
+
+    // Then
+    assertThat(message, instanceOf(CallErrorMessage.class));
+    assertThat(((CallErrorMessage) message).getErrorCode(), equalTo("GenericError"));
+  }
+
+  private Message parse(String json) {
+    try {
+      return codec.parse(new StringReader(json), PAYLOAD_TYPES);
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private void assertRejected(String json) {
+    try {
+      codec.parse(new StringReader(json), PAYLOAD_TYPES);
+    } catch (Exception expected) {
+      return;
+    }
+    fail("Accepted malformed message: " + json);
+  }
+
+  public static class TestPayload {
+    String name;
+  }
+}
@@ -0,0 +1,383 @@
+package eu.chargetime.ocpp.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import eu.chargetime.ocpp.JSONConfiguration;
+import eu.chargetime.ocpp.PerMessageDeflate;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
+import org.junit.Test;
+
+public class PerMessageDeflateTest {
+
+  private static final String LARGE_MESSAGE =
+      "[2,\"42\",\"MeterValues\",{\"connectorId\":1,\"meterValue\":["
+          + "{\"timestamp\":\"2020-01-02T03:04:05Z\",\"sampledValue\":[{\"value\":\"1\"}]},"
+          + "{\"timestamp\":\"2020-01-02T03:04:06Z\",\"sampledValue\":[{\"value\":\"2\"}]},"
+          + "{\"timestamp\":\"2020-01-02T03:04:07Z\",\"sampledValue\":[{\"value\":\"3\"}]}]}]";
+
+  @Test
+  public void fromConfiguration_notEnabled_noExtensions() {
+    assertThat(PerMessageDeflate.fromConfiguration(JSONConfiguration.get()).isEmpty(), is(true));
+  }
+
+  @Test
+  public void fromConfiguration_enabled_configuredExtension() {
+    // Given
+    JSONConfiguration configuration =
+        JSONConfiguration.get()
+            .setParameter(JSONConfiguration.COMPRESSION_ENABLED_PARAMETER, true)
+            .setParameter(JSONConfiguration.COMPRESSION_THRESHOLD_PARAMETER, 100)
+            .setParameter(JSONConfiguration.COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER_PARAMETER, true);
+
+    // When
+    PerMessageDeflate extension =
+        (PerMessageDeflate) PerMessageDeflate.fromConfiguration(configuration).get(0);
+
+    // Then
+    assertThat(extension.getThreshold(), equalTo(100));
+    assertThat(
+        extension.getProvidedExtensionAsClient(),
+        equalTo("permessage-deflate; client_no_context_takeover"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_windowBitsOutOfRange_throwsException() {
+    new PerMessageDeflate(0, false, false, 16);
+  }
+
+  @Test
+  public void acceptProvidedExtensionAsServer_plainOffer_acceptsWithContextTakeover() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, false, false, 15);
+
+    // When
+    boolean accepted =
+        extension.acceptProvidedExtensionAsServer("permessage-deflate; client_max_window_bits");
+
+    // Then
+    assertThat(accepted, is(true));
+    assertThat(extension.getProvidedExtensionAsServer(), equalTo("permessage-deflate"));
+  }
+
+  @Test
+  public void acceptProvidedExtensionAsServer_offerWithParameters_echoesThem() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, false, false, 10);
+
+    // When
+    boolean accepted =
+        extension.acceptProvidedExtensionAsServer(
+            "permessage-deflate; server_no_context_takeover; client_no_context_takeover;"
+                + " client_max_window_bits");
+
+    // Then
+    assertThat(accepted, is(true));
+    assertThat(
+        extension.getProvidedExtensionAsServer(),
+        equalTo(
+            "permessage-deflate; server_no_context_takeover; client_no_context_takeover;"
+                + " client_max_window_bits=10"));
+  }
+
+  @Test
+  public void acceptProvidedExtensionAsServer_smallServerWindow_takesNextOffer() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, true, false, 15);
+
+    // When
+    boolean accepted =
+        extension.acceptProvidedExtensionAsServer(
+            "permessage-deflate; server_max_window_bits=10, permessage-deflate");
+
+    // Then
+    assertThat(accepted, is(true));
+    assertThat(
+        extension.getProvidedExtensionAsServer(),
+        equalTo("permessage-deflate; server_no_context_takeover"));
+  }
+
+  @Test
+  public void acceptProvidedExtensionAsServer_unsupportedOffers_declines() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, false, false, 15);
+
+    // Then
+    assertThat(extension.acceptProvidedExtensionAsServer(""), is(false));
+    assertThat(extension.acceptProvidedExtensionAsServer("x-webkit-deflate-frame"), is(false));
+    assertThat(
+        extension.acceptProvidedExtensionAsServer("permessage-deflate; server_max_window_bits=9"),
+        is(false));
+    assertThat(
+        extension.acceptProvidedExtensionAsServer("permessage-deflate; unknown_parameter"),
+        is(false));
+  }
+
+  @Test
+  public void acceptProvidedExtensionAsClient_smallClientWindow_declines() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, false, false, 15);
+
+    // Then
+    assertThat(
+        extension.acceptProvidedExtensionAsClient("permessage-deflate; client_max_window_bits=10"),
+        is(false));
+    assertThat(extension.acceptProvidedExtensionAsClient("permessage-deflate"), is(true));
+  }
+
+  @Test
+  public void copyInstance_keepsSettings() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(200, true, true, 12);
+
+    // When
+    IExtension copy = extension.copyInstance();
+
+    // Then
+    assertThat(copy.toString(), equalTo(extension.toString()));
+    assertThat(((PerMessageDeflate) copy).getThreshold(), equalTo(200));
+  }
+
+  @Test
+  public void encodeFrame_belowThreshold_sentUncompressed() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(1024, false, false, 15);
+    TextFrame frame = textFrame(ByteBuffer.wrap(bytes(LARGE_MESSAGE)));
+
+    // When
+    extension.encodeFrame(frame);
+
+    // Then
+    assertThat(frame.isRSV1(), is(false));
+    assertThat(text(frame.getPayloadData()), equalTo(LARGE_MESSAGE));
+  }
+
+  @Test
+  public void encodeFrame_withContextTakeover_decodedByPeer() throws Exception {
+    // Given
+    PerMessageDeflate client = new PerMessageDeflate(0, false, false, 15);
+    PerMessageDeflate server = new PerMessageDeflate(0, false, false, 15);
+    server.acceptProvidedExtensionAsServer(client.getProvidedExtensionAsClient());
+    client.acceptProvidedExtensionAsClient(server.getProvidedExtensionAsServer());
+
+    for (int i = 0; i < 3; i++) {
+      TextFrame frame = textFrame(ByteBuffer.wrap(bytes(LARGE_MESSAGE)));
+
+      // When
+      client.encodeFrame(frame);
+      Framedata received = overTheWire(frame);
+      server.decodeFrame(received);
+
+      // Then
+      assertThat(frame.isRSV1(), is(true));
+      assertThat(text(received.getPayloadData()), equalTo(LARGE_MESSAGE));
+    }
+  }
+
+  @Test
+  public void encodeFrame_payloadSharesArray_compressesOnlyThePayload() throws Exception {
+    // Given
+    PerMessageDeflate client = new PerMessageDeflate(0, false, false, 15);
+    PerMessageDeflate server = new PerMessageDeflate(0, false, false, 15);
+    server.acceptProvidedExtensionAsServer(client.getProvidedExtensionAsClient());
+    byte[] padded = bytes("xxxx" + LARGE_MESSAGE + "yyyy");
+    ByteBuffer payload = ByteBuffer.wrap(padded, 4, padded.length - 8).slice();
+    TextFrame frame = textFrame(payload);
+
+    // When
+    client.encodeFrame(frame);
+    Framedata received = overTheWire(frame);
+    server.decodeFrame(received);
+
+    // Then
+    assertThat(text(received.getPayloadData()), equalTo(LARGE_MESSAGE));
+  }
+
+  @Test
+  public void encodeFrame_fragmentedMessage_everyFragmentCompressed() throws Exception {
+    // Given
+    PerMessageDeflate client = new PerMessageDeflate(100, false, false, 15);
+    PerMessageDeflate server = new PerMessageDeflate(100, false, false, 15);
+    server.acceptProvidedExtensionAsServer(client.getProvidedExtensionAsClient());
+    DataFrame[] fragments = {
+      fragment(new TextFrame(), LARGE_MESSAGE, false),
+      fragment(new ContinuousFrame(), "small", false),
+      fragment(new ContinuousFrame(), LARGE_MESSAGE, true)
+    };
+
+    // When
+    StringBuilder message = new StringBuilder();
+    for (DataFrame fragment : fragments) {
+      client.encodeFrame(fragment);
+      Framedata received = overTheWire(fragment);
+      server.decodeFrame(received);
+      message.append(text(received.getPayloadData()));
+    }
+
+    // Then
+    assertThat(fragments[0].isRSV1(), is(true));
+    assertThat(fragments[1].isRSV1(), is(false));
+    assertThat(message.toString(), equalTo(LARGE_MESSAGE + "small" + LARGE_MESSAGE));
+  }
+
+  @Test
+  public void encodeFrame_fragmentedMessageWithSmallFirstFragment_sentUncompressed()
+      throws Exception {
+    // Given
+    PerMessageDeflate client = new PerMessageDeflate(100, false, false, 15);
+    PerMessageDeflate server = new PerMessageDeflate(100, false, false, 15);
+    server.acceptProvidedExtensionAsServer(client.getProvidedExtensionAsClient());
+    DataFrame[] fragments = {
+      fragment(new TextFrame(), "small", false),
+      fragment(new ContinuousFrame(), LARGE_MESSAGE, true)
+    };
+
+    // When
+    StringBuilder message = new StringBuilder();
+    for (DataFrame fragment : fragments) {
+      client.encodeFrame(fragment);
+      Framedata received = overTheWire(fragment);
+      server.decodeFrame(received);
+      message.append(text(received.getPayloadData()));
+    }
+
+    // Then
+    assertThat(fragments[0].isRSV1(), is(false));
+    assertThat(text(fragments[1].getPayloadData()), equalTo(LARGE_MESSAGE));
+    assertThat(message.toString(), equalTo("small" + LARGE_MESSAGE));
+  }
+
+  @Test
+  public void encodeFrame_serverNoContextTakeover_deflaterReusedAndEachMessageStandsAlone()
+      throws Exception {
+    // Given
+    PerMessageDeflate client = new PerMessageDeflate(0, true, false, 15);
+    PerMessageDeflate server = new PerMessageDeflate(0, false, false, 15);
+    server.acceptProvidedExtensionAsServer(client.getProvidedExtensionAsClient());
+    Deflater deflater = server.getDeflater();
+
+    for (int i = 0; i < 3; i++) {
+      TextFrame frame = textFrame(ByteBuffer.wrap(bytes(LARGE_MESSAGE)));
+
+      // When
+      server.encodeFrame(frame);
+      Framedata received = overTheWire(frame);
+      new PerMessageDeflate(0, false, false, 15).decodeFrame(received);
+
+      // Then
+      assertThat(text(received.getPayloadData()), equalTo(LARGE_MESSAGE));
+    }
+    assertThat(server.getDeflater(), sameInstance(deflater));
+  }
+
+  @Test
+  public void reset_connectionClosed_deflaterAndInflaterEnded() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, false, false, 15);
+    Deflater deflater = extension.getDeflater();
+    Inflater inflater = extension.getInflater();
+
+    // When
+    extension.reset();
+
+    // Then
+    assertEnded(deflater::getBytesRead);
+    assertEnded(inflater::getBytesRead);
+  }
+
+  @Test
+  public void encodeFrame_afterReset_sentUncompressed() {
+    // Given
+    PerMessageDeflate extension = new PerMessageDeflate(0, false, false, 15);
+    extension.reset();
+    TextFrame frame = textFrame(ByteBuffer.wrap(bytes(LARGE_MESSAGE)));
+
+    // When
+    extension.encodeFrame(frame);
+
+    // Then
+    assertThat(frame.isRSV1(), is(false));
+    assertThat(text(frame.getPayloadData()), equalTo(LARGE_MESSAGE));
+  }
+
+  private static void assertEnded(Runnable use) {
+    try {
+      use.run();
+    } catch (NullPointerException expected) {
+      // Thrown by java.util.zip once end() has been called
+      return;
+    }
+    fail("Not ended");
+  }
+
+  private static DataFrame fragment(DataFrame frame, String payload, boolean fin) {
+    frame.setPayload(ByteBuffer.wrap(bytes(payload)));
+    frame.setFin(fin);
+    return frame;
+  }
+
+  private static TextFrame textFrame(ByteBuffer payload) {
+    TextFrame frame = new TextFrame();
+    frame.setPayload(payload);
+    return frame;
+  }
+
+  /** Copy the frame into an exactly sized buffer, the way it's read from the socket. */
+  private static Framedata overTheWire(DataFrame frame) {
+    ByteBuffer payload = frame.getPayloadData();
+    ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+    copy.put(payload.duplicate()).flip();
+    DataFrame received =
+        frame.getOpcode() == Opcode.CONTINUOUS ? new ContinuousFrame() : new TextFrame();
+    received.setPayload(copy);
+    received.setFin(frame.isFin());
+    received.setRSV1(frame.isRSV1());
+    return received;
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String text(ByteBuffer buffer) {
+    return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+  }
+}
@@ -28,27 +28,52 @@ package eu.chargetime.ocpp;
 import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Fulfills promises on the workers of a {@link RequestHandlerExecutor}.
+ *
+ * <p>Each decorator belongs to one session, its requests are handled one at a time and in the
+ * order they arrived, while different sessions are handled in parallel. When the executor has too
+ * many pending requests, the promise fails with a {@link RejectedExecutionException}.
+ */
 public class AsyncPromiseFulfillerDecorator implements PromiseFulfiller {
 
   private final PromiseFulfiller promiseFulfiller;
+  private final Executor sessionExecutor;
 
-  private static ExecutorService executor = Executors.newCachedThreadPool();
-
+  /**
+   * Replace the pool shared by sessions that weren't given a {@link RequestHandlerExecutor}.
+   *
+   * @param newExecutor pool to handle requests on, requests aren't limited.
+   * @deprecated use {@link RequestHandlerExecutor#setDefault(RequestHandlerExecutor)} or give each
+   *     {@link SessionFactory} its own {@link RequestHandlerExecutor}.
+   */
+  @Deprecated
   public static void setExecutor(ExecutorService newExecutor) {
-    executor = newExecutor;
+    RequestHandlerExecutor.setDefault(new RequestHandlerExecutor(newExecutor, Integer.MAX_VALUE));
   }
 
   @Override
   public void fulfill(
       CompletableFuture<Confirmation> promise, SessionEvents eventHandler, Request request) {
-    executor.submit(() -> promiseFulfiller.fulfill(promise, eventHandler, request));
+    try {
+      sessionExecutor.execute(() -> promiseFulfiller.fulfill(promise, eventHandler, request));
+    } catch (RejectedExecutionException e) {
+      promise.completeExceptionally(e);
+    }
   }
 
   public AsyncPromiseFulfillerDecorator(PromiseFulfiller promiseFulfiller) {
+    this(promiseFulfiller, RequestHandlerExecutor.getDefault());
+  }
+
+  public AsyncPromiseFulfillerDecorator(
+      PromiseFulfiller promiseFulfiller, RequestHandlerExecutor executor) {
 
     this.promiseFulfiller = promiseFulfiller;
+    this.sessionExecutor = executor.newSessionExecutor();
   }
 }
@@ -76,13 +76,13 @@ public class Client {
 
           @Override
           public void handleConfirmation(String uniqueId, Confirmation confirmation) {
+            // Sessions that complete their promises already did, only look up the others
+            if (session.completesPromises()) return;
             Optional<CompletableFuture<Confirmation>> promiseOptional =
                 promiseRepository.getPromise(uniqueId);
             if (promiseOptional.isPresent()) {
               promiseOptional.get().complete(confirmation);
               promiseRepository.removePromise(uniqueId);
-            } else {
-              logger.debug("Promise not found for confirmation {}", confirmation);
             }
           }
 
@@ -99,6 +99,7 @@ public class Client {
           @Override
           public void handleError(
               String uniqueId, String errorCode, String errorDescription, Object payload) {
+            if (session.completesPromises()) return;
             Optional<CompletableFuture<Confirmation>> promiseOptional =
                 promiseRepository.getPromise(uniqueId);
             if (promiseOptional.isPresent()) {
@@ -107,11 +108,15 @@ public class Client {
                   .completeExceptionally(
                       new CallErrorException(errorCode, errorDescription, payload));
               promiseRepository.removePromise(uniqueId);
-            } else {
-              logger.debug("Promise not found for error {}", errorDescription);
             }
           }
 
+          @Override
+          public void handleReplayedCall(
+              String uniqueId, String action, CompletableFuture<Confirmation> promise) {
+            if (events != null) events.callReplayed(uniqueId, action, promise);
+          }
+
           @Override
           public void handleConnectionClosed() {
             if (events != null) events.connectionClosed();
@@ -156,9 +161,12 @@ public class Client {
     }
 
     String id = session.storeRequest(request);
-    CompletableFuture<Confirmation> promise = promiseRepository.createPromise(id);
+    // The call may wait for the previous one, so it times out counting from when it's sent
+    CompletableFuture<Confirmation> promise = promiseRepository.createQueuedPromise(id, null);
+    session.attachPromise(id, promise);
 
-    session.sendRequest(featureOptional.get().getAction(), request, id);
+    session.sendRequest(
+        featureOptional.get().getAction(), request, id, () -> promiseRepository.startTimeout(id));
     return promise;
   }
 
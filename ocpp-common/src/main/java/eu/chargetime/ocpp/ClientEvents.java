@@ -27,8 +27,22 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
+import eu.chargetime.ocpp.model.Confirmation;
+import java.util.concurrent.CompletableFuture;
+
 public interface ClientEvents {
   void connectionOpened();
 
   void connectionClosed();
+
+  /**
+   * A call stored in the transaction queue before a restart is sent again. For example, the
+   * confirmation of a replayed StartTransaction carries the transactionId.
+   *
+   * @param uniqueId the unique identifier the call was made with.
+   * @param action action name of the feature.
+   * @param promise completed with the {@link Confirmation} to the call.
+   */
+  default void callReplayed(
+      String uniqueId, String action, CompletableFuture<Confirmation> promise) {}
 }
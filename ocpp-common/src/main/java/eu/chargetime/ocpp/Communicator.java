@@ -29,7 +29,6 @@ SOFTWARE.
 
 import eu.chargetime.ocpp.model.*;
 import eu.chargetime.ocpp.utilities.SugarUtil;
-import java.util.ArrayDeque;
 import javax.xml.soap.SOAPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +45,7 @@ public abstract class Communicator {
 
   private RetryRunner retryRunner;
   protected Radio radio;
-  private ArrayDeque<Object> transactionQueue;
+  private ITransactionQueue transactionQueue;
   private CommunicatorEvents events;
   private boolean failedFlag;
 
@@ -100,6 +99,25 @@ public abstract class Communicator {
   protected abstract Object makeCallError(
       String uniqueId, String action, String errorCode, String errorDescription);
 
+  /**
+   * Create a call error envelope with error details to transmit. Ignores the details unless
+   * overridden.
+   *
+   * @param uniqueId the id the receiver expects.
+   * @param errorCode an OCPP error code.
+   * @param errorDescription an associated error description.
+   * @param errorDetails error details to pack, may be null.
+   * @return a fully packed message ready to send.
+   */
+  protected Object makeCallError(
+      String uniqueId,
+      String action,
+      String errorCode,
+      String errorDescription,
+      Object errorDetails) {
+    return makeCallError(uniqueId, action, errorCode, errorDescription);
+  }
+
   /**
    * Identify an incoming call and parse it into one of the following: {@link CallMessage} a
    * request. {@link CallResultMessage} a response.
@@ -115,8 +133,18 @@ public abstract class Communicator {
    * @param transmitter Injected {@link Transmitter}
    */
   public Communicator(Radio transmitter) {
+    this(transmitter, new TransactionQueue());
+  }
+
+  /**
+   * Handle required injections.
+   *
+   * @param transmitter Injected {@link Transmitter}
+   * @param transactionQueue Injected {@link ITransactionQueue} for calls stored while offline.
+   */
+  public Communicator(Radio transmitter, ITransactionQueue transactionQueue) {
     this.radio = transmitter;
-    this.transactionQueue = new ArrayDeque<>();
+    this.transactionQueue = transactionQueue;
     this.retryRunner = new RetryRunner();
     this.failedFlag = false;
   }
@@ -166,7 +194,7 @@ public abstract class Communicator {
       if (radio.isClosed()) {
         if (request.transactionRelated()) {
           logger.warn("Not connected: storing request to queue: {}", request);
-          transactionQueue.add(call);
+          storeCall(uniqueId, action, call, request);
         } else {
           logger.warn("Not connected: can't send request: {}", request);
           events.onError(
@@ -175,8 +203,8 @@ public abstract class Communicator {
               "The request can't be sent due to the lack of connection",
               request);
         }
-      } else if (request.transactionRelated() && transactionQueue.size() > 0) {
-        transactionQueue.add(call);
+      } else if (request.transactionRelated() && !transactionQueue.isEmpty()) {
+        storeCall(uniqueId, action, call, request);
         processTransactionQueue();
       } else {
         radio.send(call);
@@ -184,7 +212,7 @@ public abstract class Communicator {
     } catch (NotConnectedException ex) {
       logger.warn("sendCall() failed: not connected");
       if (request.transactionRelated()) {
-        transactionQueue.add(call);
+        storeCall(uniqueId, action, call, request);
       } else {
         events.onError(
             uniqueId,
@@ -233,6 +261,23 @@ public abstract class Communicator {
    */
   public void sendCallError(
       String uniqueId, String action, String errorCode, String errorDescription) {
+    sendCallError(uniqueId, action, errorCode, errorDescription, null);
+  }
+
+  /**
+   * Send an error with error details. If offline, the message is thrown away.
+   *
+   * @param uniqueId the id the receiver expects a response to.
+   * @param errorCode an OCPP error Code
+   * @param errorDescription a associated error description.
+   * @param errorDetails details about the error, may be null.
+   */
+  public void sendCallError(
+      String uniqueId,
+      String action,
+      String errorCode,
+      String errorDescription,
+      Object errorDetails) {
     logger.error(
         "An error occurred. Sending this information: uniqueId {}: action: {}, errorCore: {}, errorDescription: {}",
         uniqueId,
@@ -240,7 +285,7 @@ public abstract class Communicator {
         errorCode,
         errorDescription);
     try {
-      radio.send(makeCallError(uniqueId, action, errorCode, errorDescription));
+      radio.send(makeCallError(uniqueId, action, errorCode, errorDescription, errorDetails));
     } catch (NotConnectedException ex) {
       logger.warn("sendCallError() failed", ex);
       events.onError(
@@ -251,6 +296,26 @@ public abstract class Communicator {
     }
   }
 
+  /**
+   * Get the {@link Request} type expected for an incoming call.
+   *
+   * @param action action name of the feature.
+   * @return the {@link Request} type or null if unknown.
+   */
+  protected Class<? extends Request> getRequestType(String action) {
+    return events != null ? events.getRequestType(action) : null;
+  }
+
+  /**
+   * Get the {@link Confirmation} type expected for an incoming call result.
+   *
+   * @param uniqueId the id of the original request.
+   * @return the {@link Confirmation} type or null if unknown.
+   */
+  protected Class<? extends Confirmation> getConfirmationType(String uniqueId) {
+    return events != null ? events.getConfirmationType(uniqueId) : null;
+  }
+
   /** Close down the connection. Uses the {@link Transmitter}. */
   public void disconnect() {
     radio.disconnect();
@@ -308,15 +373,24 @@ public abstract class Communicator {
     }
   }
 
+  private void storeCall(String uniqueId, String action, Object call, Request request) {
+    if (!transactionQueue.offer(uniqueId, action, call)) {
+      logger.warn("Transaction queue is full: can't store request: {}", request);
+      events.onError(
+          uniqueId,
+          "Not connected",
+          "The request can't be stored, the transaction queue is full",
+          request);
+    }
+  }
+
   /**
    * Get queued transaction related request.
    *
    * @return request or null if queue is empty.
    */
   private Object getRetryMessage() {
-    Object result = null;
-    if (!transactionQueue.isEmpty()) result = transactionQueue.peek();
-    return result;
+    return transactionQueue.peek();
   }
 
   /**
@@ -329,7 +403,7 @@ public abstract class Communicator {
   }
 
   private void popRetryMessage() {
-    if (!transactionQueue.isEmpty()) transactionQueue.pop();
+    transactionQueue.pop();
   }
 
   /** Will resend transaction related requests. */
@@ -342,6 +416,10 @@ public abstract class Communicator {
       try {
         while ((call = getRetryMessage()) != null) {
           failedFlag = false;
+          ITransactionQueue.ReplayedCall replayed = transactionQueue.peekReplayed();
+          if (replayed != null && events != null) {
+            events.onReplayedCall(replayed.getUniqueId(), replayed.getAction());
+          }
           radio.send(call);
           Thread.sleep(DELAY_IN_MILLISECONDS);
           if (!hasFailed()) popRetryMessage();
@@ -27,6 +27,9 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+
 /** Call back handler for communicator events. */
 public interface CommunicatorEvents {
   /**
@@ -66,6 +69,37 @@ public interface CommunicatorEvents {
    */
   void onError(String id, String errorCode, String errorDescription, Object payload);
 
+  /**
+   * A call stored in the transaction queue before a restart is about to be sent again. Nothing is
+   * known about it yet, so it must be registered to handle its answer.
+   *
+   * @param id unique id the call was made with.
+   * @param action action name used to identify the feature.
+   */
+  default void onReplayedCall(String id, String action) {}
+
+  /**
+   * Look up the {@link Request} type of an incoming call while its envelope is being read. This
+   * allows a {@link Communicator} to bind the payload directly into the request.
+   *
+   * @param action action name used to identify the feature.
+   * @return the {@link Request} type, or null if the action isn't known.
+   */
+  default Class<? extends Request> getRequestType(String action) {
+    return null;
+  }
+
+  /**
+   * Look up the {@link Confirmation} type of an incoming call result while its envelope is being
+   * read. The original request must not be consumed by this lookup.
+   *
+   * @param id unique id used to identify the original request.
+   * @return the {@link Confirmation} type, or null if the request isn't known.
+   */
+  default Class<? extends Confirmation> getConfirmationType(String id) {
+    return null;
+  }
+
   /** The connection was disconnected. */
   void onDisconnected();
 
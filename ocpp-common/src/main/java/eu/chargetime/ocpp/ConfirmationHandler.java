@@ -27,6 +27,7 @@ package eu.chargetime.ocpp;
 */
 
 import eu.chargetime.ocpp.model.Confirmation;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 
 class ConfirmationHandler implements BiConsumer<Confirmation, Throwable> {
@@ -44,7 +45,13 @@ class ConfirmationHandler implements BiConsumer<Confirmation, Throwable> {
 
   @Override
   public void accept(Confirmation confirmation, Throwable throwable) {
-    if (throwable != null) {
+    if (throwable instanceof RejectedExecutionException) {
+      communicator.sendCallError(
+          id,
+          action,
+          "InternalError",
+          "The receiver is busy and was not able to process the requested Action, try again later");
+    } else if (throwable != null) {
       communicator.sendCallError(
           id,
           action,
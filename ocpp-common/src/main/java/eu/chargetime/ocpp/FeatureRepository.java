@@ -28,6 +28,7 @@ package eu.chargetime.ocpp;
 import eu.chargetime.ocpp.feature.Feature;
 import eu.chargetime.ocpp.feature.profile.Profile;
 import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.RawRequest;
 import eu.chargetime.ocpp.model.Request;
 import eu.chargetime.ocpp.utilities.MoreObjects;
 import java.util.HashMap;
@@ -67,23 +68,32 @@ public class FeatureRepository implements IFeatureRepository {
    * {@link Optional#empty()} is returned
    *
    * <p>Can take multiple inputs: {@link String}, search for the action name of the feature. {@link
-   * Request}/{@link Confirmation}, search for a feature that matches. Anything else will return
-   * {@link Optional#empty()}.
+   * RawRequest}, search for the feature of its action. {@link Request}/{@link Confirmation}, search
+   * for a feature that matches. Anything else will return {@link Optional#empty()}.
    *
    * @param needle Object supports {@link String}, {@link Request} or {@link Confirmation}
    * @return Optional of instance of the supported Feature
    */
   @Override
   public Optional<Feature> findFeature(Object needle) {
+    return Optional.ofNullable(getFeature(needle));
+  }
+
+  @Override
+  public Feature getFeature(Object needle) {
     if (needle instanceof String) {
-      return Optional.ofNullable(actionMap.get(needle));
+      return actionMap.get(needle);
+    }
+
+    if (needle instanceof RawRequest) {
+      return actionMap.get(((RawRequest) needle).getAction());
     }
 
     if ((needle instanceof Request) || (needle instanceof Confirmation)) {
-      return Optional.ofNullable(classMap.get((needle.getClass())));
+      return classMap.get((needle.getClass()));
     }
 
-    return Optional.empty();
+    return null;
   }
 
   @Override
@@ -30,4 +30,14 @@ import java.util.Optional;
 
 public interface IFeatureRepository {
   Optional<Feature> findFeature(Object needle);
+
+  /**
+   * Like {@link #findFeature(Object)}, without wrapping the result. Used when dispatching messages.
+   *
+   * @param needle what to search for, see {@link #findFeature(Object)}.
+   * @return the supported feature, or null if none is found.
+   */
+  default Feature getFeature(Object needle) {
+    return findFeature(needle).orElse(null);
+  }
 }
@@ -27,12 +27,54 @@ package eu.chargetime.ocpp;
 
 import eu.chargetime.ocpp.model.Confirmation;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 public interface IPromiseRepository {
   CompletableFuture<Confirmation> createPromise(String uniqueId);
 
+  /**
+   * Create a promise for a request sent in a session, so it can be failed with {@link
+   * #failPromises(UUID, Throwable)}.
+   *
+   * @param uniqueId identification for the request.
+   * @param sessionId the session the request is sent in.
+   * @return call back {@link CompletableFuture}.
+   */
+  default CompletableFuture<Confirmation> createPromise(String uniqueId, UUID sessionId) {
+    return createPromise(uniqueId);
+  }
+
+  /**
+   * Create a promise for a request that may wait before it's sent, for example behind the previous
+   * call of its session. Its timeout starts with {@link #startTimeout(String)}, so a request isn't
+   * timed out while it waits.
+   *
+   * @param uniqueId identification for the request.
+   * @param sessionId the session the request is sent in, may be null.
+   * @return call back {@link CompletableFuture}.
+   */
+  default CompletableFuture<Confirmation> createQueuedPromise(String uniqueId, UUID sessionId) {
+    return createPromise(uniqueId, sessionId);
+  }
+
+  /**
+   * Start the timeout of a promise created with {@link #createQueuedPromise(String, UUID)}, once
+   * its request is sent.
+   *
+   * @param uniqueId identification for the request.
+   */
+  default void startTimeout(String uniqueId) {}
+
   Optional<CompletableFuture<Confirmation>> getPromise(String uniqueId);
 
   void removePromise(String uniqueId);
+
+  /**
+   * Fail and remove all promises of a session.
+   *
+   * @param sessionId the session the requests were sent in.
+   * @param cause the exception to complete the promises with.
+   */
+  default void failPromises(UUID sessionId, Throwable cause) {}
 }
@@ -1,7 +1,9 @@
 package eu.chargetime.ocpp;
 
+import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /*
    ChargeTime.eu - Java-OCA-OCPP
@@ -37,7 +39,39 @@ public interface ISession {
 
   String storeRequest(Request payload);
 
+  /**
+   * Attach the call back of a stored request. The session completes it when the answer arrives and
+   * forgets the request when the call back is completed otherwise, e.g. when it times out.
+   *
+   * @param uniqueId identifier returned by {@link #storeRequest(Request)}.
+   * @param promise call back for the answer.
+   */
+  default void attachPromise(String uniqueId, CompletableFuture<Confirmation> promise) {}
+
+  /**
+   * Whether the session completes the call backs given to {@link #attachPromise(String,
+   * CompletableFuture)}, so they don't need to be looked up when an answer arrives.
+   *
+   * @return true if attached call backs are completed by the session.
+   */
+  default boolean completesPromises() {
+    return false;
+  }
+
   void sendRequest(String action, Request payload, String uuid);
 
+  /**
+   * Send a request and tell when it goes out. A session that queues its requests sends them later.
+   *
+   * @param action action name to identify the feature.
+   * @param payload the request payload to send.
+   * @param uuid identifier returned by {@link #storeRequest(Request)}.
+   * @param sent run right before the request is sent, may be null.
+   */
+  default void sendRequest(String action, Request payload, String uuid, Runnable sent) {
+    if (sent != null) sent.run();
+    sendRequest(action, payload, uuid);
+  }
+
   void close();
 }
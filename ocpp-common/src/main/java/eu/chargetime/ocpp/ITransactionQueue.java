@@ -0,0 +1,90 @@
+package eu.chargetime.ocpp;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+/**
+ * Stores transaction related calls while offline, until they can be sent. See {@link
+ * TransactionQueue} for the in memory queue and {@link SegmentLogTransactionQueue} for a queue that
+ * survives a restart.
+ */
+public interface ITransactionQueue {
+
+  /**
+   * Store a call at the end of the queue.
+   *
+   * @param uniqueId the id the call was made with.
+   * @param action action name of the feature.
+   * @param call the packed call, as made by the {@link Communicator}.
+   * @return false if the call couldn't be stored.
+   */
+  boolean offer(String uniqueId, String action, Object call);
+
+  /**
+   * Get the oldest call without removing it.
+   *
+   * @return the call, null if the queue is empty.
+   */
+  Object peek();
+
+  /**
+   * Get the id and action of the oldest call, if it was stored before a restart. Nothing in this
+   * process waits for the answer to such a call yet.
+   *
+   * @return the replayed call, null if the queue is empty or the oldest call was stored by this
+   *     process.
+   */
+  default ReplayedCall peekReplayed() {
+    return null;
+  }
+
+  /** Remove the oldest call, once it was sent. */
+  void pop();
+
+  boolean isEmpty();
+
+  int size();
+
+  /** Id and action of a call stored before a restart. */
+  final class ReplayedCall {
+    private final String uniqueId;
+    private final String action;
+
+    public ReplayedCall(String uniqueId, String action) {
+      this.uniqueId = uniqueId;
+      this.action = action;
+    }
+
+    public String getUniqueId() {
+      return uniqueId;
+    }
+
+    public String getAction() {
+      return action;
+    }
+  }
+}
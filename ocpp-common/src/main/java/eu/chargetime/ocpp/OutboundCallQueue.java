@@ -0,0 +1,204 @@
+package eu.chargetime.ocpp;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outgoing calls of a single session, see {@link OutboundCallScheduler}. At most one call is in
+ * flight, the others wait in order of priority.
+ */
+final class OutboundCallQueue {
+  private static final Logger logger = LoggerFactory.getLogger(OutboundCallQueue.class);
+
+  /** Sends the calls released by the queue. */
+  interface Sender {
+    /**
+     * @param uniqueId id of a queued call.
+     * @return whether the call is still waiting for an answer, calls failed while queued are
+     *     skipped.
+     */
+    boolean isPending(String uniqueId);
+
+    void send(String uniqueId, String action, Request request);
+
+    void failed(String uniqueId, Throwable cause);
+  }
+
+  private final OutboundCallScheduler scheduler;
+  private final Sender sender;
+  private final PriorityQueue<Call> waiting = new PriorityQueue<>();
+  private Call inFlight;
+  private boolean draining;
+  private long sequence;
+
+  OutboundCallQueue(OutboundCallScheduler scheduler, Sender sender) {
+    this.scheduler = scheduler;
+    this.sender = sender;
+  }
+
+  /**
+   * Queue a call, it is sent right away if no other call is in flight.
+   *
+   * @param sent run right before the call is sent, may be null.
+   */
+  void submit(String uniqueId, String action, Request request, Runnable sent) {
+    synchronized (this) {
+      waiting.add(
+          new Call(uniqueId, action, request, sent, scheduler.getPriority(action), sequence++));
+      scheduler.queued(1);
+      if (inFlight != null || draining) return;
+      draining = true;
+    }
+    drain();
+  }
+
+  /** The call was answered or failed, send the next one. */
+  void completed(String uniqueId) {
+    synchronized (this) {
+      if (inFlight == null || !inFlight.uniqueId.equals(uniqueId)) return;
+      inFlight.cancelTimeout();
+      inFlight = null;
+      if (draining || waiting.isEmpty()) return;
+      draining = true;
+    }
+    drain();
+  }
+
+  /** The connection is lost, hand the waiting calls to the communicator to store or fail them. */
+  void flush() {
+    List<Call> calls;
+    synchronized (this) {
+      if (inFlight != null) {
+        inFlight.cancelTimeout();
+        inFlight = null;
+      }
+      calls = new ArrayList<>(waiting.size());
+      while (!waiting.isEmpty()) calls.add(waiting.poll());
+      scheduler.queued(-calls.size());
+    }
+    for (Call call : calls) {
+      if (sender.isPending(call.uniqueId)) send(call);
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      Call call;
+      synchronized (this) {
+        if (inFlight != null || waiting.isEmpty()) {
+          draining = false;
+          return;
+        }
+        call = waiting.poll();
+        scheduler.queued(-1);
+        inFlight = call;
+      }
+
+      if (!sender.isPending(call.uniqueId)) {
+        release(call);
+        continue;
+      }
+
+      call.timeout = scheduler.newTimeout(() -> expire(call));
+      if (!send(call)) release(call);
+    }
+  }
+
+  private boolean send(Call call) {
+    try {
+      if (call.sent != null) call.sent.run();
+      sender.send(call.uniqueId, call.action, call.request);
+      return true;
+    } catch (RuntimeException ex) {
+      logger.warn("Failed to send call {}", call.uniqueId, ex);
+      sender.failed(call.uniqueId, ex);
+      return false;
+    }
+  }
+
+  private synchronized void release(Call call) {
+    if (inFlight != call) return;
+    call.cancelTimeout();
+    inFlight = null;
+  }
+
+  private void expire(Call call) {
+    boolean next;
+    synchronized (this) {
+      if (inFlight != call) return;
+      inFlight = null;
+      next = !draining && !waiting.isEmpty();
+      if (next) draining = true;
+    }
+    sender.failed(call.uniqueId, scheduler.newTimeoutException(call.uniqueId));
+    if (next) drain();
+  }
+
+  private static final class Call implements Comparable<Call> {
+    private final String uniqueId;
+    private final String action;
+    private final Request request;
+    private final Runnable sent;
+    private final int priority;
+    private final long sequence;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    private Call(
+        String uniqueId,
+        String action,
+        Request request,
+        Runnable sent,
+        int priority,
+        long sequence) {
+      this.uniqueId = uniqueId;
+      this.action = action;
+      this.request = request;
+      this.sent = sent;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    private void cancelTimeout() {
+      HashedWheelTimer.Timeout current = timeout;
+      if (current != null) current.cancel();
+    }
+
+    @Override
+    public int compareTo(Call other) {
+      if (priority != other.priority) return priority > other.priority ? -1 : 1;
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package eu.chargetime.ocpp;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the outgoing calls of the sessions of a server or client. OCPP-J allows a single
+ * outstanding call per direction, so each session sends its next call only once the previous one
+ * is answered with a CallResult or CallError.
+ *
+ * <p>Calls waiting to be sent are ordered by the priority of their action, highest first, and in
+ * the order they were sent within a priority. A call that isn't answered within the call timeout
+ * fails with a {@link TimeoutException} and lets the next call go.
+ */
+public class OutboundCallScheduler {
+
+  public static final int DEFAULT_PRIORITY = 0;
+
+  private final Map<String, Integer> priorities = new ConcurrentHashMap<>();
+  private final HashedWheelTimer timer;
+  private final long callTimeoutMillis;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong timedOut = new AtomicLong();
+
+  /** Scheduler without a call timeout, calls wait until answered or failed otherwise. */
+  public OutboundCallScheduler() {
+    this(null, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param callTimeout time to wait for the answer to a sent call, 0 to wait forever.
+   * @param unit unit of the timeout.
+   */
+  public OutboundCallScheduler(long callTimeout, TimeUnit unit) {
+    this(HashedWheelTimer.getDefault(), callTimeout, unit);
+  }
+
+  /**
+   * @param timer timer keeping the deadlines.
+   * @param callTimeout time to wait for the answer to a sent call, 0 to wait forever.
+   * @param unit unit of the timeout.
+   */
+  public OutboundCallScheduler(HashedWheelTimer timer, long callTimeout, TimeUnit unit) {
+    this.timer = timer;
+    this.callTimeoutMillis = unit.toMillis(callTimeout);
+  }
+
+  /**
+   * Set the priority of an action, calls with a higher priority are sent first.
+   *
+   * @param action action name of the feature, e.g. "RemoteStopTransaction".
+   * @param priority the priority, {@value #DEFAULT_PRIORITY} unless set.
+   * @return this scheduler.
+   */
+  public OutboundCallScheduler setPriority(String action, int priority) {
+    priorities.put(action, priority);
+    return this;
+  }
+
+  /**
+   * Get the priority of an action.
+   *
+   * @param action action name of the feature.
+   * @return the priority of the action.
+   */
+  public int getPriority(String action) {
+    Integer priority = action != null ? priorities.get(action) : null;
+    return priority != null ? priority : DEFAULT_PRIORITY;
+  }
+
+  /**
+   * Get the time to wait for the answer to a sent call.
+   *
+   * @return the call timeout in milliseconds, 0 if calls wait forever.
+   */
+  public long getCallTimeoutMillis() {
+    return timer != null ? callTimeoutMillis : 0;
+  }
+
+  /**
+   * Get the number of calls waiting for the previous call of their session to be answered.
+   *
+   * @return number of queued calls of all sessions.
+   */
+  public int getQueuedCallCount() {
+    return queued.get();
+  }
+
+  /**
+   * Get the number of sent calls that weren't answered in time.
+   *
+   * @return number of timed out calls since creation.
+   */
+  public long getTimedOutCallCount() {
+    return timedOut.get();
+  }
+
+  OutboundCallQueue newSessionQueue(OutboundCallQueue.Sender sender) {
+    return new OutboundCallQueue(this, sender);
+  }
+
+  HashedWheelTimer.Timeout newTimeout(Runnable task) {
+    if (timer == null || callTimeoutMillis <= 0) return null;
+    return timer.newTimeout(task, callTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  TimeoutException newTimeoutException(String uniqueId) {
+    timedOut.incrementAndGet();
+    return new TimeoutException(
+        String.format("No answer to call %s within %d ms", uniqueId, callTimeoutMillis));
+  }
+
+  void queued(int delta) {
+    queued.addAndGet(delta);
+  }
+}
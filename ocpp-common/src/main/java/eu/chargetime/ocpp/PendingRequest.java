@@ -0,0 +1,99 @@
+package eu.chargetime.ocpp;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.utilities.MoreObjects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An outgoing {@link Request} waiting for its answer. Holds everything needed to handle the answer,
+ * so it is resolved with a single lookup in the {@link Queue}.
+ */
+public final class PendingRequest {
+  private final String uniqueId;
+  private final Request request;
+  private final Class<? extends Confirmation> confirmationType;
+  private volatile CompletableFuture<Confirmation> promise;
+
+  PendingRequest(String uniqueId, Request request, Class<? extends Confirmation> confirmationType) {
+    this.uniqueId = uniqueId;
+    this.request = request;
+    this.confirmationType = confirmationType;
+  }
+
+  /**
+   * Get the unique id the {@link Request} was sent with.
+   *
+   * @return the unique id.
+   */
+  public String getUniqueId() {
+    return uniqueId;
+  }
+
+  /**
+   * Get the outgoing {@link Request}.
+   *
+   * @return the {@link Request}, null for a call replayed after a restart.
+   */
+  public Request getRequest() {
+    return request;
+  }
+
+  /**
+   * Get the type of the expected {@link Confirmation}.
+   *
+   * @return the {@link Confirmation} type, null if it wasn't known when the request was stored.
+   */
+  public Class<? extends Confirmation> getConfirmationType() {
+    return confirmationType;
+  }
+
+  /**
+   * Get the call back answered with the {@link Confirmation}.
+   *
+   * @return the promise, null if none was attached.
+   */
+  public CompletableFuture<Confirmation> getPromise() {
+    return promise;
+  }
+
+  void setPromise(CompletableFuture<Confirmation> promise) {
+    this.promise = promise;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("uniqueId", uniqueId)
+        .add("request", request)
+        .add("confirmationType", confirmationType)
+        .toString();
+  }
+}
@@ -25,19 +25,59 @@ package eu.chargetime.ocpp;
    SOFTWARE.
 */
 
+
 import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keeps the call back {@link CompletableFuture}s of outgoing requests until they are answered.
+ *
+ * <p>A repository created with a timeout fails promises that aren't answered in time with a {@link
+ * TimeoutException}, the deadlines are kept on a shared {@link HashedWheelTimer}. Promises created
+ * for a session can be failed all at once, for example when its connection is lost. A promise is
+ * removed as soon as it is completed, whoever completes it.
+ */
 public class PromiseRepository implements IPromiseRepository {
 
-  private Map<String, CompletableFuture<Confirmation>> promises;
+  public static final int DEFAULT_TIMEOUT = 60 * 1000;
+
+  private final Map<String, PendingPromise> promises = new ConcurrentHashMap<>();
+  private final Map<UUID, Set<String>> sessionPromises = new ConcurrentHashMap<>();
+  private final HashedWheelTimer timer;
+  private final long timeoutMillis;
+  private final AtomicLong timedOut = new AtomicLong();
 
+  /** Promises without a timeout, they are kept until answered or removed. */
   public PromiseRepository() {
-    this.promises = new ConcurrentHashMap<>();
+    this(null, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param timeout time to wait for an answer, 0 to wait forever.
+   * @param unit unit of the timeout.
+   */
+  public PromiseRepository(long timeout, TimeUnit unit) {
+    this(HashedWheelTimer.getDefault(), timeout, unit);
+  }
+
+  /**
+   * @param timer timer keeping the deadlines.
+   * @param timeout time to wait for an answer, 0 to wait forever.
+   * @param unit unit of the timeout.
+   */
+  public PromiseRepository(HashedWheelTimer timer, long timeout, TimeUnit unit) {
+    this.timer = timer;
+    this.timeoutMillis = unit.toMillis(timeout);
   }
 
   /**
@@ -47,9 +87,66 @@ public class PromiseRepository implements IPromiseRepository {
    * @return call back {@link CompletableFuture}
    */
   public CompletableFuture<Confirmation> createPromise(String uniqueId) {
-    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
-    promises.put(uniqueId, promise);
-    return promise;
+    return createPromise(uniqueId, null);
+  }
+
+  /**
+   * Creates call back {@link CompletableFuture} for a request sent in a session.
+   *
+   * @param uniqueId identification for the {@link Request}
+   * @param sessionId the session the {@link Request} is sent in.
+   * @return call back {@link CompletableFuture}
+   */
+  @Override
+  public CompletableFuture<Confirmation> createPromise(String uniqueId, UUID sessionId) {
+    return createPromise(uniqueId, sessionId, true);
+  }
+
+  /**
+   * Creates call back {@link CompletableFuture} for a request that may wait before it's sent. The
+   * timeout starts with {@link #startTimeout(String)}.
+   *
+   * @param uniqueId identification for the {@link Request}
+   * @param sessionId the session the {@link Request} is sent in, may be null.
+   * @return call back {@link CompletableFuture}
+   */
+  @Override
+  public CompletableFuture<Confirmation> createQueuedPromise(String uniqueId, UUID sessionId) {
+    return createPromise(uniqueId, sessionId, false);
+  }
+
+  /**
+   * Start the timeout of a promise created with {@link #createQueuedPromise(String, UUID)}.
+   *
+   * @param uniqueId identification for the {@link Request}
+   */
+  @Override
+  public void startTimeout(String uniqueId) {
+    PendingPromise pending = promises.get(uniqueId);
+    if (pending != null && pending.timeout == null) startTimeout(pending);
+  }
+
+  private CompletableFuture<Confirmation> createPromise(
+      String uniqueId, UUID sessionId, boolean startTimeout) {
+    PendingPromise pending = new PendingPromise(uniqueId, sessionId);
+    if (sessionId != null) {
+      // Store and index under the session's entry, so failPromises sees both or neither
+      sessionPromises.compute(
+          sessionId,
+          (key, ids) -> {
+            Set<String> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            store(pending);
+            result.add(uniqueId);
+            return result;
+          });
+    } else {
+      store(pending);
+    }
+
+    if (startTimeout) startTimeout(pending);
+    // A promise completed by its session doesn't need to be looked up again
+    pending.promise.whenComplete((confirmation, throwable) -> release(pending));
+    return pending.promise;
   }
 
   /**
@@ -59,7 +156,8 @@ public class PromiseRepository implements IPromiseRepository {
    * @return optional of call back {@link CompletableFuture}
    */
   public Optional<CompletableFuture<Confirmation>> getPromise(String uniqueId) {
-    return Optional.ofNullable(promises.get(uniqueId));
+    PendingPromise pending = promises.get(uniqueId);
+    return pending != null ? Optional.of(pending.promise) : Optional.empty();
   }
 
   /**
@@ -68,6 +166,117 @@ public class PromiseRepository implements IPromiseRepository {
    * @param uniqueId identification for the {@link Request}
    */
   public void removePromise(String uniqueId) {
-    promises.remove(uniqueId);
+    PendingPromise pending = promises.remove(uniqueId);
+    if (pending != null) {
+      pending.cancelTimeout();
+      unindex(pending);
+    }
+  }
+
+  private void startTimeout(PendingPromise pending) {
+    if (timeoutMillis > 0 && timer != null) {
+      pending.timeout =
+          timer.newTimeout(() -> expire(pending), timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void store(PendingPromise pending) {
+    PendingPromise previous = promises.put(pending.uniqueId, pending);
+    if (previous != null) previous.cancelTimeout();
+  }
+
+  private void release(PendingPromise pending) {
+    if (promises.remove(pending.uniqueId, pending)) {
+      pending.cancelTimeout();
+      unindex(pending);
+    }
+  }
+
+  /**
+   * Fail and remove all promises of a session.
+   *
+   * @param sessionId the session the requests were sent in.
+   * @param cause the exception to complete the promises with.
+   */
+  @Override
+  public void failPromises(UUID sessionId, Throwable cause) {
+    Set<String> ids = sessionPromises.remove(sessionId);
+    if (ids == null) return;
+
+    for (String id : ids) {
+      PendingPromise pending = promises.get(id);
+      if (pending != null && sessionId.equals(pending.sessionId) && promises.remove(id, pending)) {
+        pending.cancelTimeout();
+        pending.promise.completeExceptionally(cause);
+      }
+    }
+  }
+
+  /**
+   * Get the number of promises waiting for an answer.
+   *
+   * @return number of outstanding promises.
+   */
+  public int getPromiseCount() {
+    return promises.size();
+  }
+
+  /**
+   * Get the number of promises waiting for an answer in a session.
+   *
+   * @param sessionId the session the requests were sent in.
+   * @return number of outstanding promises of the session.
+   */
+  public int getPromiseCount(UUID sessionId) {
+    Set<String> ids = sessionPromises.get(sessionId);
+    return ids != null ? ids.size() : 0;
+  }
+
+  /**
+   * Get the number of promises failed because they weren't answered in time.
+   *
+   * @return number of timed out promises since creation.
+   */
+  public long getTimedOutPromiseCount() {
+    return timedOut.get();
+  }
+
+  private void expire(PendingPromise pending) {
+    if (!promises.remove(pending.uniqueId, pending)) return;
+
+    unindex(pending);
+    timedOut.incrementAndGet();
+    pending.promise.completeExceptionally(
+        new TimeoutException(
+            String.format(
+                "No answer to request %s within %d ms", pending.uniqueId, timeoutMillis)));
+  }
+
+  private void unindex(PendingPromise pending) {
+    if (pending.sessionId == null) return;
+
+    sessionPromises.computeIfPresent(
+        pending.sessionId,
+        (key, ids) -> {
+          ids.remove(pending.uniqueId);
+          return ids.isEmpty() ? null : ids;
+        });
+  }
+
+  private static class PendingPromise {
+    private final String uniqueId;
+    private final UUID sessionId;
+    private final CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    private PendingPromise(String uniqueId, UUID sessionId) {
+      this.uniqueId = uniqueId;
+      this.sessionId = sessionId;
+    }
+
+    private void cancelTimeout() {
+      HashedWheelTimer.Timeout current = timeout;
+      if (current != null) current.cancel();
+    }
   }
 }
@@ -26,14 +26,43 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /** Exception used when validating fields. */
 public class PropertyConstraintException extends IllegalArgumentException {
 
   private static final String EXCEPTION_MESSAGE_TEMPLATE =
       "Validation failed: [%s]. Current Value: [%s]";
+  private static final String ERROR_DESCRIPTION_TEMPLATE = "Validation failed: [%s]";
+
+  private final String errorMessage;
 
   public PropertyConstraintException(Object currentFieldValue, String errorMessage) {
     super(createValidationMessage(currentFieldValue, errorMessage));
+    this.errorMessage = errorMessage;
+  }
+
+  /**
+   * Description to send along with a TypeConstraintViolation. Unlike {@link #getMessage()}, it
+   * leaves out the current value of the field, which may be an id tag or other sensitive data.
+   *
+   * @return error description.
+   */
+  public String getErrorDescription() {
+    return String.format(ERROR_DESCRIPTION_TEMPLATE, errorMessage);
+  }
+
+  /**
+   * Details to send along with a TypeConstraintViolation: the violated constraint. The current
+   * value of the field is left out, see {@link #getErrorDescription()}.
+   *
+   * @return error details.
+   */
+  public Map<String, Object> getErrorDetails() {
+    Map<String, Object> details = new LinkedHashMap<>();
+    details.put("constraint", errorMessage);
+    return details;
   }
 
   private static String createValidationMessage(Object fieldValue, String errorMessage) {
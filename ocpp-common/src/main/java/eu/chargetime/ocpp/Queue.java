@@ -1,14 +1,10 @@
 package eu.chargetime.ocpp;
 
+import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
 import eu.chargetime.ocpp.utilities.MoreObjects;
-import eu.chargetime.ocpp.utilities.Stopwatch;
-import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ThreadLocalRandom;
 
 /*
 ChargeTime.eu - Java-OCA-OCPP
@@ -37,16 +33,31 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
-/** Class to store and restore requests based on a unique id. */
+/**
+ * Class to store and restore requests based on a unique id.
+ *
+ * <p>Ids are made of a random prefix, drawn once per queue, and a counter. They stay unique when a
+ * session reconnects and are much cheaper to create than random UUIDs.
+ *
+ * <p>Each request is kept as a {@link PendingRequest} together with its expected confirmation type
+ * and promise. OCPP-J allows a single outstanding call per direction, so only a few requests are
+ * stored at a time. They are kept in a small open-addressed table that grows when needed.
+ */
 public class Queue {
-  private static final Logger logger = LoggerFactory.getLogger(Queue.class);
+  public static final int REQUEST_QUEUE_INITIAL_CAPACITY = 4;
 
-  public static final int REQUEST_QUEUE_INITIAL_CAPACITY = 1000;
+  private static final String SEPARATOR = "-";
 
-  private Map<String, Request> requestQueue;
+  private final String prefix;
+  private long counter;
+  private String[] tickets;
+  private PendingRequest[] requests;
+  private int size;
 
   public Queue() {
-    requestQueue = new ConcurrentHashMap<>(REQUEST_QUEUE_INITIAL_CAPACITY);
+    prefix = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36) + SEPARATOR;
+    tickets = new String[REQUEST_QUEUE_INITIAL_CAPACITY];
+    requests = new PendingRequest[REQUEST_QUEUE_INITIAL_CAPACITY];
   }
 
   /**
@@ -56,16 +67,38 @@ public class Queue {
    * @return a unique identifier used to fetch the request.
    */
   public String store(Request request) {
-    Stopwatch stopwatch = Stopwatch.createStarted();
-
-    String ticket = UUID.randomUUID().toString();
-    requestQueue.put(ticket, request);
-
-    logger.debug("Queue size: {}, store time: {}", requestQueue.size(), stopwatch.stop());
+    return store(request, null);
+  }
 
+  /**
+   * Store a {@link Request} with the type of its expected {@link Confirmation}.
+   *
+   * @param request the {@link Request}.
+   * @param confirmationType type of the {@link Confirmation} answering the request.
+   * @return a unique identifier used to fetch the request.
+   */
+  public synchronized String store(
+      Request request, Class<? extends Confirmation> confirmationType) {
+    String ticket = prefix + Long.toString(++counter, 36);
+    if ((size + 1) * 2 > tickets.length) resize(tickets.length * 2);
+    insert(ticket, new PendingRequest(ticket, request, confirmationType));
     return ticket;
   }
 
+  /**
+   * Store a call that was made before a restart under its original unique identifier. The {@link
+   * Request} itself isn't known anymore.
+   *
+   * @param ticket the unique identifier the call was made with.
+   * @param confirmationType type of the {@link Confirmation} answering the call.
+   */
+  public synchronized void storeReplayed(
+      String ticket, Class<? extends Confirmation> confirmationType) {
+    if (indexOf(ticket) >= 0) return;
+    if ((size + 1) * 2 > tickets.length) resize(tickets.length * 2);
+    insert(ticket, new PendingRequest(ticket, null, confirmationType));
+  }
+
   /**
    * Restore a {@link Request} using a unique identifier. The identifier can only be used once. If
    * no Request was found, null is returned.
@@ -74,23 +107,130 @@ public class Queue {
    * @return the optional with stored {@link Request}
    */
   public Optional<Request> restoreRequest(String ticket) {
-    Stopwatch stopwatch = Stopwatch.createStarted();
+    PendingRequest pending = take(ticket);
+    return pending != null ? Optional.ofNullable(pending.getRequest()) : Optional.empty();
+  }
+
+  /**
+   * Look up a stored {@link Request} without consuming it.
+   *
+   * @param ticket unique identifier returned when {@link Request} was initially stored.
+   * @return the optional with stored {@link Request}
+   */
+  public Optional<Request> peekRequest(String ticket) {
+    PendingRequest pending = peek(ticket);
+    return pending != null ? Optional.ofNullable(pending.getRequest()) : Optional.empty();
+  }
+
+  /**
+   * Remove and return a {@link PendingRequest}. The identifier can only be used once.
+   *
+   * @param ticket unique identifier returned when {@link Request} was initially stored.
+   * @return the stored {@link PendingRequest}, null if not found.
+   */
+  public synchronized PendingRequest take(String ticket) {
+    int index = indexOf(ticket);
+    if (index < 0) return null;
+
+    PendingRequest pending = requests[index];
+    delete(index);
+    return pending;
+  }
 
-    try {
-      Request request = requestQueue.get(ticket);
-      requestQueue.remove(ticket);
+  /**
+   * Look up a {@link PendingRequest} without consuming it.
+   *
+   * @param ticket unique identifier returned when {@link Request} was initially stored.
+   * @return the stored {@link PendingRequest}, null if not found.
+   */
+  public synchronized PendingRequest peek(String ticket) {
+    int index = indexOf(ticket);
+    return index < 0 ? null : requests[index];
+  }
+
+  /**
+   * Remove a {@link PendingRequest} if it is still stored.
+   *
+   * @param pending the {@link PendingRequest} to remove.
+   * @return true if it was removed.
+   */
+  public synchronized boolean remove(PendingRequest pending) {
+    int index = indexOf(pending.getUniqueId());
+    if (index < 0 || requests[index] != pending) return false;
+
+    delete(index);
+    return true;
+  }
+
+  /**
+   * Get the number of stored requests.
+   *
+   * @return number of requests waiting to be restored.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  private int slot(String ticket, int length) {
+    int hash = ticket.hashCode();
+    return (hash ^ (hash >>> 16)) & (length - 1);
+  }
+
+  private int indexOf(String ticket) {
+    if (ticket == null) return -1;
+
+    int mask = tickets.length - 1;
+    for (int i = slot(ticket, tickets.length); tickets[i] != null; i = (i + 1) & mask) {
+      if (tickets[i].equals(ticket)) return i;
+    }
+    return -1;
+  }
+
+  private void insert(String ticket, PendingRequest pending) {
+    int mask = tickets.length - 1;
+    int i = slot(ticket, tickets.length);
+    while (tickets[i] != null) i = (i + 1) & mask;
+    tickets[i] = ticket;
+    requests[i] = pending;
+    size++;
+  }
 
-      logger.debug("Queue size: {}, store time: {}", requestQueue.size(), stopwatch.stop());
+  /** Remove an entry and shift the following entries of its probe sequence back into place. */
+  private void delete(int index) {
+    int mask = tickets.length - 1;
+    int hole = index;
+    for (int i = (index + 1) & mask; tickets[i] != null; i = (i + 1) & mask) {
+      int home = slot(tickets[i], tickets.length);
+      // Move the entry unless its home slot lies cyclically between the hole and its position
+      boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+      if (movable) {
+        tickets[hole] = tickets[i];
+        requests[hole] = requests[i];
+        hole = i;
+      }
+    }
+    tickets[hole] = null;
+    requests[hole] = null;
+    size--;
+
+    if (tickets.length > REQUEST_QUEUE_INITIAL_CAPACITY && size * 8 < tickets.length) {
+      resize(tickets.length / 2);
+    }
+  }
 
-      return Optional.ofNullable(request);
-    } catch (Exception ex) {
-      logger.warn("restoreRequest({}) failed", ticket, ex);
+  private void resize(int capacity) {
+    String[] oldTickets = tickets;
+    PendingRequest[] oldRequests = requests;
+    tickets = new String[capacity];
+    requests = new PendingRequest[capacity];
+    size = 0;
+    for (int i = 0; i < oldTickets.length; i++) {
+      if (oldTickets[i] != null) insert(oldTickets[i], oldRequests[i]);
     }
-    return Optional.empty();
   }
 
   @Override
-  public String toString() {
-    return MoreObjects.toStringHelper(this).add("requestQueue", requestQueue).toString();
+  public synchronized String toString() {
+    return MoreObjects.toStringHelper(this).add("prefix", prefix).add("size", size).toString();
   }
 }
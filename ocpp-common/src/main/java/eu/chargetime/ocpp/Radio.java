@@ -34,7 +34,8 @@ public interface Radio {
   /**
    * Send a message to a node.
    *
-   * @param message test message to send.
+   * @param message test message to send. Text based radios also accept an UTF-8 encoded {@link
+   *     java.nio.ByteBuffer}.
    * @exception NotConnectedException Message couldn't be sent due to the lack of connection.
    */
   void send(Object message) throws NotConnectedException;
@@ -35,7 +35,8 @@ public interface RadioEvents {
   /**
    * Incoming message from node.
    *
-   * @param message message object.
+   * @param message message object. Text based radios may deliver an UTF-8 encoded {@link
+   *     java.nio.ByteBuffer}, only valid for the duration of the call.
    */
   void receivedMessage(Object message);
 
@@ -0,0 +1,212 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.utilities.SerialExecutor;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs incoming requests on a pool of workers shared by the sessions of a server or client.
+ *
+ * <p>Each session gets its own executor from {@link #newSessionExecutor()}, which handles its
+ * requests one at a time and in the order they arrived. The number of requests waiting or running
+ * is limited, once the limit is reached new requests are rejected with a {@link
+ * RejectedExecutionException} so the peer can be told to retry later.
+ *
+ * <p>Idle workers are stopped after a minute, so an executor doesn't need to be shut down unless
+ * it is given its own {@link ExecutorService}.
+ */
+public class RequestHandlerExecutor {
+
+  public static final int DEFAULT_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+  public static final int DEFAULT_MAX_PENDING_REQUESTS = 10000;
+
+  private static final int KEEP_ALIVE_SECONDS = 60;
+  private static final AtomicInteger poolCount = new AtomicInteger();
+
+  private static volatile RequestHandlerExecutor defaultExecutor;
+
+  private final ExecutorService pool;
+  private final int maxPendingRequests;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Executor with {@value #DEFAULT_MAX_PENDING_REQUESTS} pending requests and one worker per
+   * processor, at least four.
+   */
+  public RequestHandlerExecutor() {
+    this(DEFAULT_WORKERS, DEFAULT_MAX_PENDING_REQUESTS);
+  }
+
+  /**
+   * @param workers maximum number of requests handled at the same time.
+   * @param maxPendingRequests maximum number of requests waiting or running.
+   */
+  public RequestHandlerExecutor(int workers, int maxPendingRequests) {
+    this(newPool(workers), maxPendingRequests);
+  }
+
+  /**
+   * @param pool pool to run the requests on, the caller owns its lifecycle.
+   * @param maxPendingRequests maximum number of requests waiting or running.
+   */
+  public RequestHandlerExecutor(ExecutorService pool, int maxPendingRequests) {
+    if (maxPendingRequests < 1) {
+      throw new IllegalArgumentException("maxPendingRequests must be positive");
+    }
+    this.pool = pool;
+    this.maxPendingRequests = maxPendingRequests;
+  }
+
+  /**
+   * Get the executor shared by sessions that weren't given one.
+   *
+   * @return the shared {@link RequestHandlerExecutor}.
+   */
+  public static RequestHandlerExecutor getDefault() {
+    RequestHandlerExecutor executor = defaultExecutor;
+    if (executor == null) {
+      synchronized (RequestHandlerExecutor.class) {
+        executor = defaultExecutor;
+        if (executor == null) {
+          executor = new RequestHandlerExecutor();
+          defaultExecutor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * Replace the shared executor, sessions created afterwards use the new one.
+   *
+   * @param executor the new shared {@link RequestHandlerExecutor}.
+   */
+  public static void setDefault(RequestHandlerExecutor executor) {
+    defaultExecutor = executor;
+  }
+
+  /**
+   * Create an executor for the requests of one session. Requests are rejected with a {@link
+   * RejectedExecutionException} while {@link #getPendingRequestCount()} is at the limit.
+   *
+   * @return a new {@link Executor} running one request at a time.
+   */
+  public Executor newSessionExecutor() {
+    SerialExecutor serialExecutor = new SerialExecutor(pool);
+    return task -> {
+      if (pending.incrementAndGet() > maxPendingRequests) {
+        pending.decrementAndGet();
+        rejected.incrementAndGet();
+        throw new RejectedExecutionException("Too many pending requests");
+      }
+      serialExecutor.execute(
+          () -> {
+            active.incrementAndGet();
+            try {
+              task.run();
+            } finally {
+              active.decrementAndGet();
+              pending.decrementAndGet();
+            }
+          });
+    };
+  }
+
+  /**
+   * Get the number of requests waiting or running.
+   *
+   * @return number of pending requests.
+   */
+  public int getPendingRequestCount() {
+    return pending.get();
+  }
+
+  /**
+   * Get the number of requests waiting for a worker or for an earlier request of their session.
+   *
+   * @return number of queued requests.
+   */
+  public int getQueuedRequestCount() {
+    return Math.max(0, pending.get() - active.get());
+  }
+
+  /**
+   * Get the number of workers currently handling a request.
+   *
+   * @return number of active workers.
+   */
+  public int getActiveWorkerCount() {
+    return active.get();
+  }
+
+  /**
+   * Get the number of requests rejected because too many were pending.
+   *
+   * @return number of rejected requests since creation.
+   */
+  public long getRejectedRequestCount() {
+    return rejected.get();
+  }
+
+  /** Stop the workers, requests still waiting won't be handled. */
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+
+  private static ExecutorService newPool(int workers) {
+    int poolNumber = poolCount.incrementAndGet();
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable ->
+            new Thread(
+                runnable,
+                String.format("ocpp-handler-%d-%d", poolNumber, threadCount.incrementAndGet()));
+
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            workers,
+            workers,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            // Holds at most one task per session, requests are limited by maxPendingRequests.
+            new LinkedBlockingQueue<>(),
+            threadFactory);
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+}
@@ -0,0 +1,741 @@
+package eu.chargetime.ocpp;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ITransactionQueue} that survives a restart. Calls are appended to a log of memory mapped
+ * segment files in a directory, the position of the oldest call not yet sent is kept in a
+ * checkpoint file. On start up the log is replayed from the checkpoint.
+ *
+ * <p>Calls are delivered at least once: a call sent right before the process stopped may be sent
+ * again after a restart. The id and action of each call are stored with it, so the answer to a
+ * replayed call can still be handled, see {@link #peekReplayed()}.
+ *
+ * <p>Writes are forced to disk in groups. Without a sync interval, {@link #offer(String, String,
+ * Object)} returns once the call is on disk, and concurrent offers share a single force. With a sync
+ * interval, a background thread forces the log periodically and calls stored since the last force
+ * may be lost.
+ *
+ * <p>The log is limited to a max size. When it is full, MeterValues calls are dropped as set by the
+ * {@link MeterValuesPolicy} and the remaining calls are compacted into new segments, which briefly
+ * needs room for a copy of them. Other calls are rejected once no MeterValues are left to drop.
+ *
+ * <pre>{@code
+ * ITransactionQueue queue =
+ *     new SegmentLogTransactionQueue.Builder(Paths.get("/var/lib/ocpp/queue"))
+ *         .maxSize(16 * 1024 * 1024)
+ *         .build();
+ * }</pre>
+ */
+public class SegmentLogTransactionQueue implements ITransactionQueue, Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(SegmentLogTransactionQueue.class);
+
+  public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+  public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+  public static final String METER_VALUES_ACTION = "MeterValues";
+
+  /** Stores the call as UTF-8 text and replays it as a String, fits the JSON communicator. */
+  public static final Serializer TEXT_SERIALIZER =
+      new Serializer() {
+        @Override
+        public byte[] toBytes(Object call) {
+          return call.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object fromBytes(byte[] bytes) {
+          return new String(bytes, StandardCharsets.UTF_8);
+        }
+      };
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String COMPACTING_SUFFIX = ".compacting";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  private static final int CHECKPOINT_SIZE = 16;
+
+  // A record is: payload length, CRC32 of the payload, flags, payload. The payload is the unique
+  // id and the action, each prefixed by a 16 bit length, followed by the serialized call.
+  private static final int RECORD_HEADER_SIZE = 9;
+  private static final int CRC_OFFSET = 4;
+  private static final int FLAGS_OFFSET = 8;
+  private static final byte FLAG_DROPPABLE = 1;
+  private static final byte FLAG_DROPPED = 2;
+  private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+  /** What to do with MeterValues calls when the log is full. */
+  public enum MeterValuesPolicy {
+    /** Drop the oldest stored MeterValues calls to make room. */
+    DROP_OLDEST,
+    /** Reject new MeterValues calls, keep the stored ones. */
+    DROP_NEWEST
+  }
+
+  /** Converts a packed call to and from the bytes stored in the log. */
+  public interface Serializer {
+    byte[] toBytes(Object call);
+
+    Object fromBytes(byte[] bytes);
+  }
+
+  private final Path directory;
+  private final int segmentSize;
+  private final long maxSize;
+  private final MeterValuesPolicy meterValuesPolicy;
+  private final Serializer serializer;
+  private final long syncIntervalMillis;
+
+  private final List<Segment> segments = new ArrayList<>();
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+  private final Set<MappedByteBuffer> dirty =
+      Collections.newSetFromMap(new IdentityHashMap<MappedByteBuffer, Boolean>());
+  private final Object commitLock = new Object();
+  private final MappedByteBuffer checkpoint;
+  private final ScheduledExecutorService syncer;
+
+  private long checkpointSegment;
+  private long diskSize;
+  private long liveSize;
+  private long version;
+  private long committed;
+  private long droppedCount;
+  private Entry cachedEntry;
+  private Object cachedCall;
+  private boolean closed;
+
+  private SegmentLogTransactionQueue(Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.segmentSize = builder.segmentSize;
+    this.maxSize = builder.maxSize;
+    this.meterValuesPolicy = builder.meterValuesPolicy;
+    this.serializer = builder.serializer;
+    this.syncIntervalMillis = builder.syncIntervalMillis;
+
+    Files.createDirectories(directory);
+    checkpoint = map(directory.resolve(CHECKPOINT_FILE), CHECKPOINT_SIZE, false);
+    recover();
+
+    if (syncIntervalMillis > 0) {
+      syncer =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "ocpp-transaction-log-sync");
+                thread.setDaemon(true);
+                return thread;
+              });
+      syncer.scheduleWithFixedDelay(
+          this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      syncer = null;
+    }
+  }
+
+  @Override
+  public boolean offer(String uniqueId, String action, Object call) {
+    byte[] payload = encode(uniqueId, action, serializer.toBytes(call));
+    if (payload == null) {
+      logger.warn("Unique id or action of {} call is too long to store", action);
+      return false;
+    }
+    boolean droppable = METER_VALUES_ACTION.equals(action);
+    long sequence;
+    synchronized (this) {
+      if (closed) throw new IllegalStateException("Transaction queue is closed");
+      try {
+        if (!reserve(RECORD_HEADER_SIZE + payload.length, droppable)) {
+          logger.warn("Transaction queue is full, can't store {} call", action);
+          return false;
+        }
+        entries.add(append(payload, droppable));
+      } catch (IOException ex) {
+        logger.error("Failed to store {} call in transaction queue", action, ex);
+        return false;
+      }
+      sequence = ++version;
+    }
+    if (syncIntervalMillis <= 0) commit(sequence);
+    return true;
+  }
+
+  @Override
+  public synchronized Object peek() {
+    Entry head = entries.peekFirst();
+    if (head == null) return null;
+    if (head != cachedEntry) {
+      ByteBuffer record = ByteBuffer.wrap(read(head));
+      readString(record);
+      readString(record);
+      cachedCall =
+          serializer.fromBytes(
+              Arrays.copyOfRange(record.array(), record.position(), record.limit()));
+      cachedEntry = head;
+    }
+    return cachedCall;
+  }
+
+  @Override
+  public synchronized ReplayedCall peekReplayed() {
+    Entry head = entries.peekFirst();
+    if (head == null || !head.replayed) return null;
+    ByteBuffer record = ByteBuffer.wrap(read(head));
+    String uniqueId = readString(record);
+    return new ReplayedCall(uniqueId, readString(record));
+  }
+
+  @Override
+  public void pop() {
+    long sequence;
+    synchronized (this) {
+      Entry head = entries.pollFirst();
+      if (head == null) return;
+      liveSize -= head.size();
+      if (head == cachedEntry) {
+        cachedEntry = null;
+        cachedCall = null;
+      }
+      writeCheckpointAtHead();
+      releaseConsumedSegments();
+      sequence = ++version;
+    }
+    if (syncIntervalMillis <= 0) commit(sequence);
+  }
+
+  @Override
+  public synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  @Override
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Size of the segment files on disk.
+   *
+   * @return size in bytes.
+   */
+  public synchronized long getDiskSize() {
+    return diskSize;
+  }
+
+  /**
+   * Number of MeterValues calls dropped because the log was full.
+   *
+   * @return number of dropped calls.
+   */
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /** Force all stored calls to disk. */
+  public void sync() {
+    long sequence;
+    synchronized (this) {
+      sequence = version;
+    }
+    commit(sequence);
+  }
+
+  /** Force all stored calls to disk and stop the background sync. */
+  @Override
+  public void close() {
+    if (syncer != null) syncer.shutdown();
+    sync();
+    synchronized (this) {
+      closed = true;
+    }
+  }
+
+  /**
+   * Group commit: the first writer to get here forces everything written so far, the writers that
+   * waited meanwhile find their writes already on disk.
+   */
+  private void commit(long sequence) {
+    synchronized (commitLock) {
+      if (committed >= sequence) return;
+      List<MappedByteBuffer> buffers;
+      long target;
+      synchronized (this) {
+        target = version;
+        buffers = new ArrayList<>(dirty);
+        dirty.clear();
+      }
+      for (MappedByteBuffer buffer : buffers) buffer.force();
+      committed = target;
+    }
+  }
+
+  private boolean reserve(int recordSize, boolean droppable) throws IOException {
+    Segment tail = tail();
+    if (tail != null && tail.remaining() >= recordSize) return true;
+
+    int newSegmentSize = Math.max(segmentSize, recordSize);
+    if (diskSize + newSegmentSize <= maxSize) {
+      roll(newSegmentSize);
+      return true;
+    }
+
+    if (droppable && meterValuesPolicy == MeterValuesPolicy.DROP_NEWEST) {
+      droppedCount++;
+      return false;
+    }
+    if (!dropOldestMeterValues(recordSize)) return false;
+    compact();
+
+    tail = tail();
+    if (tail.remaining() >= recordSize) return true;
+    if (diskSize + newSegmentSize > maxSize) return false;
+    roll(newSegmentSize);
+    return true;
+  }
+
+  /**
+   * Drop the oldest MeterValues until the live records, the new record and a segment of slack fit
+   * in the max size. The head is never dropped, it may be on its way to the server.
+   */
+  private boolean dropOldestMeterValues(int recordSize) {
+    long room = maxSize - segmentSize - recordSize;
+    long droppableSize = 0;
+    Iterator<Entry> iterator = entries.iterator();
+    if (iterator.hasNext()) iterator.next();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.droppable) droppableSize += entry.size();
+    }
+    if (liveSize - droppableSize > room) return false;
+
+    iterator = entries.iterator();
+    if (iterator.hasNext()) iterator.next();
+    while (liveSize > room && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (!entry.droppable) continue;
+      entry.segment.buffer.put(entry.offset + FLAGS_OFFSET, (byte) (FLAG_DROPPABLE | FLAG_DROPPED));
+      dirty.add(entry.segment.buffer);
+      iterator.remove();
+      liveSize -= entry.size();
+      droppedCount++;
+    }
+    logger.warn("Transaction queue is full, dropped {} MeterValues calls so far", droppedCount);
+    return true;
+  }
+
+  /**
+   * Copy the live records into new segments, then drop the old ones. The new segments are written
+   * as compacting files and only renamed once the checkpoint points at them, so a crash at any
+   * point leaves either the old or the new log to recover.
+   */
+  private void compact() throws IOException {
+    long id = segments.isEmpty() ? 0 : tail().id + 1;
+    List<Segment> compacted = new ArrayList<>();
+    List<Segment> owners = new ArrayList<>();
+    List<Integer> offsets = new ArrayList<>();
+    Segment current = null;
+    for (Entry entry : entries) {
+      int size = entry.size();
+      if (current == null || current.remaining() < size) {
+        current = createSegment(id++, Math.max(segmentSize, size), COMPACTING_SUFFIX);
+        compacted.add(current);
+      }
+      ByteBuffer source = entry.segment.buffer.duplicate();
+      source.limit(entry.offset + size).position(entry.offset);
+      ByteBuffer target = current.buffer.duplicate();
+      target.position(current.writePosition);
+      target.put(source);
+      owners.add(current);
+      offsets.add(current.writePosition);
+      current.writePosition += size;
+    }
+    if (compacted.isEmpty()) compacted.add(createSegment(id, segmentSize, COMPACTING_SUFFIX));
+    for (Segment segment : compacted) segment.buffer.force();
+
+    writeCheckpoint(compacted.get(0).id, 0);
+    checkpoint.force();
+
+    // Rename the first segment last: recovery finishes the compaction while it is still missing.
+    for (int i = compacted.size() - 1; i >= 0; i--) {
+      Segment segment = compacted.get(i);
+      Path path = segmentPath(segment.id, SEGMENT_SUFFIX);
+      Files.move(segment.path, path, StandardCopyOption.ATOMIC_MOVE);
+      segment.path = path;
+    }
+    for (Segment segment : segments) delete(segment);
+    segments.clear();
+    segments.addAll(compacted);
+
+    int index = 0;
+    for (Entry entry : entries) {
+      entry.segment = owners.get(index);
+      entry.offset = offsets.get(index++);
+    }
+  }
+
+  private Entry append(byte[] payload, boolean droppable) {
+    Segment tail = tail();
+    int offset = tail.writePosition;
+    ByteBuffer target = tail.buffer.duplicate();
+    target.position(offset + RECORD_HEADER_SIZE);
+    target.put(payload);
+    tail.buffer.putInt(offset + CRC_OFFSET, crc(payload));
+    tail.buffer.put(offset + FLAGS_OFFSET, droppable ? FLAG_DROPPABLE : 0);
+    // The length goes last, a record is invalid until it is set.
+    tail.buffer.putInt(offset, payload.length);
+    dirty.add(tail.buffer);
+
+    Entry entry = new Entry(tail, offset, payload.length, droppable);
+    tail.writePosition += entry.size();
+    liveSize += entry.size();
+    return entry;
+  }
+
+  private void roll(int size) throws IOException {
+    long id = segments.isEmpty() ? checkpointSegment : tail().id + 1;
+    segments.add(createSegment(id, size, SEGMENT_SUFFIX));
+  }
+
+  private void recover() throws IOException {
+    long checkpointId = checkpoint.getLong(0);
+    int checkpointPosition = checkpoint.getInt(8);
+    boolean valid = checkpoint.getInt(12) == checkpointCrc(checkpointId, checkpointPosition);
+    if (!valid) {
+      checkpointId = 0;
+      checkpointPosition = 0;
+    }
+
+    TreeMap<Long, Path> found = new TreeMap<>();
+    TreeMap<Long, Path> compacting = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(SEGMENT_SUFFIX)) found.put(segmentId(name, SEGMENT_SUFFIX), file);
+        else if (name.endsWith(COMPACTING_SUFFIX))
+          compacting.put(segmentId(name, COMPACTING_SUFFIX), file);
+      }
+    }
+
+    // The checkpoint was moved to a compaction that wasn't renamed yet: finish it.
+    if (valid && !found.containsKey(checkpointId) && compacting.containsKey(checkpointId)) {
+      for (Long id : compacting.tailMap(checkpointId).keySet()) {
+        Path path = segmentPath(id, SEGMENT_SUFFIX);
+        Files.move(compacting.remove(id), path, StandardCopyOption.ATOMIC_MOVE);
+        found.put(id, path);
+      }
+    }
+    for (Path file : compacting.values()) Files.delete(file);
+
+    for (Long id : found.keySet()) {
+      Path path = found.get(id);
+      if (valid && id < checkpointId) {
+        Files.delete(path);
+        continue;
+      }
+      Segment segment = new Segment(id, path, map(path, Files.size(path), true));
+      diskSize += segment.buffer.capacity();
+      scan(segment, id == checkpointId ? checkpointPosition : 0);
+      segments.add(segment);
+    }
+
+    Segment tail = tail();
+    if (tail != null) {
+      // Clear anything past the last valid record, a torn write must not look valid later on.
+      for (int position = tail.writePosition; position < tail.buffer.capacity(); position++) {
+        tail.buffer.put(position, (byte) 0);
+      }
+      dirty.add(tail.buffer);
+    }
+    checkpointSegment = checkpointId;
+    writeCheckpointAtHead();
+    releaseConsumedSegments();
+    commit(++version);
+    if (!entries.isEmpty()) logger.info("Replayed {} stored calls from {}", size(), directory);
+  }
+
+  private void scan(Segment segment, int start) {
+    MappedByteBuffer buffer = segment.buffer;
+    int position = 0;
+    while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) break;
+      Entry entry = new Entry(segment, position, length, false);
+      if (crc(read(entry)) != buffer.getInt(position + CRC_OFFSET)) {
+        logger.warn("Corrupt record in {} at {}, ignoring the rest", segment.path, position);
+        break;
+      }
+      byte flags = buffer.get(position + FLAGS_OFFSET);
+      if (position >= start && (flags & FLAG_DROPPED) == 0) {
+        entry.droppable = (flags & FLAG_DROPPABLE) != 0;
+        entry.replayed = true;
+        entries.add(entry);
+        liveSize += entry.size();
+      }
+      position += entry.size();
+    }
+    segment.writePosition = position;
+  }
+
+  private void writeCheckpointAtHead() {
+    Entry head = entries.peekFirst();
+    if (head != null) writeCheckpoint(head.segment.id, head.offset);
+    else if (!segments.isEmpty()) writeCheckpoint(tail().id, tail().writePosition);
+    else writeCheckpoint(checkpointSegment, 0);
+  }
+
+  private void writeCheckpoint(long segmentId, int position) {
+    checkpoint.putLong(0, segmentId);
+    checkpoint.putInt(8, position);
+    checkpoint.putInt(12, checkpointCrc(segmentId, position));
+    dirty.add(checkpoint);
+    checkpointSegment = segmentId;
+  }
+
+  private void releaseConsumedSegments() {
+    while (segments.size() > 1 && segments.get(0).id < checkpointSegment) {
+      delete(segments.remove(0));
+    }
+  }
+
+  private void delete(Segment segment) {
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException ex) {
+      logger.warn("Failed to delete segment {}", segment.path, ex);
+    }
+    dirty.remove(segment.buffer);
+    diskSize -= segment.buffer.capacity();
+  }
+
+  private Segment createSegment(long id, int size, String suffix) throws IOException {
+    Path path = segmentPath(id, suffix);
+    Segment segment = new Segment(id, path, map(path, size, true));
+    diskSize += size;
+    return segment;
+  }
+
+  private static MappedByteBuffer map(Path path, long size, boolean truncate) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      if (truncate && channel.size() > size) channel.truncate(size);
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private Path segmentPath(long id, String suffix) {
+    return directory.resolve(String.format("%020d%s", id, suffix));
+  }
+
+  private static long segmentId(String name, String suffix) {
+    return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+  }
+
+  private static byte[] read(Entry entry) {
+    byte[] payload = new byte[entry.length];
+    ByteBuffer source = entry.segment.buffer.duplicate();
+    source.position(entry.offset + RECORD_HEADER_SIZE);
+    source.get(payload);
+    return payload;
+  }
+
+  private static byte[] encode(String uniqueId, String action, byte[] call) {
+    byte[] id = uniqueId == null ? new byte[0] : uniqueId.getBytes(StandardCharsets.UTF_8);
+    byte[] name = action == null ? new byte[0] : action.getBytes(StandardCharsets.UTF_8);
+    if (id.length > MAX_STRING_LENGTH || name.length > MAX_STRING_LENGTH) return null;
+    return ByteBuffer.allocate(4 + id.length + name.length + call.length)
+        .putShort((short) id.length)
+        .put(id)
+        .putShort((short) name.length)
+        .put(name)
+        .put(call)
+        .array();
+  }
+
+  private static String readString(ByteBuffer record) {
+    int length = record.getShort() & MAX_STRING_LENGTH;
+    String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+    record.position(record.position() + length);
+    return value.isEmpty() ? null : value;
+  }
+
+  private static int crc(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+
+  private static int checkpointCrc(long segmentId, int position) {
+    return crc(ByteBuffer.allocate(12).putLong(segmentId).putInt(position).array());
+  }
+
+  private Segment tail() {
+    return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+  }
+
+  private static class Segment {
+    private final long id;
+    private final MappedByteBuffer buffer;
+    private Path path;
+    private int writePosition;
+
+    private Segment(long id, Path path, MappedByteBuffer buffer) {
+      this.id = id;
+      this.path = path;
+      this.buffer = buffer;
+    }
+
+    private int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+  }
+
+  private static class Entry {
+    private final int length;
+    private Segment segment;
+    private int offset;
+    private boolean droppable;
+    private boolean replayed;
+
+    private Entry(Segment segment, int offset, int length, boolean droppable) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.droppable = droppable;
+    }
+
+    private int size() {
+      return RECORD_HEADER_SIZE + length;
+    }
+  }
+
+  /** Configures a {@link SegmentLogTransactionQueue}. */
+  public static class Builder {
+    private final Path directory;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long maxSize = DEFAULT_MAX_SIZE;
+    private long syncIntervalMillis;
+    private MeterValuesPolicy meterValuesPolicy = MeterValuesPolicy.DROP_OLDEST;
+    private Serializer serializer = TEXT_SERIALIZER;
+
+    /**
+     * @param directory directory for the log files, created if missing. Must not be shared with
+     *     another queue.
+     */
+    public Builder(Path directory) {
+      this.directory = directory;
+    }
+
+    /**
+     * Size of a segment file, a call larger than this gets a segment of its own.
+     *
+     * @param segmentSize size in bytes.
+     * @return this builder.
+     */
+    public Builder segmentSize(int segmentSize) {
+      if (segmentSize <= RECORD_HEADER_SIZE)
+        throw new IllegalArgumentException("segmentSize is too small");
+      this.segmentSize = segmentSize;
+      return this;
+    }
+
+    /**
+     * Max size of all segment files together.
+     *
+     * @param maxSize size in bytes, at least two segments.
+     * @return this builder.
+     */
+    public Builder maxSize(long maxSize) {
+      this.maxSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Force the log to disk periodically instead of on every call stored.
+     *
+     * @param interval time between forces, 0 to force on every call.
+     * @param unit unit of the interval.
+     * @return this builder.
+     */
+    public Builder syncInterval(long interval, TimeUnit unit) {
+      this.syncIntervalMillis = unit.toMillis(interval);
+      return this;
+    }
+
+    public Builder meterValuesPolicy(MeterValuesPolicy meterValuesPolicy) {
+      this.meterValuesPolicy = meterValuesPolicy;
+      return this;
+    }
+
+    /**
+     * How calls are stored, {@link #TEXT_SERIALIZER} by default.
+     *
+     * @param serializer the serializer matching the communicator's packed calls.
+     * @return this builder.
+     */
+    public Builder serializer(Serializer serializer) {
+      this.serializer = serializer;
+      return this;
+    }
+
+    /**
+     * Open the log, replaying any calls stored earlier.
+     *
+     * @return the queue.
+     * @throws IOException the log couldn't be opened.
+     */
+    public SegmentLogTransactionQueue build() throws IOException {
+      if (maxSize < 2L * segmentSize)
+        throw new IllegalArgumentException("maxSize must hold at least two segments");
+      return new SegmentLogTransactionQueue(this);
+    }
+  }
+}
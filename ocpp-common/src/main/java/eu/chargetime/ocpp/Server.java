@@ -40,6 +40,10 @@ import org.slf4j.LoggerFactory;
 /**
  * Handles basic server logic: Holds a list of supported features. Keeps track of outgoing requests.
  * Calls back when a confirmation is received.
+ *
+ * <p>Sessions are indexed by their {@link UUID} and by the identifier of the connecting charge point
+ * (see {@link SessionInformation#getIdentifier()}). A charge point that reconnects replaces its
+ * previous session, which is then closed.
  */
 public class Server {
 
@@ -48,6 +52,7 @@ public class Server {
   public static final int INITIAL_SESSIONS_NUMBER = 1000;
 
   private Map<UUID, ISession> sessions;
+  private final Map<String, ISession> sessionsByIdentifier;
   private Listener listener;
   private final IFeatureRepository featureRepository;
   private final IPromiseRepository promiseRepository;
@@ -65,6 +70,7 @@ public class Server {
     this.featureRepository = featureRepository;
     this.promiseRepository = promiseRepository;
     this.sessions = new ConcurrentHashMap<>(INITIAL_SESSIONS_NUMBER);
+    this.sessionsByIdentifier = new ConcurrentHashMap<>(INITIAL_SESSIONS_NUMBER);
   }
 
   /**
@@ -90,45 +96,45 @@ public class Server {
 
           @Override
           public void newSession(ISession session, SessionInformation information) {
+            UUID sessionId = session.getSessionId();
+            String identifier = information != null ? information.getIdentifier() : null;
+
             session.accept(
                 new SessionEvents() {
+                  private volatile boolean closed;
+
                   @Override
                   public void handleConfirmation(String uniqueId, Confirmation confirmation) {
-
+                    // Sessions that complete their promises already did, only look up the others
+                    if (session.completesPromises()) return;
                     Optional<CompletableFuture<Confirmation>> promiseOptional =
                         promiseRepository.getPromise(uniqueId);
                     if (promiseOptional.isPresent()) {
                       promiseOptional.get().complete(confirmation);
                       promiseRepository.removePromise(uniqueId);
-                    } else {
-                      logger.debug("Promise not found for confirmation {}", confirmation);
                     }
                   }
 
                   @Override
                   public Confirmation handleRequest(Request request)
                       throws UnsupportedFeatureException {
-                    Optional<Feature> featureOptional = featureRepository.findFeature(request);
-                    if (featureOptional.isPresent()) {
-                      Optional<UUID> sessionIdOptional = getSessionID(session);
-                      if (sessionIdOptional.isPresent()) {
-                        return featureOptional
-                            .get()
-                            .handleRequest(sessionIdOptional.get(), request);
-                      } else {
-                        logger.error(
-                            "Unable to handle request ({}), the active session was not found.",
-                            request);
-                        throw new IllegalStateException("Active session not found");
-                      }
-                    } else {
+                    Feature feature = featureRepository.getFeature(request);
+                    if (feature == null) {
                       throw new UnsupportedFeatureException();
                     }
+                    if (closed) {
+                      logger.error(
+                          "Unable to handle request ({}), the active session was not found.",
+                          request);
+                      throw new IllegalStateException("Active session not found");
+                    }
+                    return feature.handleRequest(sessionId, request);
                   }
 
                   @Override
                   public void handleError(
                       String uniqueId, String errorCode, String errorDescription, Object payload) {
+                    if (session.completesPromises()) return;
                     Optional<CompletableFuture<Confirmation>> promiseOptional =
                         promiseRepository.getPromise(uniqueId);
                     if (promiseOptional.isPresent()) {
@@ -137,47 +143,46 @@ public class Server {
                           .completeExceptionally(
                               new CallErrorException(errorCode, errorDescription, payload));
                       promiseRepository.removePromise(uniqueId);
-                    } else {
-                      logger.debug("Promise not found for error {}", errorDescription);
                     }
                   }
 
                   @Override
                   public void handleConnectionClosed() {
-                    Optional<UUID> sessionIdOptional = getSessionID(session);
-                    if (sessionIdOptional.isPresent()) {
-                      serverEvents.lostSession(sessionIdOptional.get());
-                      sessions.remove(sessionIdOptional.get());
+                    closed = true;
+                    if (sessions.containsKey(sessionId)) {
+                      serverEvents.lostSession(sessionId);
+                      sessions.remove(sessionId);
                     } else {
                       logger.warn("Active session not found");
                     }
+                    // Only unindex if the charge point hasn't reconnected in the meantime
+                    if (identifier != null) sessionsByIdentifier.remove(identifier, session);
+                    // Requests sent in this session can't be answered anymore
+                    promiseRepository.failPromises(sessionId, new NotConnectedException());
                   }
 
                   @Override
                   public void handleConnectionOpened() {}
                 });
 
-            sessions.put(session.getSessionId(), session);
+            sessions.put(sessionId, session);
+            ISession previous =
+                identifier != null ? sessionsByIdentifier.put(identifier, session) : null;
+
+            serverEvents.newSession(sessionId, information);
+            logger.debug("Session created: {}", sessionId);
 
-            Optional<UUID> sessionIdOptional = getSessionID(session);
-            if (sessionIdOptional.isPresent()) {
-              serverEvents.newSession(sessionIdOptional.get(), information);
-              logger.debug("Session created: {}", session.getSessionId());
-            } else {
-              throw new IllegalStateException("Failed to create a session");
+            if (previous != null && previous != session) {
+              logger.info(
+                  "Charge point {} reconnected, closing its previous session: {}",
+                  identifier,
+                  previous.getSessionId());
+              previous.close();
             }
           }
         });
   }
 
-  private Optional<UUID> getSessionID(ISession session) {
-    if (!sessions.containsKey(session.getSessionId())) {
-      return Optional.empty();
-    }
-
-    return Optional.of(session.getSessionId());
-  }
-
   /** Close all connections and stop listening for clients. */
   public void close() {
     listener.close();
@@ -188,15 +193,16 @@ public class Server {
    *
    * @param sessionIndex Session index of the client.
    * @param request Request for the client.
-   * @return Callback handler for when the client responds.
+   * @return Callback handler for when the client responds. It fails with a {@link
+   *     NotConnectedException} if the connection is lost before the client responds.
    * @throws UnsupportedFeatureException Thrown if the feature isn't among the list of supported
    *     featured.
    * @throws OccurenceConstraintException Thrown if the request isn't valid.
    */
   public CompletableFuture<Confirmation> send(UUID sessionIndex, Request request)
       throws UnsupportedFeatureException, OccurenceConstraintException, NotConnectedException {
-    Optional<Feature> featureOptional = featureRepository.findFeature(request);
-    if (!featureOptional.isPresent()) {
+    Feature feature = featureRepository.getFeature(request);
+    if (feature == null) {
       throw new UnsupportedFeatureException();
     }
 
@@ -213,12 +219,65 @@ public class Server {
       throw new NotConnectedException();
     }
 
+    return send(session, feature, request);
+  }
+
+  /**
+   * Send a message to a charge point, identified as in {@link
+   * SessionInformation#getIdentifier()}.
+   *
+   * @param identifier identifier of the charge point.
+   * @param request Request for the client.
+   * @return Callback handler for when the client responds. It fails with a {@link
+   *     NotConnectedException} if the connection is lost before the client responds.
+   * @throws UnsupportedFeatureException Thrown if the feature isn't among the list of supported
+   *     featured.
+   * @throws OccurenceConstraintException Thrown if the request isn't valid.
+   * @throws NotConnectedException Thrown if the charge point isn't connected.
+   */
+  public CompletableFuture<Confirmation> send(String identifier, Request request)
+      throws UnsupportedFeatureException, OccurenceConstraintException, NotConnectedException {
+    Feature feature = featureRepository.getFeature(request);
+    if (feature == null) {
+      throw new UnsupportedFeatureException();
+    }
+
+    if (!request.validate()) {
+      throw new OccurenceConstraintException();
+    }
+
+    ISession session = identifier != null ? sessionsByIdentifier.get(identifier) : null;
+
+    if (session == null) {
+      logger.warn("Session not found by identifier: {}", identifier);
+      throw new NotConnectedException();
+    }
+
+    return send(session, feature, request);
+  }
+
+  private CompletableFuture<Confirmation> send(ISession session, Feature feature, Request request) {
     String id = session.storeRequest(request);
-    CompletableFuture<Confirmation> promise = promiseRepository.createPromise(id);
-    session.sendRequest(featureOptional.get().getAction(), request, id);
+    // The call may wait for the previous one, so it times out counting from when it's sent
+    CompletableFuture<Confirmation> promise =
+        promiseRepository.createQueuedPromise(id, session.getSessionId());
+    session.attachPromise(id, promise);
+    session.sendRequest(feature.getAction(), request, id, () -> promiseRepository.startTimeout(id));
     return promise;
   }
 
+  /**
+   * Get the session index of a connected charge point.
+   *
+   * @param identifier identifier of the charge point, see {@link
+   *     SessionInformation#getIdentifier()}.
+   * @return the session index, null if the charge point isn't connected.
+   */
+  public UUID getSessionIndex(String identifier) {
+    ISession session = identifier != null ? sessionsByIdentifier.get(identifier) : null;
+    return session != null ? session.getSessionId() : null;
+  }
+
   public boolean isSessionOpen(UUID sessionIndex) {
     return sessions.containsKey(sessionIndex);
   }
@@ -27,7 +27,9 @@ SOFTWARE.
 */
 
 import eu.chargetime.ocpp.feature.Feature;
+import eu.chargetime.ocpp.feature.RawPayloadFeature;
 import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.RawRequest;
 import eu.chargetime.ocpp.model.Request;
 import eu.chargetime.ocpp.utilities.MoreObjects;
 import java.util.Optional;
@@ -49,6 +51,7 @@ public class Session implements ISession {
   private final Queue queue;
   private final RequestDispatcher dispatcher;
   private final IFeatureRepository featureRepository;
+  private final OutboundCallQueue calls;
   private SessionEvents events;
 
   /**
@@ -62,10 +65,27 @@ public class Session implements ISession {
       Queue queue,
       PromiseFulfiller fulfiller,
       IFeatureRepository featureRepository) {
+    this(communicator, queue, fulfiller, featureRepository, null);
+  }
+
+  /**
+   * Handles required injections.
+   *
+   * @param communicator send and receive messages.
+   * @param queue store and restore requests based on unique ids.
+   * @param scheduler schedules the outgoing calls one at a time, null to send them right away.
+   */
+  public Session(
+      Communicator communicator,
+      Queue queue,
+      PromiseFulfiller fulfiller,
+      IFeatureRepository featureRepository,
+      OutboundCallScheduler scheduler) {
     this.communicator = communicator;
     this.queue = queue;
     this.dispatcher = new RequestDispatcher(fulfiller);
     this.featureRepository = featureRepository;
+    this.calls = scheduler != null ? scheduler.newSessionQueue(new CallSender()) : null;
   }
 
   /**
@@ -78,14 +98,33 @@ public class Session implements ISession {
   }
 
   /**
-   * Send a {@link Request}.
+   * Send a {@link Request}. With a {@link OutboundCallScheduler}, the request waits until the
+   * previous one is answered.
    *
    * @param action action name to identify the feature.
    * @param payload the {@link Request} payload to send
    * @param uuid unique identification to identify the request
    */
   public void sendRequest(String action, Request payload, String uuid) {
-    communicator.sendCall(uuid, action, payload);
+    sendRequest(action, payload, uuid, null);
+  }
+
+  /**
+   * Send a {@link Request}, see {@link #sendRequest(String, Request, String)}.
+   *
+   * @param action action name to identify the feature.
+   * @param payload the {@link Request} payload to send
+   * @param uuid unique identification to identify the request
+   * @param sent run right before the request is sent, may be null.
+   */
+  @Override
+  public void sendRequest(String action, Request payload, String uuid, Runnable sent) {
+    if (calls != null) {
+      calls.submit(uuid, action, payload, sent);
+    } else {
+      if (sent != null) sent.run();
+      communicator.sendCall(uuid, action, payload);
+    }
   }
 
   /**
@@ -95,7 +134,36 @@ public class Session implements ISession {
    * @return unique identification to identify the request.
    */
   public String storeRequest(Request payload) {
-    return queue.store(payload);
+    Optional<Feature> featureOptional = featureRepository.findFeature(payload);
+    Class<? extends Confirmation> confirmationType =
+        featureOptional.isPresent() ? featureOptional.get().getConfirmationType() : null;
+    return confirmationType != null ? queue.store(payload, confirmationType) : queue.store(payload);
+  }
+
+  /**
+   * Attach the call back of a stored {@link Request}. It is completed when the answer arrives. If
+   * it is completed before, the request is forgotten and a late answer is rejected.
+   *
+   * @param uniqueId unique identification of the stored request.
+   * @param promise call back for the answer.
+   */
+  @Override
+  public void attachPromise(String uniqueId, CompletableFuture<Confirmation> promise) {
+    PendingRequest pending = queue.peek(uniqueId);
+    if (pending == null) return;
+
+    pending.setPromise(promise);
+    promise.whenComplete(
+        (confirmation, throwable) -> {
+          if (throwable != null && queue.remove(pending) && calls != null) {
+            calls.completed(uniqueId);
+          }
+        });
+  }
+
+  @Override
+  public boolean completesPromises() {
+    return true;
   }
 
   /**
@@ -108,24 +176,19 @@ public class Session implements ISession {
     communicator.sendCallResult(uniqueId, action, confirmation);
   }
 
-  private Optional<Class<? extends Confirmation>> getConfirmationType(String uniqueId)
+  private Class<? extends Confirmation> confirmationTypeOf(PendingRequest pending)
       throws UnsupportedFeatureException {
-    Optional<Request> requestOptional = queue.restoreRequest(uniqueId);
+    if (pending.getConfirmationType() != null) return pending.getConfirmationType();
 
-    if (requestOptional.isPresent()) {
-      Optional<Feature> featureOptional = featureRepository.findFeature(requestOptional.get());
-      if (featureOptional.isPresent()) {
-        return Optional.of(featureOptional.get().getConfirmationType());
-      } else {
-        logger.debug("Feature for request with id: {} not found in session: {}", uniqueId, this);
-        throw new UnsupportedFeatureException(
-            "Error with getting confirmation type by request id = " + uniqueId);
-      }
-    } else {
-      logger.debug("Request with id: {} not found in session: {}", uniqueId, this);
+    // Stored without a known type, look it up now
+    Optional<Feature> featureOptional = featureRepository.findFeature(pending.getRequest());
+    if (!featureOptional.isPresent()) {
+      logger.debug(
+          "Feature for request with id: {} not found in session: {}", pending.getUniqueId(), this);
+      throw new UnsupportedFeatureException(
+          "Error with getting confirmation type by request id = " + pending.getUniqueId());
     }
-
-    return Optional.empty();
+    return featureOptional.get().getConfirmationType();
   }
 
   /**
@@ -158,42 +221,85 @@ public class Session implements ISession {
         "An internal error occurred and the receiver was not able to process the requested Action successfully";
     private static final String UNABLE_TO_PROCESS = "Unable to process action";
 
+    @Override
+    public Class<? extends Request> getRequestType(String action) {
+      Optional<Feature> featureOptional = featureRepository.findFeature(action);
+      if (!featureOptional.isPresent() || featureOptional.get() instanceof RawPayloadFeature) {
+        // Raw payloads are kept as received
+        return null;
+      }
+      return featureOptional.get().getRequestType();
+    }
+
+    @Override
+    public Class<? extends Confirmation> getConfirmationType(String id) {
+      if (id == null) return null;
+
+      PendingRequest pending = queue.peek(id);
+      if (pending == null) return null;
+      if (pending.getConfirmationType() != null) return pending.getConfirmationType();
+
+      Optional<Feature> featureOptional = featureRepository.findFeature(pending.getRequest());
+      return featureOptional.isPresent() ? featureOptional.get().getConfirmationType() : null;
+    }
+
     @Override
     public void onCallResult(String id, String action, Object payload) {
-      try {
-        Optional<Class<? extends Confirmation>> confirmationTypeOptional = getConfirmationType(id);
+      if (calls != null) calls.completed(id);
+      PendingRequest pending = id != null ? queue.take(id) : null;
+      if (pending == null) {
+        // A CallError may only answer a call, so an unexpected result is dropped
+        logger.warn("Request with id: {} not found in session: {}", id, Session.this);
+        return;
+      }
 
-        if (confirmationTypeOptional.isPresent()) {
-          Confirmation confirmation =
-              communicator.unpackPayload(payload, confirmationTypeOptional.get());
-          if (confirmation.validate()) {
-            events.handleConfirmation(id, confirmation);
-          } else {
-            communicator.sendCallError(
-                id, action, "OccurenceConstraintViolation", OCCURENCE_CONSTRAINT_VIOLATION);
-          }
+      // The entry is gone, so every failure must complete the promise or its caller waits forever
+      CompletableFuture<Confirmation> promise = pending.getPromise();
+      try {
+        Confirmation confirmation =
+            communicator.unpackPayload(payload, confirmationTypeOf(pending));
+        if (confirmation.validate()) {
+          if (promise != null) promise.complete(confirmation);
+          events.handleConfirmation(id, confirmation);
         } else {
-          logger.warn(INTERNAL_ERROR);
-          communicator.sendCallError(id, action, "InternalError", INTERNAL_ERROR);
+          fail(promise, new OccurenceConstraintException());
+          communicator.sendCallError(
+              id, action, "OccurenceConstraintViolation", OCCURENCE_CONSTRAINT_VIOLATION);
         }
       } catch (PropertyConstraintException ex) {
         logger.warn(ex.getMessage(), ex);
-        communicator.sendCallError(id, action, "TypeConstraintViolation", ex.getMessage());
+        fail(promise, ex);
+        communicator.sendCallError(
+            id,
+            action,
+            "TypeConstraintViolation",
+            ex.getErrorDescription(),
+            ex.getErrorDetails());
       } catch (UnsupportedFeatureException ex) {
         logger.warn(INTERNAL_ERROR, ex);
+        fail(promise, ex);
         communicator.sendCallError(id, action, "InternalError", INTERNAL_ERROR);
       } catch (Exception ex) {
         logger.warn(UNABLE_TO_PROCESS, ex);
+        fail(promise, ex);
         communicator.sendCallError(id, action, "FormationViolation", UNABLE_TO_PROCESS);
       }
     }
 
+    private void fail(CompletableFuture<Confirmation> promise, Throwable cause) {
+      if (promise != null) promise.completeExceptionally(cause);
+    }
+
     @Override
-    public synchronized void onCall(String id, String action, Object payload) {
+    public void onCall(String id, String action, Object payload) {
       Optional<Feature> featureOptional = featureRepository.findFeature(action);
       if (!featureOptional.isPresent()) {
         communicator.sendCallError(
             id, action, "NotImplemented", "Requested Action is not known by receiver");
+      } else if (featureOptional.get() instanceof RawPayloadFeature) {
+        CompletableFuture<Confirmation> promise =
+            dispatcher.handleRequest(new RawRequest(action, payload));
+        promise.whenComplete(new ConfirmationHandler(id, action, communicator));
       } else {
         try {
           Request request =
@@ -207,7 +313,12 @@ public class Session implements ISession {
           }
         } catch (PropertyConstraintException ex) {
           logger.warn(ex.getMessage(), ex);
-          communicator.sendCallError(id, action, "TypeConstraintViolation", ex.getMessage());
+          communicator.sendCallError(
+              id,
+              action,
+              "TypeConstraintViolation",
+              ex.getErrorDescription(),
+              ex.getErrorDetails());
         } catch (Exception ex) {
           logger.warn(UNABLE_TO_PROCESS, ex);
           communicator.sendCallError(id, action, "FormationViolation", UNABLE_TO_PROCESS);
@@ -217,11 +328,34 @@ public class Session implements ISession {
 
     @Override
     public void onError(String id, String errorCode, String errorDescription, Object payload) {
+      if (calls != null) calls.completed(id);
+      PendingRequest pending = id != null ? queue.take(id) : null;
+      if (pending != null && pending.getPromise() != null) {
+        pending
+            .getPromise()
+            .completeExceptionally(new CallErrorException(errorCode, errorDescription, payload));
+      }
       events.handleError(id, errorCode, errorDescription, payload);
     }
 
+    @Override
+    public void onReplayedCall(String id, String action) {
+      if (id == null || queue.peek(id) != null) return;
+
+      Optional<Feature> featureOptional = featureRepository.findFeature(action);
+      if (!featureOptional.isPresent()) {
+        logger.warn("Feature for replayed call with id: {} not found: {}", id, action);
+        return;
+      }
+      queue.storeReplayed(id, featureOptional.get().getConfirmationType());
+      CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+      attachPromise(id, promise);
+      events.handleReplayedCall(id, action, promise);
+    }
+
     @Override
     public void onDisconnected() {
+      if (calls != null) calls.flush();
       events.handleConnectionClosed();
     }
 
@@ -231,6 +365,26 @@ public class Session implements ISession {
     }
   }
 
+  private class CallSender implements OutboundCallQueue.Sender {
+    @Override
+    public boolean isPending(String uniqueId) {
+      return queue.peek(uniqueId) != null;
+    }
+
+    @Override
+    public void send(String uniqueId, String action, Request request) {
+      communicator.sendCall(uniqueId, action, request);
+    }
+
+    @Override
+    public void failed(String uniqueId, Throwable cause) {
+      PendingRequest pending = queue.take(uniqueId);
+      if (pending != null && pending.getPromise() != null) {
+        pending.getPromise().completeExceptionally(cause);
+      }
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -2,6 +2,7 @@ package eu.chargetime.ocpp;
 
 import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
+import java.util.concurrent.CompletableFuture;
 
 /*
 ChargeTime.eu - Java-OCA-OCPP
@@ -59,6 +60,17 @@ public interface SessionEvents {
    */
   void handleError(String uniqueId, String errorCode, String errorDescription, Object payload);
 
+  /**
+   * Handle a call stored in the transaction queue before a restart, which is sent again. Its
+   * original promise is gone, the answer completes the given one instead.
+   *
+   * @param uniqueId the unique identifier the call was made with.
+   * @param action action name of the feature.
+   * @param promise completed with the {@link Confirmation} to the call.
+   */
+  default void handleReplayedCall(
+      String uniqueId, String action, CompletableFuture<Confirmation> promise) {}
+
   /** Handle a closed connection. */
   void handleConnectionClosed();
 
@@ -28,16 +28,43 @@ package eu.chargetime.ocpp;
 public class SessionFactory implements ISessionFactory {
 
   private final IFeatureRepository featureRepository;
+  private final RequestHandlerExecutor requestHandlerExecutor;
+  private final OutboundCallScheduler callScheduler;
 
   public SessionFactory(IFeatureRepository featureRepository) {
+    this(featureRepository, RequestHandlerExecutor.getDefault());
+  }
+
+  /**
+   * @param featureRepository features known by the sessions.
+   * @param requestHandlerExecutor executor handling the incoming requests of the sessions.
+   */
+  public SessionFactory(
+      IFeatureRepository featureRepository, RequestHandlerExecutor requestHandlerExecutor) {
+    this(featureRepository, requestHandlerExecutor, null);
+  }
+
+  /**
+   * @param featureRepository features known by the sessions.
+   * @param requestHandlerExecutor executor handling the incoming requests of the sessions.
+   * @param callScheduler schedules the outgoing calls of the sessions, null to send them right
+   *     away.
+   */
+  public SessionFactory(
+      IFeatureRepository featureRepository,
+      RequestHandlerExecutor requestHandlerExecutor,
+      OutboundCallScheduler callScheduler) {
 
     this.featureRepository = featureRepository;
+    this.requestHandlerExecutor = requestHandlerExecutor;
+    this.callScheduler = callScheduler;
   }
 
   @Override
   public ISession createSession(Communicator communicator) {
     AsyncPromiseFulfillerDecorator promiseFulfiler =
-        new AsyncPromiseFulfillerDecorator(new SimplePromiseFulfiller());
-    return new Session(communicator, new Queue(), promiseFulfiler, this.featureRepository);
+        new AsyncPromiseFulfillerDecorator(new SimplePromiseFulfiller(), requestHandlerExecutor);
+    return new Session(
+        communicator, new Queue(), promiseFulfiler, this.featureRepository, callScheduler);
   }
 }
@@ -0,0 +1,96 @@
+package eu.chargetime.ocpp.feature;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.RawRequest;
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.utilities.MoreObjects;
+import java.util.UUID;
+
+/**
+ * Wraps a {@link Feature} so incoming requests are passed to a handler without binding the
+ * payload. The envelope is still parsed and the handler's {@link Confirmation} is sent back as
+ * usual. Use it for high volume actions that are forwarded as is, like MeterValues.
+ *
+ * <p>Register it the same way as the {@link Feature} it wraps, it replaces the feature with the
+ * same action name. Outgoing requests and their confirmations are still bound as usual.
+ */
+public class RawPayloadFeature implements Feature {
+
+  /** Handles requests of a {@link RawPayloadFeature}. */
+  public interface Handler {
+    /**
+     * Handle a request with a raw payload.
+     *
+     * @param sessionIndex source of the request.
+     * @param request the action and raw payload.
+     * @return the {@link Confirmation} to be send back.
+     */
+    Confirmation handleRawRequest(UUID sessionIndex, RawRequest request);
+  }
+
+  private final Feature feature;
+  private final Handler handler;
+
+  /**
+   * @param feature the feature to receive raw payloads for.
+   * @param handler handles the incoming requests.
+   */
+  public RawPayloadFeature(Feature feature, Handler handler) {
+    this.feature = feature;
+    this.handler = handler;
+  }
+
+  @Override
+  public Confirmation handleRequest(UUID sessionIndex, Request request) {
+    if (request instanceof RawRequest) {
+      return handler.handleRawRequest(sessionIndex, (RawRequest) request);
+    }
+    return feature.handleRequest(sessionIndex, request);
+  }
+
+  @Override
+  public Class<? extends Request> getRequestType() {
+    return feature.getRequestType();
+  }
+
+  @Override
+  public Class<? extends Confirmation> getConfirmationType() {
+    return feature.getConfirmationType();
+  }
+
+  @Override
+  public String getAction() {
+    return feature.getAction();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this).add("feature", feature).toString();
+  }
+}
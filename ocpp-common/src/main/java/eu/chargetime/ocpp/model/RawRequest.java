@@ -0,0 +1,86 @@
+package eu.chargetime.ocpp.model;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.utilities.MoreObjects;
+
+/**
+ * Incoming {@link Request} of a feature registered with {@link
+ * eu.chargetime.ocpp.feature.RawPayloadFeature}. The payload is handed over as received, it's
+ * neither bound to the request model nor validated.
+ */
+public class RawRequest implements Request {
+
+  private final String action;
+  private final Object payload;
+
+  /**
+   * @param action action name of the feature.
+   * @param payload the raw payload, JSON text for OCPP-J.
+   */
+  public RawRequest(String action, Object payload) {
+    this.action = action;
+    this.payload = payload;
+  }
+
+  /**
+   * Action name of the feature.
+   *
+   * @return the action name.
+   */
+  public String getAction() {
+    return action;
+  }
+
+  /**
+   * The raw payload, JSON text for OCPP-J.
+   *
+   * @return the payload as received.
+   */
+  public Object getPayload() {
+    return payload;
+  }
+
+  @Override
+  public boolean transactionRelated() {
+    return false;
+  }
+
+  @Override
+  public boolean validate() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("action", action)
+        .add("payload", payload)
+        .toString();
+  }
+}
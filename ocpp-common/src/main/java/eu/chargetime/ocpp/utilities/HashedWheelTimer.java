@@ -0,0 +1,255 @@
+package eu.chargetime.ocpp.utilities;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs delayed tasks for many timeouts on a single thread.
+ *
+ * <p>Timeouts are put in the slot of a wheel that the thread visits once per tick, so expiry is
+ * only as accurate as the tick duration. Adding and cancelling a timeout is cheap and doesn't
+ * block, which suits timeouts that are mostly cancelled or rescheduled before they expire. Tasks
+ * run on the timer thread and should be short.
+ *
+ * <p>The thread is a daemon thread, it is started with the first timeout.
+ */
+public class HashedWheelTimer {
+  private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  public static final long DEFAULT_TICK_DURATION = 100;
+  public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  private static final int STATE_NEW = 0;
+  private static final int STATE_STARTED = 1;
+  private static final int STATE_STOPPED = 2;
+
+  private static volatile HashedWheelTimer defaultTimer;
+
+  private final long tickNanos;
+  private final List<WheelTimeout>[] wheel;
+  private final int mask;
+  private final Queue<WheelTimeout> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger state = new AtomicInteger(STATE_NEW);
+  private final AtomicInteger size = new AtomicInteger();
+  private final Thread worker;
+  private final long startTime = System.nanoTime();
+
+  /** A timeout returned by {@link #newTimeout(Runnable, long, TimeUnit)}. */
+  public interface Timeout {
+    /**
+     * Keep the task from running.
+     *
+     * @return false if the task already ran or was cancelled before.
+     */
+    boolean cancel();
+  }
+
+  /** Timer with a tick of {@value #DEFAULT_TICK_DURATION} ms. */
+  public HashedWheelTimer() {
+    this("timer-wheel", DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+  }
+
+  /**
+   * @param threadName name of the timer thread.
+   * @param tickDuration time between two visits of the timer thread.
+   * @param unit unit of the tick duration.
+   * @param ticksPerWheel number of slots, rounded up to a power of two.
+   */
+  @SuppressWarnings("unchecked")
+  public HashedWheelTimer(String threadName, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+    if (tickDuration <= 0) throw new IllegalArgumentException("tickDuration must be positive");
+    if (ticksPerWheel <= 0) throw new IllegalArgumentException("ticksPerWheel must be positive");
+
+    int slots = Integer.highestOneBit(ticksPerWheel);
+    if (slots < ticksPerWheel) slots <<= 1;
+    this.wheel = new List[slots];
+    for (int i = 0; i < slots; i++) wheel[i] = new ArrayList<>();
+    this.mask = slots - 1;
+    this.tickNanos = unit.toNanos(tickDuration);
+
+    this.worker = new Thread(this::run, threadName);
+    this.worker.setDaemon(true);
+  }
+
+  /**
+   * Get the timer shared by the library.
+   *
+   * @return the shared {@link HashedWheelTimer}.
+   */
+  public static HashedWheelTimer getDefault() {
+    HashedWheelTimer timer = defaultTimer;
+    if (timer == null) {
+      synchronized (HashedWheelTimer.class) {
+        timer = defaultTimer;
+        if (timer == null) {
+          timer = new HashedWheelTimer();
+          defaultTimer = timer;
+        }
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * Run a task once after a delay.
+   *
+   * @param task the task to run on the timer thread.
+   * @param delay time to wait before running it.
+   * @param unit unit of the delay.
+   * @return a {@link Timeout} to cancel the task with.
+   * @throws IllegalStateException if the timer was stopped.
+   */
+  public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+    start();
+    WheelTimeout timeout =
+        new WheelTimeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+    size.incrementAndGet();
+    pending.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * Get the number of timeouts that neither expired nor were cancelled.
+   *
+   * @return number of scheduled timeouts.
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /** Stop the timer thread. Timeouts that didn't expire yet are dropped. */
+  public void stop() {
+    if (state.getAndSet(STATE_STOPPED) == STATE_STARTED) worker.interrupt();
+  }
+
+  private void start() {
+    switch (state.get()) {
+      case STATE_NEW:
+        if (state.compareAndSet(STATE_NEW, STATE_STARTED)) {
+          worker.start();
+        } else {
+          start();
+        }
+        break;
+      case STATE_STARTED:
+        break;
+      default:
+        throw new IllegalStateException("Timer was stopped");
+    }
+  }
+
+  private void run() {
+    long tick = 0;
+    while (state.get() == STATE_STARTED) {
+      long deadline = tickNanos * (tick + 1);
+      long sleepNanos;
+      while ((sleepNanos = deadline - (System.nanoTime() - startTime)) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (state.get() != STATE_STARTED) return;
+        }
+      }
+
+      transferPending(tick);
+      expire(wheel[(int) (tick & mask)], deadline);
+      tick++;
+    }
+  }
+
+  private void transferPending(long currentTick) {
+    WheelTimeout timeout;
+    while ((timeout = pending.poll()) != null) {
+      if (timeout.isCancelled()) continue;
+
+      long ticks = Math.max(timeout.deadline / tickNanos, currentTick);
+      timeout.remainingRounds = (ticks - currentTick) / wheel.length;
+      wheel[(int) (ticks & mask)].add(timeout);
+    }
+  }
+
+  private void expire(List<WheelTimeout> slot, long deadline) {
+    int kept = 0;
+    for (int i = 0; i < slot.size(); i++) {
+      WheelTimeout timeout = slot.get(i);
+      if (timeout.isCancelled()) continue;
+
+      if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+        timeout.expire();
+      } else {
+        timeout.remainingRounds--;
+        slot.set(kept++, timeout);
+      }
+    }
+    slot.subList(kept, slot.size()).clear();
+  }
+
+  private final class WheelTimeout implements Timeout {
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+    private long remainingRounds;
+
+    private WheelTimeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) return false;
+      size.decrementAndGet();
+      return true;
+    }
+
+    private boolean isCancelled() {
+      return state.get() == ST_CANCELLED;
+    }
+
+    private void expire() {
+      if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) return;
+      size.decrementAndGet();
+      try {
+        task.run();
+      } catch (Throwable t) {
+        logger.warn("Timeout task failed", t);
+      }
+    }
+  }
+}
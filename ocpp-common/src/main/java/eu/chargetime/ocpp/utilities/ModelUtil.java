@@ -26,6 +26,15 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
 /** Utilities for model classes. Used to validate values. */
 public abstract class ModelUtil {
 
@@ -75,4 +84,113 @@ public abstract class ModelUtil {
   public static boolean validate(String input, int maxLength) {
     return input != null && input.length() <= maxLength;
   }
+
+  /**
+   * Hold an array as a list field.
+   *
+   * @param array the array, may be null.
+   * @param <T> element type.
+   * @return a list backed by the array, or null.
+   */
+  public static <T> Iterable<T> asIterable(T[] array) {
+    return array == null ? null : new ArrayBackedList<>(array);
+  }
+
+  /**
+   * Get the elements of a list field as an array. A field held by {@link #asIterable(Object[])}
+   * returns its array as is, other lists are copied and a lazily supplied list is iterated.
+   *
+   * @param elements the elements, may be null.
+   * @param newArray creates an array of the given length.
+   * @param <T> element type.
+   * @return the array, or null.
+   */
+  public static <T> T[] toArray(Iterable<T> elements, IntFunction<T[]> newArray) {
+    if (elements == null) return null;
+    if (elements instanceof ArrayBackedList) return ((ArrayBackedList<T>) elements).array;
+
+    Collection<T> collection;
+    if (elements instanceof Collection) {
+      collection = (Collection<T>) elements;
+    } else {
+      collection = new ArrayList<>();
+      elements.forEach(collection::add);
+    }
+    return collection.toArray(newArray.apply(collection.size()));
+  }
+
+  /**
+   * Check if a list field was supplied lazily, so every iteration runs its source again.
+   *
+   * @param elements the elements, may be null.
+   * @return true if the elements aren't held in a {@link Collection}.
+   */
+  public static boolean isLazy(Iterable<?> elements) {
+    return elements != null && !(elements instanceof Collection);
+  }
+
+  /**
+   * Compare two list fields element by element, without copying them.
+   *
+   * @param elements1 the first elements, may be null.
+   * @param elements2 the second elements, may be null.
+   * @return true if both are null or hold equal elements in the same order.
+   */
+  public static boolean elementsEqual(Iterable<?> elements1, Iterable<?> elements2) {
+    if (elements1 == elements2) return true;
+    if (elements1 == null || elements2 == null) return false;
+
+    Iterator<?> iterator1 = elements1.iterator();
+    Iterator<?> iterator2 = elements2.iterator();
+    while (iterator1.hasNext() && iterator2.hasNext()) {
+      if (!Objects.equals(iterator1.next(), iterator2.next())) return false;
+    }
+    return !iterator1.hasNext() && !iterator2.hasNext();
+  }
+
+  /**
+   * Hash a list field without copying it. Matches {@link Arrays#hashCode(Object[])} of the same
+   * elements.
+   *
+   * @param elements the elements, may be null.
+   * @return the hash code, 0 if null.
+   */
+  public static int elementsHashCode(Iterable<?> elements) {
+    if (elements == null) return 0;
+
+    int result = 1;
+    for (Object element : elements) {
+      result = 31 * result + Objects.hashCode(element);
+    }
+    return result;
+  }
+
+  /**
+   * Show a list field in a toString without iterating a lazily supplied list.
+   *
+   * @param elements the elements, may be null.
+   * @return the elements, or a placeholder if they're {@link #isLazy(Iterable) lazy}.
+   */
+  public static Object toStringValue(Iterable<?> elements) {
+    return isLazy(elements) ? "<lazy>" : elements;
+  }
+
+  /** Like {@link Arrays#asList(Object[])}, but hands its array back to {@link #toArray}. */
+  private static class ArrayBackedList<T> extends AbstractList<T> implements RandomAccess {
+    private final T[] array;
+
+    ArrayBackedList(T[] array) {
+      this.array = array;
+    }
+
+    @Override
+    public T get(int index) {
+      return array[index];
+    }
+
+    @Override
+    public int size() {
+      return array.length;
+    }
+  }
 }
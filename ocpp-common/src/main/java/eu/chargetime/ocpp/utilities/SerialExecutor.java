@@ -0,0 +1,119 @@
+package eu.chargetime.ocpp.utilities;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a shared {@link Executor}.
+ *
+ * <p>Many serial executors can share one pool: each occupies at most one pool thread at a time,
+ * and gives it back after a batch of tasks so other serial executors get their turn. When the pool
+ * rejects a batch, it runs on the submitting thread instead, which keeps the order and slows the
+ * submitter down.
+ */
+public class SerialExecutor implements Executor {
+  private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 16;
+
+  private final Executor executor;
+  private final int batchSize;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Runnable drain = this::drain;
+
+  /** @param executor shared executor to run the tasks on. */
+  public SerialExecutor(Executor executor) {
+    this(executor, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param executor shared executor to run the tasks on.
+   * @param batchSize number of tasks to run before giving the thread back to the executor.
+   */
+  public SerialExecutor(Executor executor, int batchSize) {
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+    this.executor = executor;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (task == null) throw new NullPointerException("task");
+
+    tasks.add(task);
+    if (!scheduled.compareAndSet(false, true)) return;
+
+    try {
+      executor.execute(drain);
+    } catch (RejectedExecutionException e) {
+      logger.debug("execute() executor saturated, running on the calling thread");
+      drain();
+    }
+  }
+
+  /**
+   * Get the number of tasks waiting to run.
+   *
+   * @return the number of queued tasks.
+   */
+  public int size() {
+    return tasks.size();
+  }
+
+  private void drain() {
+    while (true) {
+      for (int i = 0; i < batchSize; i++) {
+        Runnable task = tasks.poll();
+        if (task == null) break;
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          logger.warn("drain() task failed", e);
+        }
+      }
+
+      scheduled.set(false);
+      // A task submitted after the last poll is picked up here, or by its submitter.
+      if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+
+      try {
+        executor.execute(drain);
+        return;
+      } catch (RejectedExecutionException e) {
+        // Keep going on this thread rather than leaving the tasks behind.
+      }
+    }
+  }
+}
@@ -26,6 +26,25 @@ package eu.chargetime.ocpp.utilities;
  * SOFTWARE.
  */
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URISyntaxException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
 /** Utilities for tests. Used to quickly create usefull objects. */
 public final class TestUtilities {
 
@@ -75,4 +94,148 @@ public final class TestUtilities {
 
     return output.toString().substring(1);
   }
+
+  /**
+   * Find the concrete classes of a type, in the package of an anchor class and its sub packages.
+   * Only the directory or jar the anchor class was loaded from is searched.
+   *
+   * @param anchor class in the root package to search.
+   * @param type the super type of the classes to find.
+   * @param <T> the super type.
+   * @return the classes sorted by name.
+   */
+  public static <T> List<Class<? extends T>> classesOf(Class<?> anchor, Class<T> type) {
+    String root = anchor.getPackage().getName().replace('.', '/') + "/";
+    List<String> names = new ArrayList<>();
+    try {
+      File location = new File(anchor.getProtectionDomain().getCodeSource().getLocation().toURI());
+      if (location.isDirectory()) {
+        collectClassNames(new File(location, root), root, names);
+      } else {
+        try (JarFile jar = new JarFile(location)) {
+          Enumeration<JarEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (name.startsWith(root) && name.endsWith(".class")) names.add(name);
+          }
+        }
+      }
+    } catch (IOException | URISyntaxException ex) {
+      throw new IllegalStateException(ex);
+    }
+
+    List<Class<? extends T>> classes = new ArrayList<>();
+    for (String name : names) {
+      String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+      Class<?> candidate;
+      try {
+        candidate = Class.forName(className, false, anchor.getClassLoader());
+      } catch (ClassNotFoundException ex) {
+        throw new IllegalStateException(ex);
+      }
+      if (type.isAssignableFrom(candidate)
+          && !candidate.isInterface()
+          && !Modifier.isAbstract(candidate.getModifiers())) {
+        classes.add(candidate.asSubclass(type));
+      }
+    }
+    classes.sort((a, b) -> a.getName().compareTo(b.getName()));
+    return classes;
+  }
+
+  private static void collectClassNames(File directory, String path, List<String> names) {
+    File[] files = directory.listFiles();
+    if (files == null) return;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        collectClassNames(file, path + file.getName() + "/", names);
+      } else if (file.getName().endsWith(".class")) {
+        names.add(path + file.getName());
+      }
+    }
+  }
+
+  /**
+   * Create an instance with every field set. Fields are set directly, bypassing any validation in
+   * the setters. Strings are short, numbers are small and positive, enums take their first value
+   * and arrays and lists hold a single element.
+   *
+   * @param type the type to create.
+   * @param samples instances to use for specific types, for types a sample can't be made up for.
+   * @param <T> the type to create.
+   * @return the sample.
+   */
+  public static <T> T aSample(Class<T> type, Map<Class<?>, Object> samples) {
+    return type.cast(sampleOf(type, type, samples, 0));
+  }
+
+  /**
+   * Create an instance with every field set.
+   *
+   * @param type the type to create.
+   * @param <T> the type to create.
+   * @return the sample.
+   * @see #aSample(Class, Map)
+   */
+  public static <T> T aSample(Class<T> type) {
+    return aSample(type, Collections.emptyMap());
+  }
+
+  private static final int MAX_SAMPLE_DEPTH = 5;
+
+  private static Object sampleOf(
+      Class<?> type, Type genericType, Map<Class<?>, Object> samples, int depth) {
+    if (samples.containsKey(type)) return samples.get(type);
+    if (type == String.class) return aString(8);
+    if (type == Integer.class || type == int.class) return 42;
+    if (type == Long.class || type == long.class) return 42L;
+    if (type == Double.class || type == double.class) return 4.2;
+    if (type == Boolean.class || type == boolean.class) return true;
+    if (type == ZonedDateTime.class) {
+      return ZonedDateTime.of(2020, 1, 2, 3, 4, 5, 0, ZoneOffset.UTC);
+    }
+    if (type.isEnum()) return type.getEnumConstants()[0];
+    if (depth >= MAX_SAMPLE_DEPTH) return null;
+
+    if (type.isArray()) {
+      Object array = Array.newInstance(type.getComponentType(), 1);
+      Array.set(
+          array,
+          0,
+          sampleOf(type.getComponentType(), type.getComponentType(), samples, depth + 1));
+      return array;
+    }
+    if ((type == List.class || type == Iterable.class)
+        && genericType instanceof ParameterizedType) {
+      Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+      if (!(elementType instanceof Class)) return null;
+      List<Object> list = new ArrayList<>();
+      list.add(sampleOf((Class<?>) elementType, elementType, samples, depth + 1));
+      return list;
+    }
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isPrimitive()) {
+      return null;
+    }
+
+    try {
+      Constructor<?> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      Object sample = constructor.newInstance();
+      for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+        for (Field field : current.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers)
+              || Modifier.isTransient(modifiers)
+              || field.isSynthetic()) {
+            continue;
+          }
+          field.setAccessible(true);
+          field.set(sample, sampleOf(field.getType(), field.getGenericType(), samples, depth + 1));
+        }
+      }
+      return sample;
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalArgumentException("Can't create a sample of " + type.getName(), ex);
+    }
+  }
 }
@@ -25,40 +25,57 @@ package eu.chargetime.ocpp.utilities;
    SOFTWARE.
 */
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
-public class TimeoutTimer extends Timer {
+/**
+ * Calls a {@link TimeoutHandler} when it isn't reset or ended within the timeout.
+ *
+ * <p>The timeouts of all timers are kept by a shared {@link HashedWheelTimer}, so a timer doesn't
+ * need a thread of its own.
+ */
+public class TimeoutTimer {
 
-  private TimerTask timerTask;
+  private final HashedWheelTimer timer;
+  private HashedWheelTimer.Timeout pendingTimeout;
   private long timeout;
   private TimeoutHandler handler;
 
+  /**
+   * @param timeout timeout in milliseconds.
+   * @param handler called when the time is up.
+   */
   public TimeoutTimer(long timeout, TimeoutHandler handler) {
+    this(timeout, handler, HashedWheelTimer.getDefault());
+  }
+
+  /**
+   * @param timeout timeout in milliseconds.
+   * @param handler called when the time is up.
+   * @param timer the {@link HashedWheelTimer} to schedule the timeout with.
+   */
+  public TimeoutTimer(long timeout, TimeoutHandler handler, HashedWheelTimer timer) {
     this.timeout = timeout;
     this.handler = handler;
+    this.timer = timer;
   }
 
-  public void setTimeout(long timeout) {
+  public synchronized void setTimeout(long timeout) {
     this.timeout = timeout;
   }
 
-  public void begin() {
-    timerTask =
-        new TimerTask() {
-          @Override
-          public void run() {
-            handler.timeout();
-          }
-        };
-    this.schedule(timerTask, timeout);
+  public synchronized void begin() {
+    if (pendingTimeout != null) pendingTimeout.cancel();
+    pendingTimeout = timer.newTimeout(handler::timeout, timeout, TimeUnit.MILLISECONDS);
   }
 
-  public void end() {
-    timerTask.cancel();
+  public synchronized void end() {
+    if (pendingTimeout != null) {
+      pendingTimeout.cancel();
+      pendingTimeout = null;
+    }
   }
 
-  public void reset() {
+  public synchronized void reset() {
     end();
     begin();
   }
@@ -0,0 +1,275 @@
+package eu.chargetime.ocpp.utilities;
+/*
+ChargeTime.eu - Java OCA OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses and formats the timestamps used by OCPP, e.g. <code>2019-05-13T12:43:22.123Z</code>.
+ * Results are identical to {@link ZonedDateTime#parse(CharSequence)}, {@link
+ * DateTimeFormatter#ISO_INSTANT} and {@link ZonedDateTime#toString()}, anything outside the
+ * common subset is handed to those. The date and time down to the second are cached, as charge
+ * points tend to send batches of timestamps within the same second.
+ */
+public abstract class ZonedDateTimeCodec {
+
+  private static final int CACHE_SIZE = 64;
+  private static final long MIN_EPOCH_SECOND = -62167219200L; // 0000-01-01T00:00:00Z
+  private static final long MAX_EPOCH_SECOND = 253402300799L; // 9999-12-31T23:59:59Z
+  private static final int DATE_TIME_LENGTH = 19; // yyyy-MM-ddTHH:mm:ss
+
+  private static final ParsedSecond[] parsedSeconds = new ParsedSecond[CACHE_SIZE];
+  private static final FormattedSecond[] formattedSeconds = new FormattedSecond[CACHE_SIZE];
+
+  /** Entries are immutable, so sharing them across threads without locking is safe. */
+  private static class ParsedSecond {
+    final String dateTime;
+    final ZonedDateTime value;
+
+    ParsedSecond(String dateTime, ZonedDateTime value) {
+      this.dateTime = dateTime;
+      this.value = value;
+    }
+  }
+
+  private static class FormattedSecond {
+    final long localSecond;
+    final String dateTime;
+
+    FormattedSecond(long localSecond, String dateTime) {
+      this.localSecond = localSecond;
+      this.dateTime = dateTime;
+    }
+  }
+
+  /**
+   * Parse a timestamp, see {@link ZonedDateTime#parse(CharSequence)}.
+   *
+   * @param text timestamp with a time zone offset.
+   * @return the parsed {@link ZonedDateTime}.
+   * @throws java.time.format.DateTimeParseException if the text can't be parsed.
+   */
+  public static ZonedDateTime parse(String text) {
+    ZonedDateTime value = parseCommon(text);
+    return value != null ? value : ZonedDateTime.parse(text);
+  }
+
+  /**
+   * Format as UTC timestamp, see {@link DateTimeFormatter#ISO_INSTANT}.
+   *
+   * @param value timestamp to format.
+   * @return formatted timestamp, e.g. <code>2019-05-13T12:43:22.123Z</code>.
+   */
+  public static String formatInstant(ZonedDateTime value) {
+    long epochSecond = value.toEpochSecond();
+    if (epochSecond < MIN_EPOCH_SECOND || epochSecond > MAX_EPOCH_SECOND) {
+      return DateTimeFormatter.ISO_INSTANT.format(value);
+    }
+
+    StringBuilder builder = new StringBuilder(30);
+    builder.append(formattedSecond(epochSecond));
+    appendFraction(builder, value.getNano());
+    return builder.append('Z').toString();
+  }
+
+  /**
+   * Format with the time zone offset of the value, see {@link ZonedDateTime#toString()}.
+   *
+   * @param value timestamp to format.
+   * @return formatted timestamp, e.g. <code>2019-05-13T14:43:22.123+02:00</code>.
+   */
+  public static String format(ZonedDateTime value) {
+    ZoneOffset offset = value.getOffset();
+    long localSecond = value.toEpochSecond() + offset.getTotalSeconds();
+    if (!(value.getZone() instanceof ZoneOffset)
+        || localSecond < MIN_EPOCH_SECOND
+        || localSecond > MAX_EPOCH_SECOND) {
+      return value.toString();
+    }
+
+    String dateTime = formattedSecond(localSecond);
+    int nano = value.getNano();
+    StringBuilder builder = new StringBuilder(35);
+    if (nano == 0 && value.getSecond() == 0) {
+      // Seconds are left out, like LocalTime.toString() does
+      builder.append(dateTime, 0, DATE_TIME_LENGTH - 3);
+    } else {
+      builder.append(dateTime);
+      appendFraction(builder, nano);
+    }
+    return builder.append(offset.getId()).toString();
+  }
+
+  private static String formattedSecond(long localSecond) {
+    int slot = (int) (localSecond & (CACHE_SIZE - 1));
+    FormattedSecond cached = formattedSeconds[slot];
+    if (cached != null && cached.localSecond == localSecond) {
+      return cached.dateTime;
+    }
+
+    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+    StringBuilder builder = new StringBuilder(DATE_TIME_LENGTH);
+    appendDigits(builder, dateTime.getYear(), 4);
+    appendDigits(builder.append('-'), dateTime.getMonthValue(), 2);
+    appendDigits(builder.append('-'), dateTime.getDayOfMonth(), 2);
+    appendDigits(builder.append('T'), dateTime.getHour(), 2);
+    appendDigits(builder.append(':'), dateTime.getMinute(), 2);
+    appendDigits(builder.append(':'), dateTime.getSecond(), 2);
+
+    String formatted = builder.toString();
+    formattedSeconds[slot] = new FormattedSecond(localSecond, formatted);
+    return formatted;
+  }
+
+  /** Fraction in groups of three digits, as many as needed. */
+  private static void appendFraction(StringBuilder builder, int nano) {
+    if (nano == 0) return;
+
+    builder.append('.');
+    if (nano % 1000_000 == 0) {
+      appendDigits(builder, nano / 1000_000, 3);
+    } else if (nano % 1000 == 0) {
+      appendDigits(builder, nano / 1000, 6);
+    } else {
+      appendDigits(builder, nano, 9);
+    }
+  }
+
+  private static void appendDigits(StringBuilder builder, int value, int width) {
+    for (int divisor = pow10(width - 1); divisor > 0; divisor /= 10) {
+      builder.append((char) ('0' + (value / divisor) % 10));
+    }
+  }
+
+  private static int pow10(int exponent) {
+    int result = 1;
+    for (int i = 0; i < exponent; i++) result *= 10;
+    return result;
+  }
+
+  /**
+   * Parse <code>yyyy-MM-ddTHH:mm:ss[.S{1,9}](Z|+HH:mm|-HH:mm)</code>.
+   *
+   * @return null if the text doesn't match or is invalid.
+   */
+  private static ZonedDateTime parseCommon(String text) {
+    int length = text.length();
+    if (length < DATE_TIME_LENGTH + 1
+        || text.charAt(4) != '-'
+        || text.charAt(7) != '-'
+        || text.charAt(10) != 'T'
+        || text.charAt(13) != ':'
+        || text.charAt(16) != ':') {
+      return null;
+    }
+
+    int year = digits(text, 0, 4);
+    int month = digits(text, 5, 2);
+    int day = digits(text, 8, 2);
+    int hour = digits(text, 11, 2);
+    int minute = digits(text, 14, 2);
+    int second = digits(text, 17, 2);
+    if ((year | month | day | hour | minute | second) < 0) return null;
+
+    int index = DATE_TIME_LENGTH;
+    int nano = 0;
+    if (text.charAt(index) == '.') {
+      int start = ++index;
+      while (index < length && index - start < 9 && isDigit(text.charAt(index))) {
+        nano = nano * 10 + (text.charAt(index++) - '0');
+      }
+      int fractionDigits = index - start;
+      if (fractionDigits == 0) return null;
+      nano *= pow10(9 - fractionDigits);
+    }
+
+    ZoneOffset offset = parseOffset(text, index);
+    if (offset == null) return null;
+
+    try {
+      int slot = ((hour * 60 + minute) * 60 + second) & (CACHE_SIZE - 1);
+      ParsedSecond cached = parsedSeconds[slot];
+      ZonedDateTime value;
+      if (cached != null
+          && offset.equals(cached.value.getOffset())
+          && text.regionMatches(0, cached.dateTime, 0, DATE_TIME_LENGTH)) {
+        value = cached.value;
+      } else {
+        value =
+            ZonedDateTime.of(LocalDateTime.of(year, month, day, hour, minute, second), offset);
+        parsedSeconds[slot] = new ParsedSecond(text.substring(0, DATE_TIME_LENGTH), value);
+      }
+      return nano == 0 ? value : value.withNano(nano);
+    } catch (DateTimeException ex) {
+      return null;
+    }
+  }
+
+  private static ZoneOffset parseOffset(String text, int index) {
+    int remaining = text.length() - index;
+    if (remaining == 1 && text.charAt(index) == 'Z') {
+      return ZoneOffset.UTC;
+    }
+    if (remaining != 6 || text.charAt(index + 3) != ':') {
+      return null;
+    }
+
+    char sign = text.charAt(index);
+    int hours = digits(text, index + 1, 2);
+    int minutes = digits(text, index + 4, 2);
+    if ((sign != '+' && sign != '-') || (hours | minutes) < 0) {
+      return null;
+    }
+
+    try {
+      return sign == '+'
+          ? ZoneOffset.ofHoursMinutes(hours, minutes)
+          : ZoneOffset.ofHoursMinutes(-hours, -minutes);
+    } catch (DateTimeException ex) {
+      return null;
+    }
+  }
+
+  /** @return the value of the digits, or -1 if any character isn't a digit. */
+  private static int digits(String text, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = text.charAt(i);
+      if (!isDigit(c)) return -1;
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
@@ -111,7 +111,7 @@ public class ClientTest {
     client.send(request);
 
     // Then
-    verify(session, times(1)).sendRequest(anyString(), eq(request), anyString());
+    verify(session, times(1)).sendRequest(anyString(), eq(request), anyString(), any());
   }
 
   @Test
@@ -129,6 +129,21 @@ public class ClientTest {
     verify(promiseRepository).getPromise(someUniqueId);
   }
 
+  @Test
+  public void responseReceived_sessionCompletesPromises_promiseIsNotLookedUp() throws Exception {
+    // Given
+    when(session.completesPromises()).thenReturn(true);
+
+    // When
+    client.connect(null, null);
+    eventHandler.handleConfirmation("Some id", null);
+    eventHandler.handleError("Some id", "InternalError", "Failed", null);
+
+    // Then
+    verify(promiseRepository, never()).getPromise(any());
+    verify(promiseRepository, never()).removePromise(any());
+  }
+
   @Test
   public void handleRequest_returnsConfirmation() throws UnsupportedFeatureException {
     // Given
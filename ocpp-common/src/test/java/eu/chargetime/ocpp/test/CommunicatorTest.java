@@ -11,6 +11,7 @@ import eu.chargetime.ocpp.model.Request;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -61,40 +62,7 @@ public class CommunicatorTest {
         .when(receiver)
         .accept(any());
 
-    communicator =
-        new Communicator(receiver) {
-          @Override
-          public <T> T unpackPayload(Object payload, Class<T> type) throws Exception {
-            return null;
-          }
-
-          @Override
-          public Object packPayload(Object payload) {
-            return null;
-          }
-
-          @Override
-          protected Object makeCallResult(String uniqueId, String action, Object payload) {
-            return null;
-          }
-
-          @Override
-          protected Object makeCall(String uniqueId, String action, Object payload) {
-            return uniqueId;
-          }
-
-          @Override
-          protected Object makeCallError(
-              String uniqueId, String action, String errorCode, String errorDescription) {
-            return null;
-          }
-
-          @Override
-          protected Message parse(Object message) {
-            return null;
-          }
-        };
-
+    communicator = createCommunicator(new TransactionQueue());
     communicator.accept(events);
   }
 
@@ -181,6 +149,26 @@ public class CommunicatorTest {
     verify(receiver, times(2)).send(eq(uniqueId));
   }
 
+  @Test
+  public void connected_callReplayedAfterRestart_eventsToldBeforeSend() throws Exception {
+    // Given
+    ITransactionQueue replayingQueue = mock(ITransactionQueue.class);
+    when(replayingQueue.peek()).thenReturn("replayed id", (Object) null);
+    when(replayingQueue.peekReplayed())
+        .thenReturn(new ITransactionQueue.ReplayedCall("replayed id", "StartTransaction"));
+    communicator = createCommunicator(replayingQueue);
+    communicator.accept(events);
+
+    // When
+    eventHandler.connected();
+    Thread.sleep(100);
+
+    // Then
+    InOrder inOrder = inOrder(events, receiver);
+    inOrder.verify(events, times(1)).onReplayedCall("replayed id", "StartTransaction");
+    inOrder.verify(receiver, times(1)).send("replayed id");
+  }
+
   @Test
   public void connected_failedOnceBefore_sameRequestIsRetried() throws Exception {
     // Given
@@ -237,4 +225,57 @@ public class CommunicatorTest {
     String action = "some action";
     communicator.sendCallResult(uniqueId, action, conf);
   }
+
+  @Test
+  public void sendCall_transactionQueueFull_onErrorIsCalled() throws Exception {
+    // Given
+    ITransactionQueue fullQueue = mock(ITransactionQueue.class);
+    when(fullQueue.offer(anyString(), anyString(), any())).thenReturn(false);
+    communicator = createCommunicator(fullQueue);
+    communicator.accept(events);
+    String uniqueId = "some id";
+    doThrow(new NotConnectedException()).when(receiver).send(anyString());
+
+    // When
+    communicator.sendCall(uniqueId, "some action", transactionRelatedRequest);
+
+    // Then
+    verify(fullQueue, times(1)).offer(eq(uniqueId), eq("some action"), eq(uniqueId));
+    verify(events, times(1)).onError(eq(uniqueId), any(), any(), any());
+  }
+
+  private Communicator createCommunicator(ITransactionQueue transactionQueue) {
+    return new Communicator(receiver, transactionQueue) {
+      @Override
+      public <T> T unpackPayload(Object payload, Class<T> type) throws Exception {
+        return null;
+      }
+
+      @Override
+      public Object packPayload(Object payload) {
+        return null;
+      }
+
+      @Override
+      protected Object makeCallResult(String uniqueId, String action, Object payload) {
+        return null;
+      }
+
+      @Override
+      protected Object makeCall(String uniqueId, String action, Object payload) {
+        return uniqueId;
+      }
+
+      @Override
+      protected Object makeCallError(
+          String uniqueId, String action, String errorCode, String errorDescription) {
+        return null;
+      }
+
+      @Override
+      protected Message parse(Object message) {
+        return null;
+      }
+    };
+  }
 }
@@ -6,7 +6,9 @@ import static org.junit.Assert.assertTrue;
 
 import eu.chargetime.ocpp.FeatureRepository;
 import eu.chargetime.ocpp.feature.Feature;
+import eu.chargetime.ocpp.feature.RawPayloadFeature;
 import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.RawRequest;
 import eu.chargetime.ocpp.model.Request;
 import eu.chargetime.ocpp.model.TestConfirmation;
 import eu.chargetime.ocpp.model.TestRequest;
@@ -30,6 +32,21 @@ public class FeatureRepositoryTest {
     assertWhenFound(f.findFeature(ACTION_NAME));
     assertWhenFound(f.findFeature(new TestRequest()));
     assertWhenFound(f.findFeature(new TestConfirmation()));
+    assertWhenFound(f.findFeature(new RawRequest(ACTION_NAME, "{}")));
+    assertFalse(f.findFeature(new RawRequest("TestFeatureFail", "{}")).isPresent());
+  }
+
+  @Test
+  public void testRawPayloadFeatureReplacesFeature() {
+    FeatureRepository f = new FeatureRepository();
+    f.addFeature(feature);
+    RawPayloadFeature rawFeature =
+        new RawPayloadFeature(feature, (sessionIndex, request) -> new TestConfirmation());
+    f.addFeature(rawFeature);
+
+    assertEquals(rawFeature, f.findFeature(ACTION_NAME).get());
+    assertEquals(rawFeature, f.findFeature(new TestRequest()).get());
+    assertEquals(rawFeature, f.findFeature(new RawRequest(ACTION_NAME, "{}")).get());
   }
 
   private void assertWhenFound(Optional<Feature> dummyFeature) {
@@ -0,0 +1,206 @@
+package eu.chargetime.ocpp.test;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+import eu.chargetime.ocpp.*;
+import eu.chargetime.ocpp.feature.Feature;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.TestConfirmation;
+import eu.chargetime.ocpp.model.TestRequest;
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OutboundCallSchedulerTest {
+
+  private HashedWheelTimer timer;
+  private OutboundCallScheduler scheduler;
+  private Session session;
+  private CommunicatorEvents eventHandler;
+
+  @Mock private Communicator communicator;
+  @Mock private Feature feature;
+  @Mock private IFeatureRepository featureRepository;
+  @Mock private PromiseFulfiller fulfiller;
+  @Mock private SessionEvents sessionEvents;
+
+  @Before
+  public void setup() throws Exception {
+    timer = new HashedWheelTimer("test-wheel", 10, TimeUnit.MILLISECONDS, 8);
+    scheduler = new OutboundCallScheduler(timer, 100, TimeUnit.MILLISECONDS);
+    when(featureRepository.findFeature(any())).thenReturn(Optional.of(feature));
+    doReturn(TestConfirmation.class).when(feature).getConfirmationType();
+    when(communicator.unpackPayload(any(), any())).thenReturn(new TestConfirmation());
+    doAnswer(invocation -> eventHandler = invocation.getArgumentAt(1, CommunicatorEvents.class))
+        .when(communicator)
+        .connect(any(), any());
+    session = new Session(communicator, new Queue(), fulfiller, featureRepository, scheduler);
+    session.open(null, sessionEvents);
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void sendRequest_callInFlight_nextCallSentOnCallResult() {
+    // Given
+    String first = send("First");
+    String second = send("Second");
+    verify(communicator, times(1)).sendCall(eq(first), any(), any());
+    verify(communicator, never()).sendCall(eq(second), any(), any());
+
+    // When
+    eventHandler.onCallResult(first, null, null);
+
+    // Then
+    verify(communicator, times(1)).sendCall(eq(second), any(), any());
+    assertThat(scheduler.getQueuedCallCount(), is(0));
+  }
+
+  @Test
+  public void sendRequest_callInFlight_nextCallSentOnCallError() {
+    // Given
+    String first = send("First");
+    String second = send("Second");
+
+    // When
+    eventHandler.onError(first, "InternalError", "", null);
+
+    // Then
+    verify(communicator, times(1)).sendCall(eq(second), any(), any());
+  }
+
+  @Test
+  public void sendRequest_queuedCalls_higherPrioritySentFirst() {
+    // Given
+    scheduler.setPriority("RemoteStopTransaction", 10);
+    String first = send("GetConfiguration");
+    String low = send("GetConfiguration");
+    String high = send("RemoteStopTransaction");
+
+    // When
+    eventHandler.onCallResult(first, null, null);
+
+    // Then
+    verify(communicator, times(1)).sendCall(eq(high), any(), any());
+    verify(communicator, never()).sendCall(eq(low), any(), any());
+
+    eventHandler.onCallResult(high, null, null);
+    InOrder inOrder = inOrder(communicator);
+    inOrder.verify(communicator).sendCall(eq(high), any(), any());
+    inOrder.verify(communicator).sendCall(eq(low), any(), any());
+  }
+
+  @Test
+  public void sendRequest_callNotAnswered_failsWithTimeoutAndSendsNext() throws Exception {
+    // Given
+    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    String first = session.storeRequest(new TestRequest());
+    session.attachPromise(first, promise);
+    session.sendRequest("First", new TestRequest(), first);
+    String second = send("Second");
+
+    // When
+    Throwable cause = causeOf(promise);
+
+    // Then
+    assertThat(cause, instanceOf(TimeoutException.class));
+    verify(communicator, timeout(2000).times(1)).sendCall(eq(second), any(), any());
+    assertThat(scheduler.getTimedOutCallCount(), is(1L));
+  }
+
+  @Test
+  public void sendRequest_queuedPromiseFailed_callIsSkipped() {
+    // Given
+    String first = send("First");
+    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    String second = session.storeRequest(new TestRequest());
+    session.attachPromise(second, promise);
+    session.sendRequest("Second", new TestRequest(), second);
+    String third = send("Third");
+
+    // When
+    promise.completeExceptionally(new NotConnectedException());
+    eventHandler.onCallResult(first, null, null);
+
+    // Then
+    verify(communicator, never()).sendCall(eq(second), any(), any());
+    verify(communicator, times(1)).sendCall(eq(third), any(), any());
+  }
+
+  @Test
+  public void sendRequest_callQueued_sentCallbackRunsWhenReleased() {
+    // Given
+    String first = send("First");
+    Runnable sent = mock(Runnable.class);
+    String second = session.storeRequest(new TestRequest());
+    session.sendRequest("Second", new TestRequest(), second, sent);
+    verify(sent, never()).run();
+
+    // When
+    eventHandler.onCallResult(first, null, null);
+
+    // Then
+    InOrder inOrder = inOrder(sent, communicator);
+    inOrder.verify(sent).run();
+    inOrder.verify(communicator).sendCall(eq(second), any(), any());
+  }
+
+  private String send(String action) {
+    String id = session.storeRequest(new TestRequest());
+    session.sendRequest(action, new TestRequest(), id);
+    return id;
+  }
+
+  private static Throwable causeOf(CompletableFuture<Confirmation> promise) throws Exception {
+    try {
+      promise.get(2, TimeUnit.SECONDS);
+      throw new AssertionError("Expected the promise to fail");
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+}
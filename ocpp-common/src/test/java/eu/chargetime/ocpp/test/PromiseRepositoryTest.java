@@ -0,0 +1,168 @@
+package eu.chargetime.ocpp.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import eu.chargetime.ocpp.NotConnectedException;
+import eu.chargetime.ocpp.PromiseRepository;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PromiseRepositoryTest {
+
+  private HashedWheelTimer timer;
+  private PromiseRepository sut;
+
+  @Before
+  public void setup() {
+    timer = new HashedWheelTimer("test-wheel", 10, TimeUnit.MILLISECONDS, 8);
+    sut = new PromiseRepository(timer, 100, TimeUnit.MILLISECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void createPromise_notAnswered_failsWithTimeout() throws Exception {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+
+    // When
+    CompletableFuture<Confirmation> promise = sut.createPromise("id", sessionId);
+
+    // Then
+    assertThat(causeOf(promise), instanceOf(TimeoutException.class));
+    assertThat(sut.getPromise("id").isPresent(), is(false));
+    assertThat(sut.getPromiseCount(), is(0));
+    assertThat(sut.getPromiseCount(sessionId), is(0));
+    assertThat(sut.getTimedOutPromiseCount(), is(1L));
+  }
+
+  @Test
+  public void createQueuedPromise_notSent_doesNotTimeOut() throws Exception {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+
+    // When
+    CompletableFuture<Confirmation> promise = sut.createQueuedPromise("id", sessionId);
+    Thread.sleep(300);
+
+    // Then
+    assertThat(promise.isDone(), is(false));
+    assertThat(sut.getPromiseCount(sessionId), is(1));
+  }
+
+  @Test
+  public void startTimeout_queuedPromiseNotAnswered_failsWithTimeout() throws Exception {
+    // Given
+    CompletableFuture<Confirmation> promise = sut.createQueuedPromise("id", UUID.randomUUID());
+
+    // When
+    sut.startTimeout("id");
+
+    // Then
+    assertThat(causeOf(promise), instanceOf(TimeoutException.class));
+    assertThat(sut.getTimedOutPromiseCount(), is(1L));
+  }
+
+  @Test
+  public void removePromise_beforeTimeout_promiseIsNotFailed() throws Exception {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    CompletableFuture<Confirmation> promise = sut.createPromise("id", sessionId);
+
+    // When
+    sut.removePromise("id");
+    Thread.sleep(300);
+
+    // Then
+    assertThat(promise.isDone(), is(false));
+    assertThat(sut.getPromiseCount(sessionId), is(0));
+    assertThat(sut.getTimedOutPromiseCount(), is(0L));
+  }
+
+  @Test
+  public void completePromise_beforeTimeout_promiseIsRemoved() throws Exception {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    CompletableFuture<Confirmation> promise = sut.createPromise("id", sessionId);
+
+    // When
+    promise.complete(null);
+    Thread.sleep(300);
+
+    // Then
+    assertThat(sut.getPromise("id").isPresent(), is(false));
+    assertThat(sut.getPromiseCount(), is(0));
+    assertThat(sut.getPromiseCount(sessionId), is(0));
+    assertThat(sut.getTimedOutPromiseCount(), is(0L));
+  }
+
+  @Test
+  public void failPromises_session_failsOnlyPromisesOfThatSession() throws Exception {
+    // Given
+    sut = new PromiseRepository();
+    UUID closed = UUID.randomUUID();
+    UUID open = UUID.randomUUID();
+    CompletableFuture<Confirmation> first = sut.createPromise("1", closed);
+    CompletableFuture<Confirmation> second = sut.createPromise("2", closed);
+    CompletableFuture<Confirmation> other = sut.createPromise("3", open);
+
+    // When
+    sut.failPromises(closed, new NotConnectedException());
+
+    // Then
+    assertThat(causeOf(first), instanceOf(NotConnectedException.class));
+    assertThat(causeOf(second), instanceOf(NotConnectedException.class));
+    assertThat(other.isDone(), is(false));
+    assertThat(sut.getPromiseCount(), is(1));
+    assertThat(sut.getPromiseCount(closed), is(0));
+    assertThat(sut.getPromiseCount(open), is(1));
+  }
+
+  private static Throwable causeOf(CompletableFuture<Confirmation> promise) throws Exception {
+    try {
+      promise.get(2, TimeUnit.SECONDS);
+      throw new AssertionError("Expected the promise to fail");
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+}
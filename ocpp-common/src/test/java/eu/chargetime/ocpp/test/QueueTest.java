@@ -4,9 +4,15 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.mock;
 
+import eu.chargetime.ocpp.PendingRequest;
 import eu.chargetime.ocpp.Queue;
 import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.TestConfirmation;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -108,4 +114,91 @@ public class QueueTest {
     // Then
     assertThat(result, is(Optional.empty()));
   }
+
+  @Test
+  public void store_twoQueues_ticketsAreUniqueAndShort() {
+    // Given
+    Queue otherQueue = new Queue();
+    Set<String> tickets = new HashSet<>();
+
+    // When
+    for (int i = 0; i < 100; i++) {
+      tickets.add(queue.store(mock(Request.class)));
+      tickets.add(otherQueue.store(mock(Request.class)));
+    }
+
+    // Then
+    assertThat(tickets.size(), is(200));
+    for (String ticket : tickets) assertThat(ticket.length() <= 36, is(true));
+  }
+
+  @Test
+  public void restoreRequest_manyStored_everyRequestRestoredOnce() {
+    // Given
+    List<String> tickets = new ArrayList<>();
+    List<Request> requests = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Request request = mock(Request.class);
+      requests.add(request);
+      tickets.add(queue.store(request));
+    }
+
+    // When
+    for (int i = 0; i < 100; i += 2) {
+      assertThat(queue.restoreRequest(tickets.get(i)).get(), is(requests.get(i)));
+    }
+
+    // Then
+    assertThat(queue.size(), is(50));
+    for (int i = 0; i < 100; i++) {
+      Optional<Request> result = queue.restoreRequest(tickets.get(i));
+      assertThat(result, is(i % 2 == 0 ? Optional.empty() : Optional.of(requests.get(i))));
+    }
+    assertThat(queue.size(), is(0));
+  }
+
+  @Test
+  public void peekRequest_storedRequest_notConsumed() {
+    // Given
+    Request request = mock(Request.class);
+    String ticket = queue.store(request);
+
+    // When
+    Optional<Request> peeked = queue.peekRequest(ticket);
+
+    // Then
+    assertThat(peeked.get(), is(request));
+    assertThat(queue.restoreRequest(ticket).get(), is(request));
+  }
+
+  @Test
+  public void take_storedWithConfirmationType_returnsPendingRequestOnce() {
+    // Given
+    Request request = mock(Request.class);
+    String ticket = queue.store(request, TestConfirmation.class);
+
+    // When
+    PendingRequest pending = queue.take(ticket);
+
+    // Then
+    assertThat(pending.getUniqueId(), is(ticket));
+    assertThat(pending.getRequest(), is(request));
+    assertThat(pending.getConfirmationType(), equalTo(TestConfirmation.class));
+    assertThat(queue.take(ticket), is(nullValue()));
+  }
+
+  @Test
+  public void remove_otherPendingRequest_keepsStoredRequest() {
+    // Given
+    String ticket = queue.store(mock(Request.class));
+    PendingRequest pending = queue.take(ticket);
+    String otherTicket = queue.store(mock(Request.class));
+
+    // When
+    boolean removed = queue.remove(pending);
+
+    // Then
+    assertThat(removed, is(false));
+    assertThat(queue.peek(otherTicket), is(notNullValue()));
+  }
 }
@@ -0,0 +1,113 @@
+package eu.chargetime.ocpp.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import eu.chargetime.ocpp.RequestHandlerExecutor;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestHandlerExecutorTest {
+
+  private RequestHandlerExecutor sut;
+  private CountDownLatch release;
+
+  @Before
+  public void setup() {
+    sut = new RequestHandlerExecutor(1, 3);
+    release = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    sut.shutdown();
+  }
+
+  @Test
+  public void execute_pendingRequestsAtLimit_rejectsAndCounts() throws Exception {
+    // Given
+    Executor session = sut.newSessionExecutor();
+    CountDownLatch started = new CountDownLatch(1);
+    session.execute(() -> block(started));
+    session.execute(() -> {});
+    session.execute(() -> {});
+    assertThat(started.await(1, TimeUnit.SECONDS), is(true));
+
+    // When
+    try {
+      sut.newSessionExecutor().execute(() -> {});
+      fail("Expected RejectedExecutionException");
+    } catch (RejectedExecutionException expected) {
+      // expected
+    }
+
+    // Then
+    assertThat(sut.getPendingRequestCount(), is(3));
+    assertThat(sut.getActiveWorkerCount(), is(1));
+    assertThat(sut.getQueuedRequestCount(), is(2));
+    assertThat(sut.getRejectedRequestCount(), is(1L));
+  }
+
+  @Test
+  public void execute_requestsDone_acceptsNewRequests() throws Exception {
+    // Given
+    Executor session = sut.newSessionExecutor();
+    CountDownLatch started = new CountDownLatch(1);
+    for (int i = 0; i < 3; i++) session.execute(() -> block(started));
+    release.countDown();
+    long deadline = System.currentTimeMillis() + 1000;
+    while (sut.getPendingRequestCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    CountDownLatch done = new CountDownLatch(1);
+
+    // When
+    session.execute(done::countDown);
+
+    // Then
+    assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+    assertThat(sut.getRejectedRequestCount(), is(0L));
+  }
+
+  private void block(CountDownLatch started) {
+    started.countDown();
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
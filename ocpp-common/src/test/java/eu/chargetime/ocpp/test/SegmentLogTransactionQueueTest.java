@@ -0,0 +1,266 @@
+package eu.chargetime.ocpp.test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import eu.chargetime.ocpp.ITransactionQueue.ReplayedCall;
+import eu.chargetime.ocpp.SegmentLogTransactionQueue;
+import eu.chargetime.ocpp.SegmentLogTransactionQueue.MeterValuesPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+public class SegmentLogTransactionQueueTest {
+  private static final int SEGMENT_SIZE = 256;
+  private static final String ID = "id";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private SegmentLogTransactionQueue queue;
+
+  @After
+  public void tearDown() {
+    if (queue != null) queue.close();
+  }
+
+  @Test
+  public void offer_reopen_replaysCallsInOrder() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer(ID, "StartTransaction", "start");
+    queue.offer(ID, "MeterValues", "meter");
+    queue.offer(ID, "StopTransaction", "stop");
+    queue.close();
+
+    // When
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+
+    // Then
+    assertThat(drain(queue), equalTo(Arrays.asList("start", "meter", "stop")));
+  }
+
+  @Test
+  public void offer_reopen_replayedCallsKeepIdAndAction() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer("a-1", "StartTransaction", "start");
+    queue.close();
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer("b-1", "StopTransaction", "stop");
+
+    // When
+    ReplayedCall replayed = queue.peekReplayed();
+    queue.pop();
+
+    // Then
+    assertThat(replayed.getUniqueId(), equalTo("a-1"));
+    assertThat(replayed.getAction(), equalTo("StartTransaction"));
+    assertThat(queue.peek(), equalTo((Object) "stop"));
+    assertThat(queue.peekReplayed(), nullValue());
+  }
+
+  @Test
+  public void pop_reopen_poppedCallNotReplayed() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer(ID, "StartTransaction", "start");
+    queue.offer(ID, "StopTransaction", "stop");
+
+    // When
+    queue.pop();
+    queue.close();
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+
+    // Then
+    assertThat(queue.size(), is(1));
+    assertThat(queue.peek(), equalTo((Object) "stop"));
+  }
+
+  @Test
+  public void offer_spansSegments_releasesSentSegments() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 8);
+    for (int i = 0; i < 20; i++) queue.offer(ID, "StartTransaction", payload(i));
+    long fullSize = queue.getDiskSize();
+
+    // When
+    for (int i = 0; i < 19; i++) queue.pop();
+
+    // Then
+    assertThat(fullSize > SEGMENT_SIZE, is(true));
+    assertThat(queue.getDiskSize(), is((long) SEGMENT_SIZE));
+    assertThat(queue.peek(), equalTo((Object) payload(19)));
+  }
+
+  @Test
+  public void offer_full_dropsOldestMeterValues() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer(ID, "StartTransaction", "start");
+    int meterValues = 0;
+    while (queue.getDroppedCount() == 0) queue.offer(ID, "MeterValues", payload(meterValues++));
+
+    // When
+    boolean stored = queue.offer(ID, "StopTransaction", "stop");
+
+    // Then
+    assertThat(stored, is(true));
+    assertThat(queue.getDiskSize() <= 4 * SEGMENT_SIZE, is(true));
+    List<Object> calls = drain(queue);
+    assertThat(calls.get(0), equalTo((Object) "start"));
+    assertThat(calls.get(calls.size() - 1), equalTo((Object) "stop"));
+    assertThat(calls.contains(payload(0)), is(false));
+    assertThat(calls.contains(payload(meterValues - 1)), is(true));
+  }
+
+  @Test
+  public void offer_fullAndDropNewest_rejectsNewMeterValues() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_NEWEST, 4);
+    int meterValues = 0;
+    while (queue.offer(ID, "MeterValues", payload(meterValues))) meterValues++;
+
+    // Then
+    assertThat(queue.size(), is(meterValues));
+    assertThat(queue.peek(), equalTo((Object) payload(0)));
+    assertThat(queue.getDroppedCount(), is(1L));
+  }
+
+  @Test
+  public void offer_fullWithoutMeterValues_rejectsCall() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    int calls = 0;
+    while (queue.offer(ID, "StartTransaction", payload(calls))) calls++;
+
+    // Then
+    assertThat(queue.size(), is(calls));
+    assertThat(queue.getDiskSize() <= 4 * SEGMENT_SIZE, is(true));
+  }
+
+  @Test
+  public void compacted_reopen_replaysRemainingCalls() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer(ID, "StartTransaction", "start");
+    while (queue.getDroppedCount() == 0) queue.offer(ID, "MeterValues", payload(0));
+    queue.offer(ID, "StopTransaction", "stop");
+    int size = queue.size();
+    queue.close();
+
+    // When
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+
+    // Then
+    List<Object> calls = drain(queue);
+    assertThat(calls.size(), is(size));
+    assertThat(calls.get(0), equalTo((Object) "start"));
+    assertThat(calls.get(size - 1), equalTo((Object) "stop"));
+  }
+
+  @Test
+  public void tornRecord_reopen_replaysValidCalls() throws Exception {
+    // Given
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    queue.offer(ID, "StartTransaction", "start");
+    queue.offer(ID, "StopTransaction", "stop");
+    queue.close();
+    try (RandomAccessFile segment = new RandomAccessFile(firstSegment(), "rw")) {
+      // Corrupt the payload of the second record.
+      byte[] bytes = new byte[(int) segment.length()];
+      segment.readFully(bytes);
+      segment.seek(new String(bytes, StandardCharsets.ISO_8859_1).indexOf("stop"));
+      segment.write('X');
+    }
+
+    // When
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+    boolean stored = queue.offer(ID, "StopTransaction", "again");
+
+    // Then
+    assertThat(stored, is(true));
+    assertThat(drain(queue), equalTo(Arrays.asList((Object) "start", "again")));
+  }
+
+  @Test
+  public void syncInterval_close_callsStored() throws Exception {
+    // Given
+    queue =
+        new SegmentLogTransactionQueue.Builder(folder.getRoot().toPath())
+            .segmentSize(SEGMENT_SIZE)
+            .maxSize(4 * SEGMENT_SIZE)
+            .syncInterval(1, TimeUnit.HOURS)
+            .build();
+    queue.offer(ID, "StartTransaction", "start");
+
+    // When
+    queue.close();
+    queue = open(MeterValuesPolicy.DROP_OLDEST, 4);
+
+    // Then
+    assertThat(queue.peek(), equalTo((Object) "start"));
+  }
+
+  private SegmentLogTransactionQueue open(MeterValuesPolicy policy, int segments)
+      throws IOException {
+    return new SegmentLogTransactionQueue.Builder(folder.getRoot().toPath())
+        .segmentSize(SEGMENT_SIZE)
+        .maxSize((long) segments * SEGMENT_SIZE)
+        .meterValuesPolicy(policy)
+        .build();
+  }
+
+  private File firstSegment() {
+    File[] segments = folder.getRoot().listFiles((dir, name) -> name.endsWith(".seg"));
+    Arrays.sort(segments);
+    return segments[0];
+  }
+
+  private static List<Object> drain(SegmentLogTransactionQueue queue) {
+    List<Object> calls = new ArrayList<>();
+    while (!queue.isEmpty()) {
+      calls.add(queue.peek());
+      queue.pop();
+    }
+    return calls;
+  }
+
+  private static String payload(int index) {
+    return String.format("[2,\"%d\",\"MeterValues\",{\"connectorId\":1}]", index);
+  }
+}
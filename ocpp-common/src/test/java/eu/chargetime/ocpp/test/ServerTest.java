@@ -1,5 +1,7 @@
 package eu.chargetime.ocpp.test;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.*;
 
 import eu.chargetime.ocpp.*;
@@ -11,6 +13,7 @@ import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -76,6 +79,7 @@ public class ServerTest {
         .newSession(any(), any());
 
     when(featureRepository.findFeature(any())).thenReturn(Optional.of(feature));
+    when(featureRepository.getFeature(any())).thenReturn(feature);
     server = new Server(listener, featureRepository, promiseRepository);
   }
 
@@ -113,7 +117,21 @@ public class ServerTest {
     server.send(sessionIndex, request);
 
     // Then
-    verify(session, times(1)).sendRequest(anyString(), eq(request), anyString());
+    verify(session, times(1)).sendRequest(anyString(), eq(request), anyString(), any());
+  }
+
+  @Test
+  public void handleConnectionClosed_sessionHasPendingRequests_failsThemNotConnected() {
+    // Given
+    server.open(LOCALHOST, PORT, serverEvents);
+    listenerEvents.newSession(session, information);
+
+    // When
+    sessionEvents.handleConnectionClosed();
+
+    // Then
+    verify(promiseRepository, times(1))
+        .failPromises(eq(session.getSessionId()), any(NotConnectedException.class));
   }
 
   @Test
@@ -129,6 +147,36 @@ public class ServerTest {
     verify(feature, times(1)).handleRequest(any(UUID.class), eq(request));
   }
 
+  @Test(expected = IllegalStateException.class)
+  public void handleRequest_sessionClosed_throwsIllegalStateException() throws Exception {
+    // Given
+    server.open(LOCALHOST, PORT, serverEvents);
+    listenerEvents.newSession(session, information);
+    sessionEvents.handleConnectionClosed();
+
+    // When
+    sessionEvents.handleRequest(request);
+  }
+
+  @Test
+  public void send_aMessage_startsTimeoutWhenSessionSendsIt() throws Exception {
+    // Given
+    ArgumentCaptor<Runnable> sent = ArgumentCaptor.forClass(Runnable.class);
+    when(session.storeRequest(request)).thenReturn("id");
+    server.open(LOCALHOST, PORT, serverEvents);
+    listenerEvents.newSession(session, information);
+    server.send(sessionIndex, request);
+    verify(promiseRepository, times(1)).createQueuedPromise("id", session.getSessionId());
+    verify(session).sendRequest(anyString(), eq(request), eq("id"), sent.capture());
+    verify(promiseRepository, never()).startTimeout(any());
+
+    // When
+    sent.getValue().run();
+
+    // Then
+    verify(promiseRepository, times(1)).startTimeout("id");
+  }
+
   @Test
   public void send_aMessage_validatesMessage() throws Exception {
     // Given
@@ -141,4 +189,50 @@ public class ServerTest {
     // Then
     verify(request, times(1)).validate();
   }
+
+  @Test
+  public void send_byIdentifier_isCommunicated() throws Exception {
+    // Given
+    when(information.getIdentifier()).thenReturn("/CP_1");
+    server.open(LOCALHOST, PORT, serverEvents);
+    listenerEvents.newSession(session, information);
+
+    // When
+    server.send("/CP_1", request);
+
+    // Then
+    verify(session, times(1)).sendRequest(anyString(), eq(request), anyString(), any());
+    assertThat(server.getSessionIndex("/CP_1"), is(sessionIndex));
+  }
+
+  @Test(expected = NotConnectedException.class)
+  public void send_unknownIdentifier_throwsNotConnectedException() throws Exception {
+    // Given
+    server.open(LOCALHOST, PORT, serverEvents);
+
+    // When
+    server.send("/CP_unknown", request);
+  }
+
+  @Test
+  public void newSession_chargePointReconnects_previousSessionIsReplacedAndClosed() {
+    // Given
+    Session reconnected = mock(Session.class);
+    UUID reconnectedId = UUID.randomUUID();
+    when(reconnected.getSessionId()).thenReturn(reconnectedId);
+    when(information.getIdentifier()).thenReturn("/CP_1");
+    server.open(LOCALHOST, PORT, serverEvents);
+    listenerEvents.newSession(session, information);
+    SessionEvents previousEvents = sessionEvents;
+
+    // When
+    listenerEvents.newSession(reconnected, information);
+    previousEvents.handleConnectionClosed();
+
+    // Then
+    verify(session, times(1)).close();
+    verify(serverEvents, times(1)).lostSession(session.getSessionId());
+    assertThat(server.getSessionIndex("/CP_1"), is(reconnectedId));
+    assertThat(server.isSessionOpen(reconnectedId), is(true));
+  }
 }
@@ -1,19 +1,27 @@
 package eu.chargetime.ocpp.test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.*;
 
 import eu.chargetime.ocpp.*;
 import eu.chargetime.ocpp.feature.Feature;
+import eu.chargetime.ocpp.feature.RawPayloadFeature;
 import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.RawRequest;
 import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.TestConfirmation;
 import eu.chargetime.ocpp.model.TestRequest;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -209,6 +217,51 @@ public class SessionTest {
     verify(communicator, times(1)).sendCallError(eq(someId), anyString(), anyString(), anyString());
   }
 
+  @Test
+  public void onCall_handlerExecutorBusy_sendsInternalErrorCallError() throws Exception {
+    // Given
+    String someId = "Some id";
+    doAnswer(
+            invocation ->
+                invocation
+                    .getArgumentAt(0, CompletableFuture.class)
+                    .completeExceptionally(new RejectedExecutionException()))
+        .when(fulfiller)
+        .fulfill(any(), any(), any());
+    when(communicator.unpackPayload(any(), any())).thenReturn(new TestRequest());
+
+    // When
+    eventHandler.onCall(someId, null, null);
+
+    // Then
+    verify(communicator, times(1))
+        .sendCallError(eq(someId), any(), eq("InternalError"), contains("busy"));
+  }
+
+  @Test
+  public void onCall_requestViolatesConstraint_sendsConstraintAsErrorDetails() throws Exception {
+    // Given
+    String someId = "Some id";
+    when(communicator.unpackPayload(any(), any()))
+        .thenThrow(new PropertyConstraintException(42, "connectorId must be 0 or 1"));
+    ArgumentCaptor<Object> detailsCaptor = ArgumentCaptor.forClass(Object.class);
+
+    // When
+    eventHandler.onCall(someId, null, null);
+
+    // Then
+    verify(communicator, times(1))
+        .sendCallError(
+            eq(someId),
+            any(),
+            eq("TypeConstraintViolation"),
+            eq("Validation failed: [connectorId must be 0 or 1]"),
+            detailsCaptor.capture());
+    Map<?, ?> details = (Map<?, ?>) detailsCaptor.getValue();
+    assertThat(details.get("constraint"), equalTo("connectorId must be 0 or 1"));
+    assertThat(details.containsKey("value"), is(false));
+  }
+
   @Test
   public void close_disconnects() {
     // When
@@ -230,4 +283,184 @@ public class SessionTest {
     // Then
     verify(communicator, times(1)).sendCallError(eq(someId), anyString(), anyString(), anyString());
   }
+
+  @Test
+  public void onCall_rawPayloadFeature_dispatchesRawRequestWithoutUnpacking() throws Exception {
+    // Given
+    String someId = "Some id";
+    String someAction = "Some action";
+    String somePayload = "{\"connectorId\":1}";
+    when(featureRepository.findFeature(any()))
+        .thenReturn(Optional.of(new RawPayloadFeature(feature, (sessionIndex, request) -> null)));
+    ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+
+    // When
+    eventHandler.onCall(someId, someAction, somePayload);
+
+    // Then
+    verify(communicator, never()).unpackPayload(any(), any());
+    verify(fulfiller, times(1)).fulfill(any(), any(), requestCaptor.capture());
+    RawRequest request = (RawRequest) requestCaptor.getValue();
+    assertThat(request.getAction(), equalTo(someAction));
+    assertThat(request.getPayload(), equalTo(somePayload));
+  }
+
+  @Test
+  public void getRequestType_rawPayloadFeature_returnsNull() {
+    // Given
+    when(featureRepository.findFeature(any()))
+        .thenReturn(Optional.of(new RawPayloadFeature(feature, (sessionIndex, request) -> null)));
+
+    // When
+    Class<? extends Request> requestType = eventHandler.getRequestType("Some action");
+
+    // Then
+    assertThat(requestType, nullValue());
+  }
+
+  @Test
+  public void onCallResult_attachedPromise_completedFromStoredRequest() throws Exception {
+    // Given
+    Queue realQueue = new Queue();
+    session = new Session(communicator, realQueue, fulfiller, featureRepository);
+    session.open(null, sessionEvents);
+    doReturn(TestConfirmation.class).when(feature).getConfirmationType();
+    String id = session.storeRequest(new TestRequest());
+    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    session.attachPromise(id, promise);
+    TestConfirmation confirmation = new TestConfirmation();
+    when(communicator.unpackPayload(any(), eq(TestConfirmation.class))).thenReturn(confirmation);
+    reset(featureRepository);
+
+    // When
+    eventHandler.onCallResult(id, null, null);
+
+    // Then
+    assertThat(promise.getNow(null), equalTo(confirmation));
+    assertThat(realQueue.size(), is(0));
+    verify(featureRepository, never()).findFeature(any());
+    verify(sessionEvents, times(1)).handleConfirmation(id, confirmation);
+  }
+
+  @Test
+  public void onCallResult_promiseAlreadyFailed_confirmationIsRejected() throws Exception {
+    // Given
+    Queue realQueue = new Queue();
+    session = new Session(communicator, realQueue, fulfiller, featureRepository);
+    session.open(null, sessionEvents);
+    doReturn(TestConfirmation.class).when(feature).getConfirmationType();
+    String id = session.storeRequest(new TestRequest());
+    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    session.attachPromise(id, promise);
+
+    // When
+    promise.completeExceptionally(new NotConnectedException());
+    eventHandler.onCallResult(id, null, null);
+
+    // Then
+    assertThat(realQueue.size(), is(0));
+    verify(sessionEvents, never()).handleConfirmation(any(), any());
+    verify(communicator, never()).sendCallError(any(), any(), any(), any());
+  }
+
+  @Test
+  public void onReplayedCall_callResult_completesHandedOverPromise() throws Exception {
+    // Given
+    Queue realQueue = new Queue();
+    session = new Session(communicator, realQueue, fulfiller, featureRepository);
+    session.open(null, sessionEvents);
+    doReturn(TestConfirmation.class).when(feature).getConfirmationType();
+    TestConfirmation confirmation = new TestConfirmation();
+    when(communicator.unpackPayload(any(), eq(TestConfirmation.class))).thenReturn(confirmation);
+    ArgumentCaptor<CompletableFuture> promiseCaptor =
+        ArgumentCaptor.forClass(CompletableFuture.class);
+
+    // When
+    eventHandler.onReplayedCall("replayed id", "StartTransaction");
+    assertThat(eventHandler.getConfirmationType("replayed id"), equalTo(TestConfirmation.class));
+    eventHandler.onCallResult("replayed id", null, "{}");
+
+    // Then
+    verify(sessionEvents, times(1))
+        .handleReplayedCall(eq("replayed id"), eq("StartTransaction"), promiseCaptor.capture());
+    assertThat(promiseCaptor.getValue().getNow(null), is((Object) confirmation));
+    verify(sessionEvents, times(1)).handleConfirmation("replayed id", confirmation);
+    assertThat(realQueue.size(), is(0));
+  }
+
+  @Test
+  public void onReplayedCall_callStillPending_notReplacedOrHandedOver() throws Exception {
+    // Given
+    Queue realQueue = new Queue();
+    session = new Session(communicator, realQueue, fulfiller, featureRepository);
+    session.open(null, sessionEvents);
+    String id = session.storeRequest(new TestRequest());
+
+    // When
+    eventHandler.onReplayedCall(id, "StartTransaction");
+
+    // Then
+    assertThat(realQueue.peekRequest(id).isPresent(), is(true));
+    verify(sessionEvents, never()).handleReplayedCall(any(), any(), any());
+  }
+
+  @Test
+  public void onCallResult_unknownId_noCallErrorSent() {
+    // When
+    eventHandler.onCallResult("unknown id", null, "{}");
+
+    // Then
+    verify(communicator, never()).sendCallError(any(), any(), any(), any());
+    verify(sessionEvents, never()).handleConfirmation(any(), any());
+  }
+
+  @Test
+  public void onCallResult_invalidConfirmation_attachedPromiseFails() throws Exception {
+    // Given
+    Queue realQueue = new Queue();
+    session = new Session(communicator, realQueue, fulfiller, featureRepository);
+    session.open(null, sessionEvents);
+    doReturn(TestConfirmation.class).when(feature).getConfirmationType();
+    String id = session.storeRequest(new TestRequest());
+    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    session.attachPromise(id, promise);
+    TestConfirmation confirmation = mock(TestConfirmation.class);
+    when(confirmation.validate()).thenReturn(false);
+    when(communicator.unpackPayload(any(), eq(TestConfirmation.class))).thenReturn(confirmation);
+
+    // When
+    eventHandler.onCallResult(id, null, null);
+
+    // Then
+    assertThat(promise.isCompletedExceptionally(), is(true));
+    verify(sessionEvents, never()).handleConfirmation(any(), any());
+  }
+
+  @Test
+  public void onCallResult_unpackFails_attachedPromiseFails() throws Exception {
+    // Given
+    Queue realQueue = new Queue();
+    session = new Session(communicator, realQueue, fulfiller, featureRepository);
+    session.open(null, sessionEvents);
+    doReturn(TestConfirmation.class).when(feature).getConfirmationType();
+    String id = session.storeRequest(new TestRequest());
+    CompletableFuture<Confirmation> promise = new CompletableFuture<>();
+    session.attachPromise(id, promise);
+    when(communicator.unpackPayload(any(), eq(TestConfirmation.class)))
+        .thenThrow(new PropertyConstraintException(null, "status is invalid"));
+
+    // When
+    eventHandler.onCallResult(id, null, null);
+
+    // Then
+    assertThat(promise.isCompletedExceptionally(), is(true));
+    assertThat(realQueue.size(), is(0));
+    verify(communicator, times(1))
+        .sendCallError(
+            eq(id),
+            any(),
+            eq("TypeConstraintViolation"),
+            anyString(),
+            eq(new PropertyConstraintException(null, "status is invalid").getErrorDetails()));
+  }
 }
@@ -0,0 +1,112 @@
+package eu.chargetime.ocpp.utilities.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setup() {
+    timer = new HashedWheelTimer("test-wheel", 10, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void newTimeout_delayLongerThanOneRevolution_runsTaskAfterDelay() throws Exception {
+    // Given
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+
+    // When
+    timer.newTimeout(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+    // Then
+    assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+    assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200), is(true));
+    assertThat(timer.size(), is(0));
+  }
+
+  @Test
+  public void cancel_beforeExpiry_taskNeverRuns() throws Exception {
+    // Given
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch later = new CountDownLatch(1);
+    HashedWheelTimer.Timeout timeout =
+        timer.newTimeout(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+
+    // When
+    boolean cancelled = timeout.cancel();
+    timer.newTimeout(later::countDown, 100, TimeUnit.MILLISECONDS);
+
+    // Then
+    assertThat(later.await(2, TimeUnit.SECONDS), is(true));
+    assertThat(cancelled, is(true));
+    assertThat(timeout.cancel(), is(false));
+    assertThat(runs.get(), is(0));
+  }
+
+  @Test
+  public void newTimeout_manyTimeouts_allRunOnTheTimerThread() throws Exception {
+    // Given
+    int count = 10000;
+    CountDownLatch latch = new CountDownLatch(count);
+    AtomicInteger otherThreads = new AtomicInteger();
+
+    // When
+    for (int i = 0; i < count; i++) {
+      timer.newTimeout(
+          () -> {
+            if (!"test-wheel".equals(Thread.currentThread().getName())) {
+              otherThreads.incrementAndGet();
+            }
+            latch.countDown();
+          },
+          i % 300,
+          TimeUnit.MILLISECONDS);
+    }
+
+    // Then
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(otherThreads.get(), is(0));
+  }
+}
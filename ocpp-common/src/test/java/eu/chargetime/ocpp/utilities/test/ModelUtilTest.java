@@ -4,6 +4,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 import eu.chargetime.ocpp.utilities.ModelUtil;
+import java.util.Arrays;
 import org.junit.Test;
 
 /*
@@ -127,4 +128,37 @@ public class ModelUtilTest {
     // Then
     assertThat(found, is(true));
   }
+
+  @Test
+  public void elementsEqual_lazyAndArrayBackedWithSameElements_returnsTrue() {
+    // Given
+    Iterable<String> lazy = () -> Arrays.asList("a", "b").iterator();
+
+    // When
+    boolean equal = ModelUtil.elementsEqual(lazy, ModelUtil.asIterable(new String[] {"a", "b"}));
+
+    // Then
+    assertThat(equal, is(true));
+  }
+
+  @Test
+  public void elementsEqual_oneElementMore_returnsFalse() {
+    // When
+    boolean equal = ModelUtil.elementsEqual(Arrays.asList("a"), Arrays.asList("a", "b"));
+
+    // Then
+    assertThat(equal, is(false));
+  }
+
+  @Test
+  public void elementsHashCode_lazyElements_matchesArrayHashCode() {
+    // Given
+    Iterable<String> lazy = () -> Arrays.asList("a", null).iterator();
+
+    // When
+    int hashCode = ModelUtil.elementsHashCode(lazy);
+
+    // Then
+    assertThat(hashCode, is(Arrays.hashCode(new String[] {"a", null})));
+  }
 }
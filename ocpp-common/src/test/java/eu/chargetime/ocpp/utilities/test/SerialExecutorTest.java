@@ -0,0 +1,172 @@
+package eu.chargetime.ocpp.utilities.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import eu.chargetime.ocpp.utilities.SerialExecutor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SerialExecutorTest {
+
+  private ExecutorService pool;
+
+  @Before
+  public void setup() {
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void execute_manyTasks_runOneAtATimeInOrder() throws Exception {
+    // Given
+    SerialExecutor sut = new SerialExecutor(pool, 3);
+    int count = 1000;
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger overlaps = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(count);
+
+    // When
+    for (int i = 0; i < count; i++) {
+      int index = i;
+      sut.execute(
+          () -> {
+            if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+            order.add(index);
+            running.decrementAndGet();
+            done.countDown();
+          });
+    }
+
+    // Then
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(overlaps.get(), is(0));
+    for (int i = 0; i < count; i++) assertThat(order.get(i), is(i));
+  }
+
+  @Test
+  public void execute_twoExecutorsOnePoolThread_takeTurnsAfterEachBatch() throws Exception {
+    // Given
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    SerialExecutor first = new SerialExecutor(single, 2);
+    SerialExecutor second = new SerialExecutor(single, 2);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(8);
+    single.execute(
+        () -> {
+          try {
+            blocked.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    // When
+    for (int i = 0; i < 4; i++) {
+      int index = i;
+      first.execute(
+          () -> {
+            order.add("first" + index);
+            done.countDown();
+          });
+      second.execute(
+          () -> {
+            order.add("second" + index);
+            done.countDown();
+          });
+    }
+    blocked.countDown();
+
+    // Then
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    single.shutdown();
+    assertThat(
+        order,
+        equalTo(
+            Arrays.asList(
+                "first0", "first1", "second0", "second1", "first2", "first3", "second2",
+                "second3")));
+  }
+
+  @Test
+  public void execute_executorRejects_runsOnCallingThread() {
+    // Given
+    SerialExecutor sut =
+        new SerialExecutor(
+            task -> {
+              throw new RejectedExecutionException();
+            });
+    List<Thread> threads = new ArrayList<>();
+
+    // When
+    sut.execute(() -> threads.add(Thread.currentThread()));
+    sut.execute(() -> threads.add(Thread.currentThread()));
+
+    // Then
+    assertThat(threads.size(), is(2));
+    assertThat(threads.get(0), is(Thread.currentThread()));
+    assertThat(threads.get(1), is(Thread.currentThread()));
+    assertThat(sut.size(), is(0));
+  }
+
+  @Test
+  public void execute_taskThrows_laterTasksStillRun() throws Exception {
+    // Given
+    SerialExecutor sut = new SerialExecutor(pool);
+    CountDownLatch done = new CountDownLatch(1);
+
+    // When
+    sut.execute(
+        () -> {
+          throw new IllegalStateException("expected");
+        });
+    sut.execute(done::countDown);
+
+    // Then
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+  }
+}
@@ -0,0 +1,133 @@
+package eu.chargetime.ocpp.utilities.test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import eu.chargetime.ocpp.utilities.ZonedDateTimeCodec;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import org.junit.Test;
+
+/*
+ChargeTime.eu - Java OCA OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+public class ZonedDateTimeCodecTest {
+
+  @Test
+  public void parse_ocppTimestamps_sameAsZonedDateTimeParse() {
+    String[] timestamps = {
+      "2016-04-28T07:16:11Z",
+      "2016-04-28T07:16:11.988Z",
+      "2016-04-28T07:16:11.9Z",
+      "2016-04-28T07:16:11.123456789Z",
+      "2016-04-28T07:16:11.988+02:00",
+      "2016-04-28T07:16:11-05:30",
+      "2016-04-28T07:16:11+00:00",
+      "2016-02-29T23:59:59.000001Z",
+      "2016-04-28T07:16Z",
+      "2016-04-28T07:16:11.988+02:00[Europe/Paris]",
+      "2016-04-28t07:16:11Z",
+      "2016-04-28T07:16:11.Z"
+    };
+
+    for (String timestamp : timestamps) {
+      // When
+      ZonedDateTime result = ZonedDateTimeCodec.parse(timestamp);
+
+      // Then
+      assertThat(timestamp, result, equalTo(ZonedDateTime.parse(timestamp)));
+    }
+  }
+
+  @Test
+  public void parse_sameSecondTwice_keepsFractionAndOffset() {
+    // Given
+    ZonedDateTimeCodec.parse("2019-05-13T12:43:22.100Z");
+
+    // When
+    ZonedDateTime fraction = ZonedDateTimeCodec.parse("2019-05-13T12:43:22.200Z");
+    ZonedDateTime offset = ZonedDateTimeCodec.parse("2019-05-13T12:43:22+01:00");
+
+    // Then
+    assertThat(fraction, equalTo(ZonedDateTime.parse("2019-05-13T12:43:22.200Z")));
+    assertThat(offset, equalTo(ZonedDateTime.parse("2019-05-13T12:43:22+01:00")));
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void parse_invalidDate_throwsDateTimeParseException() {
+    ZonedDateTimeCodec.parse("2017-02-29T12:00:00Z");
+  }
+
+  @Test
+  public void format_randomTimestamps_sameAsDateTimeFormatter() {
+    // Given
+    Random random = new Random(42);
+    ZoneId[] zones = {ZoneOffset.UTC, ZoneOffset.ofHours(2), ZoneOffset.ofHoursMinutes(-9, -30)};
+
+    for (int i = 0; i < 10000; i++) {
+      long epochSecond = random.nextInt(2000000000);
+      int nano = i % 4 == 0 ? 0 : random.nextInt(1000000000) / pow10(random.nextInt(9));
+      ZonedDateTime value =
+          ZonedDateTime.ofInstant(
+              Instant.ofEpochSecond(epochSecond, nano), zones[i % zones.length]);
+
+      // When
+      String instant = ZonedDateTimeCodec.formatInstant(value);
+      String zoned = ZonedDateTimeCodec.format(value);
+
+      // Then
+      assertThat(instant, equalTo(DateTimeFormatter.ISO_INSTANT.format(value)));
+      assertThat(zoned, equalTo(value.toString()));
+      assertThat(ZonedDateTimeCodec.parse(zoned), equalTo(value));
+    }
+  }
+
+  @Test
+  public void format_wholeMinuteAndRegionZone_sameAsToString() {
+    // Given
+    ZonedDateTime wholeMinute = ZonedDateTime.parse("2019-05-13T12:43:00+02:00");
+    ZonedDateTime region = ZonedDateTime.parse("2019-05-13T12:43:22+02:00[Europe/Paris]");
+    ZonedDateTime farFuture = ZonedDateTime.parse("+12019-05-13T12:43:22Z");
+
+    // Then
+    assertThat(ZonedDateTimeCodec.format(wholeMinute), equalTo(wholeMinute.toString()));
+    assertThat(ZonedDateTimeCodec.format(region), equalTo(region.toString()));
+    assertThat(
+        ZonedDateTimeCodec.formatInstant(farFuture),
+        equalTo(DateTimeFormatter.ISO_INSTANT.format(farFuture)));
+  }
+
+  private static int pow10(int exponent) {
+    int result = 1;
+    for (int i = 0; i < exponent; i++) result *= 10;
+    return result;
+  }
+}
@@ -213,6 +213,8 @@ public class DummyHandlers {
 
       @Override
       public void lostSession(UUID identity) {
+        // A charge point that reconnected has already replaced its previous session
+        if (currentSessionIndex != null && !currentSessionIndex.equals(identity)) return;
         currentSessionIndex = null;
         currentIdentifier = null;
         // clear
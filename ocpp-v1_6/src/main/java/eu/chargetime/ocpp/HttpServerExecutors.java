@@ -0,0 +1,73 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors for the HTTP servers hosting the SOAP endpoints.
+ *
+ * <p>Requests are answered asynchronously, so an executor thread is only busy while a message is
+ * read and handed on. Virtual threads are used when the running JVM provides them.
+ */
+public final class HttpServerExecutors {
+  private static final Logger logger = LoggerFactory.getLogger(HttpServerExecutors.class);
+
+  private HttpServerExecutors() {}
+
+  /**
+   * Create the default executor: one virtual thread per request on Java 21 and later, a cached
+   * thread pool otherwise.
+   *
+   * @return a new {@link ExecutorService}, the caller is responsible for shutting it down.
+   */
+  public static ExecutorService newDefault() {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    return executor != null ? executor : Executors.newCachedThreadPool();
+  }
+
+  /**
+   * Create an executor starting a virtual thread per request.
+   *
+   * @return a new {@link ExecutorService}, or null if the JVM doesn't support virtual threads.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.debug("newVirtualThreadPerTaskExecutor() failed", e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import eu.chargetime.ocpp.feature.Feature;
+import eu.chargetime.ocpp.feature.profile.Profile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the JAXB machinery needed to bind SOAP payloads.
+ *
+ * <p>A {@link JAXBContext} is created once per payload type and shared by all communicators.
+ * Marshallers and unmarshallers are not thread-safe, so they are taken from a small pool per type
+ * for one message and returned after it. The pools don't depend on which thread handles the
+ * message, so they're reused even when each exchange gets a thread of its own.
+ */
+final class JAXBContextCache {
+  private static final Logger logger = LoggerFactory.getLogger(JAXBContextCache.class);
+
+  /** Idle marshallers or unmarshallers kept per type, more are dropped when returned. */
+  private static final int MAX_IDLE_PER_TYPE = 8;
+
+  private static final ConcurrentMap<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Class<?>, Pool<Marshaller>> marshallers =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Class<?>, Pool<Unmarshaller>> unmarshallers =
+      new ConcurrentHashMap<>();
+
+  private JAXBContextCache() {}
+
+  /**
+   * Create the contexts for the request and confirmation types of all features in a {@link
+   * Profile}, so the first message of each type doesn't pay for it.
+   *
+   * @param profile the feature {@link Profile} to prepare.
+   */
+  static void preload(Profile profile) {
+    for (Feature feature : profile.getFeatureList()) {
+      try {
+        getContext(feature.getRequestType());
+        getContext(feature.getConfirmationType());
+      } catch (JAXBException e) {
+        logger.warn("preload() failed, contexts will be created on first use", e);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Get the shared {@link JAXBContext} for a type.
+   *
+   * @param type the bound class.
+   * @return the context, created on first use.
+   * @throws JAXBException if the context couldn't be created.
+   */
+  static JAXBContext getContext(Class<?> type) throws JAXBException {
+    JAXBContext context = contexts.get(type);
+    if (context == null) {
+      JAXBContext created = JAXBContext.newInstance(type);
+      context = contexts.putIfAbsent(type, created);
+      if (context == null) context = created;
+    }
+    return context;
+  }
+
+  /**
+   * Take a {@link Marshaller} for a type. Hand it back with {@link #releaseMarshaller(Class,
+   * Marshaller)} when done.
+   *
+   * @param type the bound class.
+   * @return a marshaller only to be used by the caller until it's released.
+   * @throws JAXBException if the marshaller couldn't be created.
+   */
+  static Marshaller acquireMarshaller(Class<?> type) throws JAXBException {
+    Marshaller marshaller = poolOf(marshallers, type).poll();
+    return marshaller != null ? marshaller : getContext(type).createMarshaller();
+  }
+
+  /**
+   * Hand back a {@link Marshaller} taken with {@link #acquireMarshaller(Class)}.
+   *
+   * @param type the bound class.
+   * @param marshaller the marshaller, not to be used by the caller anymore.
+   */
+  static void releaseMarshaller(Class<?> type, Marshaller marshaller) {
+    poolOf(marshallers, type).offer(marshaller);
+  }
+
+  /**
+   * Take an {@link Unmarshaller} for a type. Hand it back with {@link #releaseUnmarshaller(Class,
+   * Unmarshaller)} when done.
+   *
+   * @param type the bound class.
+   * @return an unmarshaller only to be used by the caller until it's released.
+   * @throws JAXBException if the unmarshaller couldn't be created.
+   */
+  static Unmarshaller acquireUnmarshaller(Class<?> type) throws JAXBException {
+    Unmarshaller unmarshaller = poolOf(unmarshallers, type).poll();
+    return unmarshaller != null ? unmarshaller : getContext(type).createUnmarshaller();
+  }
+
+  /**
+   * Hand back an {@link Unmarshaller} taken with {@link #acquireUnmarshaller(Class)}.
+   *
+   * @param type the bound class.
+   * @param unmarshaller the unmarshaller, not to be used by the caller anymore.
+   */
+  static void releaseUnmarshaller(Class<?> type, Unmarshaller unmarshaller) {
+    poolOf(unmarshallers, type).offer(unmarshaller);
+  }
+
+  private static <T> Pool<T> poolOf(ConcurrentMap<Class<?>, Pool<T>> pools, Class<?> type) {
+    Pool<T> pool = pools.get(type);
+    if (pool == null) {
+      Pool<T> created = new Pool<>();
+      pool = pools.putIfAbsent(type, created);
+      if (pool == null) pool = created;
+    }
+    return pool;
+  }
+
+  /** Idle instances of one type, at most {@link #MAX_IDLE_PER_TYPE}. */
+  private static final class Pool<T> {
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    T poll() {
+      T instance = idle.poll();
+      if (instance != null) size.decrementAndGet();
+      return instance;
+    }
+
+    void offer(T instance) {
+      if (size.incrementAndGet() <= MAX_IDLE_PER_TYPE) {
+        idle.offer(instance);
+      } else {
+        size.decrementAndGet();
+      }
+    }
+  }
+}
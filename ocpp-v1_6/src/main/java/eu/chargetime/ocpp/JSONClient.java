@@ -1,5 +1,6 @@
 package eu.chargetime.ocpp;
 
+import eu.chargetime.ocpp.feature.Feature;
 import eu.chargetime.ocpp.feature.profile.ClientCoreProfile;
 import eu.chargetime.ocpp.feature.profile.Profile;
 import eu.chargetime.ocpp.model.Confirmation;
@@ -12,7 +13,6 @@ import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 import javax.net.ssl.SSLContext;
 import org.java_websocket.drafts.Draft;
-import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.protocols.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,11 +70,27 @@ public class JSONClient implements IClientAPI {
       ClientCoreProfile coreProfile, String identity, JSONConfiguration configuration) {
     this.identity = identity;
     draftOcppOnly =
-        new Draft_6455(Collections.emptyList(), Collections.singletonList(new Protocol("ocpp1.6")));
+        new Draft_6455Utf8(
+            PerMessageDeflate.fromConfiguration(configuration),
+            Collections.singletonList(new Protocol("ocpp1.6")));
     transmitter = new WebSocketTransmitter(configuration, draftOcppOnly);
-    JSONCommunicator communicator = new JSONCommunicator(transmitter);
+    JsonCodec codec =
+        configuration.getParameter(
+            JSONConfiguration.JSON_CODEC_PARAMETER, JSONCommunicator.getDefaultCodec());
+    ITransactionQueue transactionQueue =
+        configuration.getParameter(
+            JSONConfiguration.TRANSACTION_QUEUE_PARAMETER, new TransactionQueue());
+    JSONCommunicator communicator = new JSONCommunicator(transmitter, codec, transactionQueue);
     featureRepository = new FeatureRepository();
-    ISession session = new SessionFactory(featureRepository).createSession(communicator);
+    RequestHandlerExecutor requestHandlerExecutor =
+        configuration.getParameter(
+            JSONConfiguration.REQUEST_HANDLER_EXECUTOR_PARAMETER,
+            RequestHandlerExecutor.getDefault());
+    OutboundCallScheduler callScheduler =
+        configuration.getParameter(JSONConfiguration.OUTBOUND_CALL_SCHEDULER_PARAMETER);
+    ISession session =
+        new SessionFactory(featureRepository, requestHandlerExecutor, callScheduler)
+            .createSession(communicator);
     client = new Client(session, featureRepository, new PromiseRepository());
     featureRepository.addFeatureProfile(coreProfile);
   }
@@ -149,6 +165,16 @@ public class JSONClient implements IClientAPI {
     featureRepository.addFeatureProfile(profile);
   }
 
+  /**
+   * Add a single {@link Feature}, it replaces a feature with the same action name. Use it to
+   * register a {@link eu.chargetime.ocpp.feature.RawPayloadFeature}.
+   *
+   * @param feature supported {@link Feature}.
+   */
+  public void addFeature(Feature feature) {
+    featureRepository.addFeature(feature);
+  }
+
   @Override
   public void connect(String url, ClientEvents clientEvents) {
     logger.debug("Feature repository: {}", featureRepository);
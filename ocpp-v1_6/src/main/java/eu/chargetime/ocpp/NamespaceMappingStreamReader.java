@@ -0,0 +1,451 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * {@link XMLStreamReader} over a DOM payload that puts every element in one namespace while it is
+ * read. The counterpart of {@link NamespaceMappingStreamWriter}.
+ *
+ * <p>Elements are reported unprefixed in the namespace, whatever they were parsed as, so the DOM
+ * isn't renamed before it's unmarshalled. Attributes and prefixed namespace declarations are
+ * reported as they are, a default namespace declaration is reported as the target namespace.
+ * Comments and processing instructions are skipped.
+ */
+class NamespaceMappingStreamReader implements XMLStreamReader {
+
+  private static final Location UNKNOWN_LOCATION =
+      new Location() {
+        @Override
+        public int getLineNumber() {
+          return -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+          return -1;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+          return -1;
+        }
+
+        @Override
+        public String getPublicId() {
+          return null;
+        }
+
+        @Override
+        public String getSystemId() {
+          return null;
+        }
+      };
+
+  private final Node root;
+  private final String namespace;
+  private Node node;
+  private int eventType = START_DOCUMENT;
+
+  private Node attributesOf;
+  private final List<Attr> attributes = new ArrayList<>();
+  private final List<Attr> namespaces = new ArrayList<>();
+
+  /**
+   * @param source the document, or element, to read.
+   * @param namespace the namespace of every element.
+   */
+  NamespaceMappingStreamReader(Node source, String namespace) {
+    this.root = source instanceof Document ? ((Document) source).getDocumentElement() : source;
+    this.namespace = namespace;
+  }
+
+  @Override
+  public int next() throws XMLStreamException {
+    switch (eventType) {
+      case START_DOCUMENT:
+        return moveTo(root, null);
+      case START_ELEMENT:
+        return moveTo(node.getFirstChild(), node);
+      case END_DOCUMENT:
+        throw new NoSuchElementException();
+      case END_ELEMENT:
+        if (node == root) return eventType = END_DOCUMENT;
+        return moveTo(node.getNextSibling(), node.getParentNode());
+      default:
+        return moveTo(node.getNextSibling(), node.getParentNode());
+    }
+  }
+
+  /** Move to the first element or text from candidate on, or to the end of parent if none. */
+  private int moveTo(Node candidate, Node parent) {
+    for (; candidate != null; candidate = candidate.getNextSibling()) {
+      switch (candidate.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          node = candidate;
+          return eventType = START_ELEMENT;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          node = candidate;
+          return eventType = CHARACTERS;
+        default:
+          break;
+      }
+    }
+    node = parent;
+    return eventType = END_ELEMENT;
+  }
+
+  private void loadAttributes() {
+    if (attributesOf == node) return;
+
+    attributesOf = node;
+    attributes.clear();
+    namespaces.clear();
+    NamedNodeMap map = node.getAttributes();
+    for (int i = 0; i < map.getLength(); i++) {
+      Attr attribute = (Attr) map.item(i);
+      if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+          || attribute.getName().equals(XMLConstants.XMLNS_ATTRIBUTE)
+          || attribute.getName().startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+        namespaces.add(attribute);
+      } else {
+        attributes.add(attribute);
+      }
+    }
+  }
+
+  private static String localNameOf(Node node) {
+    if (node.getLocalName() != null) return node.getLocalName();
+    String name = node.getNodeName();
+    return name.substring(name.indexOf(':') + 1);
+  }
+
+  private static String prefixOf(Node node) {
+    if (node.getLocalName() != null) return node.getPrefix();
+    String name = node.getNodeName();
+    int colon = name.indexOf(':');
+    return colon > 0 ? name.substring(0, colon) : null;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    return null;
+  }
+
+  @Override
+  public void require(int type, String namespaceURI, String localName)
+      throws XMLStreamException {
+    if (type != eventType
+        || (namespaceURI != null && !namespaceURI.equals(getNamespaceURI()))
+        || (localName != null && !localName.equals(getLocalName()))) {
+      throw new XMLStreamException("Expected event " + type + ", at event " + eventType);
+    }
+  }
+
+  @Override
+  public String getElementText() throws XMLStreamException {
+    require(START_ELEMENT, null, null);
+    StringBuilder text = new StringBuilder();
+    while (next() != END_ELEMENT) {
+      if (eventType != CHARACTERS) {
+        throw new XMLStreamException("Element text contains an element: " + getLocalName());
+      }
+      text.append(getText());
+    }
+    return text.toString();
+  }
+
+  @Override
+  public int nextTag() throws XMLStreamException {
+    while (next() == CHARACTERS && isWhiteSpace()) {}
+    if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+      throw new XMLStreamException("Expected a start or end tag, at event " + eventType);
+    }
+    return eventType;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return eventType != END_DOCUMENT;
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public String getNamespaceURI(String prefix) {
+    if (prefix == null || prefix.isEmpty()) return namespace;
+    if (XMLConstants.XML_NS_PREFIX.equals(prefix)) return XMLConstants.XML_NS_URI;
+    if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+    return node != null ? node.lookupNamespaceURI(prefix) : null;
+  }
+
+  @Override
+  public boolean isStartElement() {
+    return eventType == START_ELEMENT;
+  }
+
+  @Override
+  public boolean isEndElement() {
+    return eventType == END_ELEMENT;
+  }
+
+  @Override
+  public boolean isCharacters() {
+    return eventType == CHARACTERS;
+  }
+
+  @Override
+  public boolean isWhiteSpace() {
+    return eventType == CHARACTERS && getText().trim().isEmpty();
+  }
+
+  @Override
+  public String getAttributeValue(String namespaceURI, String localName) {
+    loadAttributes();
+    for (Attr attribute : attributes) {
+      if (localName.equals(localNameOf(attribute))
+          && (namespaceURI == null || namespaceURI.equals(attribute.getNamespaceURI()))) {
+        return attribute.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int getAttributeCount() {
+    loadAttributes();
+    return attributes.size();
+  }
+
+  @Override
+  public QName getAttributeName(int index) {
+    String prefix = getAttributePrefix(index);
+    String namespaceURI = getAttributeNamespace(index);
+    return new QName(
+        namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI,
+        getAttributeLocalName(index),
+        prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX);
+  }
+
+  @Override
+  public String getAttributeNamespace(int index) {
+    loadAttributes();
+    return attributes.get(index).getNamespaceURI();
+  }
+
+  @Override
+  public String getAttributeLocalName(int index) {
+    loadAttributes();
+    return localNameOf(attributes.get(index));
+  }
+
+  @Override
+  public String getAttributePrefix(int index) {
+    loadAttributes();
+    return prefixOf(attributes.get(index));
+  }
+
+  @Override
+  public String getAttributeType(int index) {
+    return "CDATA";
+  }
+
+  @Override
+  public String getAttributeValue(int index) {
+    loadAttributes();
+    return attributes.get(index).getValue();
+  }
+
+  @Override
+  public boolean isAttributeSpecified(int index) {
+    return true;
+  }
+
+  @Override
+  public int getNamespaceCount() {
+    loadAttributes();
+    return namespaces.size();
+  }
+
+  @Override
+  public String getNamespacePrefix(int index) {
+    loadAttributes();
+    String name = namespaces.get(index).getName();
+    return name.equals(XMLConstants.XMLNS_ATTRIBUTE) ? null : localNameOf(namespaces.get(index));
+  }
+
+  @Override
+  public String getNamespaceURI(int index) {
+    return getNamespacePrefix(index) == null ? namespace : namespaces.get(index).getValue();
+  }
+
+  @Override
+  public NamespaceContext getNamespaceContext() {
+    return new NamespaceContext() {
+      @Override
+      public String getNamespaceURI(String prefix) {
+        return NamespaceMappingStreamReader.this.getNamespaceURI(prefix);
+      }
+
+      @Override
+      public String getPrefix(String namespaceURI) {
+        if (namespace.equals(namespaceURI)) return XMLConstants.DEFAULT_NS_PREFIX;
+        return node != null ? node.lookupPrefix(namespaceURI) : null;
+      }
+
+      @Override
+      public Iterator<String> getPrefixes(String namespaceURI) {
+        String prefix = getPrefix(namespaceURI);
+        return prefix != null
+            ? Collections.singletonList(prefix).iterator()
+            : Collections.<String>emptyIterator();
+      }
+    };
+  }
+
+  @Override
+  public int getEventType() {
+    return eventType;
+  }
+
+  @Override
+  public String getText() {
+    if (eventType != CHARACTERS) throw new IllegalStateException("Not at characters");
+    return node.getNodeValue();
+  }
+
+  @Override
+  public char[] getTextCharacters() {
+    return getText().toCharArray();
+  }
+
+  @Override
+  public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+    String text = getText();
+    int copied = Math.max(0, Math.min(length, text.length() - sourceStart));
+    text.getChars(sourceStart, sourceStart + copied, target, targetStart);
+    return copied;
+  }
+
+  @Override
+  public int getTextStart() {
+    return 0;
+  }
+
+  @Override
+  public int getTextLength() {
+    return getText().length();
+  }
+
+  @Override
+  public String getEncoding() {
+    return null;
+  }
+
+  @Override
+  public boolean hasText() {
+    return eventType == CHARACTERS;
+  }
+
+  @Override
+  public Location getLocation() {
+    return UNKNOWN_LOCATION;
+  }
+
+  @Override
+  public QName getName() {
+    return new QName(getNamespaceURI(), getLocalName());
+  }
+
+  @Override
+  public String getLocalName() {
+    if (!hasName()) throw new IllegalStateException("Not at an element");
+    return localNameOf(node);
+  }
+
+  @Override
+  public boolean hasName() {
+    return eventType == START_ELEMENT || eventType == END_ELEMENT;
+  }
+
+  @Override
+  public String getNamespaceURI() {
+    return hasName() ? namespace : null;
+  }
+
+  @Override
+  public String getPrefix() {
+    return hasName() ? XMLConstants.DEFAULT_NS_PREFIX : null;
+  }
+
+  @Override
+  public String getVersion() {
+    return null;
+  }
+
+  @Override
+  public boolean isStandalone() {
+    return false;
+  }
+
+  @Override
+  public boolean standaloneSet() {
+    return false;
+  }
+
+  @Override
+  public String getCharacterEncodingScheme() {
+    return null;
+  }
+
+  @Override
+  public String getPITarget() {
+    return null;
+  }
+
+  @Override
+  public String getPIData() {
+    return null;
+  }
+}
@@ -37,8 +37,8 @@ import java.net.URL;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.xml.soap.SOAPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,7 +53,8 @@ public class SOAPClient implements IClientAPI {
   private WebServiceTransmitter transmitter;
   private URL callback;
   private HttpServer server;
-  private ExecutorService threadPool;
+  private Executor executor;
+  private ExecutorService ownedExecutor;
   private FeatureRepository featureRepository;
 
   /**
@@ -65,6 +66,25 @@ public class SOAPClient implements IClientAPI {
    * @param coreProfile implementation of the core feature profile.
    */
   public SOAPClient(String chargeBoxIdentity, URL callback, ClientCoreProfile coreProfile) {
+    this(chargeBoxIdentity, callback, coreProfile, new TransactionQueue());
+  }
+
+  /**
+   * The core feature profile is required. The client will use the information taken from the
+   * callback parameter to open a HTTP based Web Service.
+   *
+   * @param chargeBoxIdentity required identity used in message header.
+   * @param callback call back info that the server can send requests to.
+   * @param coreProfile implementation of the core feature profile.
+   * @param transactionQueue stores transaction related calls while offline, a {@link
+   *     SegmentLogTransactionQueue} needs the {@link
+   *     SOAPCommunicator#TRANSACTION_QUEUE_SERIALIZER}.
+   */
+  public SOAPClient(
+      String chargeBoxIdentity,
+      URL callback,
+      ClientCoreProfile coreProfile,
+      ITransactionQueue transactionQueue) {
 
     SOAPHostInfo hostInfo =
         new SOAPHostInfo.Builder()
@@ -76,16 +96,18 @@ public class SOAPClient implements IClientAPI {
 
     this.callback = callback;
     this.transmitter = new WebServiceTransmitter();
-    this.communicator = new SOAPCommunicator(hostInfo, transmitter);
+    this.communicator = new SOAPCommunicator(hostInfo, transmitter, transactionQueue);
     featureRepository = new FeatureRepository();
     ISession session = new SessionFactory(featureRepository).createSession(communicator);
     this.client = new Client(session, featureRepository, new PromiseRepository());
     featureRepository.addFeatureProfile(coreProfile);
+    JAXBContextCache.preload(coreProfile);
   }
 
   @Override
   public void addFeatureProfile(Profile profile) {
     featureRepository.addFeatureProfile(profile);
+    JAXBContextCache.preload(profile);
   }
 
   /**
@@ -110,10 +132,25 @@ public class SOAPClient implements IClientAPI {
     this.client.disconnect();
     if (server != null) {
       server.stop(1);
-      threadPool.shutdownNow();
+      server = null;
+    }
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdownNow();
+      ownedExecutor = null;
     }
   }
 
+  /**
+   * Set the executor running the HTTP exchanges of the callback service, must be called before
+   * {@link #connect(String, ClientEvents)}. By default, {@link HttpServerExecutors#newDefault()} is
+   * used and shut down on {@link #disconnect()}.
+   *
+   * @param executor executor for the callback service, the caller owns its lifecycle.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   /**
    * Flag if connection is closed.
    *
@@ -140,19 +177,36 @@ public class SOAPClient implements IClientAPI {
           "/",
           new WSHttpHandler(
               WSDL_CHARGE_POINT,
-              message -> {
-                SOAPMessage soapMessage = null;
-                try {
-                  soapMessage = transmitter.relay(message.getMessage()).get();
-                } catch (InterruptedException e) {
-                  logger.warn("openWS() transmitter.relay failed", e);
-                } catch (ExecutionException e) {
-                  logger.warn("openWS() transmitter.relay failed", e);
+              new WSHttpHandlerEvents() {
+                @Override
+                public CompletionStage<SOAPMessage> incomingRequestAsync(
+                    SOAPMessageInfo message) {
+                  return transmitter.relay(message.getMessage());
+                }
+
+                @Override
+                public SOAPMessage incomingRequest(SOAPMessageInfo message) {
+                  SOAPMessage soapMessage = null;
+                  try {
+                    soapMessage = transmitter.relay(message.getMessage()).get();
+                  } catch (InterruptedException e) {
+                    logger.warn("openWS() transmitter.relay failed", e);
+                  } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SOAPFaultException) {
+                      soapMessage = ((SOAPFaultException) e.getCause()).getFaultMessage();
+                    } else {
+                      logger.warn("openWS() transmitter.relay failed", e);
+                    }
+                  }
+                  return soapMessage;
                 }
-                return soapMessage;
               }));
-      threadPool = Executors.newCachedThreadPool();
-      server.setExecutor(threadPool);
+      if (executor == null) {
+        ownedExecutor = HttpServerExecutors.newDefault();
+        server.setExecutor(ownedExecutor);
+      } else {
+        server.setExecutor(executor);
+      }
       server.start();
     } catch (IOException e) {
       logger.warn("openWS() failed", e);
@@ -27,15 +27,20 @@ package eu.chargetime.ocpp;
 */
 
 import eu.chargetime.ocpp.model.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import javax.xml.bind.*;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.soap.*;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -51,81 +56,106 @@ public class SOAPCommunicator extends Communicator {
   private static final String HEADER_TO = "To";
   private static final String HEADER_CHARGEBOXIDENTITY = "chargeBoxIdentity";
 
+  private static final String WSA_PREFIX = "wsa";
+  private static final String WSA_NAMESPACE = "http://schemas.xmlsoap.org/ws/2004/08/addressing";
+  private static final String WSA_ANONYMOUS = "http://www.w3.org/2005/08/addressing/anonymous";
+
+  private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
   private final SOAPHostInfo hostInfo;
   private String toUrl;
+  private volatile MessageFactory messageFactory;
+  private volatile SOAPHeader headerTemplate;
+
+  /**
+   * Stores SOAP calls in a {@link SegmentLogTransactionQueue}, they are replayed as {@link
+   * SOAPMessage}s.
+   */
+  public static final SegmentLogTransactionQueue.Serializer TRANSACTION_QUEUE_SERIALIZER =
+      new SegmentLogTransactionQueue.Serializer() {
+        @Override
+        public byte[] toBytes(Object call) {
+          try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ((SOAPMessage) call).writeTo(out);
+            return out.toByteArray();
+          } catch (SOAPException | IOException e) {
+            throw new IllegalArgumentException("Couldn't serialize SOAP call", e);
+          }
+        }
+
+        @Override
+        public Object fromBytes(byte[] bytes) {
+          try {
+            MimeHeaders headers = new MimeHeaders();
+            headers.addHeader("Content-Type", SOAPConstants.SOAP_1_2_CONTENT_TYPE);
+            return MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL)
+                .createMessage(headers, new ByteArrayInputStream(bytes));
+          } catch (SOAPException | IOException e) {
+            throw new IllegalStateException("Couldn't read stored SOAP call", e);
+          }
+        }
+      };
 
   public SOAPCommunicator(SOAPHostInfo hostInfo, Radio radio) {
     super(radio);
     this.hostInfo = hostInfo;
   }
 
+  public SOAPCommunicator(SOAPHostInfo hostInfo, Radio radio, ITransactionQueue transactionQueue) {
+    super(radio, transactionQueue);
+    this.hostInfo = hostInfo;
+  }
+
   @Override
   public <T> T unpackPayload(Object payload, Class<T> type) {
     T output = null;
     try {
-      Document input = (Document) payload;
-      setNamespace(input, "urn://Ocpp/Cs/2015/10/");
-      Unmarshaller unmarshaller = JAXBContext.newInstance(type).createUnmarshaller();
-      JAXBElement<T> jaxbElement = unmarshaller.unmarshal(input, type);
-      output = jaxbElement.getValue();
+      XMLStreamReader reader =
+          new NamespaceMappingStreamReader(
+              (Document) payload, SOAPHostInfo.NAMESPACE_CENTRALSYSTEM);
+      Unmarshaller unmarshaller = JAXBContextCache.acquireUnmarshaller(type);
+      try {
+        output = unmarshaller.unmarshal(reader, type).getValue();
+      } finally {
+        JAXBContextCache.releaseUnmarshaller(type, unmarshaller);
+      }
     } catch (JAXBException e) {
       logger.warn("unpackPayload() failed", e);
     }
     return output;
   }
 
+  /**
+   * The payload is kept as it is, it's marshalled straight into the SOAP body when the message is
+   * made, in the namespace of its direction.
+   */
   @Override
   public Object packPayload(Object payload) {
-    Document document = null;
-    try {
-      Marshaller marshaller = JAXBContext.newInstance(payload.getClass()).createMarshaller();
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(false);
-      document = factory.newDocumentBuilder().newDocument();
-      marshaller.marshal(payload, document);
-      setNamespace(document, hostInfo.getNamespace());
-    } catch (JAXBException | ParserConfigurationException e) {
-      logger.warn("packPayload() failed", e);
-    }
-    return document;
+    return payload;
   }
 
-  private void setNamespace(Document document, String namespace) {
-    Element orgElement = document.getDocumentElement();
-    Element newElement = document.createElementNS(namespace, orgElement.getNodeName());
-
-    NodeList childNodes = orgElement.getChildNodes();
-    for (int i = 0; i < childNodes.getLength(); i++) {
-      appendChildNS(document, newElement, childNodes.item(i), namespace);
+  private void marshal(Object payload, SOAPBody body, String namespace)
+      throws JAXBException, XMLStreamException {
+    XMLStreamWriter writer =
+        new NamespaceMappingStreamWriter(
+            outputFactory.createXMLStreamWriter(new DOMResult(body)), namespace);
+    Marshaller marshaller = JAXBContextCache.acquireMarshaller(payload.getClass());
+    try {
+      marshaller.marshal(payload, writer);
+    } finally {
+      JAXBContextCache.releaseMarshaller(payload.getClass(), marshaller);
     }
-
-    document.replaceChild(newElement, orgElement);
-  }
-
-  private void appendChildNS(Document doc, Node destination, Node child, String namespace) {
-    Node newChild;
-    if (child.getNodeType() == Node.ELEMENT_NODE) {
-      newChild = doc.createElementNS(namespace, child.getNodeName());
-
-      NodeList childNodes = child.getChildNodes();
-      for (int i = 0; i < childNodes.getLength(); i++) {
-        appendChildNS(doc, newChild, childNodes.item(i), namespace);
-      }
-    } else {
-      newChild = child;
-    }
-
-    destination.appendChild(newChild);
   }
 
   @Override
   protected Object makeCallResult(String uniqueId, String action, Object payload) {
-    return createMessage(uniqueId, String.format("%sResponse", action), (Document) payload, true);
+    return createMessage(uniqueId, String.format("%sResponse", action), payload, true);
   }
 
   @Override
   protected Object makeCall(String uniqueId, String action, Object payload) {
-    return createMessage(uniqueId, action, (Document) payload, false);
+    return createMessage(uniqueId, action, payload, false);
   }
 
   private QName blameSomeone(String errorCode) {
@@ -144,8 +174,7 @@ public class SOAPCommunicator extends Communicator {
       String uniqueId, String action, String errorCode, String errorDescription) {
     SOAPMessage message = null;
     try {
-      MessageFactory messageFactory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
-      message = messageFactory.createMessage();
+      message = getMessageFactory().createMessage();
       message.setProperty(SOAPMessage.WRITE_XML_DECLARATION, "true");
       createMessageHeader(uniqueId, String.format("%sResponse", action), true, message);
 
@@ -162,26 +191,24 @@ public class SOAPCommunicator extends Communicator {
   }
 
   private Object createMessage(
-      String uniqueId, String action, Document payload, boolean isResponse) {
+      String uniqueId, String action, Object payload, boolean isResponse) {
     SOAPMessage message = null;
 
     try {
-      MessageFactory messageFactory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
-
-      message = messageFactory.createMessage();
+      message = getMessageFactory().createMessage();
       message.setProperty(SOAPMessage.WRITE_XML_DECLARATION, "true");
 
       createMessageHeader(uniqueId, action, isResponse, message);
 
+      String namespace = hostInfo.getNamespace();
       if (isResponse) {
-        setNamespace(
-            payload,
+        namespace =
             hostInfo.isClient()
                 ? SOAPHostInfo.NAMESPACE_CHARGEBOX
-                : SOAPHostInfo.NAMESPACE_CENTRALSYSTEM);
+                : SOAPHostInfo.NAMESPACE_CENTRALSYSTEM;
       }
 
-      message.getSOAPBody().addDocument(payload);
+      marshal(payload, message.getSOAPBody(), namespace);
     } catch (Exception e) {
       logger.warn("createMessage() failed", e);
     }
@@ -189,60 +216,92 @@ public class SOAPCommunicator extends Communicator {
     return message;
   }
 
+  private MessageFactory getMessageFactory() throws SOAPException {
+    MessageFactory factory = messageFactory;
+    if (factory == null) {
+      factory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+      messageFactory = factory;
+    }
+    return factory;
+  }
+
+  /**
+   * Get the header elements that are the same for every message: chargeBoxIdentity, From, ReplyTo
+   * and To. They are built once and copied into each message.
+   */
+  private SOAPHeader getHeaderTemplate() throws SOAPException {
+    SOAPHeader template = headerTemplate;
+    if (template == null) {
+      template = getMessageFactory().createMessage().getSOAPHeader();
+
+      // Set chargeBoxIdentity
+      SOAPHeaderElement chargeBoxIdentityHeader =
+          template.addHeaderElement(
+              new QName(hostInfo.getNamespace(), HEADER_CHARGEBOXIDENTITY, "cs"));
+      chargeBoxIdentityHeader.setMustUnderstand(true);
+      chargeBoxIdentityHeader.setValue(hostInfo.getChargeBoxIdentity());
+
+      // Set From
+      SOAPHeaderElement fromHeader = template.addHeaderElement(addressingName(HEADER_FROM));
+      fromHeader.setValue(hostInfo.getFromUrl());
+
+      // Set ReplyTo
+      SOAPHeaderElement replyToHeader = template.addHeaderElement(addressingName(HEADER_REPLYTO));
+      replyToHeader.setMustUnderstand(true);
+      SOAPElement addressElement =
+          replyToHeader.addChildElement(addressingName(HEADER_REPLYTO_ADDRESS));
+      addressElement.setValue(WSA_ANONYMOUS);
+
+      // Set To
+      SOAPHeaderElement toHeader = template.addHeaderElement(addressingName(HEADER_TO));
+      toHeader.setMustUnderstand(true);
+      toHeader.setValue(toUrl);
+
+      headerTemplate = template;
+    }
+    return template;
+  }
+
+  private static QName addressingName(String localPart) {
+    return new QName(WSA_NAMESPACE, localPart, WSA_PREFIX);
+  }
+
   private void createMessageHeader(
       String uniqueId, String action, boolean isResponse, SOAPMessage message)
       throws SOAPException {
-    SOAPFactory soapFactory = SOAPFactory.newInstance();
     SOAPHeader soapHeader = message.getSOAPHeader();
+    SOAPHeader template = getHeaderTemplate();
 
-    String prefix = "wsa";
-    String namespace = "http://schemas.xmlsoap.org/ws/2004/08/addressing";
-
-    // Set chargeBoxIdentity
-    SOAPHeaderElement chargeBoxIdentityHeader =
-        soapHeader.addHeaderElement(
-            soapFactory.createName(HEADER_CHARGEBOXIDENTITY, "cs", hostInfo.getNamespace()));
-    chargeBoxIdentityHeader.setMustUnderstand(true);
-    chargeBoxIdentityHeader.setValue(hostInfo.getChargeBoxIdentity());
-
-    // Set Action
-    SOAPHeaderElement actionHeader =
-        soapHeader.addHeaderElement(soapFactory.createName(HEADER_ACTION, prefix, namespace));
-    actionHeader.setMustUnderstand(true);
-    actionHeader.setValue(String.format("/%s", action));
-
-    // Set MessageID
-    SOAPHeaderElement messageIDHeader =
-        soapHeader.addHeaderElement(soapFactory.createName(HEADER_MESSAGEID, prefix, namespace));
-    messageIDHeader.setMustUnderstand(true);
-    messageIDHeader.setValue(uniqueId);
-
-    // Set RelatesTo
-    if (isResponse) {
-      SOAPHeaderElement relatesToHeader =
-          soapHeader.addHeaderElement(soapFactory.createName(HEADER_RELATESTO, prefix, namespace));
-      relatesToHeader.setValue(uniqueId);
-    }
+    synchronized (template) {
+      Node staticHeader = template.getFirstChild();
+
+      // Copy chargeBoxIdentity
+      soapHeader.appendChild(soapHeader.getOwnerDocument().importNode(staticHeader, true));
+      staticHeader = staticHeader.getNextSibling();
+
+      // Set Action
+      SOAPHeaderElement actionHeader = soapHeader.addHeaderElement(addressingName(HEADER_ACTION));
+      actionHeader.setMustUnderstand(true);
+      actionHeader.setValue(String.format("/%s", action));
 
-    // Set From
-    SOAPHeaderElement fromHeader =
-        soapHeader.addHeaderElement(soapFactory.createName(HEADER_FROM, prefix, namespace));
-    fromHeader.setValue(hostInfo.getFromUrl());
-
-    // Set ReplyTo
-    SOAPHeaderElement replyToHeader =
-        soapHeader.addHeaderElement(soapFactory.createName(HEADER_REPLYTO, prefix, namespace));
-    replyToHeader.setMustUnderstand(true);
-    SOAPElement addressElement =
-        replyToHeader.addChildElement(
-            soapFactory.createName(HEADER_REPLYTO_ADDRESS, prefix, namespace));
-    addressElement.setValue("http://www.w3.org/2005/08/addressing/anonymous");
-
-    // Set To
-    SOAPHeaderElement toHeader =
-        soapHeader.addHeaderElement(soapFactory.createName(HEADER_TO, prefix, namespace));
-    toHeader.setMustUnderstand(true);
-    toHeader.setValue(toUrl);
+      // Set MessageID
+      SOAPHeaderElement messageIDHeader =
+          soapHeader.addHeaderElement(addressingName(HEADER_MESSAGEID));
+      messageIDHeader.setMustUnderstand(true);
+      messageIDHeader.setValue(uniqueId);
+
+      // Set RelatesTo
+      if (isResponse) {
+        SOAPHeaderElement relatesToHeader =
+            soapHeader.addHeaderElement(addressingName(HEADER_RELATESTO));
+        relatesToHeader.setValue(uniqueId);
+      }
+
+      // Copy From, ReplyTo and To
+      for (; staticHeader != null; staticHeader = staticHeader.getNextSibling()) {
+        soapHeader.appendChild(soapHeader.getOwnerDocument().importNode(staticHeader, true));
+      }
+    }
   }
 
   @Override
@@ -358,5 +417,6 @@ public class SOAPCommunicator extends Communicator {
 
   public void setToUrl(String toUrl) {
     this.toUrl = toUrl;
+    headerTemplate = null;
   }
 }
@@ -0,0 +1,233 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeader;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+/**
+ * Sends SOAP requests over HTTP and completes with the response.
+ *
+ * <p>Requests are posted from a bounded pool of worker threads. When all workers are busy and the
+ * queue is full, the calling thread sends the request itself, slowing the caller down instead of
+ * starting more threads. Connections are kept alive and reused per remote endpoint by the JDK
+ * HTTP client, so the whole response is read before the connection is given back.
+ *
+ * <p>A single instance is meant to be shared by all transmitters and receivers, see {@link
+ * #getDefault()}.
+ */
+public class SOAPHttpTransport {
+
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 32;
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+  public static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
+  public static final int DEFAULT_READ_TIMEOUT = 60 * 1000;
+
+  private static final int KEEP_ALIVE_SECONDS = 60;
+  private static final int BUFFER_SIZE = 4096;
+
+  private static volatile SOAPHttpTransport defaultTransport;
+
+  private final ThreadPoolExecutor executor;
+  private final int connectTimeout;
+  private final int readTimeout;
+  private volatile MessageFactory messageFactory;
+
+  /** Transport with the default limits. */
+  public SOAPHttpTransport() {
+    this(
+        DEFAULT_MAX_CONCURRENT_REQUESTS,
+        DEFAULT_QUEUE_CAPACITY,
+        DEFAULT_CONNECT_TIMEOUT,
+        DEFAULT_READ_TIMEOUT);
+  }
+
+  /**
+   * @param maxConcurrentRequests number of requests that can be in flight at once.
+   * @param queueCapacity number of requests that can wait for a free worker.
+   * @param connectTimeout timeout in milliseconds for opening a connection.
+   * @param readTimeout timeout in milliseconds for waiting on the response.
+   */
+  public SOAPHttpTransport(
+      int maxConcurrentRequests, int queueCapacity, int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.executor =
+        new ThreadPoolExecutor(
+            maxConcurrentRequests,
+            maxConcurrentRequests,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity),
+            new WorkerThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Get the transport shared by transmitters and receivers that weren't given one.
+   *
+   * @return the shared {@link SOAPHttpTransport}.
+   */
+  public static SOAPHttpTransport getDefault() {
+    SOAPHttpTransport transport = defaultTransport;
+    if (transport == null) {
+      synchronized (SOAPHttpTransport.class) {
+        transport = defaultTransport;
+        if (transport == null) {
+          transport = new SOAPHttpTransport();
+          defaultTransport = transport;
+        }
+      }
+    }
+    return transport;
+  }
+
+  /**
+   * Post a SOAP message.
+   *
+   * @param message the {@link SOAPMessage} to send.
+   * @param url the endpoint to send it to.
+   * @return completes with the response, or with null if the response had no content.
+   */
+  public CompletableFuture<SOAPMessage> call(SOAPMessage message, String url) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return post(message, url);
+          } catch (IOException | SOAPException e) {
+            throw new CompletionException(e);
+          }
+        },
+        executor);
+  }
+
+  /** Stop the worker threads once the requests already handed over are sent. */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private SOAPMessage post(SOAPMessage message, String url) throws IOException, SOAPException {
+    if (message.saveRequired()) message.saveChanges();
+    ByteArrayOutputStream body = new ByteArrayOutputStream(BUFFER_SIZE);
+    message.writeTo(body);
+
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(connectTimeout);
+    connection.setReadTimeout(readTimeout);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setFixedLengthStreamingMode(body.size());
+    Iterator<?> headers = message.getMimeHeaders().getAllHeaders();
+    while (headers.hasNext()) {
+      MimeHeader header = (MimeHeader) headers.next();
+      connection.setRequestProperty(header.getName(), header.getValue());
+    }
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+
+    try (OutputStream out = connection.getOutputStream()) {
+      body.writeTo(out);
+    }
+
+    // SOAP faults come with an error status, their body is a message all the same
+    int status = connection.getResponseCode();
+    boolean failed = status >= HttpURLConnection.HTTP_BAD_REQUEST;
+    byte[] response = new byte[0];
+    try (InputStream in = failed ? connection.getErrorStream() : connection.getInputStream()) {
+      if (in != null) response = readFully(in);
+    }
+    if (response.length > 0 && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+      response = readFully(new GZIPInputStream(new ByteArrayInputStream(response)));
+    }
+
+    if (response.length == 0) {
+      if (failed) throw new IOException(String.format("HTTP %d from %s", status, url));
+      return null;
+    }
+
+    MimeHeaders mimeHeaders = new MimeHeaders();
+    for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+      // The body was decoded above, the content coding headers no longer apply
+      String name = header.getKey();
+      if (name == null
+          || "Content-Encoding".equalsIgnoreCase(name)
+          || "Content-Length".equalsIgnoreCase(name)) continue;
+      for (String value : header.getValue()) mimeHeaders.addHeader(name, value);
+    }
+    return getMessageFactory().createMessage(mimeHeaders, new ByteArrayInputStream(response));
+  }
+
+  private MessageFactory getMessageFactory() throws SOAPException {
+    MessageFactory factory = messageFactory;
+    if (factory == null) {
+      factory = MessageFactory.newInstance(SOAPConstants.DYNAMIC_SOAP_PROTOCOL);
+      messageFactory = factory;
+    }
+    return factory;
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "soap-http-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
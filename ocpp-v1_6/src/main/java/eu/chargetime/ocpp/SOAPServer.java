@@ -29,27 +29,43 @@ import eu.chargetime.ocpp.feature.profile.Profile;
 import eu.chargetime.ocpp.feature.profile.ServerCoreProfile;
 import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.SessionInformation;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class SOAPServer implements IServerAPI {
 
   private final FeatureRepository featureRepository;
   private final Server server;
   private final WebServiceListener listener;
+  private final PromiseRepository promiseRepository;
 
   public SOAPServer(ServerCoreProfile coreProfile) {
+    this(coreProfile, RequestHandlerExecutor.getDefault());
+  }
+
+  /**
+   * @param coreProfile implementation of the core feature profile.
+   * @param requestHandlerExecutor executor handling the incoming requests.
+   */
+  public SOAPServer(ServerCoreProfile coreProfile, RequestHandlerExecutor requestHandlerExecutor) {
 
     featureRepository = new FeatureRepository();
-    SessionFactory sessionFactory = new SessionFactory(featureRepository);
+    SessionFactory sessionFactory = new SessionFactory(featureRepository, requestHandlerExecutor);
     this.listener = new WebServiceListener(sessionFactory);
-    server = new Server(this.listener, featureRepository, new PromiseRepository());
+    promiseRepository =
+        new PromiseRepository(PromiseRepository.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+    server = new Server(this.listener, featureRepository, promiseRepository);
     featureRepository.addFeatureProfile(coreProfile);
+    JAXBContextCache.preload(coreProfile);
   }
 
   @Override
   public void addFeatureProfile(Profile profile) {
     featureRepository.addFeatureProfile(profile);
+    JAXBContextCache.preload(profile);
   }
 
   @Override
@@ -62,6 +78,17 @@ public class SOAPServer implements IServerAPI {
     server.closeSession(session);
   }
 
+  /**
+   * Set the executor running the HTTP exchanges, must be called before {@link #open(String, int,
+   * ServerEvents)}.
+   *
+   * @param executor executor for the web service, the caller owns its lifecycle.
+   * @see WebServiceListener#setExecutor(Executor)
+   */
+  public void setExecutor(Executor executor) {
+    listener.setExecutor(executor);
+  }
+
   @Override
   public void open(String host, int port, ServerEvents serverEvents) {
     server.open(host, port, serverEvents);
@@ -87,4 +114,47 @@ public class SOAPServer implements IServerAPI {
       throws OccurenceConstraintException, UnsupportedFeatureException, NotConnectedException {
     return server.send(session, request);
   }
+
+  /**
+   * Send a request to a charge point by its identifier.
+   *
+   * @param chargePointId identifier of the charge point, see {@link
+   *     SessionInformation#getIdentifier()}.
+   * @param request Request for the charge point.
+   * @return Callback handler for when the charge point responds.
+   * @throws NotConnectedException Thrown if the charge point isn't connected.
+   */
+  public CompletionStage<Confirmation> send(String chargePointId, Request request)
+      throws OccurenceConstraintException, UnsupportedFeatureException, NotConnectedException {
+    return server.send(chargePointId, request);
+  }
+
+  /**
+   * Get the session index of a connected charge point.
+   *
+   * @param chargePointId identifier of the charge point, see {@link
+   *     SessionInformation#getIdentifier()}.
+   * @return the session index, null if the charge point isn't connected.
+   */
+  public UUID getSessionIndex(String chargePointId) {
+    return server.getSessionIndex(chargePointId);
+  }
+
+  /**
+   * Get the number of sent requests waiting for an answer.
+   *
+   * @return number of outstanding requests.
+   */
+  public int getPendingRequestCount() {
+    return promiseRepository.getPromiseCount();
+  }
+
+  /**
+   * Get the number of sent requests that weren't answered in time.
+   *
+   * @return number of timed out requests since creation.
+   */
+  public long getTimedOutRequestCount() {
+    return promiseRepository.getTimedOutPromiseCount();
+  }
 }
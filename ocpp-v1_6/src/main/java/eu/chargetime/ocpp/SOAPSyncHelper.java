@@ -24,9 +24,18 @@ package eu.chargetime.ocpp; /*
                                SOFTWARE.
                             */
 
-import java.util.HashMap;
+
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.namespace.QName;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
 import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFault;
 import javax.xml.soap.SOAPHeader;
 import javax.xml.soap.SOAPMessage;
 import org.slf4j.Logger;
@@ -36,10 +45,24 @@ import org.w3c.dom.NodeList;
 public abstract class SOAPSyncHelper {
   private static final Logger logger = LoggerFactory.getLogger(SOAPSyncHelper.class);
 
-  private HashMap<String, CompletableFuture<SOAPMessage>> promises;
+  public static final long DEFAULT_REQUEST_TIMEOUT = 60 * 1000;
+
+  private static final String TIMEOUT_DESCRIPTION = "The request wasn't answered in time";
+  private static final QName HEADER_RELATESTO =
+      new QName("http://schemas.xmlsoap.org/ws/2004/08/addressing", "RelatesTo", "wsa");
+
+  private final ConcurrentMap<String, PendingRequest> promises = new ConcurrentHashMap<>();
+  private final AtomicLong timedOutRequests = new AtomicLong();
+  private final HashedWheelTimer timer;
+  private volatile long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
 
   public SOAPSyncHelper() {
-    promises = new HashMap<>();
+    this(HashedWheelTimer.getDefault());
+  }
+
+  /** @param timer the {@link HashedWheelTimer} to time out unanswered requests with. */
+  public SOAPSyncHelper(HashedWheelTimer timer) {
+    this.timer = timer;
   }
 
   public static String getHeaderValue(SOAPMessage message, String tagName) {
@@ -56,6 +79,34 @@ public abstract class SOAPSyncHelper {
     return value;
   }
 
+  /**
+   * Set how long an incoming request may wait for its answer. After that the promise returned by
+   * {@link #relay(SOAPMessage)} fails with a {@link SOAPFaultException}.
+   *
+   * @param requestTimeout timeout in milliseconds.
+   */
+  public void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  /**
+   * Get the number of incoming requests waiting for their answer.
+   *
+   * @return number of pending requests.
+   */
+  public int getPendingRequestCount() {
+    return promises.size();
+  }
+
+  /**
+   * Get the number of incoming requests that weren't answered in time.
+   *
+   * @return number of timed out requests since creation.
+   */
+  public long getTimedOutRequestCount() {
+    return timedOutRequests.get();
+  }
+
   abstract void forwardMessage(SOAPMessage message);
 
   public CompletableFuture<SOAPMessage> relay(SOAPMessage message) {
@@ -63,7 +114,10 @@ public abstract class SOAPSyncHelper {
     String uniqueID = getHeaderValue(message, "MessageID");
     if (uniqueID != null) {
       promise = new CompletableFuture<>();
-      promises.put(uniqueID, promise);
+      PendingRequest request = new PendingRequest(uniqueID, promise);
+      promises.put(uniqueID, request);
+      request.timeout =
+          timer.newTimeout(() -> expire(request), requestTimeout, TimeUnit.MILLISECONDS);
     }
 
     forwardMessage(message);
@@ -76,10 +130,56 @@ public abstract class SOAPSyncHelper {
     SOAPMessage soapMessage = (SOAPMessage) message;
 
     String relatesTo = getHeaderValue(soapMessage, "RelatesTo");
-    if (relatesTo != null && promises.containsKey(relatesTo)) {
-      promises.get(relatesTo).complete(soapMessage);
+    PendingRequest request = relatesTo != null ? promises.remove(relatesTo) : null;
+    if (request != null) {
+      request.cancel();
+      request.promise.complete(soapMessage);
     } else {
       sendRequest(soapMessage);
     }
   }
+
+  private void expire(PendingRequest request) {
+    promises.remove(request.uniqueId, request);
+    if (request.promise.isDone()) return;
+
+    SOAPFaultException fault =
+        new SOAPFaultException(TIMEOUT_DESCRIPTION, createTimeoutFault(request.uniqueId));
+    timedOutRequests.incrementAndGet();
+    if (request.promise.completeExceptionally(fault)) {
+      logger.warn("Request {} wasn't answered within {} ms", request.uniqueId, requestTimeout);
+    } else {
+      timedOutRequests.decrementAndGet();
+    }
+  }
+
+  private static SOAPMessage createTimeoutFault(String uniqueId) {
+    try {
+      SOAPMessage message =
+          MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL).createMessage();
+      message.getSOAPHeader().addHeaderElement(HEADER_RELATESTO).setValue(uniqueId);
+      SOAPFault fault = message.getSOAPBody().addFault();
+      fault.setFaultCode(SOAPConstants.SOAP_RECEIVER_FAULT);
+      fault.setFaultString(TIMEOUT_DESCRIPTION);
+      return message;
+    } catch (SOAPException e) {
+      logger.warn("createTimeoutFault() failed", e);
+      return null;
+    }
+  }
+
+  private static class PendingRequest {
+    private final String uniqueId;
+    private final CompletableFuture<SOAPMessage> promise;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    private PendingRequest(String uniqueId, CompletableFuture<SOAPMessage> promise) {
+      this.uniqueId = uniqueId;
+      this.promise = promise;
+    }
+
+    private void cancel() {
+      if (timeout != null) timeout.cancel();
+    }
+  }
 }
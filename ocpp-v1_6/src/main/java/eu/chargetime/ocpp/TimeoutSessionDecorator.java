@@ -31,8 +31,14 @@ import eu.chargetime.ocpp.model.core.BootNotificationConfirmation;
 import eu.chargetime.ocpp.model.core.RegistrationStatus;
 import eu.chargetime.ocpp.utilities.TimeoutTimer;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class TimeoutSessionDecorator implements ISession {
+  /**
+   * The session times out after this many heartbeat intervals without a message, so a heartbeat
+   * that is a little late or a slow network doesn't end it.
+   */
+  public static final int HEARTBEAT_INTERVALS_BEFORE_TIMEOUT = 2;
 
   private TimeoutTimer timeoutTimer;
   private final ISession session;
@@ -44,7 +50,7 @@ public class TimeoutSessionDecorator implements ISession {
   }
 
   private void resetTimer(int timeoutInSec) {
-    if (timeoutTimer != null) timeoutTimer.setTimeout(timeoutInSec * 1000);
+    if (timeoutTimer != null) timeoutTimer.setTimeout(timeoutInSec * 1000L);
     resetTimer();
   }
 
@@ -82,11 +88,26 @@ public class TimeoutSessionDecorator implements ISession {
     return this.session.storeRequest(payload);
   }
 
+  @Override
+  public void attachPromise(String uniqueId, CompletableFuture<Confirmation> promise) {
+    this.session.attachPromise(uniqueId, promise);
+  }
+
+  @Override
+  public boolean completesPromises() {
+    return this.session.completesPromises();
+  }
+
   @Override
   public void sendRequest(String action, Request payload, String uuid) {
     this.session.sendRequest(action, payload, uuid);
   }
 
+  @Override
+  public void sendRequest(String action, Request payload, String uuid, Runnable sent) {
+    this.session.sendRequest(action, payload, uuid, sent);
+  }
+
   @Override
   public void close() {
     this.session.close();
@@ -109,8 +130,11 @@ public class TimeoutSessionDecorator implements ISession {
         if (confirmation instanceof BootNotificationConfirmation) {
           BootNotificationConfirmation bootNotification =
               (BootNotificationConfirmation) confirmation;
-          if (bootNotification.getStatus() == RegistrationStatus.Accepted) {
-            resetTimer(bootNotification.getInterval());
+          Integer interval = bootNotification.getInterval();
+          if (bootNotification.getStatus() == RegistrationStatus.Accepted
+              && interval != null
+              && interval > 0) {
+            resetTimer(interval * HEARTBEAT_INTERVALS_BEFORE_TIMEOUT);
           }
         }
         return confirmation;
@@ -122,6 +146,12 @@ public class TimeoutSessionDecorator implements ISession {
         eventHandler.handleError(uniqueId, errorCode, errorDescription, payload);
       }
 
+      @Override
+      public void handleReplayedCall(
+          String uniqueId, String action, CompletableFuture<Confirmation> promise) {
+        eventHandler.handleReplayedCall(uniqueId, action, promise);
+      }
+
       @Override
       public void handleConnectionClosed() {
         eventHandler.handleConnectionClosed();
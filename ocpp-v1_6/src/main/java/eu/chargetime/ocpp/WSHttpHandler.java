@@ -25,11 +25,20 @@ package eu.chargetime.ocpp;
    SOFTWARE.
 */
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPOutputStream;
 import javax.xml.soap.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,8 +46,18 @@ import org.slf4j.LoggerFactory;
 public class WSHttpHandler implements HttpHandler {
   private static final Logger logger = LoggerFactory.getLogger(WSHttpHandler.class);
 
+  private static final String SOAP_CONTENT_TYPE = "application/soap+xml; charset=utf-8";
+  private static final String WSDL_CONTENT_TYPE = "text/xml; charset=utf-8";
+  private static final String GZIP = "gzip";
+  /** Responses smaller than this aren't worth compressing. */
+  private static final int MIN_GZIP_SIZE = 1024;
+  private static final int BUFFER_SIZE = 4096;
+
   private String wsdlResourceName;
   private WSHttpHandlerEvents events;
+  private volatile MessageFactory messageFactory;
+  private volatile byte[] wsdl;
+  private volatile byte[] gzippedWsdl;
 
   public WSHttpHandler(String wsdlResourceName, WSHttpHandlerEvents events) {
     this.wsdlResourceName = wsdlResourceName;
@@ -50,45 +69,198 @@ public class WSHttpHandler implements HttpHandler {
     if ("wsdl".equals(httpExchange.getRequestURI().getQuery())) {
       sendWSDL(httpExchange);
     } else {
-      SOAPMessage request = parse(httpExchange.getRequestBody());
-      SOAPMessage confirmation =
-          events.incomingRequest(new SOAPMessageInfo(httpExchange.getRemoteAddress(), request));
-      OutputStream responseStream = httpExchange.getResponseBody();
+      SOAPMessage request = parse(httpExchange);
+      if (request == null) {
+        respond(httpExchange, 400);
+      } else {
+        dispatch(httpExchange, request);
+      }
+    }
+  }
+
+  private void dispatch(HttpExchange httpExchange, SOAPMessage request) {
+    CompletionStage<SOAPMessage> confirmation = null;
+    try {
+      confirmation =
+          events.incomingRequestAsync(
+              new SOAPMessageInfo(httpExchange.getRemoteAddress(), request));
+      if (confirmation == null) logger.warn("handle() incomingRequest returned no confirmation");
+    } catch (RuntimeException e) {
+      logger.warn("handle() incomingRequest failed", e);
+    }
+    if (confirmation == null) {
+      respond(httpExchange, 500);
+      return;
+    }
+
+    BiConsumer<SOAPMessage, Throwable> responder =
+        (result, throwable) -> respond(httpExchange, confirmationOf(result, throwable));
+
+    // Respond on the server's executor, not on whichever thread completed the confirmation
+    Executor executor = httpExchange.getHttpContext().getServer().getExecutor();
+    if (executor != null) {
+      confirmation.whenCompleteAsync(responder, orInline(executor));
+    } else {
+      confirmation.whenComplete(responder);
+    }
+  }
+
+  /** Run tasks the executor rejects on the calling thread, so every exchange gets its answer. */
+  private static Executor orInline(Executor executor) {
+    return task -> {
       try {
-        httpExchange
-            .getResponseHeaders()
-            .add("Content-Type", "application/soap+xml; charset=utf-8");
-        httpExchange.sendResponseHeaders(200, 0);
-        confirmation.writeTo(responseStream);
-      } catch (SOAPException e) {
-        httpExchange.sendResponseHeaders(500, 0);
-        logger.warn("handle() confirmation.writeTo failed", e);
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        logger.debug("handle() executor rejected the response, sending it inline", e);
+        task.run();
       }
-      responseStream.close();
+    };
+  }
+
+  private static SOAPMessage confirmationOf(SOAPMessage confirmation, Throwable throwable) {
+    if (throwable == null) return confirmation;
+
+    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+    if (cause instanceof SOAPFaultException) return ((SOAPFaultException) cause).getFaultMessage();
+
+    logger.warn("handle() incomingRequest failed", cause);
+    return null;
+  }
+
+  private void respond(HttpExchange httpExchange, SOAPMessage confirmation) {
+    byte[] body = null;
+    try {
+      if (confirmation != null) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        confirmation.writeTo(out);
+        body = out.toByteArray();
+      }
+    } catch (SOAPException | IOException e) {
+      logger.warn("handle() confirmation.writeTo failed", e);
+    }
+
+    if (body == null) {
+      respond(httpExchange, 500);
+      return;
+    }
+
+    try {
+      boolean gzip = body.length >= MIN_GZIP_SIZE && acceptsGzip(httpExchange);
+      send(httpExchange, SOAP_CONTENT_TYPE, gzip ? gzip(body) : body, gzip);
+    } catch (IOException e) {
+      logger.warn("handle() sending response failed", e);
+    } finally {
+      httpExchange.close();
     }
   }
 
-  private SOAPMessage parse(InputStream request) throws IOException {
-    SOAPMessage message = null;
+  /** Answer with a status code and no body. */
+  private static void respond(HttpExchange httpExchange, int status) {
     try {
-      MessageFactory messageFactory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
-      message = messageFactory.createMessage(new MimeHeaders(), request);
+      httpExchange.sendResponseHeaders(status, -1);
+    } catch (IOException e) {
+      logger.warn("handle() sending response failed", e);
+    } finally {
+      httpExchange.close();
+    }
+  }
+
+  /**
+   * Read the SOAP request of an exchange.
+   *
+   * @param httpExchange the exchange, its request body is consumed.
+   * @return the request, or null if it couldn't be read. It's answered with 400 Bad Request.
+   * @throws IOException if reading the request body failed.
+   */
+  protected SOAPMessage parse(HttpExchange httpExchange) throws IOException {
+    SOAPMessage message = null;
+    try (InputStream request = httpExchange.getRequestBody()) {
+      message = getMessageFactory().createMessage(new MimeHeaders(), request);
     } catch (SOAPException e) {
       logger.warn("parse() failed", e);
     }
     return message;
   }
 
+  private MessageFactory getMessageFactory() throws SOAPException {
+    MessageFactory factory = messageFactory;
+    if (factory == null) {
+      factory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+      messageFactory = factory;
+    }
+    return factory;
+  }
+
   private void sendWSDL(HttpExchange httpExchange) throws IOException {
-    InputStream wsdl = getClass().getClassLoader().getResourceAsStream(wsdlResourceName);
-    httpExchange.sendResponseHeaders(200, 0);
-    OutputStream os = httpExchange.getResponseBody();
+    if (wsdl == null) loadWSDL();
+
+    boolean gzip = acceptsGzip(httpExchange);
+    send(httpExchange, WSDL_CONTENT_TYPE, gzip ? gzippedWsdl : wsdl, gzip);
+  }
+
+  private synchronized void loadWSDL() throws IOException {
+    if (wsdl != null) return;
+
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(wsdlResourceName)) {
+      if (in == null) throw new IOException("WSDL not found: " + wsdlResourceName);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
 
-    byte[] buffer = new byte[2048];
-    int read;
-    while ((read = wsdl.read(buffer)) != -1) os.write(buffer, 0, read);
+      byte[] raw = out.toByteArray();
+      gzippedWsdl = gzip(raw);
+      wsdl = raw;
+    }
+  }
 
-    os.flush();
-    os.close();
+  private static void send(HttpExchange httpExchange, String contentType, byte[] body, boolean gzip)
+      throws IOException {
+    Headers headers = httpExchange.getResponseHeaders();
+    headers.add("Content-Type", contentType);
+    headers.add("Vary", "Accept-Encoding");
+    if (gzip) headers.add("Content-Encoding", GZIP);
+
+    httpExchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = httpExchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static byte[] gzip(byte[] body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(body);
+    }
+    return out.toByteArray();
+  }
+
+  /** Check if the client accepts gzip, a coding with q=0 is refused. */
+  private static boolean acceptsGzip(HttpExchange httpExchange) {
+    List<String> values = httpExchange.getRequestHeaders().get("Accept-Encoding");
+    if (values == null) return false;
+
+    for (String value : values) {
+      for (String coding : value.split(",")) {
+        String[] parameters = coding.split(";");
+        String name = parameters[0].trim();
+        if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) continue;
+
+        boolean refused = false;
+        for (int i = 1; i < parameters.length; i++) {
+          String parameter = parameters[i].trim();
+          if (parameter.startsWith("q=")) {
+            try {
+              refused = Double.parseDouble(parameter.substring(2)) == 0;
+            } catch (NumberFormatException e) {
+              refused = true;
+            }
+          }
+        }
+        if (!refused) return true;
+      }
+    }
+    return false;
   }
 }
@@ -24,8 +24,21 @@ package eu.chargetime.ocpp; /*
                                SOFTWARE.
                             */
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import javax.xml.soap.SOAPMessage;
 
 public interface WSHttpHandlerEvents {
   SOAPMessage incomingRequest(SOAPMessageInfo messageInfo);
+
+  /**
+   * Handle an incoming request without blocking. The HTTP exchange is answered when the returned
+   * stage completes, a {@link SOAPFaultException} is answered with its fault message.
+   *
+   * @param messageInfo the incoming request.
+   * @return the confirmation to send back.
+   */
+  default CompletionStage<SOAPMessage> incomingRequestAsync(SOAPMessageInfo messageInfo) {
+    return CompletableFuture.completedFuture(incomingRequest(messageInfo));
+  }
 }
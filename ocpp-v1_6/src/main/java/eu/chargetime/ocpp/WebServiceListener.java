@@ -32,8 +32,13 @@ import eu.chargetime.ocpp.utilities.TimeoutHandler;
 import eu.chargetime.ocpp.utilities.TimeoutTimer;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import javax.xml.soap.SOAPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +52,8 @@ public class WebServiceListener implements Listener {
   private ListenerEvents events;
   private String fromUrl = null;
   private HttpServer server;
+  private Executor executor;
+  private ExecutorService ownedExecutor;
   private boolean handleRequestAsync;
   private volatile boolean closed = true;
 
@@ -62,7 +69,12 @@ public class WebServiceListener implements Listener {
       server = HttpServer.create(new InetSocketAddress(hostname, port), 0);
       server.createContext("/", new WSHttpHandler(WSDL_CENTRAL_SYSTEM, new WSHttpEventHandler()));
 
-      server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+      if (executor == null) {
+        ownedExecutor = HttpServerExecutors.newDefault();
+        server.setExecutor(ownedExecutor);
+      } else {
+        server.setExecutor(executor);
+      }
       server.start();
 
       closed = false;
@@ -74,9 +86,25 @@ public class WebServiceListener implements Listener {
   @Override
   public void close() {
     if (server != null) server.stop(1);
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdownNow();
+      ownedExecutor = null;
+    }
     closed = true;
   }
 
+  /**
+   * Set the executor running the HTTP exchanges, must be called before {@link #open(String, int,
+   * ListenerEvents)}. Requests are answered when their confirmation completes, so an executor
+   * thread isn't held while the request is handled. By default, {@link
+   * HttpServerExecutors#newDefault()} is used and shut down on {@link #close()}.
+   *
+   * @param executor executor for the HTTP server, the caller owns its lifecycle.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   @Override
   public boolean isClosed() {
     return closed;
@@ -87,70 +115,93 @@ public class WebServiceListener implements Listener {
     handleRequestAsync = async;
   }
 
-  private class WSHttpEventHandler implements WSHttpHandlerEvents {
+  class WSHttpEventHandler implements WSHttpHandlerEvents {
     private static final long INITIAL_TIMEOUT = 1000 * 60 * 5;
-    HashMap<String, WebServiceReceiver> chargeBoxes;
-
-    public WSHttpEventHandler() {
-      chargeBoxes = new HashMap<>();
-    }
-
-    private void removeChargebox(String identity) {
-      if (chargeBoxes.containsKey(identity)) chargeBoxes.remove(identity);
-    }
+    // A charge box is registered before its session is created, the session is created outside
+    // of the map so the application's newSession may close or replace sessions freely.
+    private final ConcurrentMap<String, CompletableFuture<WebServiceReceiver>> chargeBoxes =
+        new ConcurrentHashMap<>();
 
     @Override
-    public SOAPMessage incomingRequest(SOAPMessageInfo messageInfo) {
+    public CompletionStage<SOAPMessage> incomingRequestAsync(SOAPMessageInfo messageInfo) {
       SOAPMessage message = messageInfo.getMessage();
       String identity = SOAPSyncHelper.getHeaderValue(message, "chargeBoxIdentity");
-      if (!chargeBoxes.containsKey(identity)) {
-        String toUrl = SOAPSyncHelper.getHeaderValue(message, "From");
-        WebServiceReceiver webServiceReceiver =
-            new WebServiceReceiver(toUrl, () -> removeChargebox(identity));
-
-        SOAPHostInfo hostInfo =
-            new SOAPHostInfo.Builder()
-                .isClient(false)
-                .chargeBoxIdentity(identity)
-                .fromUrl(fromUrl)
-                .namespace(SOAPHostInfo.NAMESPACE_CENTRALSYSTEM)
-                .build();
-        SOAPCommunicator communicator = new SOAPCommunicator(hostInfo, webServiceReceiver);
-        communicator.setToUrl(toUrl);
-
-        ISession session = sessionFactory.createSession(communicator);
-        TimeoutTimer timeoutTimer =
-            new TimeoutTimer(
-                INITIAL_TIMEOUT,
-                new TimeoutHandler() {
-                  @Override
-                  public void timeout() {
-                    session.close();
-                    chargeBoxes.remove(identity);
-                  }
-                });
-
-        // TODO: Decorator created but not used
-        ISession sessionDecorator = new TimeoutSessionDecorator(timeoutTimer, session);
-
-        SessionInformation information =
-            new SessionInformation.Builder()
-                .Identifier(identity)
-                .InternetAddress(messageInfo.getAddress())
-                .SOAPtoURL(toUrl)
-                .build();
-        events.newSession(session, information);
-        chargeBoxes.put(identity, webServiceReceiver);
+      CompletableFuture<WebServiceReceiver> chargeBox = chargeBoxes.get(identity);
+      if (chargeBox == null) {
+        CompletableFuture<WebServiceReceiver> created = new CompletableFuture<>();
+        chargeBox = chargeBoxes.putIfAbsent(identity, created);
+        if (chargeBox == null) {
+          chargeBox = created;
+          try {
+            created.complete(newChargebox(identity, messageInfo, created));
+          } catch (RuntimeException ex) {
+            chargeBoxes.remove(identity, created);
+            created.completeExceptionally(ex);
+          }
+        }
       }
 
+      return chargeBox.thenCompose(receiver -> receiver.relay(message));
+    }
+
+    @Override
+    public SOAPMessage incomingRequest(SOAPMessageInfo messageInfo) {
       SOAPMessage confirmation = null;
       try {
-        confirmation = chargeBoxes.get(identity).relay(message).get();
-      } catch (InterruptedException | ExecutionException e) {
+        confirmation = incomingRequestAsync(messageInfo).toCompletableFuture().get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof SOAPFaultException) {
+          confirmation = ((SOAPFaultException) e.getCause()).getFaultMessage();
+        } else {
+          logger.warn("incomingRequest() chargeBoxes.relay failed", e);
+        }
+      } catch (InterruptedException e) {
         logger.warn("incomingRequest() chargeBoxes.relay failed", e);
       }
 
       return confirmation;
     }
+
+    private WebServiceReceiver newChargebox(
+        String identity,
+        SOAPMessageInfo messageInfo,
+        CompletableFuture<WebServiceReceiver> chargeBox) {
+      String toUrl = SOAPSyncHelper.getHeaderValue(messageInfo.getMessage(), "From");
+      WebServiceReceiver webServiceReceiver =
+          new WebServiceReceiver(toUrl, () -> chargeBoxes.remove(identity, chargeBox));
+
+      SOAPHostInfo hostInfo =
+          new SOAPHostInfo.Builder()
+              .isClient(false)
+              .chargeBoxIdentity(identity)
+              .fromUrl(fromUrl)
+              .namespace(SOAPHostInfo.NAMESPACE_CENTRALSYSTEM)
+              .build();
+      SOAPCommunicator communicator = new SOAPCommunicator(hostInfo, webServiceReceiver);
+      communicator.setToUrl(toUrl);
+
+      ISession session = sessionFactory.createSession(communicator);
+      TimeoutTimer timeoutTimer =
+          new TimeoutTimer(
+              INITIAL_TIMEOUT,
+              new TimeoutHandler() {
+                @Override
+                public void timeout() {
+                  session.close();
+                  chargeBoxes.remove(identity, chargeBox);
+                }
+              });
+
+      ISession sessionDecorator = new TimeoutSessionDecorator(timeoutTimer, session);
+
+      SessionInformation information =
+          new SessionInformation.Builder()
+              .Identifier(identity)
+              .InternetAddress(messageInfo.getAddress())
+              .SOAPtoURL(toUrl)
+              .build();
+      events.newSession(sessionDecorator, information);
+      return webServiceReceiver;
+    }
   }
 }
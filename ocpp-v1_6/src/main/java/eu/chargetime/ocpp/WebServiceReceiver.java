@@ -25,9 +25,6 @@ package eu.chargetime.ocpp;
    SOFTWARE.
 */
 
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,27 +33,31 @@ public class WebServiceReceiver extends SOAPSyncHelper implements Receiver {
   private static final Logger logger = LoggerFactory.getLogger(WebServiceReceiver.class);
 
   private RadioEvents events;
-  private SOAPConnection soapConnection;
+  private final SOAPHttpTransport transport;
   private String url;
   private WebServiceReceiverEvents receiverEvents;
-  private boolean connected;
+  private volatile boolean connected;
 
   public WebServiceReceiver(String url, WebServiceReceiverEvents receiverEvents) {
+    this(url, receiverEvents, SOAPHttpTransport.getDefault());
+  }
+
+  /**
+   * @param url the charge box endpoint to send requests to.
+   * @param receiverEvents informed when the receiver disconnects.
+   * @param transport the {@link SOAPHttpTransport} to send requests with.
+   */
+  public WebServiceReceiver(
+      String url, WebServiceReceiverEvents receiverEvents, SOAPHttpTransport transport) {
     this.url = url;
     this.receiverEvents = receiverEvents;
+    this.transport = transport;
     connected = false;
   }
 
   @Override
   public void disconnect() {
-    if (connected) {
-      try {
-        soapConnection.close();
-        connected = false;
-      } catch (SOAPException e) {
-        logger.info("disconnect() failed", e);
-      }
-    }
+    connected = false;
     events.disconnected();
     receiverEvents.disconnect();
   }
@@ -69,14 +70,8 @@ public class WebServiceReceiver extends SOAPSyncHelper implements Receiver {
   @Override
   public void accept(RadioEvents events) {
     this.events = events;
-    try {
-      SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-      soapConnection = soapConnectionFactory.createConnection();
-      connected = true;
-      events.connected();
-    } catch (SOAPException e) {
-      logger.warn("accept() failed", e);
-    }
+    connected = true;
+    events.connected();
   }
 
   @Override
@@ -88,17 +83,16 @@ public class WebServiceReceiver extends SOAPSyncHelper implements Receiver {
   void sendRequest(SOAPMessage message) throws NotConnectedException {
     if (!connected) throw new NotConnectedException();
 
-    new Thread(
-            new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  events.receivedMessage(soapConnection.call(message, url));
-                } catch (SOAPException e) {
-                  disconnect();
-                }
+    transport
+        .call(message, url)
+        .whenComplete(
+            (response, throwable) -> {
+              if (throwable != null) {
+                logger.warn("sendRequest() failed", throwable);
+                disconnect();
+              } else if (response != null) {
+                events.receivedMessage(response);
               }
-            })
-        .start();
+            });
   }
 }
@@ -1,8 +1,5 @@
 package eu.chargetime.ocpp;
 
-import javax.xml.soap.SOAPConnection;
-import javax.xml.soap.SOAPConnectionFactory;
-import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,25 +33,25 @@ import org.slf4j.LoggerFactory;
 public class WebServiceTransmitter extends SOAPSyncHelper implements Transmitter {
   private static final Logger logger = LoggerFactory.getLogger(WebServiceTransmitter.class);
 
-  private SOAPConnection soapConnection;
+  private final SOAPHttpTransport transport;
   private String url;
   private RadioEvents events;
-  private boolean connected;
+  private volatile boolean connected;
 
+  /** Send requests with the shared {@link SOAPHttpTransport#getDefault()}. */
   public WebServiceTransmitter() {
+    this(SOAPHttpTransport.getDefault());
+  }
+
+  /** @param transport the {@link SOAPHttpTransport} to send requests with. */
+  public WebServiceTransmitter(SOAPHttpTransport transport) {
+    this.transport = transport;
     connected = false;
   }
 
   @Override
   public void disconnect() {
-    if (connected) {
-      try {
-        soapConnection.close();
-        connected = false;
-      } catch (SOAPException e) {
-        logger.info("disconnect() failed", e);
-      }
-    }
+    connected = false;
     events.disconnected();
   }
 
@@ -67,34 +64,24 @@ public class WebServiceTransmitter extends SOAPSyncHelper implements Transmitter
   public void connect(String uri, RadioEvents events) {
     url = uri;
     this.events = events;
-    try {
-      SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-      soapConnection = soapConnectionFactory.createConnection();
-      connected = true;
-      events.connected();
-    } catch (SOAPException e) {
-      logger.warn("connect() failed", e);
-    }
+    connected = true;
+    events.connected();
   }
 
   @Override
   protected void sendRequest(final SOAPMessage message) throws NotConnectedException {
     if (!connected) throw new NotConnectedException();
-    Thread thread =
-        new Thread(
-            new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  SOAPMessage response = soapConnection.call(message, url);
-                  events.receivedMessage(response);
-                } catch (SOAPException e) {
-                  logger.warn("sendRequest() failed", e);
-                  disconnect();
-                }
+    transport
+        .call(message, url)
+        .whenComplete(
+            (response, throwable) -> {
+              if (throwable != null) {
+                logger.warn("sendRequest() failed", throwable);
+                disconnect();
+              } else if (response != null) {
+                events.receivedMessage(response);
               }
             });
-    thread.start();
   }
 
   @Override
@@ -0,0 +1,412 @@
+package eu.chargetime.ocpp.json;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import eu.chargetime.ocpp.model.core.ChargePointErrorCode;
+import eu.chargetime.ocpp.model.core.ChargePointStatus;
+import eu.chargetime.ocpp.model.core.Location;
+import eu.chargetime.ocpp.model.core.MeterValue;
+import eu.chargetime.ocpp.model.core.MeterValuesRequest;
+import eu.chargetime.ocpp.model.core.SampledValue;
+import eu.chargetime.ocpp.model.core.StartTransactionRequest;
+import eu.chargetime.ocpp.model.core.StatusNotificationRequest;
+import eu.chargetime.ocpp.model.core.ValueFormat;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.time.ZonedDateTime;
+
+/**
+ * Hand-written readers for the high volume OCPP 1.6 core profile requests: {@link
+ * MeterValuesRequest}, {@link MeterValue}, {@link SampledValue}, {@link StatusNotificationRequest}
+ * and {@link StartTransactionRequest}. Every other model, and all of OCPP 2.0, is bound by Gson's
+ * reflective adapter, and so is writing these five.
+ *
+ * <p>Fields are read by name and assigned directly, like the reflective adapter and the Jackson
+ * codec do, so the setters' validation doesn't run and every codec accepts the same payloads. The
+ * fields are looked up reflectively once, when this class is loaded, and assigned through method
+ * handles afterwards. A reader must be updated by hand when a field is added to its model.
+ *
+ * <p>Picked up by {@link eu.chargetime.ocpp.JSONCommunicator} through {@link
+ * java.util.ServiceLoader}.
+ */
+public class CoreProfileTypeAdapterFactory implements TypeAdapterFactory {
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+    Class<? super T> type = typeToken.getRawType();
+    TypeAdapter<?> adapter = null;
+
+    if (type == MeterValuesRequest.class) {
+      adapter = new MeterValuesRequestAdapter(gson, delegate(gson, MeterValuesRequest.class));
+    } else if (type == MeterValue.class) {
+      adapter = new MeterValueAdapter(gson, delegate(gson, MeterValue.class));
+    } else if (type == SampledValue.class) {
+      adapter = new SampledValueAdapter(gson, delegate(gson, SampledValue.class));
+    } else if (type == StatusNotificationRequest.class) {
+      adapter =
+          new StatusNotificationRequestAdapter(
+              gson, delegate(gson, StatusNotificationRequest.class));
+    } else if (type == StartTransactionRequest.class) {
+      adapter =
+          new StartTransactionRequestAdapter(gson, delegate(gson, StartTransactionRequest.class));
+    }
+
+    return (TypeAdapter<T>) adapter;
+  }
+
+  private <T> TypeAdapter<T> delegate(Gson gson, Class<T> type) {
+    return gson.getDelegateAdapter(this, TypeToken.get(type));
+  }
+
+  /**
+   * Get a handle assigning a private field, typed (Object, Object) so it can be invoked exactly.
+   * The field is looked up once, assigning it is as cheap as a setter call.
+   */
+  private static MethodHandle fieldSetter(Class<?> type, String name) {
+    try {
+      Field field = type.getDeclaredField(name);
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .unreflectSetter(field)
+          .asType(MethodType.methodType(void.class, Object.class, Object.class));
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException("Field " + name + " not found in " + type.getName(), ex);
+    }
+  }
+
+  private static void set(MethodHandle setter, Object target, Object value) {
+    try {
+      setter.invokeExact(target, value);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Reads a JSON object into a fresh instance, one field at a time. Unknown fields are skipped, a
+   * null value clears the field.
+   */
+  private abstract static class FieldTypeAdapter<T> extends TypeAdapter<T> {
+    private final TypeAdapter<T> delegate;
+
+    FieldTypeAdapter(TypeAdapter<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    abstract T newInstance();
+
+    /** @return false if the field is unknown */
+    abstract boolean readField(JsonReader in, String name, T target) throws IOException;
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+      delegate.write(out, value);
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      T target = newInstance();
+      in.beginObject();
+      while (in.hasNext()) {
+        if (!readField(in, in.nextName(), target)) in.skipValue();
+      }
+      in.endObject();
+      return target;
+    }
+  }
+
+  private static class MeterValuesRequestAdapter extends FieldTypeAdapter<MeterValuesRequest> {
+    private static final MethodHandle CONNECTOR_ID =
+        fieldSetter(MeterValuesRequest.class, "connectorId");
+    private static final MethodHandle TRANSACTION_ID =
+        fieldSetter(MeterValuesRequest.class, "transactionId");
+    private static final MethodHandle METER_VALUE =
+        fieldSetter(MeterValuesRequest.class, "meterValue");
+
+    private final TypeAdapter<Integer> integerAdapter;
+    private final TypeAdapter<MeterValue[]> meterValuesAdapter;
+
+    MeterValuesRequestAdapter(Gson gson, TypeAdapter<MeterValuesRequest> delegate) {
+      super(delegate);
+      integerAdapter = gson.getAdapter(Integer.class);
+      meterValuesAdapter = gson.getAdapter(MeterValue[].class);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    MeterValuesRequest newInstance() {
+      return new MeterValuesRequest();
+    }
+
+    @Override
+    boolean readField(JsonReader in, String name, MeterValuesRequest target) throws IOException {
+      switch (name) {
+        case "connectorId":
+          set(CONNECTOR_ID, target, integerAdapter.read(in));
+          return true;
+        case "transactionId":
+          set(TRANSACTION_ID, target, integerAdapter.read(in));
+          return true;
+        case "meterValue":
+          set(METER_VALUE, target, meterValuesAdapter.read(in));
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+
+  private static class MeterValueAdapter extends FieldTypeAdapter<MeterValue> {
+    private static final MethodHandle TIMESTAMP = fieldSetter(MeterValue.class, "timestamp");
+    private static final MethodHandle SAMPLED_VALUE = fieldSetter(MeterValue.class, "sampledValue");
+
+    private final TypeAdapter<ZonedDateTime> zonedDateTimeAdapter;
+    private final TypeAdapter<SampledValue[]> sampledValuesAdapter;
+
+    MeterValueAdapter(Gson gson, TypeAdapter<MeterValue> delegate) {
+      super(delegate);
+      zonedDateTimeAdapter = gson.getAdapter(ZonedDateTime.class);
+      sampledValuesAdapter = gson.getAdapter(SampledValue[].class);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    MeterValue newInstance() {
+      return new MeterValue();
+    }
+
+    @Override
+    boolean readField(JsonReader in, String name, MeterValue target) throws IOException {
+      switch (name) {
+        case "timestamp":
+          set(TIMESTAMP, target, zonedDateTimeAdapter.read(in));
+          return true;
+        case "sampledValue":
+          set(SAMPLED_VALUE, target, sampledValuesAdapter.read(in));
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+
+  private static class SampledValueAdapter extends FieldTypeAdapter<SampledValue> {
+    private static final MethodHandle VALUE = fieldSetter(SampledValue.class, "value");
+    private static final MethodHandle CONTEXT = fieldSetter(SampledValue.class, "context");
+    private static final MethodHandle FORMAT = fieldSetter(SampledValue.class, "format");
+    private static final MethodHandle MEASURAND = fieldSetter(SampledValue.class, "measurand");
+    private static final MethodHandle PHASE = fieldSetter(SampledValue.class, "phase");
+    private static final MethodHandle LOCATION = fieldSetter(SampledValue.class, "location");
+    private static final MethodHandle UNIT = fieldSetter(SampledValue.class, "unit");
+
+    private final TypeAdapter<String> stringAdapter;
+    private final TypeAdapter<ValueFormat> valueFormatAdapter;
+    private final TypeAdapter<Location> locationAdapter;
+
+    SampledValueAdapter(Gson gson, TypeAdapter<SampledValue> delegate) {
+      super(delegate);
+      stringAdapter = gson.getAdapter(String.class);
+      valueFormatAdapter = gson.getAdapter(ValueFormat.class);
+      locationAdapter = gson.getAdapter(Location.class);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    SampledValue newInstance() {
+      return new SampledValue();
+    }
+
+    @Override
+    boolean readField(JsonReader in, String name, SampledValue target) throws IOException {
+      switch (name) {
+        case "value":
+          set(VALUE, target, stringAdapter.read(in));
+          return true;
+        case "context":
+          set(CONTEXT, target, stringAdapter.read(in));
+          return true;
+        case "format":
+          set(FORMAT, target, valueFormatAdapter.read(in));
+          return true;
+        case "measurand":
+          set(MEASURAND, target, stringAdapter.read(in));
+          return true;
+        case "phase":
+          set(PHASE, target, stringAdapter.read(in));
+          return true;
+        case "location":
+          set(LOCATION, target, locationAdapter.read(in));
+          return true;
+        case "unit":
+          set(UNIT, target, stringAdapter.read(in));
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+
+  private static class StatusNotificationRequestAdapter
+      extends FieldTypeAdapter<StatusNotificationRequest> {
+    private static final MethodHandle CONNECTOR_ID =
+        fieldSetter(StatusNotificationRequest.class, "connectorId");
+    private static final MethodHandle ERROR_CODE =
+        fieldSetter(StatusNotificationRequest.class, "errorCode");
+    private static final MethodHandle INFO = fieldSetter(StatusNotificationRequest.class, "info");
+    private static final MethodHandle STATUS =
+        fieldSetter(StatusNotificationRequest.class, "status");
+    private static final MethodHandle TIMESTAMP =
+        fieldSetter(StatusNotificationRequest.class, "timestamp");
+    private static final MethodHandle VENDOR_ID =
+        fieldSetter(StatusNotificationRequest.class, "vendorId");
+    private static final MethodHandle VENDOR_ERROR_CODE =
+        fieldSetter(StatusNotificationRequest.class, "vendorErrorCode");
+
+    private final TypeAdapter<Integer> integerAdapter;
+    private final TypeAdapter<String> stringAdapter;
+    private final TypeAdapter<ZonedDateTime> zonedDateTimeAdapter;
+    private final TypeAdapter<ChargePointErrorCode> errorCodeAdapter;
+    private final TypeAdapter<ChargePointStatus> statusAdapter;
+
+    StatusNotificationRequestAdapter(Gson gson, TypeAdapter<StatusNotificationRequest> delegate) {
+      super(delegate);
+      integerAdapter = gson.getAdapter(Integer.class);
+      stringAdapter = gson.getAdapter(String.class);
+      zonedDateTimeAdapter = gson.getAdapter(ZonedDateTime.class);
+      errorCodeAdapter = gson.getAdapter(ChargePointErrorCode.class);
+      statusAdapter = gson.getAdapter(ChargePointStatus.class);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    StatusNotificationRequest newInstance() {
+      return new StatusNotificationRequest();
+    }
+
+    @Override
+    boolean readField(JsonReader in, String name, StatusNotificationRequest target)
+        throws IOException {
+      switch (name) {
+        case "connectorId":
+          set(CONNECTOR_ID, target, integerAdapter.read(in));
+          return true;
+        case "errorCode":
+          set(ERROR_CODE, target, errorCodeAdapter.read(in));
+          return true;
+        case "info":
+          set(INFO, target, stringAdapter.read(in));
+          return true;
+        case "status":
+          set(STATUS, target, statusAdapter.read(in));
+          return true;
+        case "timestamp":
+          set(TIMESTAMP, target, zonedDateTimeAdapter.read(in));
+          return true;
+        case "vendorId":
+          set(VENDOR_ID, target, stringAdapter.read(in));
+          return true;
+        case "vendorErrorCode":
+          set(VENDOR_ERROR_CODE, target, stringAdapter.read(in));
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+
+  private static class StartTransactionRequestAdapter
+      extends FieldTypeAdapter<StartTransactionRequest> {
+    private static final MethodHandle CONNECTOR_ID =
+        fieldSetter(StartTransactionRequest.class, "connectorId");
+    private static final MethodHandle ID_TAG = fieldSetter(StartTransactionRequest.class, "idTag");
+    private static final MethodHandle METER_START =
+        fieldSetter(StartTransactionRequest.class, "meterStart");
+    private static final MethodHandle RESERVATION_ID =
+        fieldSetter(StartTransactionRequest.class, "reservationId");
+    private static final MethodHandle TIMESTAMP =
+        fieldSetter(StartTransactionRequest.class, "timestamp");
+
+    private final TypeAdapter<Integer> integerAdapter;
+    private final TypeAdapter<String> stringAdapter;
+    private final TypeAdapter<ZonedDateTime> zonedDateTimeAdapter;
+
+    StartTransactionRequestAdapter(Gson gson, TypeAdapter<StartTransactionRequest> delegate) {
+      super(delegate);
+      integerAdapter = gson.getAdapter(Integer.class);
+      stringAdapter = gson.getAdapter(String.class);
+      zonedDateTimeAdapter = gson.getAdapter(ZonedDateTime.class);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    StartTransactionRequest newInstance() {
+      return new StartTransactionRequest();
+    }
+
+    @Override
+    boolean readField(JsonReader in, String name, StartTransactionRequest target)
+        throws IOException {
+      switch (name) {
+        case "connectorId":
+          set(CONNECTOR_ID, target, integerAdapter.read(in));
+          return true;
+        case "idTag":
+          set(ID_TAG, target, stringAdapter.read(in));
+          return true;
+        case "meterStart":
+          set(METER_START, target, integerAdapter.read(in));
+          return true;
+        case "reservationId":
+          set(RESERVATION_ID, target, integerAdapter.read(in));
+          return true;
+        case "timestamp":
+          set(TIMESTAMP, target, zonedDateTimeAdapter.read(in));
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+}
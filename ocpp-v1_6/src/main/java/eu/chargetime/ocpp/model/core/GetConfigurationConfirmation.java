@@ -2,9 +2,9 @@ package eu.chargetime.ocpp.model.core;
 
 import eu.chargetime.ocpp.PropertyConstraintException;
 import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.StreamablePayload;
 import eu.chargetime.ocpp.utilities.ModelUtil;
 import eu.chargetime.ocpp.utilities.MoreObjects;
-import java.util.Arrays;
 import java.util.Objects;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -43,20 +43,23 @@ SOFTWARE.
  */
 @XmlRootElement(name = "getConfigurationResponse")
 @XmlType(propOrder = {"configurationKey", "unknownKey"})
-public class GetConfigurationConfirmation extends Confirmation {
+public class GetConfigurationConfirmation extends Confirmation implements StreamablePayload {
 
   private static final String ERROR_MESSAGE = "Exceeds limit of %s chars";
+  private static final int UNKNOWN_KEY_MAX_LENGTH = 50;
 
-  private KeyValueType[] configurationKey;
-  private String[] unknownKey;
+  private Iterable<KeyValueType> configurationKey;
+  private Iterable<String> unknownKey;
 
   /**
-   * List of requested or known keys.
+   * List of requested or known keys. Keys supplied lazily are read once, on the first call.
    *
    * @return Array of {@link KeyValueType}.
    */
   public KeyValueType[] getConfigurationKey() {
-    return configurationKey;
+    KeyValueType[] array = ModelUtil.toArray(configurationKey, KeyValueType[]::new);
+    if (ModelUtil.isLazy(configurationKey)) configurationKey = ModelUtil.asIterable(array);
+    return array;
   }
 
   /**
@@ -66,16 +69,30 @@ public class GetConfigurationConfirmation extends Confirmation {
    */
   @XmlElement
   public void setConfigurationKey(KeyValueType[] configurationKey) {
+    this.configurationKey = ModelUtil.asIterable(configurationKey);
+  }
+
+  /**
+   * Optional. List of requested or known keys, supplied as it's sent. The keys are iterated when
+   * the confirmation is validated and again when it's sent, each {@link Iterable#iterator()} must
+   * start over.
+   *
+   * @param configurationKey the {@link KeyValueType}s.
+   * @see #setConfigurationKey(KeyValueType[])
+   */
+  public void setConfigurationKeyEntries(Iterable<KeyValueType> configurationKey) {
     this.configurationKey = configurationKey;
   }
 
   /**
-   * Requested keys that are unknown.
+   * Requested keys that are unknown. Keys supplied lazily are read once, on the first call.
    *
    * @return Array of key names.
    */
   public String[] getUnknownKey() {
-    return unknownKey;
+    String[] array = ModelUtil.toArray(unknownKey, String[]::new);
+    if (ModelUtil.isLazy(unknownKey)) unknownKey = ModelUtil.asIterable(array);
+    return array;
   }
 
   /**
@@ -87,14 +104,27 @@ public class GetConfigurationConfirmation extends Confirmation {
   public void setUnknownKey(String[] unknownKey) {
     isValidUnknownKey(unknownKey);
 
+    this.unknownKey = ModelUtil.asIterable(unknownKey);
+  }
+
+  /**
+   * Optional. Requested keys that are unknown, supplied as they're sent. The keys are checked when
+   * the confirmation is validated, rather than here, and iterated again when it's sent. Each {@link
+   * Iterable#iterator()} must start over.
+   *
+   * @param unknownKey key names, max 50 characters, case insensitive.
+   * @see #setUnknownKey(String[])
+   */
+  public void setUnknownKeyEntries(Iterable<String> unknownKey) {
     this.unknownKey = unknownKey;
   }
 
   private void isValidUnknownKey(String[] unknownKeys) {
 
     for (String key : unknownKeys) {
-      if (!ModelUtil.validate(key, 50)) {
-        throw new PropertyConstraintException(key.length(), String.format(ERROR_MESSAGE, 50));
+      if (!ModelUtil.validate(key, UNKNOWN_KEY_MAX_LENGTH)) {
+        throw new PropertyConstraintException(
+            key.length(), String.format(ERROR_MESSAGE, UNKNOWN_KEY_MAX_LENGTH));
       }
     }
   }
@@ -102,7 +132,7 @@ public class GetConfigurationConfirmation extends Confirmation {
   private boolean validateConfigurationKeys() {
     boolean output = true;
 
-    if (configurationKey != null && configurationKey.length > 0) {
+    if (configurationKey != null) {
       for (KeyValueType key : configurationKey) {
         if (!key.validate()) {
           output = false;
@@ -114,9 +144,20 @@ public class GetConfigurationConfirmation extends Confirmation {
     return output;
   }
 
+  private boolean validateUnknownKeys() {
+    if (unknownKey != null) {
+      for (String key : unknownKey) {
+        if (!ModelUtil.validate(key, UNKNOWN_KEY_MAX_LENGTH)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   @Override
   public boolean validate() {
-    return validateConfigurationKeys();
+    return validateConfigurationKeys() && validateUnknownKeys();
   }
 
   @Override
@@ -124,21 +165,24 @@ public class GetConfigurationConfirmation extends Confirmation {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     GetConfigurationConfirmation that = (GetConfigurationConfirmation) o;
-    return Arrays.equals(configurationKey, that.configurationKey)
-        && Arrays.equals(unknownKey, that.unknownKey);
+    return ModelUtil.elementsEqual(configurationKey, that.configurationKey)
+        && ModelUtil.elementsEqual(unknownKey, that.unknownKey);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(configurationKey, unknownKey);
+    return Objects.hash(
+        ModelUtil.elementsHashCode(configurationKey), ModelUtil.elementsHashCode(unknownKey));
   }
 
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
-        .add("configurationKey", configurationKey)
-        .add("unknownKey", unknownKey)
-        .add("isValid", validate())
+        .add("configurationKey", ModelUtil.toStringValue(configurationKey))
+        .add("unknownKey", ModelUtil.toStringValue(unknownKey))
+        .add(
+            "isValid",
+            ModelUtil.isLazy(configurationKey) || ModelUtil.isLazy(unknownKey) ? null : validate())
         .toString();
   }
 }
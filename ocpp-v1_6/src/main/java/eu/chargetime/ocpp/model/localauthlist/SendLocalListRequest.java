@@ -29,14 +29,15 @@ package eu.chargetime.ocpp.model.localauthlist;
 
 import eu.chargetime.ocpp.PropertyConstraintException;
 import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.StreamablePayload;
+import eu.chargetime.ocpp.utilities.ModelUtil;
 import eu.chargetime.ocpp.utilities.MoreObjects;
-import java.util.Arrays;
 import java.util.Objects;
 
-public class SendLocalListRequest implements Request {
+public class SendLocalListRequest implements Request, StreamablePayload {
 
   private Integer listVersion = 0;
-  private AuthorizationData[] localAuthorizationList = null;
+  private Iterable<AuthorizationData> localAuthorizationList = null;
   private UpdateType updateType = null;
 
   /**
@@ -83,12 +84,17 @@ public class SendLocalListRequest implements Request {
   /**
    * In case of a full update this contains the list of values that form the new local authorization
    * list. In case of a differential update it contains the changes to be applied to the local
-   * authorization list in the Charge Point.
+   * authorization list in the Charge Point. Entries supplied lazily are read once, on the first
+   * call.
    *
    * @return Array of {@link AuthorizationData}
    */
   public AuthorizationData[] getLocalAuthorizationList() {
-    return localAuthorizationList;
+    AuthorizationData[] array = ModelUtil.toArray(localAuthorizationList, AuthorizationData[]::new);
+    if (ModelUtil.isLazy(localAuthorizationList)) {
+      localAuthorizationList = ModelUtil.asIterable(array);
+    }
+    return array;
   }
 
   /**
@@ -99,6 +105,19 @@ public class SendLocalListRequest implements Request {
    * @param localAuthorizationList, Array of {@link AuthorizationData}
    */
   public void setLocalAuthorizationList(AuthorizationData[] localAuthorizationList) {
+    this.localAuthorizationList = ModelUtil.asIterable(localAuthorizationList);
+  }
+
+  /**
+   * Optional. The local authorization list, supplied as it's sent. Use this for large lists, for
+   * example to send them straight from a database cursor. The entries are iterated when the
+   * request is validated and again when it's sent, each {@link Iterable#iterator()} must start
+   * over. {@link #toString()} doesn't iterate them.
+   *
+   * @param localAuthorizationList the {@link AuthorizationData} entries.
+   * @see #setLocalAuthorizationList(AuthorizationData[])
+   */
+  public void setLocalAuthorizationEntries(Iterable<AuthorizationData> localAuthorizationList) {
     this.localAuthorizationList = localAuthorizationList;
   }
 
@@ -148,22 +167,23 @@ public class SendLocalListRequest implements Request {
     if (o == null || getClass() != o.getClass()) return false;
     SendLocalListRequest that = (SendLocalListRequest) o;
     return Objects.equals(listVersion, that.listVersion)
-        && Arrays.equals(localAuthorizationList, that.localAuthorizationList)
+        && ModelUtil.elementsEqual(localAuthorizationList, that.localAuthorizationList)
         && updateType == that.updateType;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(listVersion, localAuthorizationList, updateType);
+    return Objects.hash(
+        listVersion, ModelUtil.elementsHashCode(localAuthorizationList), updateType);
   }
 
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
         .add("listVersion", listVersion)
-        .add("localAuthorizationList", localAuthorizationList)
+        .add("localAuthorizationList", ModelUtil.toStringValue(localAuthorizationList))
         .add("updateType", updateType)
-        .add("isValid", validate())
+        .add("isValid", ModelUtil.isLazy(localAuthorizationList) ? null : validate())
         .toString();
   }
 }
@@ -0,0 +1,140 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamReader;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Kept next to the reader, which is package-private. SOAPCommunicator is the public way in, but it
+ * needs a SAAJ and a JAXB implementation to bind a payload, so the mapping is tested on its own.
+ */
+public class NamespaceMappingStreamReaderTest {
+
+  private static final String NAMESPACE = "urn://Ocpp/Cs/2015/10/";
+  private static final String PAYLOAD_NAMESPACE = "urn://Ocpp/Cp/2015/10/";
+  private static final String XSI_NAMESPACE = XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI;
+
+  @Test
+  public void read_prefixedElementsInOtherNamespace_allElementsInTargetNamespace()
+      throws Exception {
+    // Given
+    Document document =
+        parse(
+            "<ns2:bootNotificationResponse xmlns:ns2=\"%s\">"
+                + "<ns2:status>Accepted</ns2:status><!-- skipped --><ns2:interval/>"
+                + "</ns2:bootNotificationResponse>",
+            PAYLOAD_NAMESPACE);
+    XMLStreamReader reader = new NamespaceMappingStreamReader(document, NAMESPACE);
+
+    // When
+    List<String> events = new ArrayList<>();
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamReader.START_ELEMENT) {
+        events.add("<" + reader.getNamespaceURI() + reader.getLocalName());
+      } else if (event == XMLStreamReader.END_ELEMENT) {
+        events.add(">" + reader.getLocalName());
+      } else if (event == XMLStreamReader.CHARACTERS) {
+        events.add(reader.getText());
+      }
+    }
+
+    // Then
+    assertThat(
+        events.toString(),
+        equalTo(
+            String.format(
+                "[<%1$sbootNotificationResponse, <%1$sstatus, Accepted, >status, "
+                    + "<%1$sinterval, >interval, >bootNotificationResponse]",
+                NAMESPACE)));
+    assertThat(document.getDocumentElement().getNamespaceURI(), equalTo(PAYLOAD_NAMESPACE));
+  }
+
+  @Test
+  public void read_elementWithNilAttribute_attributeKeepsItsNamespace() throws Exception {
+    // Given
+    Document document =
+        parse(
+            "<heartbeatRequest xmlns=\"%s\" xmlns:xsi=\"%s\"><id xsi:nil=\"true\"/>"
+                + "</heartbeatRequest>",
+            PAYLOAD_NAMESPACE,
+            XSI_NAMESPACE);
+    XMLStreamReader reader = new NamespaceMappingStreamReader(document, NAMESPACE);
+    reader.next();
+
+    // When
+    int rootAttributes = reader.getAttributeCount();
+    int rootNamespaces = reader.getNamespaceCount();
+    reader.next();
+
+    // Then
+    assertThat(rootAttributes, is(0));
+    assertThat(rootNamespaces, is(2));
+    assertThat(reader.getAttributeCount(), is(1));
+    assertThat(reader.getAttributeNamespace(0), equalTo(XSI_NAMESPACE));
+    assertThat(reader.getAttributeValue(XSI_NAMESPACE, "nil"), equalTo("true"));
+    assertThat(reader.getNamespaceURI("xsi"), equalTo(XSI_NAMESPACE));
+    assertThat(reader.getNamespaceURI(""), equalTo(NAMESPACE));
+  }
+
+  @Test
+  public void getElementText_textElement_returnsTextAndEndsAtEndElement() throws Exception {
+    // Given
+    Document document = parse("<status xmlns=\"%s\">Accepted</status>", PAYLOAD_NAMESPACE);
+    XMLStreamReader reader = new NamespaceMappingStreamReader(document, NAMESPACE);
+    reader.nextTag();
+
+    // When
+    String text = reader.getElementText();
+
+    // Then
+    assertThat(text, equalTo("Accepted"));
+    assertThat(reader.getEventType(), is(XMLStreamReader.END_ELEMENT));
+    assertThat(reader.next(), is(XMLStreamReader.END_DOCUMENT));
+  }
+
+  private static Document parse(String xml, Object... args) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory
+        .newDocumentBuilder()
+        .parse(
+            new ByteArrayInputStream(String.format(xml, args).getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,110 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Package-private writer, tested directly: going through SOAPCommunicator#createMessage would take
+ * a SAAJ message factory and a JAXB marshaller to produce the events this writer renames.
+ */
+public class NamespaceMappingStreamWriterTest {
+
+  private static final String NAMESPACE = "urn://Ocpp/Cp/2015/10/";
+  private static final String MODEL_NAMESPACE = "urn://Ocpp/Cs/2015/10/";
+
+  private Document document;
+  private XMLStreamWriter writer;
+
+  @Before
+  public void setup() throws Exception {
+    document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    writer =
+        new NamespaceMappingStreamWriter(
+            XMLOutputFactory.newInstance().createXMLStreamWriter(new DOMResult(document)),
+            NAMESPACE);
+  }
+
+  @Test
+  public void write_prefixedElements_allElementsInTargetNamespace() throws Exception {
+    // Given
+    writer.writeStartDocument();
+    writer.writeStartElement("ns2", "bootNotificationResponse", MODEL_NAMESPACE);
+    writer.writeNamespace("ns2", MODEL_NAMESPACE);
+    writer.writeStartElement("ns2", "status", MODEL_NAMESPACE);
+    writer.writeCharacters("Accepted");
+    writer.writeEndElement();
+    writer.writeEmptyElement(MODEL_NAMESPACE, "interval");
+
+    // When
+    writer.writeEndElement();
+    writer.writeEndDocument();
+
+    // Then
+    Element root = document.getDocumentElement();
+    Element status = (Element) root.getFirstChild();
+    Element interval = (Element) status.getNextSibling();
+    assertThat(root.getNamespaceURI(), equalTo(NAMESPACE));
+    assertThat(root.getPrefix(), is(nullValue()));
+    assertThat(status.getNamespaceURI(), equalTo(NAMESPACE));
+    assertThat(status.getTextContent(), equalTo("Accepted"));
+    assertThat(interval.getNamespaceURI(), equalTo(NAMESPACE));
+    assertThat(interval.getPrefix(), is(nullValue()));
+  }
+
+  @Test
+  public void write_callerDeclaresNamespaces_onlyTargetNamespaceDeclaredOnRoot()
+      throws Exception {
+    // Given
+    writer.writeStartElement("ns2", "heartbeatRequest", MODEL_NAMESPACE);
+    writer.writeNamespace("ns2", MODEL_NAMESPACE);
+    writer.writeDefaultNamespace(MODEL_NAMESPACE);
+
+    // When
+    writer.writeEndElement();
+
+    // Then
+    Element root = document.getDocumentElement();
+    assertThat(root.getAttributes().getLength(), is(1));
+    assertThat(
+        root.getAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE),
+        equalTo(NAMESPACE));
+  }
+}
@@ -0,0 +1,140 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import eu.chargetime.ocpp.utilities.HashedWheelTimer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.xml.soap.SOAPMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+/**
+ * In the helper's package because its sendRequest and forwardMessage hooks are package-private,
+ * so it can't be subclassed from elsewhere. WebServiceTransmitter and WebServiceReceiver would need
+ * a live SOAP endpoint to reach the same code.
+ */
+public class SOAPSyncHelperTest {
+
+  private HashedWheelTimer timer;
+  private SOAPSyncHelper helper;
+  private SOAPMessage sentRequest;
+
+  @Before
+  public void setup() {
+    timer = new HashedWheelTimer("test-wheel", 10, TimeUnit.MILLISECONDS, 8);
+    helper =
+        new SOAPSyncHelper(timer) {
+          @Override
+          void forwardMessage(SOAPMessage message) {}
+
+          @Override
+          void sendRequest(SOAPMessage message) {
+            sentRequest = message;
+          }
+        };
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void send_answerToRelayedRequest_completesPromiseAndForgetsIt() throws Exception {
+    // Given
+    CompletableFuture<SOAPMessage> promise = helper.relay(message("MessageID", "42"));
+    SOAPMessage answer = message("RelatesTo", "42");
+
+    // When
+    helper.send(answer);
+
+    // Then
+    assertThat(promise.get(1, TimeUnit.SECONDS), is(sameInstance(answer)));
+    assertThat(helper.getPendingRequestCount(), is(0));
+    assertThat(sentRequest == null, is(true));
+  }
+
+  @Test
+  public void relay_requestNotAnswered_failsWithSOAPFaultAfterTimeout() throws Exception {
+    // Given
+    helper.setRequestTimeout(50);
+
+    // When
+    CompletableFuture<SOAPMessage> promise = helper.relay(message("MessageID", "42"));
+
+    // Then
+    try {
+      promise.get(2, TimeUnit.SECONDS);
+      fail("Expected the request to time out");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(SOAPFaultException.class));
+    }
+    assertThat(helper.getPendingRequestCount(), is(0));
+    assertThat(helper.getTimedOutRequestCount(), is(1L));
+  }
+
+  @Test
+  public void send_answerAfterTimeout_sentAsNewRequest() throws Exception {
+    // Given
+    helper.setRequestTimeout(10);
+    CompletableFuture<SOAPMessage> promise = helper.relay(message("MessageID", "42"));
+    try {
+      promise.get(2, TimeUnit.SECONDS);
+    } catch (ExecutionException ignored) {
+    }
+    SOAPMessage answer = message("RelatesTo", "42");
+
+    // When
+    helper.send(answer);
+
+    // Then
+    assertThat(sentRequest, is(sameInstance(answer)));
+  }
+
+  private static SOAPMessage message(String header, String value) throws Exception {
+    SOAPMessage message = mock(SOAPMessage.class, RETURNS_DEEP_STUBS);
+    NodeList elements = mock(NodeList.class, RETURNS_DEEP_STUBS);
+    when(elements.getLength()).thenReturn(1);
+    when(elements.item(0).getChildNodes().item(0).getTextContent()).thenReturn(value);
+    when(message.getSOAPPart().getEnvelope().getHeader().getElementsByTagNameNS("*", header))
+        .thenReturn(elements);
+    return message;
+  }
+}
@@ -0,0 +1,198 @@
+package eu.chargetime.ocpp;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import eu.chargetime.ocpp.model.SessionInformation;
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.soap.SOAPEnvelope;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.soap.SOAPPart;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.w3c.dom.Element;
+
+/**
+ * Drives the package-private WSHttpEventHandler of the listener directly. Over HTTP the request
+ * would first be parsed by a SAAJ message factory, and the races between sessions of a charge box
+ * couldn't be lined up from outside.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class WebServiceListenerTest {
+  private static final String HEADER =
+      "<Header xmlns=\"urn://Ocpp/Cs/2015/10/\" xmlns:a=\"http://www.w3.org/2005/08/addressing\">"
+          + "<chargeBoxIdentity>%s</chargeBoxIdentity>"
+          + "<a:From><a:Address>http://127.0.0.1:1/</a:Address></a:From>"
+          + "<a:MessageID>urn:uuid:%d</a:MessageID>"
+          + "</Header>";
+
+  private WebServiceListener listener;
+  private AtomicInteger sessions;
+  private AtomicInteger messageIds;
+
+  @Mock private IFeatureRepository featureRepository;
+  @Mock private SessionEvents sessionEvents;
+
+  @Before
+  public void setup() throws Exception {
+    when(featureRepository.findFeature(any())).thenReturn(Optional.empty());
+    listener = new WebServiceListener(new SessionFactory(featureRepository));
+    sessions = new AtomicInteger();
+    messageIds = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() {
+    listener.close();
+  }
+
+  @Test
+  public void incomingRequest_newSessionClosesSession_chargeBoxIsRemoved() throws Exception {
+    // Given
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    WebServiceListener.WSHttpEventHandler handler =
+        open(
+            (session, information) -> {
+              session.accept(sessionEvents);
+              try {
+                // Closing the session unregisters its charge box from within newSession
+                session.close();
+              } catch (RuntimeException ex) {
+                failure.set(ex);
+              }
+            });
+
+    // When
+    handler.incomingRequestAsync(request("CP1"));
+    handler.incomingRequestAsync(request("CP1"));
+
+    // Then
+    assertThat(failure.get(), is(nullValue()));
+    assertThat(sessions.get(), is(2));
+  }
+
+  @Test
+  public void incomingRequest_newSessionPending_sameChargeBoxWaitsForIt() throws Exception {
+    // Given
+    CountDownLatch creating = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    WebServiceListener.WSHttpEventHandler handler =
+        open(
+            (session, information) -> {
+              session.accept(sessionEvents);
+              creating.countDown();
+              try {
+                release.await(5, TimeUnit.SECONDS);
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    CompletableFuture<Void> first =
+        CompletableFuture.runAsync(() -> handler.incomingRequestAsync(request("CP1")));
+    assertThat(creating.await(5, TimeUnit.SECONDS), is(true));
+
+    // When
+    handler.incomingRequestAsync(request("CP1"));
+    handler.incomingRequestAsync(request("CP2"));
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+
+    // Then
+    assertThat(sessions.get(), is(2));
+  }
+
+  private WebServiceListener.WSHttpEventHandler open(
+      BiConsumer<ISession, SessionInformation> newSession) {
+    listener.open(
+        "127.0.0.1",
+        0,
+        new ListenerEvents() {
+          @Override
+          public void authenticateSession(
+              SessionInformation information, String username, byte[] password) {}
+
+          @Override
+          public void newSession(ISession session, SessionInformation information) {
+            sessions.incrementAndGet();
+            newSession.accept(session, information);
+          }
+        });
+    return listener.new WSHttpEventHandler();
+  }
+
+  private SOAPMessageInfo request(String identity) {
+    try {
+      String xml = String.format(HEADER, identity, messageIds.incrementAndGet());
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      Element element =
+          factory
+              .newDocumentBuilder()
+              .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+              .getDocumentElement();
+
+      SOAPHeader header = mock(SOAPHeader.class);
+      when(header.getElementsByTagNameNS(eq("*"), anyString()))
+          .thenAnswer(
+              invocation ->
+                  element.getElementsByTagNameNS("*", invocation.getArgumentAt(1, String.class)));
+      SOAPEnvelope envelope = mock(SOAPEnvelope.class);
+      when(envelope.getHeader()).thenReturn(header);
+      SOAPPart part = mock(SOAPPart.class);
+      when(part.getEnvelope()).thenReturn(envelope);
+      SOAPMessage message = mock(SOAPMessage.class);
+      when(message.getSOAPPart()).thenReturn(part);
+      return new SOAPMessageInfo(new InetSocketAddress("127.0.0.1", 1), message);
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
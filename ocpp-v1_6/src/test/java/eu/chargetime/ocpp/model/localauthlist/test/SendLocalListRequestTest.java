@@ -3,7 +3,11 @@ package eu.chargetime.ocpp.model.localauthlist.test;
 import static eu.chargetime.ocpp.utilities.TestUtilities.aList;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -14,6 +18,8 @@ import eu.chargetime.ocpp.model.core.IdTagInfo;
 import eu.chargetime.ocpp.model.localauthlist.AuthorizationData;
 import eu.chargetime.ocpp.model.localauthlist.SendLocalListRequest;
 import eu.chargetime.ocpp.model.localauthlist.UpdateType;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -150,4 +156,72 @@ public class SendLocalListRequestTest {
     // Then
     assertThat(request.validate(), equalTo(true));
   }
+
+  @Test
+  public void setLocalAuthorizationEntries_anIterable_readBackAsArray() {
+    // When
+    request.setLocalAuthorizationEntries(() -> Arrays.asList(data, data).iterator());
+
+    // Then
+    assertThat(request.getLocalAuthorizationList(), equalTo(aList(data, data)));
+  }
+
+  @Test
+  public void validate_iterableWithInvalidEntry_isNotValid() {
+    // When
+    request.setListVersion(42);
+    request.setUpdateType(UpdateType.Differential);
+    request.setLocalAuthorizationEntries(() -> Arrays.asList(data).iterator());
+    when(data.validate()).thenReturn(false);
+
+    // Then
+    assertThat(request.validate(), equalTo(false));
+    verify(data, times(1)).validate();
+  }
+
+  @Test
+  public void toString_lazyEntries_doesNotIterateThem() {
+    // Given
+    Iterable<AuthorizationData> entries = mock(Iterable.class);
+    request.setLocalAuthorizationEntries(entries);
+
+    // When
+    request.toString();
+
+    // Then
+    verify(entries, never()).iterator();
+  }
+
+  @Test
+  public void getLocalAuthorizationList_setFromArray_returnsThatArray() {
+    // Given
+    AuthorizationData[] list = aList(data);
+    request.setLocalAuthorizationList(list);
+
+    // When
+    request.getLocalAuthorizationList()[0] = null;
+
+    // Then
+    assertThat(request.getLocalAuthorizationList(), sameInstance(list));
+    assertThat(list[0], nullValue());
+  }
+
+  @Test
+  public void getLocalAuthorizationList_lazyEntries_iteratesThemOnce() {
+    // Given
+    AtomicInteger iterations = new AtomicInteger();
+    request.setLocalAuthorizationEntries(
+        () -> {
+          iterations.incrementAndGet();
+          return Arrays.asList(data).iterator();
+        });
+
+    // When
+    AuthorizationData[] list = request.getLocalAuthorizationList();
+    request.validate();
+
+    // Then
+    assertThat(request.getLocalAuthorizationList(), sameInstance(list));
+    assertThat(iterations.get(), equalTo(1));
+  }
 }
@@ -14,6 +14,7 @@ import static org.mockito.Mockito.when;
 import eu.chargetime.ocpp.PropertyConstraintException;
 import eu.chargetime.ocpp.model.core.GetConfigurationConfirmation;
 import eu.chargetime.ocpp.model.core.KeyValueType;
+import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -151,4 +152,28 @@ public class GetConfigurationConfirmationTest {
     // Then
     assertThat(isValid, is(false));
   }
+
+  @Test
+  public void setConfigurationKeyEntries_anIterable_readBackAsArray() {
+    // Given
+    KeyValueType keyValueType = new KeyValueType();
+
+    // When
+    confirmation.setConfigurationKeyEntries(() -> Arrays.asList(keyValueType).iterator());
+
+    // Then
+    assertThat(confirmation.getConfigurationKey(), equalTo(aList(keyValueType)));
+  }
+
+  @Test
+  public void validate_unknownKeyIterableWithStringLength51_returnsFalse() {
+    // Given
+    confirmation.setUnknownKeyEntries(() -> Arrays.asList(aString(50), aString(51)).iterator());
+
+    // When
+    boolean isValid = confirmation.validate();
+
+    // Then
+    assertThat(isValid, is(false));
+  }
 }
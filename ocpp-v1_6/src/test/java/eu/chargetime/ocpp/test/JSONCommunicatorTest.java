@@ -5,19 +5,43 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.*;
 
+import eu.chargetime.ocpp.CommunicatorEvents;
+import eu.chargetime.ocpp.GsonCodec;
+import eu.chargetime.ocpp.JacksonCodec;
 import eu.chargetime.ocpp.JSONCommunicator;
+import eu.chargetime.ocpp.JsonCodec;
+import eu.chargetime.ocpp.PropertyConstraintException;
+import eu.chargetime.ocpp.RadioEvents;
+import eu.chargetime.ocpp.StreamedMessage;
 import eu.chargetime.ocpp.Transmitter;
 import eu.chargetime.ocpp.model.TestModel;
 import eu.chargetime.ocpp.model.core.BootNotificationConfirmation;
 import eu.chargetime.ocpp.model.core.BootNotificationRequest;
+import eu.chargetime.ocpp.model.core.ChargePointErrorCode;
+import eu.chargetime.ocpp.model.core.ChargePointStatus;
+import eu.chargetime.ocpp.model.core.GetConfigurationConfirmation;
+import eu.chargetime.ocpp.model.core.Location;
+import eu.chargetime.ocpp.model.core.MeterValue;
+import eu.chargetime.ocpp.model.core.MeterValuesRequest;
 import eu.chargetime.ocpp.model.core.RegistrationStatus;
+import eu.chargetime.ocpp.model.core.SampledValue;
+import eu.chargetime.ocpp.model.core.StartTransactionRequest;
+import eu.chargetime.ocpp.model.core.StatusNotificationRequest;
+import eu.chargetime.ocpp.model.core.ValueFormat;
+import eu.chargetime.ocpp.model.localauthlist.AuthorizationData;
+import eu.chargetime.ocpp.model.localauthlist.SendLocalListRequest;
+import eu.chargetime.ocpp.model.localauthlist.UpdateType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.Locale;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -54,6 +78,7 @@ public class JSONCommunicatorTest {
   private JSONCommunicator communicator;
 
   @Mock private Transmitter transmitter;
+  @Mock private CommunicatorEvents events;
 
   @Before
   public void setup() {
@@ -294,6 +319,88 @@ public class JSONCommunicatorTest {
     assertThat(payload, equalTo(expected));
   }
 
+  @Test
+  public void unpackPayload_meterValuesRequest_returnsMeterValuesRequest() throws Exception {
+    // Given
+    String payload =
+        "{\"connectorId\":1,\"transactionId\":42,\"unknown\":{\"a\":[1]},\"meterValue\":"
+            + "[{\"timestamp\":\"2016-04-28T07:16:11.988Z\",\"sampledValue\":"
+            + "[{\"value\":\"12.5\",\"measurand\":\"Voltage\",\"unit\":\"V\","
+            + "\"format\":\"Raw\",\"location\":\"Inlet\",\"phase\":null}]}]}";
+
+    // When
+    MeterValuesRequest result = communicator.unpackPayload(payload, MeterValuesRequest.class);
+
+    // Then
+    assertThat(result.getConnectorId(), is(1));
+    assertThat(result.getTransactionId(), is(42));
+    MeterValue meterValue = result.getMeterValue()[0];
+    assertThat(
+        meterValue.getTimestamp().compareTo(ZonedDateTime.parse("2016-04-28T07:16:11.988Z")),
+        is(0));
+    SampledValue sampledValue = meterValue.getSampledValue()[0];
+    assertThat(sampledValue.getValue(), equalTo("12.5"));
+    assertThat(sampledValue.getMeasurand(), equalTo("Voltage"));
+    assertThat(sampledValue.getUnit(), equalTo("V"));
+    assertThat(sampledValue.getFormat(), is(ValueFormat.Raw));
+    assertThat(sampledValue.getLocation(), is(Location.Inlet));
+    assertThat(sampledValue.getPhase(), nullValue());
+    assertThat(result.validate(), is(true));
+  }
+
+  @Test
+  public void unpackPayload_sampledValueWithUnknownMeasurand_keepsMeasurandLikeFieldBinding()
+      throws Exception {
+    // Given
+    String payload = "{\"value\":\"1\",\"measurand\":\"Nonsense\"}";
+
+    // When
+    SampledValue result = communicator.unpackPayload(payload, SampledValue.class);
+
+    // Then
+    assertThat(result.getMeasurand(), equalTo("Nonsense"));
+  }
+
+  @Test
+  public void unpackPayload_statusNotificationRequest_returnsStatusNotificationRequest()
+      throws Exception {
+    // Given
+    String payload =
+        "{\"connectorId\":2,\"errorCode\":\"NoError\",\"status\":\"Charging\","
+            + "\"info\":\"ok\",\"vendorId\":\"VendorX\"}";
+
+    // When
+    StatusNotificationRequest result =
+        communicator.unpackPayload(payload, StatusNotificationRequest.class);
+
+    // Then
+    assertThat(result.getConnectorId(), is(2));
+    assertThat(result.getErrorCode(), is(ChargePointErrorCode.NoError));
+    assertThat(result.getStatus(), is(ChargePointStatus.Charging));
+    assertThat(result.getInfo(), equalTo("ok"));
+    assertThat(result.getVendorId(), equalTo("VendorX"));
+    assertThat(result.getVendorErrorCode(), nullValue());
+  }
+
+  @Test
+  public void pack_startTransactionRequest_returnsStartTransactionRequestPayload()
+      throws Exception {
+    // Given
+    String expected =
+        "{\"connectorId\":1,\"idTag\":\"tag\",\"meterStart\":0,"
+            + "\"timestamp\":\"2016-04-28T06:41:13.720Z\"}";
+    StartTransactionRequest request =
+        new StartTransactionRequest(1, "tag", 0, createDateTimeInMillis(1461825673720L));
+
+    // When
+    Object payload = communicator.packPayload(request);
+
+    // Then
+    assertThat(payload, equalTo(expected));
+    assertThat(
+        communicator.unpackPayload(payload, StartTransactionRequest.class), equalTo(request));
+  }
+
   @Test
   public void disconnect_disconnects() {
     // When
@@ -316,6 +423,263 @@ public class JSONCommunicatorTest {
     verify(transmitter, times(1)).send(anyString());
   }
 
+  @Test
+  public void sendError_descriptionNeedsEscaping_transmitsValidJson() throws Exception {
+    // Given
+    String errorDescription = "Field \"idTag\" \\ is\ttoo long\n\u0001";
+
+    // When
+    communicator.sendCallError("id\"1", "Authorize", "TypeConstraintViolation", errorDescription);
+
+    // Then
+    verify(transmitter, times(1))
+        .send(
+            "[4,\"id\\\"1\",\"TypeConstraintViolation\","
+                + "\"Field \\\"idTag\\\" \\\\ is\\ttoo long\\n\\u0001\",{}]");
+  }
+
+  @Test
+  public void sendError_withErrorDetails_transmitsErrorDetails() throws Exception {
+    // Given
+    BootNotificationConfirmation details = new BootNotificationConfirmation();
+    details.setInterval(300);
+
+    // When
+    communicator.sendCallError("1", "Authorize", "InternalError", "Failed", details);
+
+    // Then
+    verify(transmitter, times(1))
+        .send("[4,\"1\",\"InternalError\",\"Failed\",{\"interval\":300}]");
+  }
+
+  @Test
+  public void sendError_constraintViolation_transmitsConstraintAsErrorDetails()
+      throws Exception {
+    // Given
+    PropertyConstraintException ex =
+        new PropertyConstraintException("FooBar", "Status is not a valid value");
+
+    // When
+    communicator.sendCallError(
+        "1", "StatusNotification", "TypeConstraintViolation", "Failed", ex.getErrorDetails());
+
+    // Then
+    verify(transmitter, times(1))
+        .send(
+            "[4,\"1\",\"TypeConstraintViolation\",\"Failed\","
+                + "{\"constraint\":\"Status is not a valid value\"}]");
+  }
+
+  @Test
+  public void sendCallResult_transmitsEnvelopeWithPayload() throws Exception {
+    // Given
+    BootNotificationConfirmation confirmation = new BootNotificationConfirmation();
+    confirmation.setInterval(300);
+
+    // When
+    communicator.sendCallResult("a\\b", "BootNotification", confirmation);
+
+    // Then
+    verify(transmitter, times(1)).send("[3,\"a\\\\b\",{\"interval\":300}]");
+  }
+
+  @Test
+  public void sendCall_sendLocalListWithLazyEntries_transmitsStreamedMessage() throws Exception {
+    // Given
+    AuthorizationData data = new AuthorizationData();
+    data.setIdTag("tag");
+    SendLocalListRequest request = new SendLocalListRequest(1, UpdateType.Differential);
+    request.setLocalAuthorizationEntries(() -> Arrays.asList(data, data).iterator());
+
+    // When
+    communicator.sendCall("1", "SendLocalList", request);
+
+    // Then
+    ArgumentCaptor<Object> message = ArgumentCaptor.forClass(Object.class);
+    verify(transmitter).send(message.capture());
+    assertThat(message.getValue(), instanceOf(StreamedMessage.class));
+    assertThat(
+        message.getValue().toString(),
+        equalTo(
+            "[2,\"1\",\"SendLocalList\",{\"listVersion\":1,\"localAuthorizationList\":"
+                + "[{\"idTag\":\"tag\"},{\"idTag\":\"tag\"}],\"updateType\":\"Differential\"}]"));
+  }
+
+  @Test
+  public void sendCallResult_getConfiguration_transmitsStreamedMessage() throws Exception {
+    // Given
+    GetConfigurationConfirmation confirmation = new GetConfigurationConfirmation();
+    confirmation.setUnknownKey(new String[] {"Unknown"});
+
+    // When
+    communicator.sendCallResult("2", "GetConfiguration", confirmation);
+
+    // Then
+    ArgumentCaptor<Object> message = ArgumentCaptor.forClass(Object.class);
+    verify(transmitter).send(message.capture());
+    assertThat(message.getValue(), instanceOf(StreamedMessage.class));
+    assertThat(message.getValue().toString(), equalTo("[3,\"2\",{\"unknownKey\":[\"Unknown\"]}]"));
+  }
+
+  @Test
+  public void receivedMessage_callWithKnownAction_payloadIsBoundToRequestType() throws Exception {
+    // Given
+    String call =
+        "[2,\"1\",\"BootNotification\",{\"chargePointVendor\":\"VendorX\",\"chargePointModel\":\"SingleSocketCharger\"}]";
+    doReturn(BootNotificationRequest.class).when(events).getRequestType("BootNotification");
+    RadioEvents radioEvents = connect();
+
+    // When
+    radioEvents.receivedMessage(call);
+
+    // Then
+    ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+    verify(events).onCall(eq("1"), eq("BootNotification"), payload.capture());
+    assertThat(payload.getValue(), instanceOf(BootNotificationRequest.class));
+    BootNotificationRequest request =
+        communicator.unpackPayload(payload.getValue(), BootNotificationRequest.class);
+    assertThat(request.getChargePointVendor(), equalTo("VendorX"));
+  }
+
+  @Test
+  public void receivedMessage_utf8EncodedCall_payloadIsBoundToRequestType() throws Exception {
+    // Given
+    String call =
+        "[2,\"1\",\"BootNotification\",{\"chargePointVendor\":\"Vendør €\",\"chargePointModel\":\"\uD83D\uDD0C\"}]";
+    doReturn(BootNotificationRequest.class).when(events).getRequestType("BootNotification");
+    RadioEvents radioEvents = connect();
+
+    // When
+    radioEvents.receivedMessage(ByteBuffer.wrap(call.getBytes(StandardCharsets.UTF_8)));
+
+    // Then
+    ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+    verify(events).onCall(eq("1"), eq("BootNotification"), payload.capture());
+    BootNotificationRequest request =
+        communicator.unpackPayload(payload.getValue(), BootNotificationRequest.class);
+    assertThat(request.getChargePointVendor(), equalTo("Vendør €"));
+    assertThat(request.getChargePointModel(), equalTo("\uD83D\uDD0C"));
+  }
+
+  @Test
+  public void receivedMessage_malformedUtf8_isNotDispatched() {
+    // Given
+    byte[] call = "[2,\"1\",\"Heartbeat\",{}]".getBytes(StandardCharsets.UTF_8);
+    call[8] = (byte) 0xC3;
+    RadioEvents radioEvents = connect();
+
+    // When
+    try {
+      radioEvents.receivedMessage(ByteBuffer.wrap(call));
+    } catch (RuntimeException ex) {
+      // Expected, the frame isn't valid UTF-8
+    }
+
+    // Then
+    verify(events, never()).onCall(anyString(), anyString(), any());
+  }
+
+  @Test
+  public void receivedMessage_callResultWithKnownRequest_payloadIsBoundToConfirmationType()
+      throws Exception {
+    // Given
+    String callResult =
+        "[3,\"2\",{\"currentTime\":\"2016-04-28T07:16:11.988Z\",\"interval\":300,\"status\":\"Accepted\"}]";
+    doReturn(BootNotificationConfirmation.class).when(events).getConfirmationType("2");
+    RadioEvents radioEvents = connect();
+
+    // When
+    radioEvents.receivedMessage(callResult);
+
+    // Then
+    ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+    verify(events).onCallResult(eq("2"), any(), payload.capture());
+    assertThat(payload.getValue(), instanceOf(BootNotificationConfirmation.class));
+    assertThat(((BootNotificationConfirmation) payload.getValue()).getInterval(), is(300));
+  }
+
+  @Test
+  public void receivedMessage_callWithUnknownAction_payloadIsKeptAsJson() throws Exception {
+    // Given
+    String call = "[2,\"3\",\"Unknown\",{\"some\":[1,2]}]";
+    RadioEvents radioEvents = connect();
+
+    // When
+    radioEvents.receivedMessage(call);
+
+    // Then
+    verify(events).onCall(eq("3"), eq("Unknown"), eq("{\"some\":[1,2]}"));
+  }
+
+  @Test
+  public void receivedMessage_callWithUnknownAction_payloadIsKeptAsReceived() throws Exception {
+    // Given
+    String payload = "{ \"value\": 1.10, \"text\": \"\\u00e9 ]}\\\"\" , \"list\": [ {} ] }";
+    String call = "[2,\"3\",\"Unknown\", " + payload + " ]";
+
+    for (JsonCodec codec : new JsonCodec[] {new GsonCodec(), new JacksonCodec()}) {
+      for (Object message :
+          new Object[] {call, ByteBuffer.wrap(call.getBytes(StandardCharsets.UTF_8))}) {
+        communicator = new JSONCommunicator(transmitter, codec);
+        reset(transmitter, events);
+        RadioEvents radioEvents = connect();
+
+        // When
+        radioEvents.receivedMessage(message);
+
+        // Then
+        verify(events).onCall(eq("3"), eq("Unknown"), eq(payload));
+      }
+    }
+  }
+
+  @Test
+  public void receivedMessage_callErrorWithDetails_detailsAreKeptAsReceived() {
+    // Given
+    String callError = "[4,\"5\",\"InternalError\",\"Failed\",{\"limit\":1.10}]";
+    RadioEvents radioEvents = connect();
+
+    // When
+    radioEvents.receivedMessage(callError);
+
+    // Then
+    verify(events).onError(eq("5"), eq("InternalError"), eq("Failed"), eq("{\"limit\":1.10}"));
+  }
+
+  @Test(expected = Exception.class)
+  public void receivedMessage_callWithMalformedPayload_unpackPayloadThrows() throws Exception {
+    // Given
+    String call = "[2,\"4\",\"BootNotification\",{\"chargePointVendor\":[]}]";
+    doReturn(BootNotificationRequest.class).when(events).getRequestType("BootNotification");
+    RadioEvents radioEvents = connect();
+    radioEvents.receivedMessage(call);
+    ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+    verify(events).onCall(eq("4"), eq("BootNotification"), payload.capture());
+
+    // When
+    communicator.unpackPayload(payload.getValue(), BootNotificationRequest.class);
+  }
+
+  @Test
+  public void receivedMessage_callError_errorIsReported() {
+    // Given
+    String callError = "[4,\"5\",\"NotImplemented\",\"Unknown action\",{}]";
+    RadioEvents radioEvents = connect();
+
+    // When
+    radioEvents.receivedMessage(callError);
+
+    // Then
+    verify(events).onError(eq("5"), eq("NotImplemented"), eq("Unknown action"), eq("{}"));
+  }
+
+  private RadioEvents connect() {
+    communicator.connect(null, events);
+    ArgumentCaptor<RadioEvents> radioEvents = ArgumentCaptor.forClass(RadioEvents.class);
+    verify(transmitter).connect(any(), radioEvents.capture());
+    return radioEvents.getValue();
+  }
+
   private ZonedDateTime createDateTimeInMillis(long dateInMillis) {
     return Instant.ofEpochMilli(dateInMillis).atOffset(ZoneOffset.UTC).toZonedDateTime();
   }
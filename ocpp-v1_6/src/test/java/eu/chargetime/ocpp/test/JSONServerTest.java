@@ -0,0 +1,184 @@
+package eu.chargetime.ocpp.test;
+/*
+   ChargeTime.eu - Java-OCA-OCPP
+
+   MIT License
+
+   Copyright (C) 2016-2018 Thomas Volden <tv@chargetime.eu>
+
+   Permission is hereby granted, free of charge, to any person obtaining a copy
+   of this software and associated documentation files (the "Software"), to deal
+   in the Software without restriction, including without limitation the rights
+   to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+   copies of the Software, and to permit persons to whom the Software is
+   furnished to do so, subject to the following conditions:
+
+   The above copyright notice and this permission notice shall be included in all
+   copies or substantial portions of the Software.
+
+   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+   SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import eu.chargetime.ocpp.JSONConfiguration;
+import eu.chargetime.ocpp.JSONServer;
+import eu.chargetime.ocpp.PromiseRepository;
+import eu.chargetime.ocpp.PropertyConstraintException;
+import eu.chargetime.ocpp.ServerEvents;
+import eu.chargetime.ocpp.feature.ProfileFeature;
+import eu.chargetime.ocpp.feature.profile.Profile;
+import eu.chargetime.ocpp.feature.profile.ServerCoreEventHandler;
+import eu.chargetime.ocpp.feature.profile.ServerCoreProfile;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.core.HeartbeatConfirmation;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.Protocol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JSONServerTest {
+  private static final String SECRET_ID_TAG = "secret-id-tag";
+
+  private JSONServer server;
+  private int port;
+
+  @Before
+  public void setup() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    server = new JSONServer(coreProfile());
+    server.addFeatureProfile(new ProbeProfile());
+    server.open("127.0.0.1", port, mock(ServerEvents.class));
+  }
+
+  @After
+  public void tearDown() {
+    server.close();
+  }
+
+  @Test
+  public void call_requestViolatesConstraint_answersConstraintWithoutValue() throws Exception {
+    // Given
+    CompletableFuture<String> answer = new CompletableFuture<>();
+    WebSocketClient client =
+        new WebSocketClient(
+            new URI(String.format("ws://127.0.0.1:%d/CP_1", port)),
+            new Draft_6455(
+                Collections.emptyList(), Collections.singletonList(new Protocol("ocpp1.6")))) {
+          @Override
+          public void onOpen(ServerHandshake handshake) {}
+
+          @Override
+          public void onMessage(String message) {
+            answer.complete(message);
+          }
+
+          @Override
+          public void onClose(int code, String reason, boolean remote) {}
+
+          @Override
+          public void onError(Exception ex) {
+            answer.completeExceptionally(ex);
+          }
+        };
+    client.connectBlocking(1, TimeUnit.SECONDS);
+
+    // When
+    client.send(String.format("[2,\"1\",\"Probe\",{\"idTag\":\"%s\"}]", SECRET_ID_TAG));
+
+    // Then
+    try {
+      assertThat(
+          answer.get(1, TimeUnit.SECONDS),
+          equalTo(
+              "[4,\"1\",\"TypeConstraintViolation\",\"Validation failed: [idTag is too long]\","
+                  + "{\"constraint\":\"idTag is too long\"}]"));
+    } finally {
+      client.closeBlocking();
+    }
+  }
+
+  @Test
+  public void getOutboundCallScheduler_defaultScheduler_timesOutWithRequests() {
+    // Given
+    JSONConfiguration configuration =
+        JSONConfiguration.get().setParameter(JSONConfiguration.CALL_TIMEOUT_IN_MS_PARAMETER, 500);
+
+    // When
+    JSONServer configured = new JSONServer(coreProfile(), configuration);
+
+    // Then
+    assertThat(
+        new JSONServer(coreProfile()).getOutboundCallScheduler().getCallTimeoutMillis(),
+        equalTo((long) PromiseRepository.DEFAULT_TIMEOUT));
+    assertThat(configured.getOutboundCallScheduler().getCallTimeoutMillis(), equalTo(500L));
+  }
+
+  private static ServerCoreProfile coreProfile() {
+    return new ServerCoreProfile(mock(ServerCoreEventHandler.class));
+  }
+
+  /** Request that fails validation with the value it holds. */
+  public static class ProbeRequest implements Request {
+    private String idTag;
+
+    @Override
+    public boolean validate() {
+      throw new PropertyConstraintException(idTag, "idTag is too long");
+    }
+
+    @Override
+    public boolean transactionRelated() {
+      return false;
+    }
+  }
+
+  private static class ProbeProfile implements Profile {
+    @Override
+    public ProfileFeature[] getFeatureList() {
+      return new ProfileFeature[] {
+        new ProfileFeature(this) {
+          @Override
+          public Class<? extends Request> getRequestType() {
+            return ProbeRequest.class;
+          }
+
+          @Override
+          public Class<? extends Confirmation> getConfirmationType() {
+            return HeartbeatConfirmation.class;
+          }
+
+          @Override
+          public String getAction() {
+            return "Probe";
+          }
+        }
+      };
+    }
+
+    @Override
+    public Confirmation handleRequest(UUID sessionIndex, Request request) {
+      return null;
+    }
+  }
+}
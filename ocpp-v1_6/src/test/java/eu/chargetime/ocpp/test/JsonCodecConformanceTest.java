@@ -0,0 +1,213 @@
+package eu.chargetime.ocpp.test;
+
+import static eu.chargetime.ocpp.utilities.TestUtilities.aSample;
+import static eu.chargetime.ocpp.utilities.TestUtilities.classesOf;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import eu.chargetime.ocpp.GsonCodec;
+import eu.chargetime.ocpp.JacksonCodec;
+import eu.chargetime.ocpp.JsonCodec;
+import eu.chargetime.ocpp.model.CallMessage;
+import eu.chargetime.ocpp.model.CallResultMessage;
+import eu.chargetime.ocpp.model.Confirmation;
+import eu.chargetime.ocpp.model.Message;
+import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.SOAPHostInfo;
+import eu.chargetime.ocpp.model.core.AuthorizeRequest;
+import eu.chargetime.ocpp.model.core.Location;
+import eu.chargetime.ocpp.model.core.MeterValue;
+import eu.chargetime.ocpp.model.core.MeterValuesRequest;
+import eu.chargetime.ocpp.model.core.SampledValue;
+import eu.chargetime.ocpp.model.core.StartTransactionRequest;
+import eu.chargetime.ocpp.model.core.StatusNotificationRequest;
+import eu.chargetime.ocpp.model.core.ValueFormat;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+/** Checks every v1.6 message is written and read the same way by all {@link JsonCodec}s. */
+@RunWith(Parameterized.class)
+public class JsonCodecConformanceTest {
+
+  private static final JsonCodec gson = new GsonCodec();
+  private static final JsonCodec jackson = new JacksonCodec();
+
+  private final Class<?> type;
+  private final Object sample;
+
+  public JsonCodecConformanceTest(String name, Class<?> type) {
+    this.type = type;
+    this.sample = aSample(type, validSamples());
+  }
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> messages() {
+    List<Object[]> messages = new ArrayList<>();
+    for (Class<?> type : classesOf(SOAPHostInfo.class, Request.class)) {
+      messages.add(new Object[] {type.getSimpleName(), type});
+    }
+    for (Class<?> type : classesOf(SOAPHostInfo.class, Confirmation.class)) {
+      messages.add(new Object[] {type.getSimpleName(), type});
+    }
+    return messages;
+  }
+
+  /** Samples for types with setters that only accept a fixed set of strings. */
+  private static Map<Class<?>, Object> validSamples() {
+    SampledValue sampledValue = new SampledValue("42");
+    sampledValue.setContext("Sample.Periodic");
+    sampledValue.setFormat(ValueFormat.Raw);
+    sampledValue.setMeasurand("Energy.Active.Import.Register");
+    sampledValue.setPhase("L1");
+    sampledValue.setLocation(Location.Outlet);
+    sampledValue.setUnit("Wh");
+
+    Map<Class<?>, Object> samples = new HashMap<>();
+    samples.put(SampledValue.class, sampledValue);
+    return samples;
+  }
+
+  /**
+   * Payloads with values the setters reject. Codecs bind fields directly, so every codec must take
+   * them as they are and leave the checks to validation.
+   */
+  private static Map<Class<?>, String> payloadsRejectedBySetters() {
+    String longIdTag = "\"idTag\":\"123456789012345678901\"";
+    String unknownSampledValue =
+        "{\"value\":\"1\",\"context\":\"Bogus\",\"measurand\":\"Nonsense\",\"phase\":\"L4\","
+            + "\"unit\":\"furlong\"}";
+
+    Map<Class<?>, String> payloads = new HashMap<>();
+    payloads.put(AuthorizeRequest.class, "{" + longIdTag + "}");
+    payloads.put(SampledValue.class, unknownSampledValue);
+    payloads.put(MeterValue.class, "{\"sampledValue\":[" + unknownSampledValue + "]}");
+    payloads.put(
+        MeterValuesRequest.class,
+        "{\"connectorId\":-1,\"meterValue\":[{\"sampledValue\":[" + unknownSampledValue + "]}]}");
+    payloads.put(
+        StatusNotificationRequest.class,
+        "{\"connectorId\":-1,\"errorCode\":\"NoError\",\"status\":\"Available\","
+            + "\"info\":\""
+            + String.join("", Collections.nCopies(51, "i"))
+            + "\"}");
+    payloads.put(
+        StartTransactionRequest.class, "{\"connectorId\":0," + longIdTag + ",\"meterStart\":0}");
+    return payloads;
+  }
+
+  @Test
+  public void toJson_sample_codecsWriteTheSameJson() {
+    // When
+    JsonElement gsonJson = tree(gson.toJson(sample));
+    JsonElement jacksonJson = tree(jackson.toJson(sample));
+
+    // Then
+    assertThat(jacksonJson, equalTo(gsonJson));
+  }
+
+  @Test
+  public void fromJson_gsonJson_everyCodecReadsItBack() throws Exception {
+    // Given
+    String json = gson.toJson(sample);
+
+    // When
+    Object fromGson = gson.fromJson(json, type);
+    Object fromJackson = jackson.fromJson(json, type);
+
+    // Then
+    assertThat(tree(gson.toJson(fromGson)), equalTo(tree(json)));
+    assertThat(tree(gson.toJson(fromJackson)), equalTo(tree(json)));
+  }
+
+  @Test
+  public void fromJson_valuesRejectedBySetters_everyCodecBindsThemAsIs() throws Exception {
+    // Given
+    String json = payloadsRejectedBySetters().get(type);
+    if (json == null) return;
+
+    // When
+    Object fromGson = gson.fromJson(json, type);
+    Object fromJackson = jackson.fromJson(json, type);
+
+    // Then
+    assertThat(tree(gson.toJson(fromGson)), equalTo(tree(json)));
+    assertThat(tree(gson.toJson(fromJackson)), equalTo(tree(json)));
+  }
+
+  @Test
+  public void parse_callOrCallResult_everyCodecBindsThePayload() throws Exception {
+    // Given
+    String json = gson.toJson(sample);
+    boolean isRequest = Request.class.isAssignableFrom(type);
+    String message =
+        isRequest
+            ? "[2,\"id\",\"" + type.getSimpleName() + "\"," + json + "]"
+            : "[3,\"id\"," + json + "]";
+    JsonCodec.PayloadTypes payloadTypes =
+        new JsonCodec.PayloadTypes() {
+          @Override
+          public Class<?> getRequestType(String action) {
+            return type;
+          }
+
+          @Override
+          public Class<?> getConfirmationType(String uniqueId) {
+            return type;
+          }
+        };
+
+    for (JsonCodec codec : new JsonCodec[] {gson, jackson}) {
+      // When
+      Message parsed = codec.parse(new StringReader(message), payloadTypes);
+
+      // Then
+      assertThat(parsed, instanceOf(isRequest ? CallMessage.class : CallResultMessage.class));
+      assertThat(parsed.getId(), equalTo("id"));
+      assertThat(parsed.getPayload(), instanceOf(type));
+      assertThat(tree(gson.toJson(parsed.getPayload())), equalTo(tree(json)));
+    }
+  }
+
+  private static JsonElement tree(String json) {
+    return new JsonParser().parse(json);
+  }
+}
@@ -0,0 +1,144 @@
+package eu.chargetime.ocpp.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import com.sun.net.httpserver.HttpServer;
+import eu.chargetime.ocpp.SOAPHttpTransport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SOAPHttpTransportTest {
+  private static final String CONTENT_TYPE = "application/soap+xml; charset=utf-8";
+  private static final String BODY = "<env:Envelope/>";
+
+  private SOAPHttpTransport transport;
+  private HttpServer server;
+  private String url;
+  private volatile String receivedBody;
+  private volatile String receivedContentType;
+  private volatile int responseStatus;
+
+  @Mock private SOAPMessage message;
+
+  @Before
+  public void setup() throws Exception {
+    transport = new SOAPHttpTransport(2, 4, 1000, 1000);
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          receivedContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+          receivedBody = read(exchange.getRequestBody());
+          exchange.sendResponseHeaders(responseStatus, -1);
+          exchange.close();
+        });
+    server.start();
+    url = String.format("http://127.0.0.1:%d/", server.getAddress().getPort());
+
+    MimeHeaders headers = new MimeHeaders();
+    headers.addHeader("Content-Type", CONTENT_TYPE);
+    when(message.getMimeHeaders()).thenReturn(headers);
+    doAnswer(
+            invocation -> {
+              invocation
+                  .getArgumentAt(0, OutputStream.class)
+                  .write(BODY.getBytes(StandardCharsets.UTF_8));
+              return null;
+            })
+        .when(message)
+        .writeTo(any());
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    transport.shutdown();
+  }
+
+  @Test
+  public void call_emptyResponse_postsMessageAndCompletesWithNull() throws Exception {
+    // Given
+    responseStatus = 202;
+
+    // When
+    SOAPMessage response = transport.call(message, url).get(5, TimeUnit.SECONDS);
+
+    // Then
+    assertThat(response, is(nullValue()));
+    assertThat(receivedBody, equalTo(BODY));
+    assertThat(receivedContentType, equalTo(CONTENT_TYPE));
+  }
+
+  @Test
+  public void call_errorStatusWithoutBody_completesExceptionally() throws Exception {
+    // Given
+    responseStatus = 503;
+
+    // When
+    try {
+      transport.call(message, url).get(5, TimeUnit.SECONDS);
+      fail("Expected the call to fail");
+    } catch (ExecutionException e) {
+      // Then
+      assertThat(e.getCause(), instanceOf(IOException.class));
+    }
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[256];
+    int read;
+    while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
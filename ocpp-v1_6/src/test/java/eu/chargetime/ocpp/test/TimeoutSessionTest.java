@@ -6,7 +6,10 @@ import static org.mockito.Mockito.*;
 import eu.chargetime.ocpp.ISession;
 import eu.chargetime.ocpp.SessionEvents;
 import eu.chargetime.ocpp.TimeoutSessionDecorator;
+import eu.chargetime.ocpp.model.core.BootNotificationConfirmation;
+import eu.chargetime.ocpp.model.core.RegistrationStatus;
 import eu.chargetime.ocpp.utilities.TimeoutTimer;
+import java.time.ZonedDateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -118,6 +121,25 @@ public class TimeoutSessionTest {
     verify(timeoutTimer, times(1)).reset();
   }
 
+  @Test
+  public void handleRequest_bootNotificationAccepted_timeoutAllowsLateHeartbeat()
+      throws Exception {
+    // Given
+    BootNotificationConfirmation confirmation =
+        new BootNotificationConfirmation(
+            ZonedDateTime.now(), 300, RegistrationStatus.Accepted);
+    when(sessionEvents.handleRequest(any())).thenReturn(confirmation);
+    session.open(null, sessionEvents);
+
+    // When
+    sessionEvents.handleRequest(null);
+
+    // Then
+    verify(timeoutTimer, times(1))
+        .setTimeout(300 * 1000L * TimeoutSessionDecorator.HEARTBEAT_INTERVALS_BEFORE_TIMEOUT);
+    verify(timeoutTimer, times(2)).reset();
+  }
+
   @Test
   public void handleConfirmation_any_resetTimeout() throws Exception {
     // Given
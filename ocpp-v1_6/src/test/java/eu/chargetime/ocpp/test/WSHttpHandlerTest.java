@@ -0,0 +1,328 @@
+package eu.chargetime.ocpp.test;
+/*
+ChargeTime.eu - Java-OCA-OCPP
+Copyright (C) 2015-2016 Thomas Volden <tv@chargetime.eu>
+
+MIT License
+
+Copyright (C) 2016-2018 Thomas Volden
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import eu.chargetime.ocpp.SOAPFaultException;
+import eu.chargetime.ocpp.WSHttpHandler;
+import eu.chargetime.ocpp.WSHttpHandlerEvents;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import javax.xml.soap.SOAPMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WSHttpHandlerTest {
+  private static final String WSDL = "eu/chargetime/ocpp/OCPP_CentralSystemService_1.6.wsdl";
+  private static final String EXCHANGE_THREAD = "http-exchange";
+
+  private HttpServer server;
+  private URL wsdlUrl;
+  private byte[] expected;
+
+  @Mock private WSHttpHandlerEvents events;
+  @Mock private SOAPMessage request;
+
+  private final ExecutorService executor =
+      Executors.newCachedThreadPool(runnable -> new Thread(runnable, EXCHANGE_THREAD));
+  private final AtomicInteger acceptedTasks = new AtomicInteger(Integer.MAX_VALUE);
+  private volatile SOAPMessage parsed;
+
+  @Before
+  public void setup() throws Exception {
+    parsed = request;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new TestHandler());
+    server.setExecutor(
+        task -> {
+          if (acceptedTasks.getAndDecrement() <= 0) throw new RejectedExecutionException();
+          executor.execute(task);
+        });
+    server.start();
+    wsdlUrl = new URL(String.format("http://127.0.0.1:%d/?wsdl", server.getAddress().getPort()));
+    expected = read(getClass().getClassLoader().getResourceAsStream(WSDL));
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void handle_wsdlRequest_sendsWsdlWithContentLength() throws Exception {
+    // Given
+    HttpURLConnection connection = (HttpURLConnection) wsdlUrl.openConnection();
+
+    // When
+    byte[] body = read(connection.getInputStream());
+
+    // Then
+    assertThat(connection.getContentLengthLong(), is((long) expected.length));
+    assertThat(connection.getContentEncoding(), is(nullValue()));
+    assertThat(body, equalTo(expected));
+  }
+
+  @Test
+  public void handle_wsdlRequestAcceptingGzip_sendsGzippedWsdl() throws Exception {
+    // Given
+    HttpURLConnection connection = (HttpURLConnection) wsdlUrl.openConnection();
+    connection.setRequestProperty("Accept-Encoding", "deflate, gzip;q=0.8");
+
+    // When
+    byte[] body = read(connection.getInputStream());
+
+    // Then
+    assertThat(connection.getContentLengthLong(), is((long) body.length));
+    assertThat(connection.getContentEncoding(), equalTo("gzip"));
+    assertThat(read(new GZIPInputStream(new ByteArrayInputStream(body))), equalTo(expected));
+  }
+
+  @Test
+  public void handle_wsdlRequestRefusingGzip_sendsPlainWsdl() throws Exception {
+    // Given
+    HttpURLConnection connection = (HttpURLConnection) wsdlUrl.openConnection();
+    connection.setRequestProperty("Accept-Encoding", "gzip;q=0");
+
+    // When
+    byte[] body = read(connection.getInputStream());
+
+    // Then
+    assertThat(connection.getContentEncoding(), is(nullValue()));
+    assertThat(body, equalTo(expected));
+  }
+
+  @Test
+  public void handle_confirmationPending_otherRequestsAreAnswered() throws Exception {
+    // Given
+    CompletableFuture<SOAPMessage> pending = new CompletableFuture<>();
+    SOAPMessage first = message("first");
+    SOAPMessage second = message("second");
+    when(events.incomingRequestAsync(any()))
+        .thenReturn(pending, CompletableFuture.completedFuture(second));
+    CompletableFuture<byte[]> firstResponse = CompletableFuture.supplyAsync(this::post);
+    verify(events, timeout(1000)).incomingRequestAsync(any());
+
+    // When
+    byte[] secondResponse = post();
+    pending.complete(first);
+
+    // Then
+    assertThat(secondResponse, equalTo("second".getBytes(StandardCharsets.UTF_8)));
+    assertThat(
+        firstResponse.get(1, TimeUnit.SECONDS), equalTo("first".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void handle_requestFailsWithFault_sendsFaultMessage() throws Exception {
+    // Given
+    CompletableFuture<SOAPMessage> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new SOAPFaultException("timed out", message("fault")));
+    when(events.incomingRequestAsync(any())).thenReturn(failed);
+
+    // When
+    byte[] response = post();
+
+    // Then
+    assertThat(response, equalTo("fault".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void handle_confirmationCompletedOnOtherThread_respondsOnServerExecutor()
+      throws Exception {
+    // Given
+    CompletableFuture<SOAPMessage> pending = new CompletableFuture<>();
+    AtomicReference<String> writingThread = new AtomicReference<>();
+    SOAPMessage confirmation = message("confirmation");
+    doAnswer(
+            invocation -> {
+              writingThread.set(Thread.currentThread().getName());
+              return null;
+            })
+        .when(confirmation)
+        .writeTo(any());
+    when(events.incomingRequestAsync(any())).thenReturn(pending);
+    CompletableFuture<byte[]> response = CompletableFuture.supplyAsync(this::post);
+    verify(events, timeout(1000)).incomingRequestAsync(any());
+
+    // When
+    pending.complete(confirmation);
+    response.get(1, TimeUnit.SECONDS);
+
+    // Then
+    assertThat(writingThread.get(), equalTo(EXCHANGE_THREAD));
+  }
+
+  @Test
+  public void handle_unparseableRequest_answersBadRequestWithoutDispatching() throws Exception {
+    // Given
+    parsed = null;
+
+    // When
+    int status = postForStatus();
+
+    // Then
+    assertThat(status, is(400));
+    verify(events, never()).incomingRequestAsync(any());
+  }
+
+  @Test
+  public void handle_incomingRequestThrows_answersServerError() throws Exception {
+    // Given
+    when(events.incomingRequestAsync(any())).thenThrow(new IllegalStateException("closed"));
+
+    // When
+    int status = postForStatus();
+
+    // Then
+    assertThat(status, is(500));
+  }
+
+  @Test
+  public void handle_incomingRequestReturnsNoConfirmation_answersServerError() throws Exception {
+    // Given
+    when(events.incomingRequestAsync(any())).thenReturn(null);
+
+    // When
+    int status = postForStatus();
+
+    // Then
+    assertThat(status, is(500));
+  }
+
+  @Test
+  public void handle_executorRejectsResponse_respondsInline() throws Exception {
+    // Given
+    CompletableFuture<SOAPMessage> pending = new CompletableFuture<>();
+    SOAPMessage confirmation = message("confirmation");
+    when(events.incomingRequestAsync(any())).thenReturn(pending);
+    acceptedTasks.set(1);
+    CompletableFuture<byte[]> response = CompletableFuture.supplyAsync(this::post);
+    verify(events, timeout(1000)).incomingRequestAsync(any());
+
+    // When
+    pending.complete(confirmation);
+
+    // Then
+    assertThat(
+        response.get(1, TimeUnit.SECONDS),
+        equalTo("confirmation".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private SOAPMessage message(String content) throws Exception {
+    SOAPMessage message = mock(SOAPMessage.class);
+    doAnswer(
+            invocation -> {
+              ((OutputStream) invocation.getArguments()[0])
+                  .write(content.getBytes(StandardCharsets.UTF_8));
+              return null;
+            })
+        .when(message)
+        .writeTo(any());
+    return message;
+  }
+
+  private byte[] post() {
+    try {
+      return read(postRequest().getInputStream());
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private int postForStatus() throws Exception {
+    HttpURLConnection connection = postRequest();
+    int status = connection.getResponseCode();
+    connection.disconnect();
+    return status;
+  }
+
+  private HttpURLConnection postRequest() throws Exception {
+    URL url = new URL(String.format("http://127.0.0.1:%d/", server.getAddress().getPort()));
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write("<Envelope/>".getBytes(StandardCharsets.UTF_8));
+    }
+    return connection;
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+    in.close();
+    return out.toByteArray();
+  }
+
+  /** Hands out the configured request, no SOAP implementation is needed to parse it. */
+  private class TestHandler extends WSHttpHandler {
+    TestHandler() {
+      super(WSDL, events);
+    }
+
+    @Override
+    protected SOAPMessage parse(HttpExchange httpExchange) throws IOException {
+      read(httpExchange.getRequestBody());
+      return parsed;
+    }
+  }
+}
@@ -83,7 +83,8 @@ public class FakeCentralSystem {
 
             @Override
             public void lostSession(UUID sessionIndex) {
-              currentSession = null;
+              // A charge point that reconnected has already replaced its previous session
+              if (sessionIndex.equals(currentSession)) currentSession = null;
             }
           });
       logger.info("Server started on host: {}, port: {}", host, port);
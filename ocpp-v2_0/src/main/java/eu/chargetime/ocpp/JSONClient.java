@@ -36,7 +36,6 @@ import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 import javax.net.ssl.SSLContext;
 import org.java_websocket.drafts.Draft;
-import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.protocols.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,11 +64,27 @@ public class JSONClient implements IClientAPI {
   public JSONClient(String identity, JSONConfiguration configuration) {
     this.identity = identity;
     draftOcppOnly =
-        new Draft_6455(Collections.emptyList(), Collections.singletonList(new Protocol("ocpp1.6")));
+        new Draft_6455Utf8(
+            PerMessageDeflate.fromConfiguration(configuration),
+            Collections.singletonList(new Protocol("ocpp1.6")));
     transmitter = new WebSocketTransmitter(configuration, draftOcppOnly);
-    JSONCommunicator communicator = new JSONCommunicator(transmitter);
+    JsonCodec codec =
+        configuration.getParameter(
+            JSONConfiguration.JSON_CODEC_PARAMETER, JSONCommunicator.getDefaultCodec());
+    ITransactionQueue transactionQueue =
+        configuration.getParameter(
+            JSONConfiguration.TRANSACTION_QUEUE_PARAMETER, new TransactionQueue());
+    JSONCommunicator communicator = new JSONCommunicator(transmitter, codec, transactionQueue);
     featureRepository = new FeatureRepository();
-    ISession session = new SessionFactory(featureRepository).createSession(communicator);
+    RequestHandlerExecutor requestHandlerExecutor =
+        configuration.getParameter(
+            JSONConfiguration.REQUEST_HANDLER_EXECUTOR_PARAMETER,
+            RequestHandlerExecutor.getDefault());
+    OutboundCallScheduler callScheduler =
+        configuration.getParameter(JSONConfiguration.OUTBOUND_CALL_SCHEDULER_PARAMETER);
+    ISession session =
+        new SessionFactory(featureRepository, requestHandlerExecutor, callScheduler)
+            .createSession(communicator);
     client = new Client(session, featureRepository, new PromiseRepository());
   }
 
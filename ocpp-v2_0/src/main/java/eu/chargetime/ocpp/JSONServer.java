@@ -28,16 +28,16 @@ package eu.chargetime.ocpp;
 import eu.chargetime.ocpp.feature.Feature;
 import eu.chargetime.ocpp.model.Confirmation;
 import eu.chargetime.ocpp.model.Request;
+import eu.chargetime.ocpp.model.SessionInformation;
 import eu.chargetime.ocpp.wss.BaseWssFactoryBuilder;
 import eu.chargetime.ocpp.wss.WssFactoryBuilder;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import org.java_websocket.drafts.Draft;
-import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.protocols.IProtocol;
 import org.java_websocket.protocols.Protocol;
 import org.slf4j.Logger;
@@ -50,6 +50,8 @@ public class JSONServer implements IServerAPI {
   private final WebSocketListener listener;
   private final Server server;
   private final FeatureRepository featureRepository;
+  private final PromiseRepository promiseRepository;
+  private final OutboundCallScheduler callScheduler;
   private JSONConfiguration jsonConfiguration;
 
   /**
@@ -59,15 +61,31 @@ public class JSONServer implements IServerAPI {
    */
   public JSONServer(JSONConfiguration configuration) {
     featureRepository = new FeatureRepository();
-    SessionFactory sessionFactory = new SessionFactory(featureRepository);
+    int callTimeout =
+        configuration.getParameter(
+            JSONConfiguration.CALL_TIMEOUT_IN_MS_PARAMETER, PromiseRepository.DEFAULT_TIMEOUT);
+    // A charge point that doesn't answer holds back the next call until the timeout
+    callScheduler =
+        configuration.getParameter(
+            JSONConfiguration.OUTBOUND_CALL_SCHEDULER_PARAMETER,
+            new OutboundCallScheduler(callTimeout, TimeUnit.MILLISECONDS));
+    SessionFactory sessionFactory =
+        new SessionFactory(
+            featureRepository,
+            configuration.getParameter(
+                JSONConfiguration.REQUEST_HANDLER_EXECUTOR_PARAMETER,
+                RequestHandlerExecutor.getDefault()),
+            callScheduler);
 
     ArrayList<IProtocol> protocols = new ArrayList<>();
     protocols.add(new Protocol("ocpp1.6"));
     protocols.add(new Protocol(""));
-    draftOcppOnly = new Draft_6455(Collections.emptyList(), protocols);
+    draftOcppOnly =
+        new Draft_6455Utf8(PerMessageDeflate.fromConfiguration(configuration), protocols);
     logger.info("JSONServer 2.0 without HttpHealthCheckDraft");
     this.listener = new WebSocketListener(sessionFactory, configuration, draftOcppOnly);
-    server = new Server(this.listener, featureRepository, new PromiseRepository());
+    promiseRepository = new PromiseRepository(callTimeout, TimeUnit.MILLISECONDS);
+    server = new Server(this.listener, featureRepository, promiseRepository);
   }
 
   /** The constructor creates WS-ready server. */
@@ -155,4 +173,56 @@ public class JSONServer implements IServerAPI {
       throws OccurenceConstraintException, UnsupportedFeatureException, NotConnectedException {
     return server.send(session, request);
   }
+
+  /**
+   * Send a request to a charge point by its identifier.
+   *
+   * @param chargePointId identifier of the charge point, see {@link
+   *     SessionInformation#getIdentifier()}.
+   * @param request Request for the charge point.
+   * @return Callback handler for when the charge point responds.
+   * @throws NotConnectedException Thrown if the charge point isn't connected.
+   */
+  public CompletionStage<Confirmation> send(String chargePointId, Request request)
+      throws OccurenceConstraintException, UnsupportedFeatureException, NotConnectedException {
+    return server.send(chargePointId, request);
+  }
+
+  /**
+   * Get the session index of a connected charge point.
+   *
+   * @param chargePointId identifier of the charge point, see {@link
+   *     SessionInformation#getIdentifier()}.
+   * @return the session index, null if the charge point isn't connected.
+   */
+  public UUID getSessionIndex(String chargePointId) {
+    return server.getSessionIndex(chargePointId);
+  }
+
+  /**
+   * Get the number of sent requests waiting for an answer.
+   *
+   * @return number of outstanding requests.
+   */
+  public int getPendingRequestCount() {
+    return promiseRepository.getPromiseCount();
+  }
+
+  /**
+   * Get the number of sent requests that weren't answered in time.
+   *
+   * @return number of timed out requests since creation.
+   */
+  public long getTimedOutRequestCount() {
+    return promiseRepository.getTimedOutPromiseCount();
+  }
+
+  /**
+   * Get the scheduler of the outgoing calls, for example to set the priority of an action.
+   *
+   * @return the {@link OutboundCallScheduler} of the sessions.
+   */
+  public OutboundCallScheduler getOutboundCallScheduler() {
+    return callScheduler;
+  }
 }